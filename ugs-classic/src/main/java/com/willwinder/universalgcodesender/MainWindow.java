@@ -1924,6 +1924,10 @@ public class MainWindow extends JFrame implements ControllerListener, UGSEventLi
                         }
                     } catch (IOException | GcodeStreamReader.NotGcodeStreamFile ex) {}
                     break;
+                case FILE_LOAD_FAILED:
+                    processedGcodeFile = null;
+                    resetSentRowLabels(0);
+                    break;
                 default:
                     break;
             }
@@ -33,6 +33,7 @@ import java.util.logging.Logger;
 
 import static com.willwinder.universalgcodesender.AbstractCommunicator.SerialCommunicatorEvent.COMMAND_SENT;
 import static com.willwinder.universalgcodesender.AbstractCommunicator.SerialCommunicatorEvent.COMMAND_SKIPPED;
+import static com.willwinder.universalgcodesender.AbstractCommunicator.SerialCommunicatorEvent.CONNECTION_LOST;
 
 /**
  * An Abstract communicator interface which implements listeners.
@@ -52,11 +53,14 @@ public abstract class AbstractCommunicator implements ICommunicator {
         COMMAND_SENT,
         COMMAND_SKIPPED,
         RAW_RESPONSE,
-        PAUSED
+        PAUSED,
+        CONNECTION_LOST
     }
 
-    // Callback interfaces
-    private Set<CommunicatorListener> communicatorListeners;
+    // Callback interfaces, copied to an array on change so that dispatching
+    // events while streaming doesn't need to allocate an iterator.
+    private final Set<CommunicatorListener> communicatorListeners;
+    private volatile CommunicatorListener[] communicatorListenerArray = new CommunicatorListener[0];
 
     public AbstractCommunicator() {
         this.communicatorListeners = new HashSet<>();
@@ -112,20 +116,30 @@ public abstract class AbstractCommunicator implements ICommunicator {
     @Override
     public void disconnect() throws Exception {
         this.stop = true;
-        this.eventThread.interrupt();
+        // The event thread may be the one disconnecting when handling a lost connection
+        if (Thread.currentThread() != this.eventThread) {
+            this.eventThread.interrupt();
+        }
         connection.closePort();
     }
 
+    @Override
+    public void handleConnectionLost(String reason) {
+        dispatchListenerEvents(CONNECTION_LOST, reason);
+    }
+
     /* ****************** */
 
     @Override
-    public void removeListener(CommunicatorListener scl) {
+    public synchronized void removeListener(CommunicatorListener scl) {
         this.communicatorListeners.remove(scl);
+        this.communicatorListenerArray = this.communicatorListeners.toArray(new CommunicatorListener[0]);
     }
 
     @Override
-    public void addListener(CommunicatorListener scl) {
+    public synchronized void addListener(CommunicatorListener scl) {
         this.communicatorListeners.add(scl);
+        this.communicatorListenerArray = this.communicatorListeners.toArray(new CommunicatorListener[0]);
     }
 
     /**
@@ -158,21 +172,27 @@ public abstract class AbstractCommunicator implements ICommunicator {
 
     private void sendEventToListeners(final SerialCommunicatorEvent event,
                                       String string, GcodeCommand command) {
+        CommunicatorListener[] listeners = communicatorListenerArray;
         switch (event) {
             case COMMAND_SENT:
-                for (CommunicatorListener scl : communicatorListeners)
+                for (CommunicatorListener scl : listeners)
                     scl.commandSent(command);
                 break;
             case COMMAND_SKIPPED:
-                for (CommunicatorListener scl : communicatorListeners)
+                for (CommunicatorListener scl : listeners)
                     scl.commandSkipped(command);
                 break;
             case RAW_RESPONSE:
-                for (CommunicatorListener scl : communicatorListeners)
+                for (CommunicatorListener scl : listeners)
                     scl.rawResponseListener(string);
                 break;
             case PAUSED:
-                communicatorListeners.forEach(CommunicatorListener::communicatorPausedOnError);
+                for (CommunicatorListener scl : listeners)
+                    scl.communicatorPausedOnError();
+                break;
+            case CONNECTION_LOST:
+                for (CommunicatorListener scl : listeners)
+                    scl.communicatorConnectionLost(string);
                 break;
             default:
 
@@ -18,6 +18,8 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
+import com.willwinder.universalgcodesender.communicator.StreamEventLoop;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.gcode.GcodeCommandCreator;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
@@ -28,6 +30,7 @@ import com.willwinder.universalgcodesender.listeners.ControllerListener;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.ControllerStatus;
 import com.willwinder.universalgcodesender.listeners.MessageType;
+import com.willwinder.universalgcodesender.listeners.StatusMailbox;
 import com.willwinder.universalgcodesender.listeners.CommunicatorListener;
 import com.willwinder.universalgcodesender.model.*;
 import com.willwinder.universalgcodesender.model.UGSEvent.ControlState;
@@ -39,7 +42,12 @@ import org.apache.commons.lang3.time.StopWatch;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -51,10 +59,25 @@ import static com.willwinder.universalgcodesender.model.UnitUtils.scaleUnits;
 /**
  * Abstract Control layer, coordinates all aspects of control.
  *
+ * The streaming state, i.e. the active commands, the row counters, the
+ * streaming flag and the stream timer, is only changed on a
+ * {@link StreamEventLoop}. The communicator events and the methods which
+ * start, pause, resume or cancel a stream are handled on the loop while the
+ * caller waits, the state can be read from any thread.
+ *
  * @author wwinder
  */
 public abstract class AbstractController implements CommunicatorListener, IController {
     private static final Logger logger = Logger.getLogger(AbstractController.class.getName());
+
+    /**
+     * Delivers the statuses to the listeners so that a slow listener doesn't block the connection
+     */
+    private static final ExecutorService STATUS_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ControllerStatusDispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
     private final GcodeParser parser = new GcodeParser();
 
     // These abstract objects are initialized in concrete class.
@@ -67,17 +90,18 @@ public abstract class AbstractController implements CommunicatorListener, IContr
     private int statusUpdateRate = 200;
 
     // Added value
-    private Boolean isStreaming = false;
+    private volatile Boolean isStreaming = false;
 
     // For keeping track of the time spent streaming a file
     private StopWatch streamStopWatch = new StopWatch();
 
     // This metadata needs to be cached instead of looked up from queues and
     // streams, because those sources may be compromised during a cancel.
-    private int numCommands = 0;
-    private int numCommandsSent = 0;
-    private int numCommandsSkipped = 0;
-    private int numCommandsCompleted = 0;
+    private volatile int numCommands = 0;
+    private volatile boolean numCommandsEstimated = false;
+    private volatile int numCommandsSent = 0;
+    private volatile int numCommandsSkipped = 0;
+    private volatile int numCommandsCompleted = 0;
 
     // Commands become active after the Communicator notifies us that they have
     // been sent.
@@ -90,16 +114,28 @@ public abstract class AbstractController implements CommunicatorListener, IContr
     private ArrayList<GcodeCommand> activeCommands;    // The list of active commands.
     private IGcodeStreamReader streamCommands;    // The stream of commands to send.
 
+    // The only thread allowed to change the streaming state
+    private StreamEventLoop streamEventLoop = new StreamEventLoop("ControllerEventLoop");
+
     // Listeners
     private ArrayList<ControllerListener> listeners;
 
+    // Each listener receives the latest status through its own mailbox
+    private final Map<ControllerListener, StatusMailbox> statusMailboxes = new ConcurrentHashMap<>();
+    private volatile Executor statusExecutor = STATUS_EXECUTOR;
+
+    // The last status given to the listeners and its version
+    private final Object statusLock = new Object();
+    private ControllerStatus lastDispatchedStatus;
+    private long statusVersion = 0;
+
     //Track current mode to restore after jogging
     private String distanceModeCode = null;
     private String unitsCode = null;
 
     // Maintain the current state given actions performed.
     // Concrete classes with a status field should override getControlState.
-    private ControlState currentState = COMM_DISCONNECTED;
+    private volatile ControlState currentState = COMM_DISCONNECTED;
 
 
     /** API Interface. */
@@ -352,6 +388,28 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         return false;
     }
 
+    @Override
+    public void setFlowControlMode(FlowControlMode mode) {
+        if (this.comm != null) {
+            this.comm.setFlowControlMode(mode);
+
+            FlowControlMode supportedMode = this.comm.getFlowControlMode();
+            if (mode != null && supportedMode != null && mode != supportedMode) {
+                this.dispatchConsoleMessage(MessageType.INFO, "**** " + mode.getPrettyName()
+                        + " flow control isn't supported by this controller, using "
+                        + supportedMode.getPrettyName() + " ****\n");
+            }
+        }
+    }
+
+    @Override
+    public FlowControlMode getFlowControlMode() {
+        if (this.comm != null) {
+            return this.comm.getFlowControlMode();
+        }
+        return FlowControlMode.CHARACTER_COUNTING;
+    }
+
     @Override
     public void setStatusUpdatesEnabled(boolean enabled) {
         if (this.statusUpdatesEnabled != enabled) {
@@ -378,12 +436,23 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         return this.statusUpdateRate;
     }
 
+    @Override
+    public StatusPollTimer.Metrics getStatusPollMetrics() {
+        // Controllers which doesn't poll for the status
+        return StatusPollTimer.Metrics.EMPTY;
+    }
+
     @Override
     public Boolean openCommPort(ConnectionDriver connectionDriver, String port, int portRate) throws Exception {
         if (isCommOpen()) {
             throw new Exception("Comm port is already open.");
         }
 
+        // Make sure that the first status after connecting is dispatched
+        synchronized (statusLock) {
+            lastDispatchedStatus = null;
+        }
+
         // No point in checking response, it throws an exception on errors.
         this.comm.connect(connectionDriver, port, portRate);
         this.setCurrentState(COMM_IDLE);
@@ -405,6 +474,11 @@ public abstract class AbstractController implements CommunicatorListener, IContr
             return true;
         }
 
+        closeComm();
+        return true;
+    }
+
+    private void closeComm() throws Exception {
         this.closeCommBeforeEvent();
 
         this.dispatchConsoleMessage(MessageType.INFO,"**** Connection closed ****\n");
@@ -415,12 +489,11 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         //       soft resets, but also warns that the "startup" block will run
         //       on a reset and startup blocks may include motion commands.
         //this.issueSoftReset();
-        this.flushSendQueues();
+        streamEventLoop.invoke(this::flushSendQueues);
         this.commandCreator.resetNum();
         this.comm.disconnect();
 
         this.closeCommAfterEvent();
-        return true;
     }
 
     @Override
@@ -461,18 +534,39 @@ public abstract class AbstractController implements CommunicatorListener, IContr
     public int getRowStat(RowStat stat) {
         switch (stat) {
             case TOTAL_ROWS:
-                return this.numCommands;
+                return getNumCommands();
             case ROWS_SENT:
                 return this.numCommandsSent;
             case ROWS_COMPLETED:
                 return this.numCommandsCompleted + this.numCommandsSkipped;
             case ROWS_REMAINING:
-                return this.numCommands <= 0 ? 0 : this.numCommands - (this.numCommandsCompleted + this.numCommandsSkipped);
+                int total = getNumCommands();
+                return total <= 0 ? 0 : total - (this.numCommandsCompleted + this.numCommandsSkipped);
             default:
                 throw new IllegalStateException("This should be impossible - RowStat default case.");
         }
     }
 
+    /**
+     * Returns the number of commands in the stream, which is updated from the
+     * stream for as long as it is still being written.
+     */
+    private int getNumCommands() {
+        IGcodeStreamReader stream = this.streamCommands;
+        if (numCommandsEstimated && stream != null) {
+            // Check before getting the rows to not miss the final count
+            numCommandsEstimated = stream.isNumRowsEstimated();
+            numCommands = stream.getNumRows();
+        }
+        return this.numCommands;
+    }
+
+    @Override
+    public boolean isRowsInSendEstimated() {
+        getNumCommands();
+        return numCommandsEstimated;
+    }
+
     @Override
     public int rowsInSend() {
         return getRowStat(RowStat.TOTAL_ROWS);
@@ -495,10 +589,12 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     @Override
     public Optional<GcodeCommand> getActiveCommand() {
-        if (activeCommands.isEmpty()) {
-            return Optional.empty();
-        }
-        return Optional.of(activeCommands.get(0));
+        return streamEventLoop.invoke(() -> {
+            if (activeCommands.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(activeCommands.get(0));
+        });
     }
 
     @Override
@@ -552,8 +648,10 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     @Override
     public void queueStream(IGcodeStreamReader r) {
-        this.streamCommands = r;
-        updateNumCommands();
+        streamEventLoop.invoke(() -> {
+            this.streamCommands = r;
+            updateNumCommands();
+        });
     }
 
     @Override
@@ -567,7 +665,13 @@ public abstract class AbstractController implements CommunicatorListener, IContr
      */
     @Override
     public void beginStreaming() throws Exception {
+        streamEventLoop.call(() -> {
+            startStreaming();
+            return null;
+        });
+    }
 
+    private void startStreaming() throws Exception {
         this.isReadyToStreamFile();
 
         // Throw if there's nothing queued.
@@ -593,6 +697,8 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         // Send all queued commands and streams then kick off the stream.
         try {
             if (this.streamCommands != null) {
+                // Streams still being written may run out of rows before they are complete
+                this.streamCommands.setReadyListener(this::streamReady);
                 comm.queueStreamForComm(this.streamCommands);
             }
 
@@ -605,6 +711,19 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         }
     }
 
+    /**
+     * Continues streaming when a stream that ran out of rows while it was
+     * being written has more rows, or checks if it finished.
+     */
+    private void streamReady() {
+        if (!isStreaming()) {
+            return;
+        }
+
+        comm.streamCommands();
+        checkStreamFinished();
+    }
+
     @Override
     public void pauseStreaming() throws Exception {
         this.dispatchConsoleMessage(MessageType.INFO,"\n**** Pausing file transfer. ****\n\n");
@@ -612,9 +731,11 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         this.comm.pauseSend();
         this.setCurrentState(COMM_SENDING_PAUSED);
 
-        if (streamStopWatch.isStarted() && !streamStopWatch.isSuspended()) {
-            this.streamStopWatch.suspend();
-        }
+        streamEventLoop.invoke(() -> {
+            if (streamStopWatch.isStarted() && !streamStopWatch.isSuspended()) {
+                this.streamStopWatch.suspend();
+            }
+        });
     }
 
     @Override
@@ -624,9 +745,11 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         this.comm.resumeSend();
         this.setCurrentState(COMM_SENDING);
 
-        if (streamStopWatch.isSuspended()) {
-            this.streamStopWatch.resume();
-        }
+        streamEventLoop.invoke(() -> {
+            if (streamStopWatch.isSuspended()) {
+                this.streamStopWatch.resume();
+            }
+        });
     }
 
     @Override
@@ -650,6 +773,13 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     @Override
     public void cancelSend() throws Exception {
+        streamEventLoop.call(() -> {
+            cancelStreaming();
+            return null;
+        });
+    }
+
+    private void cancelStreaming() throws Exception {
         this.dispatchConsoleMessage(MessageType.INFO, "\n**** Canceling file transfer. ****\n\n");
 
         cancelSendBeforeEvent();
@@ -678,18 +808,22 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     @Override
     public void resetBuffers() {
-        this.activeCommands.clear();
-        this.comm.resetBuffers();
-        this.setCurrentState(COMM_IDLE);
+        streamEventLoop.invoke(() -> {
+            this.activeCommands.clear();
+            this.comm.resetBuffers();
+            this.setCurrentState(COMM_IDLE);
+        });
     }
 
     // Reset send queue and idx's.
     private void flushSendQueues() {
         numCommands = 0;
+        numCommandsEstimated = false;
     }
 
     private void updateNumCommands() {
         if (streamCommands != null) {
+            numCommandsEstimated = streamCommands.isNumRowsEstimated();
             numCommands = streamCommands.getNumRows();
         }
         numCommandsSkipped = 0;
@@ -699,12 +833,16 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     // No longer a listener event
     protected void fileStreamComplete(String filename, boolean success) {
+        streamEventLoop.invoke(() -> completeFileStream(filename, success));
+    }
 
+    private void completeFileStream(String filename, boolean success) {
         String duration =
                 com.willwinder.universalgcodesender.Utils.
                         formattedMillis(this.getSendDuration());
 
-        this.dispatchConsoleMessage(MessageType.INFO,"\n**** Finished sending file in "+duration+" ****\n\n");
+        this.dispatchConsoleMessage(MessageType.INFO,"\n**** Finished sending file in "+duration+" ****\n");
+        this.dispatchConsoleMessage(MessageType.INFO,"**** Streaming health: "+comm.getStreamingHealth().getReport()+" ****\n\n");
         this.streamStopWatch.stop();
         this.isStreaming = false;
         dispatchStreamComplete(filename, success);
@@ -712,6 +850,10 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     @Override
     public void commandSent(GcodeCommand command) {
+        streamEventLoop.invoke(() -> handleCommandSent(command));
+    }
+
+    private void handleCommandSent(GcodeCommand command) {
         if (this.isStreaming()) {
             this.numCommandsSent++;
         }
@@ -728,6 +870,23 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
     @Override
     public void communicatorPausedOnError() {
+        streamEventLoop.invoke(this::handleCommunicatorPausedOnError);
+    }
+
+    @Override
+    public void communicatorConnectionLost(String reason) {
+        dispatchConsoleMessage(MessageType.ERROR, "**** Connection lost: " + reason + " ****\n");
+        try {
+            // The connection may already report itself as closed, so skip the open check
+            closeComm();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Couldn't close the lost connection", e);
+        }
+        this.currentState = COMM_DISCONNECTED;
+        this.dispatchStateChange(COMM_DISCONNECTED);
+    }
+
+    private void handleCommunicatorPausedOnError() {
         dispatchConsoleMessage(MessageType.INFO, "**** The communicator has been paused ****\n");
         try {
             // Synchronize the controller <> communicator state.
@@ -745,21 +904,31 @@ public abstract class AbstractController implements CommunicatorListener, IContr
     }
 
     public void checkStreamFinished() {
-        if (this.isStreaming() &&
+        streamEventLoop.invoke(() -> {
+            if (isStreamFinished()) {
+                String streamName = "queued commands";
+                this.completeFileStream(streamName, true);
+
+                // Make sure the GUI gets updated when the file finishes
+                this.dispatchStateChange(getControlState());
+            }
+        });
+    }
+
+    private boolean isStreamFinished() {
+        return this.isStreaming() &&
                 !this.comm.areActiveCommands() &&
                 this.comm.numActiveCommands() == 0 &&
                 rowsRemaining() <= 0 &&
-                (getControllerStatus().getState().equals(ControllerState.CHECK) || getControlState() == COMM_IDLE || getControlState() == COMM_SENDING_PAUSED)) {
-            String streamName = "queued commands";
-            this.fileStreamComplete(streamName, true);
-
-            // Make sure the GUI gets updated when the file finishes
-            this.dispatchStateChange(getControlState());
-        }
+                (getControllerStatus().getState().equals(ControllerState.CHECK) || getControlState() == COMM_IDLE || getControlState() == COMM_SENDING_PAUSED);
     }
 
     @Override
     public void commandSkipped(GcodeCommand command) {
+        streamEventLoop.invoke(() -> handleCommandSkipped(command));
+    }
+
+    private void handleCommandSkipped(GcodeCommand command) {
         if (this.isStreaming()) {
             this.numCommandsSkipped++;
         }
@@ -810,10 +979,21 @@ public abstract class AbstractController implements CommunicatorListener, IContr
      * that the stream is complete once the last command has finished.
      */
     public void commandComplete(String response) throws UnexpectedCommand {
-        if (this.activeCommands.isEmpty()) {
+        if (!streamEventLoop.invoke(() -> completeActiveCommand(response))) {
             throw new UnexpectedCommand(
                     Localization.getString("controller.exception.unexpectedCommand"));
         }
+    }
+
+    /**
+     * Completes the first active command.
+     *
+     * @return false if there were no active commands
+     */
+    private boolean completeActiveCommand(String response) {
+        if (this.activeCommands.isEmpty()) {
+            return false;
+        }
 
         GcodeCommand command = this.activeCommands.remove(0);
 
@@ -830,11 +1010,12 @@ public abstract class AbstractController implements CommunicatorListener, IContr
 
         dispatchCommandComplete(command);
         checkStreamFinished();
+        return true;
     }
 
     @Override
     public void rawResponseListener(String response) {
-        rawResponseHandler(response);
+        streamEventLoop.invoke(() -> rawResponseHandler(response));
     }
 
     protected void setCurrentState(ControlState state) {
@@ -848,6 +1029,9 @@ public abstract class AbstractController implements CommunicatorListener, IContr
     public void addListener(ControllerListener listener) {
         if (!this.listeners.contains(listener)) {
             this.listeners.add(listener);
+            if (listener != null) {
+                this.statusMailboxes.put(listener, new StatusMailbox(listener, task -> statusExecutor.execute(task)));
+            }
         }
     }
 
@@ -857,15 +1041,70 @@ public abstract class AbstractController implements CommunicatorListener, IContr
             // Needs to be removed with thread safe operation,
             // will otherwise result in ConcurrentModifificationException
             this.listeners.removeIf(l -> l.equals(listener));
+
+            StatusMailbox mailbox = listener == null ? null : this.statusMailboxes.remove(listener);
+            if (mailbox != null) {
+                mailbox.close();
+            }
         }
     }
 
-    protected void dispatchStatusString(ControllerStatus status) {
-        if (listeners != null) {
-            for (ControllerListener c : listeners) {
-                c.statusStringListener(status);
+    @Override
+    public long getDroppedStatusCount(ControllerListener listener) {
+        StatusMailbox mailbox = listener == null ? null : statusMailboxes.get(listener);
+        return mailbox == null ? 0 : mailbox.getDroppedCount();
+    }
+
+    /**
+     * Sets the executor which delivers the statuses to the listeners.
+     *
+     * @param statusExecutor the executor to use
+     */
+    void setStatusExecutor(Executor statusExecutor) {
+        this.statusExecutor = statusExecutor;
+    }
+
+    /**
+     * Replaces the loop handling the streaming state, should only be used by
+     * tests before the controller is used.
+     *
+     * @param streamEventLoop the loop to use
+     */
+    void setStreamEventLoop(StreamEventLoop streamEventLoop) {
+        this.streamEventLoop = streamEventLoop;
+    }
+
+    /**
+     * Dispatches the status to the listeners with the next version and a mask
+     * of the fields that changed since the previously dispatched status. The
+     * status isn't dispatched if nothing changed.
+     *
+     * The listeners receive the status on a separate thread and will only
+     * get the latest status if they can't keep up, this method never blocks.
+     *
+     * @param status the new controller status
+     * @return the versioned status, or the previously dispatched status if nothing changed
+     */
+    protected ControllerStatus dispatchStatusString(ControllerStatus status) {
+        if (status == null) {
+            return null;
+        }
+
+        ControllerStatus versionedStatus;
+        synchronized (statusLock) {
+            int changes = status.getChangesSince(lastDispatchedStatus);
+            if (changes == 0) {
+                return lastDispatchedStatus;
             }
+
+            versionedStatus = status.withVersion(++statusVersion, changes);
+            lastDispatchedStatus = versionedStatus;
+        }
+
+        for (StatusMailbox mailbox : statusMailboxes.values()) {
+            mailbox.offer(versionedStatus);
         }
+        return versionedStatus;
     }
 
     protected void dispatchConsoleMessage(MessageType type, String message) {
@@ -21,46 +21,113 @@ package com.willwinder.universalgcodesender;
 
 import static com.willwinder.universalgcodesender.AbstractCommunicator.SerialCommunicatorEvent.*;
 
+import com.willwinder.universalgcodesender.communicator.CharacterCountingFlowControl;
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
+import com.willwinder.universalgcodesender.communicator.IFlowControl;
+import com.willwinder.universalgcodesender.communicator.PlannerAwareFlowControl;
+import com.willwinder.universalgcodesender.communicator.StreamEventLoop;
+import com.willwinder.universalgcodesender.communicator.StreamingHealth;
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
+import com.willwinder.universalgcodesender.connection.LineBatch;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
-import com.willwinder.universalgcodesender.utils.CommUtils;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.RingBuffer;
 
 import java.io.IOException;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * GRBL serial port interface class.
  *
+ * Threading contract: the streaming state, i.e. the cached command, the
+ * command stream, the active command list, the character count and the flow
+ * control, is only touched from a {@link StreamEventLoop}. Sending, pausing,
+ * resuming, canceling and buffer state updates are messages to the loop and
+ * the API methods wait until their message has been handled. Responses are
+ * posted to the loop by the connection reader thread without waiting, so
+ * completing a command and sending the next ones never waits for a lock and
+ * all changes to the streaming state happen in a deterministic order.
+ * Commands may be queued from any thread.
+ *
  * @author wwinder
  */
 public abstract class BufferedCommunicator extends AbstractCommunicator {
     private static final Logger logger = Logger.getLogger(BufferedCommunicator.class.getName());
 
+    // Responses waiting for the event loop, the reader waits when it is full
+    private static final int RESPONSE_QUEUE_CAPACITY = 1024;
+
     // Command streaming variables
-    private Boolean sendPaused = false;
-    private GcodeCommand nextCommand;                      // Cached command.
-    private IGcodeStreamReader commandStream;               // Arbitrary number of commands
-    private final LinkedBlockingDeque<GcodeCommand> commandBuffer;     // Manually specified commands
-    private final LinkedBlockingDeque<GcodeCommand> activeCommandList;  // Currently running commands
+    private volatile boolean sendPaused = false;
+    private volatile GcodeCommand nextCommand;             // Cached command.
+    private volatile IGcodeStreamReader commandStream;      // Arbitrary number of commands
+    private final Queue<GcodeCommand> commandBuffer;        // Manually specified commands
+    private final RingBuffer<GcodeCommand> activeCommandList;  // Currently running commands
     private int sentBufferSize = 0;
+    private LineBatch writeBatch;                           // Reused buffer for writing commands
+    private volatile FlowControlMode flowControlMode = FlowControlMode.CHARACTER_COUNTING;
+    private IFlowControl flowControl = new CharacterCountingFlowControl();
+    private final StreamingStatistics streamingStatistics = new StreamingStatistics();
+    private final StreamingHealth streamingHealth = new StreamingHealth();
+
+    // The only thread allowed to change the streaming state
+    private StreamEventLoop eventLoop;
+    private StreamEventLoop.Signal responseSignal;
+    private final RingBuffer<String> responses = new RingBuffer<>(RESPONSE_QUEUE_CAPACITY);
+
+    private volatile boolean singleStepModeEnabled = false;
     
-    private Boolean singleStepModeEnabled = false;
-    
+    /**
+     * Returns the size of the controller receive buffer.
+     *
+     * @return the buffer size in bytes
+     */
     abstract public int getBufferSize();
 
+    /**
+     * Returns the maximum number of commands that can be active at once,
+     * used for sizing the active command list when the communicator is
+     * created. Defaults to the buffer size as every command takes at least
+     * one byte, communicators with a buffer size that can change at runtime
+     * should return the largest supported size.
+     *
+     * Note: this is called from the constructor before any subclass fields
+     * have been initialized.
+     *
+     * @return the capacity of the active command list
+     */
+    protected int getActiveCommandListCapacity() {
+        return getBufferSize();
+    }
+
     public BufferedCommunicator() {
-        this.commandBuffer = new LinkedBlockingDeque<>();
-        this.activeCommandList = new LinkedBlockingDeque<>();
+        this.commandBuffer = new ConcurrentLinkedQueue<>();
+        this.activeCommandList = new RingBuffer<>(getActiveCommandListCapacity());
+        setEventLoop(new StreamEventLoop("CommunicatorEventLoop"));
     }
 
-    public BufferedCommunicator(LinkedBlockingDeque<GcodeCommand> cb, LinkedBlockingDeque<GcodeCommand> asl) {
+    public BufferedCommunicator(Queue<GcodeCommand> cb, RingBuffer<GcodeCommand> asl) {
         this.commandBuffer = cb;
         this.activeCommandList = asl;
+        setEventLoop(new StreamEventLoop("CommunicatorEventLoop"));
     }
     
+    /**
+     * Replaces the loop handling the streaming state, should only be used by
+     * tests before the communicator is used.
+     *
+     * @param eventLoop the loop to use
+     */
+    final void setEventLoop(StreamEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+        this.responseSignal = eventLoop.createSignal(this::handleResponses);
+    }
+
     @Override
     public void setSingleStepMode(boolean enable) {
         this.singleStepModeEnabled = enable;
@@ -71,15 +138,96 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         return this.singleStepModeEnabled;
     }
 
+    @Override
+    public void setFlowControlMode(FlowControlMode mode) {
+        if (mode == null) {
+            return;
+        }
+
+        FlowControlMode supportedMode = mode;
+        if (!isFlowControlModeSupported(mode)) {
+            logger.log(Level.WARNING, "The flow control mode {0} isn''t supported by {1}, using {2} instead",
+                    new Object[]{mode, getClass().getSimpleName(), FlowControlMode.CHARACTER_COUNTING});
+            supportedMode = FlowControlMode.CHARACTER_COUNTING;
+        }
+
+        FlowControlMode newMode = supportedMode;
+        eventLoop.invoke(() -> {
+            if (newMode != this.flowControlMode) {
+                this.flowControl = createFlowControl(newMode);
+                this.flowControlMode = newMode;
+            }
+        });
+    }
+
+    /**
+     * Returns if the communicator can stream using a flow control mode,
+     * communicators which support more modes should override this.
+     *
+     * @param mode the flow control mode
+     * @return true if the mode is supported
+     */
+    protected boolean isFlowControlModeSupported(FlowControlMode mode) {
+        // Queue reports are only sent by some controllers
+        return mode != FlowControlMode.QUEUE_REPORT;
+    }
+
+    /**
+     * Creates the strategy for a flow control mode, communicators which
+     * support more modes should override this.
+     *
+     * @param mode the flow control mode
+     * @return the flow control for the mode
+     */
+    protected IFlowControl createFlowControl(FlowControlMode mode) {
+        switch (mode) {
+            case PLANNER_AWARE:
+                return new PlannerAwareFlowControl();
+            case CHARACTER_COUNTING:
+            default:
+                return new CharacterCountingFlowControl();
+        }
+    }
+
+    @Override
+    public FlowControlMode getFlowControlMode() {
+        return this.flowControlMode;
+    }
+
+    @Override
+    public void updateBufferState(ControllerStatus.BufferState bufferState) {
+        if (eventLoop.isInEventLoop()) {
+            this.flowControl.updateBufferState(bufferState);
+        } else {
+            // The status doesn't need to wait for the event loop
+            eventLoop.execute(() -> this.flowControl.updateBufferState(bufferState));
+        }
+    }
+
+    @Override
+    public StreamingStatistics getStreamingStatistics() {
+        return this.streamingStatistics;
+    }
+
+    @Override
+    public StreamingHealth getStreamingHealth() {
+        return this.streamingHealth;
+    }
+
     @Override
     public void queueCommand(GcodeCommand command) {
         // Add command to queue
+        command.setQueuedTime(System.nanoTime());
         this.commandBuffer.add(command);
     }
 
     @Override
     public void queueStreamForComm(final IGcodeStreamReader input) {
-        commandStream = input;
+        eventLoop.invoke(() -> {
+            streamingStatistics.reset();
+            streamingHealth.reset();
+            commandStream = input;
+        });
     }
        
     /*
@@ -98,12 +246,16 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     public void resetBuffers() {
         super.resetBuffers();
         if (activeCommandList != null) {
-            activeCommandList.clear();
+            eventLoop.invoke(activeCommandList::clear);
         }
     }
 
     @Override
     public String activeCommandSummary() {
+        return eventLoop.invoke(this::createActiveCommandSummary);
+    }
+
+    private String createActiveCommandSummary() {
         StringBuilder sb = new StringBuilder();
         String comma = "";
 
@@ -128,8 +280,10 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
 
     @Override
     public int numActiveCommands() {
-        int streamingCount =
-                commandStream == null ? 0 : commandStream.getNumRowsRemaining();
+        // Read without the event loop, the commands are completed before
+        // their responses are dispatched
+        IGcodeStreamReader stream = commandStream;
+        int streamingCount = stream == null ? 0 : stream.getNumRowsRemaining();
         int cachedCommand = nextCommand == null ? 0 : 1;
         return this.activeCommandList.size() + streamingCount + cachedCommand;
     }
@@ -143,13 +297,12 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
         if (this.singleStepModeEnabled) {
             return this.activeCommandList.isEmpty();
         }
-        return true;
+        return this.activeCommandList.remainingCapacity() > 0;
     }
     
     /**
-     * THIS COMMAND CAN ONLY BE CALLED FROM streamCommands UNLESS
-     * THE nextCommand OBJECT IS SYNCHRONIZED.
-     * 
+     * THIS COMMAND CAN ONLY BE CALLED FROM THE EVENT LOOP.
+     *
      * Returns the next command with the following priority:
      * 1. nextCommand object if set.
      * 2. Front of the commandBuffer collection.
@@ -161,11 +314,17 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
             return nextCommand;
         }
         else if (!this.commandBuffer.isEmpty()) {
-            nextCommand = commandBuffer.pop();
+            nextCommand = commandBuffer.poll();
         }
         else try {
             if (commandStream != null && commandStream.ready()) {
+                long start = System.nanoTime();
                 nextCommand = commandStream.getNextCommand();
+                long end = System.nanoTime();
+                streamingHealth.addReaderWait(end - start);
+                if (nextCommand != null) {
+                    nextCommand.setQueuedTime(end);
+                }
             }
         } catch (IOException ignored) {
             // Fall through to null handling.
@@ -181,27 +340,68 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     }
    
     /**
-     * Streams anything in the command buffer to the comm port.
-     * Synchronized to prevent commands from sending out of order.
+     * Streams anything in the command buffer to the comm port. All commands
+     * fitting in the controller buffer are collected and written to the
+     * connection as one batch.
+     * The commands are sent from the event loop to keep them in order.
      */
     @Override
-    synchronized public void streamCommands() {
+    public void streamCommands() {
+        eventLoop.invoke(this::sendQueuedCommands);
+    }
+
+    private void sendQueuedCommands() {
+        sendCommands();
+        updateStreamingHealth();
+    }
+
+    /**
+     * Updates the streaming health with the state after trying to send
+     * more commands.
+     */
+    private void updateStreamingHealth() {
+        boolean rowsRemaining = nextCommand != null ||
+                !commandBuffer.isEmpty() ||
+                (commandStream != null && commandStream.getNumRowsRemaining() > 0);
+
+        StreamingHealth.State state;
+        if (isPaused()) {
+            state = StreamingHealth.State.PAUSED;
+        } else if (!rowsRemaining) {
+            state = activeCommandList.isEmpty() ? StreamingHealth.State.IDLE : StreamingHealth.State.DRAINING;
+        } else if (activeCommandList.isEmpty()) {
+            state = StreamingHealth.State.STARVED;
+        } else if (nextCommand != null) {
+            state = StreamingHealth.State.WINDOW_FULL;
+        } else {
+            state = StreamingHealth.State.WAITING_ON_READER;
+        }
+        streamingHealth.update(state, System.nanoTime());
+    }
+
+    private void sendCommands() {
         // If there are no commands to send, exit.
         if (this.getNextCommand() == null) {
             logger.log(Level.FINE, "There are no more commands to stream");
             return;
         }
+
+        if (writeBatch == null) {
+            writeBatch = new LineBatch(getBufferSize());
+        }
+        writeBatch.clear();
         
         // Send command if:
-        // There is room in the buffer.
+        // The flow control allows it, i.e. there is room in the buffer.
         // AND we are NOT paused
         // AND We are NOT in single step mode.
         // OR  We are in single command mode and there are no active commands.
         while (this.getNextCommand() != null &&
                 !isPaused() &&
-                CommUtils.checkRoomInBuffer(
+                this.flowControl.canSend(
+                    this.activeCommandList.size(),
                     this.sentBufferSize,
-                    this.getNextCommand().getCommandString(),
+                    this.getNextCommand().getCommandBytes().length,
                     this.getBufferSize())
                 && allowMoreCommands()) {
 
@@ -213,32 +413,50 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
                 continue;
             }
 
-            String commandString = command.getCommandString().trim();
-            
-            this.activeCommandList.add(command);
-            this.sentBufferSize += (commandString.length() + 1);
+            // The encoded command is trimmed and includes the line terminator
+            byte[] commandBytes = command.getCommandBytes();
 
-            try {
-                this.sendingCommand(commandString);
-                connection.sendStringToComm(commandString + "\n");
-                dispatchListenerEvents(COMMAND_SENT, command);
-                nextCommand = null;
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.exit(-1);
-            }
+            // Set before the command is published to the response thread
+            command.setSentTime(System.nanoTime());
+            this.activeCommandList.offer(command);
+            this.sentBufferSize += commandBytes.length;
+            this.sendingCommand(command.getCommandString());
+            writeBatch.add(commandBytes);
+
+            // Dispatched before the batch is written so that the sent event
+            // is always queued before the response to the command.
+            dispatchListenerEvents(COMMAND_SENT, command);
+            nextCommand = null;
+        }
+
+        if (writeBatch.isEmpty()) {
+            return;
+        }
+
+        try {
+            connection.sendBatchToComm(writeBatch);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Couldn't write to the connection", e);
+            handleConnectionLost("Couldn't write to the connection: " + e.getMessage());
         }
     }
     
     @Override
     public void pauseSend() {
+        eventLoop.invoke(this::pause);
+    }
+
+    private void pause() {
         this.sendPaused = true;
+        this.streamingHealth.update(StreamingHealth.State.PAUSED, System.nanoTime());
     }
     
     @Override
     public void resumeSend() {
-        this.sendPaused = false;
-        this.streamCommands();
+        eventLoop.invoke(() -> {
+            this.sendPaused = false;
+            sendQueuedCommands();
+        });
     }
 
     @Override
@@ -248,12 +466,35 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     
     @Override
     public void cancelSend() {
+        eventLoop.invoke(this::cancel);
+    }
+
+    private void cancel() {
         this.nextCommand = null;
         this.commandBuffer.clear();
         this.activeCommandList.clear();
+        closeCommandStream();
         this.commandStream = null;
         this.sendPaused = false;
         this.sentBufferSize = 0;
+        this.flowControl.reset();
+        this.streamingHealth.update(StreamingHealth.State.IDLE, System.nanoTime());
+    }
+
+    /**
+     * Closes the command stream to release any resources such as open
+     * files or read ahead threads.
+     */
+    private void closeCommandStream() {
+        if (this.commandStream == null) {
+            return;
+        }
+
+        try {
+            this.commandStream.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't close the command stream", e);
+        }
     }
 
     /**
@@ -280,37 +521,66 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     
     /** 
      * Processes message from GRBL. This should only be called from the
-     * connection object.
+     * connection object. The response is queued for the event loop without
+     * waiting for it to be handled.
      * @param response
      */
     @Override
     public void handleResponseMessage(String response) {
-        // Send this information back up to the Controller.
-        dispatchListenerEvents(SerialCommunicatorEvent.RAW_RESPONSE, response);
+        // Let the event loop catch up if it has fallen behind
+        while (!responses.offer(response)) {
+            eventLoop.invoke(this::handleResponses);
+        }
+        responseSignal.post();
+    }
 
+    private void handleResponses() {
+        String response;
+        while ((response = responses.poll()) != null) {
+            handleResponse(response);
+        }
+    }
 
+    /**
+     * Handles a response on the event loop, subclasses may override this to
+     * update the streaming state before the response is handled.
+     *
+     * @param response the response from the controller
+     */
+    protected void handleResponse(String response) {
         // Pause if there was an error and if there are more commands queued
-        if (processedCommandIsError(response) &&
+        boolean pauseOnError = processedCommandIsError(response) &&
                 (nextCommand != null                    // No cached command
                     || (activeCommandList.size() > 1)   // No more commands (except for the one being popped further down)
                     || (commandStream != null && commandStream.getNumRowsRemaining() > 0) // No more rows in stream
-                    || (commandBuffer != null && commandBuffer.size() > 0))) { // No commands in buffer
+                    || (commandBuffer != null && commandBuffer.size() > 0)); // No commands in buffer
 
-            pauseSend();
-            dispatchListenerEvents(PAUSED, "");
+        // Pop the front of the active list in case of an "ok" or an "error"
+        // before the response is dispatched, so that the listeners see the
+        // command as completed.
+        boolean completed = false;
+        if (processedCommand(response)) {
+            GcodeCommand command = this.activeCommandList.poll();
+            if (command != null) {
+                command.setAckTime(System.nanoTime());
+                this.sentBufferSize -= command.getCommandBytes().length;
+                this.flowControl.commandCompleted();
+                this.streamingStatistics.commandCompleted(command);
+                completed = true;
+            }
         }
 
-        // Keep the data flow going in case of an "ok" or an "error".
-        if (processedCommand(response)) {
-            // Pop the front of the active list.
-            if (this.activeCommandList != null && this.activeCommandList.size() > 0) {
-                GcodeCommand command = this.activeCommandList.pop();
-                this.sentBufferSize -= (command.getCommandString().length() + 1);
+        // Send this information back up to the Controller.
+        dispatchListenerEvents(SerialCommunicatorEvent.RAW_RESPONSE, response);
 
-                if (!isPaused()) {
-                    this.streamCommands();
-                }
-            }
+        if (pauseOnError) {
+            pause();
+            dispatchListenerEvents(PAUSED, "");
+        }
+
+        // Keep the data flow going
+        if (completed && !isPaused()) {
+            sendQueuedCommands();
         }
     }
 
@@ -318,19 +588,26 @@ public abstract class BufferedCommunicator extends AbstractCommunicator {
     public void connect(ConnectionDriver connectionDriver, String name, int baud) throws Exception {
         super.connect(connectionDriver, name, baud);
 
-        this.commandBuffer.clear();
-        this.activeCommandList.clear();
-        this.sentBufferSize = 0;
+        eventLoop.invoke(() -> {
+            this.commandBuffer.clear();
+            this.activeCommandList.clear();
+            this.sentBufferSize = 0;
+            this.flowControl.reset();
+            this.streamingStatistics.reset();
+            this.streamingHealth.reset();
+        });
     }
 
     @Override
     public void disconnect() throws Exception {
         this.cancelSend();
         super.disconnect();
-        
-        this.sendPaused = false;
-        this.commandBuffer.clear();
-        this.activeCommandList.clear();
+
+        eventLoop.invoke(() -> {
+            this.sendPaused = false;
+            this.commandBuffer.clear();
+            this.activeCommandList.clear();
+        });
     }
 
     @Override
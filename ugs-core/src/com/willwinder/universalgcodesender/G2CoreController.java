@@ -59,7 +59,7 @@ public class G2CoreController extends TinyGController {
                 .setState(ControllerState.DISCONNECTED)
                 .build();
 
-        dispatchStatusString(controllerStatus);
+        controllerStatus = dispatchStatusString(controllerStatus);
 
         sendInitCommands();
     }
@@ -107,9 +107,8 @@ public class G2CoreController extends TinyGController {
         // 0=silent, 1=footer, 2=messages, 3=configs, 4=linenum, 5=verbose
         comm.queueCommand(new GcodeCommand("{jv:4}"));
 
-        // Queue report verbosity
-        // 0=off, 1=filtered, 2=verbose
-        comm.queueCommand(new GcodeCommand("{qv:0}"));
+        // Queue report verbosity, only needed by the queue report flow control
+        comm.queueCommand(createQueueReportVerbosityCommand());
 
         // Status report verbosity
         // 0=off, 1=filtered, 2=verbose
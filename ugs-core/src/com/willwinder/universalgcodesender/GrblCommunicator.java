@@ -20,7 +20,9 @@ package com.willwinder.universalgcodesender;
 
 import com.willwinder.universalgcodesender.connection.Connection;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
-import java.util.concurrent.LinkedBlockingDeque;
+import com.willwinder.universalgcodesender.utils.RingBuffer;
+
+import java.util.Queue;
 import java.util.regex.Pattern;
 
 /**
@@ -28,7 +30,12 @@ import java.util.regex.Pattern;
  */
 public class GrblCommunicator extends BufferedCommunicator {
 
+    // The largest number of commands in the controller buffer, limiting
+    // how many lines can be in flight for controllers with large buffers.
+    private static final int MAX_ACTIVE_COMMANDS = 1024;
+
     private boolean temporarySingleStepMode;
+    private volatile int bufferSize = GrblUtils.GRBL_RX_BUFFER_SIZE;
     private final static String EEPROM_COMMAND_PATTERN = "G10|G28|G30|\\$x=|\\$I|\\$N|\\$RST=|G5[456789]|\\$\\$|\\$#";
     private final static Pattern EEPROM_COMMAND = Pattern.compile(EEPROM_COMMAND_PATTERN, Pattern.CASE_INSENSITIVE);
     
@@ -38,7 +45,7 @@ public class GrblCommunicator extends BufferedCommunicator {
      * This constructor is for dependency injection so a mock serial device can
      * act as GRBL.
      */
-    protected GrblCommunicator(LinkedBlockingDeque<GcodeCommand> cb, LinkedBlockingDeque<GcodeCommand> asl, Connection c) {
+    protected GrblCommunicator(Queue<GcodeCommand> cb, RingBuffer<GcodeCommand> asl, Connection c) {
         super(cb, asl);
         this.connection = c;
         this.connection.addListener(this);
@@ -46,7 +53,28 @@ public class GrblCommunicator extends BufferedCommunicator {
 
     @Override
     public int getBufferSize() {
-        return GrblUtils.GRBL_RX_BUFFER_SIZE;
+        return bufferSize;
+    }
+
+    /**
+     * Changes the number of bytes that may be sent to the controller before
+     * waiting for responses, used when the controller reports a receive
+     * buffer larger or smaller than the default. Commands which have already
+     * been sent are still accounted for.
+     *
+     * @param bufferSize the buffer size in bytes excluding space reserved
+     *                   for real time commands
+     */
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be at least one byte: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    protected int getActiveCommandListCapacity() {
+        return MAX_ACTIVE_COMMANDS;
     }
 
     @Override
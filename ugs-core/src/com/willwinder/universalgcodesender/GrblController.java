@@ -76,6 +76,13 @@ public class GrblController extends AbstractController {
      */
     private boolean temporaryCheckSingleStepMode = false;
 
+    /**
+     * The largest receive buffer size reported by the controller since the
+     * last reset, either from the build options or from the available bytes
+     * in the status report while the buffer was empty.
+     */
+    private int reportedRxBufferSize = 0;
+
     public GrblController(AbstractCommunicator comm) {
         super(comm);
         
@@ -163,7 +170,7 @@ public class GrblController extends AbstractController {
 
                     Alarm alarm = GrblUtils.parseAlarmResponse(response);
                     dispatchAlarm(alarm);
-                    dispatchStatusString(controllerStatus);
+                    controllerStatus = dispatchStatusString(controllerStatus);
                     dispatchStateChange(COMM_IDLE);
                 }
 
@@ -205,6 +212,10 @@ public class GrblController extends AbstractController {
                     checkStreamFinished();
                 }
                 
+                // The controller may have been replaced, start over with the default buffer size
+                reportedRxBufferSize = 0;
+                setRxBufferSize(GrblUtils.GRBL_RX_BUFFER_SIZE);
+
                 this.grblVersion = GrblUtils.getVersionDouble(response);
                 this.grblVersionLetter = GrblUtils.getVersionLetter(response);
 
@@ -230,6 +241,14 @@ public class GrblController extends AbstractController {
                 }
             }
 
+            else if (GrblUtils.isGrblBuildOptionsMessage(response)) {
+                int rxBufferSize = GrblUtils.getRxBufferSizeFromBuildOptions(response);
+                if (rxBufferSize > 0) {
+                    reportedRxBufferSize = rxBufferSize;
+                    setRxBufferSize(rxBufferSize - GrblUtils.GRBL_RX_BUFFER_RESERVED);
+                }
+            }
+
             else if (GrblUtils.isGrblStatusString(response)) {
                 // Only 1 poll is sent at a time so don't decrement, reset to zero.
                 positionPollTimer.receivedStatus();
@@ -415,7 +434,7 @@ public class GrblController extends AbstractController {
                         .newInstance(controllerStatus)
                         .setState(ControllerState.HOME)
                         .build();
-                dispatchStatusString(controllerStatus);
+                controllerStatus = dispatchStatusString(controllerStatus);
                 return;
             }
         }
@@ -594,6 +613,37 @@ public class GrblController extends AbstractController {
         return controllerStatus;
     }
 
+    /**
+     * When the controller is idle and there are no active commands the
+     * receive buffer is empty, so the available bytes reported in the
+     * status equals the size of the buffer. The largest reported size is
+     * kept in case the status was generated while a command was still
+     * being received.
+     */
+    private void updateRxBufferSizeFromStatus(ControllerStatus status) {
+        ControllerStatus.BufferState bufferState = status.getBufferState();
+        if (bufferState == null || status.getState() != ControllerState.IDLE || comm.areActiveCommands()) {
+            return;
+        }
+
+        if (bufferState.rxBytesAvailable > reportedRxBufferSize) {
+            reportedRxBufferSize = bufferState.rxBytesAvailable;
+            setRxBufferSize(reportedRxBufferSize - GrblUtils.GRBL_RX_BUFFER_RESERVED);
+        }
+    }
+
+    private void setRxBufferSize(int bufferSize) {
+        if (!(comm instanceof GrblCommunicator) || bufferSize < 1) {
+            return;
+        }
+
+        GrblCommunicator grblCommunicator = (GrblCommunicator) comm;
+        if (grblCommunicator.getBufferSize() != bufferSize) {
+            grblCommunicator.setBufferSize(bufferSize);
+            logger.log(Level.CONFIG, "Using a receive buffer size of {0} bytes", bufferSize);
+        }
+    }
+
     // No longer a listener event
     private void handleStatusString(final String string) {
         if (this.capabilities == null) {
@@ -606,6 +656,11 @@ public class GrblController extends AbstractController {
         controllerStatus = GrblUtils.getStatusFromStatusString(
                 controllerStatus, string, capabilities, getFirmwareSettings().getReportingUnits());
 
+        updateRxBufferSizeFromStatus(controllerStatus);
+        if (controllerStatus.getBufferState() != null) {
+            comm.updateBufferState(controllerStatus.getBufferState());
+        }
+
         // Make UGS more responsive to the state being reported by GRBL.
         if (before != getControlState()) {
             this.dispatchStateChange(getControlState());
@@ -653,7 +708,7 @@ public class GrblController extends AbstractController {
             lastLocation = new Position(this.controllerStatus.getMachineCoord());
         }
 
-        dispatchStatusString(controllerStatus);
+        controllerStatus = dispatchStatusString(controllerStatus);
     }
     
     @Override
@@ -666,6 +721,11 @@ public class GrblController extends AbstractController {
         }
     }
     
+    @Override
+    public StatusPollTimer.Metrics getStatusPollMetrics() {
+        return positionPollTimer.getMetrics();
+    }
+
     @Override
     protected void statusUpdatesRateValueChanged() {
         positionPollTimer.stop();
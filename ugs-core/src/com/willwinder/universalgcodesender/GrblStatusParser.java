@@ -0,0 +1,395 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.AccessoryStates;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.BufferState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.EnabledPins;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.OverridePercents;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+
+import static com.willwinder.universalgcodesender.utils.DecimalParser.parseDouble;
+
+/**
+ * A single pass parser for GRBL 1.x status reports:
+ * <pre>
+ * &lt;State|MPos:..|WPos:..|Bf:..|FS:..|Ov:..|Pn:..|A:..|WCO:..&gt;
+ * </pre>
+ *
+ * The report is walked field by field using indexes into the string and the
+ * numbers are parsed in place, so no intermediate strings, arrays or regular
+ * expression matchers are created. Numbers that can't be converted exactly by
+ * the fast path, or that are malformed, are handed to {@link Double#parseDouble}
+ * and {@link Integer#parseInt} which gives the same result and errors as
+ * before.
+ *
+ * @author wwinder
+ */
+class GrblStatusParser {
+
+    private static final String[] STATE_NAMES = {
+            "Idle", "Run", "Hold", "Jog", "Alarm", "Door", "Check", "Home", "Sleep"
+    };
+
+    private static final ControllerState[] STATES = {
+            ControllerState.IDLE, ControllerState.RUN, ControllerState.HOLD, ControllerState.JOG,
+            ControllerState.ALARM, ControllerState.DOOR, ControllerState.CHECK, ControllerState.HOME,
+            ControllerState.SLEEP
+    };
+
+    private GrblStatusParser() {
+    }
+
+    /**
+     * Parses a GRBL status string in the v1.x format.
+     *
+     * @param lastStatus     the previous status which holds the WCO coords and
+     *                       override status when they aren't part of the report.
+     * @param status         the raw status string
+     * @param reportingUnits units
+     * @return the parsed controller status
+     * @see GrblUtils#getStatusFromStatusStringV1(ControllerStatus, String, Units)
+     */
+    static ControllerStatus parse(ControllerStatus lastStatus, String status, Units reportingUnits) {
+        ControllerState state = ControllerState.UNKNOWN;
+        Position MPos = null;
+        Position WPos = null;
+        Position WCO = null;
+
+        OverridePercents overrides = null;
+        EnabledPins pins = null;
+        AccessoryStates accessoryStates = null;
+        BufferState bufferState = null;
+
+        double feedSpeed = 0;
+        double spindleSpeed = 0;
+        if (lastStatus != null) {
+            feedSpeed = lastStatus.getFeedSpeed();
+            spindleSpeed = lastStatus.getSpindleSpeed();
+        }
+        boolean isOverrideReport = false;
+
+        // The last character is the closing '>' which isn't part of any field
+        int end = status.length() - 1;
+        int start = 0;
+        while (start < end) {
+            int fieldEnd = status.indexOf('|', start);
+            if (fieldEnd == -1 || fieldEnd > end) {
+                fieldEnd = end;
+            }
+
+            if (status.charAt(start) == '<') {
+                int stateEnd = status.indexOf(':', start);
+                if (stateEnd == -1 || stateEnd > fieldEnd) {
+                    stateEnd = fieldEnd;
+                }
+                state = parseState(status, start + 1, stateEnd);
+            } else if (startsWith(status, start, fieldEnd, "MPos:")) {
+                MPos = parsePosition(status, start + 5, reportingUnits);
+            } else if (startsWith(status, start, fieldEnd, "WPos:")) {
+                WPos = parsePosition(status, start + 5, reportingUnits);
+            } else if (startsWith(status, start, fieldEnd, "WCO:")) {
+                WCO = parsePosition(status, start + 4, reportingUnits);
+            } else if (startsWith(status, start, fieldEnd, "Ov:")) {
+                isOverrideReport = true;
+                overrides = parseOverrides(status, start + 3, fieldEnd);
+            } else if (startsWith(status, start, fieldEnd, "F:")) {
+                feedSpeed = parseFeedSpeed(status, start + 2, fieldEnd);
+            } else if (startsWith(status, start, fieldEnd, "FS:")) {
+                int feedEnd = indexOf(status, ',', start + 3, fieldEnd);
+                int spindleEnd = indexOf(status, ',', feedEnd + 1, fieldEnd);
+                feedSpeed = parseDouble(status, start + 3, feedEnd);
+                spindleSpeed = parseDouble(status, Math.min(feedEnd + 1, fieldEnd), spindleEnd);
+            } else if (startsWith(status, start, fieldEnd, "Pn:")) {
+                pins = new EnabledPins(status.substring(start + 3, fieldEnd));
+            } else if (startsWith(status, start, fieldEnd, "A:")) {
+                accessoryStates = new AccessoryStates(status.substring(start + 2, fieldEnd));
+            } else if (startsWith(status, start, fieldEnd, "Bf:")) {
+                bufferState = parseBufferState(status, start + 3, fieldEnd);
+            }
+
+            start = fieldEnd + 1;
+        }
+
+        // Grab WCO from state information if necessary.
+        if (WCO == null) {
+            // Grab the work coordinate offset.
+            if (lastStatus != null && lastStatus.getWorkCoordinateOffset() != null) {
+                WCO = lastStatus.getWorkCoordinateOffset();
+            } else {
+                WCO = new Position(0, 0, 0, 0, 0, 0, reportingUnits);
+            }
+        }
+
+        // Calculate missing coordinate with WCO
+        if (WPos == null && MPos != null) {
+            WPos = new Position(MPos.x - WCO.x, MPos.y - WCO.y, MPos.z - WCO.z, MPos.a - WCO.a, MPos.b - WCO.b, MPos.c - WCO.c, reportingUnits);
+        } else if (MPos == null && WPos != null) {
+            MPos = new Position(WPos.x + WCO.x, WPos.y + WCO.y, WPos.z + WCO.z, WPos.a + WCO.a, WPos.b + WCO.b, WPos.c + WCO.c, reportingUnits);
+        }
+
+        if (!isOverrideReport && lastStatus != null) {
+            overrides = lastStatus.getOverrides();
+            pins = lastStatus.getEnabledPins();
+            accessoryStates = lastStatus.getAccessoryStates();
+        } else if (isOverrideReport) {
+            // If this is an override report and the 'Pn:' field wasn't sent
+            // set all pins to a disabled state.
+            if (pins == null) {
+                pins = new EnabledPins("");
+            }
+            // Likewise for accessory states.
+            if (accessoryStates == null) {
+                accessoryStates = new AccessoryStates("");
+            }
+        }
+
+        return new ControllerStatus(state, MPos, WPos, feedSpeed, reportingUnits, spindleSpeed, overrides, WCO, pins, accessoryStates, bufferState);
+    }
+
+    private static boolean startsWith(String status, int start, int end, String prefix) {
+        return end - start >= prefix.length() && status.startsWith(prefix, start);
+    }
+
+    private static int indexOf(String status, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (status.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static ControllerState parseState(String status, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < STATE_NAMES.length; i++) {
+            if (STATE_NAMES[i].length() == length && status.regionMatches(true, start, STATE_NAMES[i], 0, length)) {
+                return STATES[i];
+            }
+        }
+        return ControllerState.UNKNOWN;
+    }
+
+    /**
+     * Parses three to six comma separated coordinates, trailing characters
+     * which aren't part of a number are ignored. Returns null if there are
+     * fewer than three coordinates.
+     */
+    private static Position parsePosition(String status, int start, Units units) {
+        int xEnd = scanNumber(status, start);
+        if (xEnd >= status.length() || status.charAt(xEnd) != ',') {
+            return null;
+        }
+
+        int yEnd = scanNumber(status, xEnd + 1);
+        if (yEnd >= status.length() || status.charAt(yEnd) != ',') {
+            return null;
+        }
+
+        int zEnd = scanNumber(status, yEnd + 1);
+        Position result = new Position(
+                parseDouble(status, start, xEnd),
+                parseDouble(status, xEnd + 1, yEnd),
+                parseDouble(status, yEnd + 1, zEnd),
+                units);
+
+        // Add in optional axes (ABC support as extended by Grbl ESP 32)
+        int position = zEnd;
+        for (int axis = 0; axis < 3; axis++) {
+            if (position >= status.length() || status.charAt(position) != ',') {
+                break;
+            }
+
+            int axisEnd = scanOptionalNumber(status, position + 1);
+            if (axisEnd == -1) {
+                break;
+            }
+
+            double value = parseDouble(status, position + 1, axisEnd);
+            if (axis == 0) {
+                result.a = value;
+            } else if (axis == 1) {
+                result.b = value;
+            } else {
+                result.c = value;
+            }
+            position = axisEnd;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the end of a number in the form -?\d*\.?\d* which may be empty.
+     */
+    private static int scanNumber(String status, int start) {
+        int length = status.length();
+        int i = start;
+        if (i < length && status.charAt(i) == '-') {
+            i++;
+        }
+        i = scanDigits(status, i);
+        if (i < length && status.charAt(i) == '.') {
+            i = scanDigits(status, i + 1);
+        }
+        return i;
+    }
+
+    /**
+     * Finds the end of a number in the form -?\d*\.?\d+ or -1 if there is none.
+     */
+    private static int scanOptionalNumber(String status, int start) {
+        int end = scanNumber(status, start);
+        if (end > start && status.charAt(end - 1) == '.') {
+            end--;
+        }
+
+        if (end == start || !isDigit(status.charAt(end - 1))) {
+            return -1;
+        }
+        return end;
+    }
+
+    private static int scanDigits(String status, int start) {
+        int i = start;
+        while (i < status.length() && isDigit(status.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parses the feed speed which is either in the format F:1000.0 or
+     * F:3000.0,100.0,100.0 with the current, requested and override feed rate.
+     */
+    private static double parseFeedSpeed(String status, int start, int end) {
+        int tokens = 0;
+        int firstStart = -1;
+        int firstEnd = -1;
+        int i = start;
+        while (i < end) {
+            if (status.charAt(i) == ',') {
+                i++;
+                continue;
+            }
+
+            int tokenEnd = indexOf(status, ',', i, end);
+            if (tokens++ == 0) {
+                firstStart = i;
+                firstEnd = tokenEnd;
+            }
+            i = tokenEnd;
+        }
+
+        if (tokens > 1) {
+            return tokens >= 3 ? parseDouble(status, firstStart, firstEnd) : 0;
+        }
+        return parseDouble(status, start, end);
+    }
+
+    /**
+     * Parses the override values "100,100,100", returns null unless there are exactly three of them.
+     */
+    private static OverridePercents parseOverrides(String status, int start, int end) {
+        int valueStart = trimStart(status, start, end);
+        int valueEnd = trimEnd(status, valueStart, end);
+        int feedEnd = indexOf(status, ',', valueStart, valueEnd);
+        int rapidEnd = indexOf(status, ',', feedEnd + 1, valueEnd);
+        if (rapidEnd >= valueEnd || indexOf(status, ',', rapidEnd + 1, valueEnd) != valueEnd) {
+            return null;
+        }
+
+        return new OverridePercents(
+                parseInt(status, valueStart, feedEnd),
+                parseInt(status, feedEnd + 1, rapidEnd),
+                parseInt(status, rapidEnd + 1, valueEnd));
+    }
+
+    /**
+     * Parses the buffer state "15,128", returns null unless there are exactly two values.
+     */
+    private static BufferState parseBufferState(String status, int start, int end) {
+        int valueStart = trimStart(status, start, end);
+        int valueEnd = trimEnd(status, valueStart, end);
+        int plannerEnd = indexOf(status, ',', valueStart, valueEnd);
+        if (plannerEnd >= valueEnd || indexOf(status, ',', plannerEnd + 1, valueEnd) != valueEnd) {
+            return null;
+        }
+
+        return new BufferState(
+                parseInt(status, valueStart, plannerEnd),
+                parseInt(status, plannerEnd + 1, valueEnd));
+    }
+
+    private static int trimStart(String status, int start, int end) {
+        int i = start;
+        while (i < end && status.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Trims whitespace and any trailing separators, which would result in
+     * empty values that are discarded when splitting the values.
+     */
+    private static int trimEnd(String status, int start, int end) {
+        int i = end;
+        while (i > start && status.charAt(i - 1) <= ' ') {
+            i--;
+        }
+        while (i > start && status.charAt(i - 1) == ',') {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Parses an integer without creating a substring.
+     */
+    static int parseInt(String status, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && status.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+
+        // Nine digits will always fit in an integer
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(status.substring(start, end));
+        }
+
+        int value = 0;
+        for (; i < end; i++) {
+            char c = status.charAt(i);
+            if (!isDigit(c)) {
+                return Integer.parseInt(status.substring(start, end));
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+}
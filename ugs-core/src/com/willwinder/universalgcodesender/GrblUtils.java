@@ -21,9 +21,6 @@ package com.willwinder.universalgcodesender;
 
 import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.ControllerStatus;
-import com.willwinder.universalgcodesender.listeners.ControllerStatus.AccessoryStates;
-import com.willwinder.universalgcodesender.listeners.ControllerStatus.EnabledPins;
-import com.willwinder.universalgcodesender.listeners.ControllerStatus.OverridePercents;
 import com.willwinder.universalgcodesender.model.*;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
@@ -41,6 +38,7 @@ public class GrblUtils {
     
     // Note: 5 characters of this buffer reserved for real time commands.
     public static final int GRBL_RX_BUFFER_SIZE= 123;
+    public static final int GRBL_RX_BUFFER_RESERVED = 5;
 
     /**
      * Grbl commands
@@ -351,131 +349,38 @@ public class GrblUtils {
      * @return the parsed controller status
      */
     public static ControllerStatus getStatusFromStatusStringV1(ControllerStatus lastStatus, String status, Units reportingUnits) {
-        String stateString = "";
-        Position MPos = null;
-        Position WPos = null;
-        Position WCO = null;
-
-        OverridePercents overrides = null;
-        EnabledPins pins = null;
-        AccessoryStates accessoryStates = null;
-
-        double feedSpeed = 0;
-        double spindleSpeed = 0;
-        if(lastStatus != null) {
-            feedSpeed = lastStatus.getFeedSpeed();
-            spindleSpeed = lastStatus.getSpindleSpeed();
-        }
-        boolean isOverrideReport = false;
-
-        // Parse out the status messages.
-        for (String part : status.substring(0, status.length()-1).split("\\|")) {
-            if (part.startsWith("<")) {
-                int idx = part.indexOf(':');
-                if (idx == -1)
-                    stateString = part.substring(1);
-                else
-                    stateString = part.substring(1, idx);
-            }
-            else if (part.startsWith("MPos:")) {
-                MPos = GrblUtils.getPositionFromStatusString(status, machinePattern, reportingUnits);
-            }
-            else if (part.startsWith("WPos:")) {
-                WPos = GrblUtils.getPositionFromStatusString(status, workPattern, reportingUnits);
-            }
-            else if (part.startsWith("WCO:")) {
-                WCO = GrblUtils.getPositionFromStatusString(status, wcoPattern, reportingUnits);
-            }
-            else if (part.startsWith("Ov:")) {
-                isOverrideReport = true;
-                String[] overrideParts = part.substring(3).trim().split(",");
-                if (overrideParts.length == 3) {
-                    overrides = new OverridePercents(
-                            Integer.parseInt(overrideParts[0]),
-                            Integer.parseInt(overrideParts[1]),
-                            Integer.parseInt(overrideParts[2]));
-                }
-            }
-            else if (part.startsWith("F:")) {
-                feedSpeed = parseFeedSpeed(part);
-            }
-            else if (part.startsWith("FS:")) {
-                String[] parts = part.substring(3).split(",");
-                feedSpeed = Double.parseDouble(parts[0]);
-                spindleSpeed = Double.parseDouble(parts[1]);
-            }
-            else if (part.startsWith("Pn:")) {
-                String value = part.substring(part.indexOf(':')+1);
-                pins = new EnabledPins(value);
-            }
-            else if (part.startsWith("A:")) {
-                String value = part.substring(part.indexOf(':')+1);
-                accessoryStates = new AccessoryStates(value);
-            }
-        }
-
-        // Grab WCO from state information if necessary.
-        if (WCO == null) {
-            // Grab the work coordinate offset.
-            if (lastStatus != null && lastStatus.getWorkCoordinateOffset() != null) {
-                WCO = lastStatus.getWorkCoordinateOffset();
-            } else {
-                WCO = new Position(0,0,0,0,0,0, reportingUnits);
-            }
-        }
-
-        // Calculate missing coordinate with WCO
-        if (WPos == null && MPos != null) {
-            WPos = new Position(MPos.x-WCO.x, MPos.y-WCO.y, MPos.z-WCO.z, MPos.a-WCO.a, MPos.b-WCO.b, MPos.c-WCO.c, reportingUnits);
-        } else if (MPos == null && WPos != null) {
-            MPos = new Position(WPos.x+WCO.x, WPos.y+WCO.y, WPos.z+WCO.z, WPos.a+WCO.a, WPos.b+WCO.b, WPos.c+WCO.c, reportingUnits);
-        }
-
-        if (!isOverrideReport && lastStatus != null) {
-            overrides = lastStatus.getOverrides();
-            pins = lastStatus.getEnabledPins();
-            accessoryStates = lastStatus.getAccessoryStates();
-        }
-        else if (isOverrideReport) {
-            // If this is an override report and the 'Pn:' field wasn't sent
-            // set all pins to a disabled state.
-            if (pins == null) {
-                pins = new EnabledPins("");
-            }
-            // Likewise for accessory states.
-            if (accessoryStates == null) {
-                accessoryStates = new AccessoryStates("");
-            }
-        }
+        return GrblStatusParser.parse(lastStatus, status, reportingUnits);
+    }
 
-        ControllerState state = getControllerStateFromStateString(stateString);
-        return new ControllerStatus(state, MPos, WPos, feedSpeed, reportingUnits, spindleSpeed, overrides, WCO, pins, accessoryStates);
+    /**
+     * Checks if the response is the build options message which is returned
+     * by the "$I" command in GRBL 1.1, i.e: [OPT:VL,15,128]
+     *
+     * @param response the response to check
+     * @return true if the response contains the build options
+     */
+    static protected Boolean isGrblBuildOptionsMessage(final String response) {
+        return response.startsWith("[OPT:");
     }
 
     /**
-     * Parses the feed speed from a status string starting with "F:".
-     * The supported formats are F:1000.0 or F:3000.0,100.0,100.0 which are current feed rate, requested feed rate and override feed rate
+     * Parses the size of the serial receive buffer from the build options
+     * message, i.e: [OPT:VL,15,128]. Older versions of GRBL 1.1 only reports
+     * the option codes without any buffer sizes.
      *
-     * @param part the part to parse
-     * @return the parsed feed speed
+     * @param response the build options message
+     * @return the receive buffer size in bytes or -1 if it isn't reported
      */
-    private static double parseFeedSpeed(String part) {
-        if(!part.startsWith("F:")) {
-            return Double.NaN;
-        }
-
-        double feedSpeed;
-        String[] feedStrings = StringUtils.split(part.substring(2), ",");
-        if (feedStrings.length > 1) {
-            if (feedStrings.length >= 3) {
-                feedSpeed = Double.parseDouble(StringUtils.split(feedStrings[0], ",")[0]);
-            } else {
-                feedSpeed = 0;
-            }
-        } else {
-            feedSpeed = Double.parseDouble(part.substring(2));
+    static protected int getRxBufferSizeFromBuildOptions(final String response) {
+        if (!isGrblBuildOptionsMessage(response) || !response.endsWith("]")) {
+            return -1;
+        }
+
+        String[] parts = response.substring(5, response.length() - 1).split(",");
+        if (parts.length < 3 || !StringUtils.isNumeric(parts[2].trim())) {
+            return -1;
         }
-        return feedSpeed;
+        return Integer.parseInt(parts[2].trim());
     }
 
     /**
@@ -528,7 +433,6 @@ public class GrblUtils {
     static Pattern PROBE_POSITION_PATTERN = Pattern.compile("\\[PRB:(-?\\d*\\.\\d*),(-?\\d*\\.\\d*),(-?\\d*\\.\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?:\\d?]");
     static Pattern machinePattern = Pattern.compile("(?<=MPos:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
     static Pattern workPattern = Pattern.compile("(?<=WPos:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
-    static Pattern wcoPattern = Pattern.compile("(?<=WCO:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
     static protected Position getMachinePositionFromStatusString(final String status, final Capabilities version, Units reportingUnits) {
         if (version.hasCapability(GrblCapabilitiesConstants.REAL_TIME)) {
             return GrblUtils.getPositionFromStatusString(status, machinePattern, reportingUnits);
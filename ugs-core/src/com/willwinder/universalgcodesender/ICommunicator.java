@@ -18,10 +18,14 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
+import com.willwinder.universalgcodesender.communicator.StreamingHealth;
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
 import com.willwinder.universalgcodesender.connection.Connection;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.connection.IConnectionListener;
 import com.willwinder.universalgcodesender.listeners.CommunicatorListener;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 
@@ -150,6 +154,46 @@ public interface ICommunicator extends IConnectionListener {
      */
     void setSingleStepMode(boolean enable);
 
+    /**
+     * Selects the strategy for deciding when the next command may be sent
+     * to the hardware.
+     *
+     * @param mode the flow control mode to use
+     */
+    void setFlowControlMode(FlowControlMode mode);
+
+    /**
+     * Returns the strategy used for deciding when the next command may be
+     * sent to the hardware.
+     *
+     * @return the flow control mode
+     */
+    FlowControlMode getFlowControlMode();
+
+    /**
+     * Notifies about the free space in the hardware buffers as reported in
+     * the controller status, used by the flow control.
+     *
+     * @param bufferState the reported buffer state
+     */
+    void updateBufferState(ControllerStatus.BufferState bufferState);
+
+    /**
+     * Returns the latency and throughput statistics for the commands sent
+     * since the connection was made or the last stream was queued.
+     *
+     * @return the streaming statistics
+     */
+    StreamingStatistics getStreamingStatistics();
+
+    /**
+     * Returns where the time went while streaming, if the hardware was
+     * starved or if the sender was waiting for room in its buffer.
+     *
+     * @return the streaming health
+     */
+    StreamingHealth getStreamingHealth();
+
     /**
      * Removes listeners for notifying about the progress for sending commands.
      *
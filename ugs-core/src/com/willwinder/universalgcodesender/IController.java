@@ -18,6 +18,7 @@
 */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.firmware.IFirmwareSettings;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
@@ -56,6 +57,15 @@ public interface IController {
      */
     void removeListener(ControllerListener listener);
 
+    /**
+     * Returns the number of statuses the listener never received because a
+     * newer status arrived before it had handled the previous one.
+     *
+     * @param listener the listener added to this controller
+     * @return the number of dropped statuses
+     */
+    long getDroppedStatusCount(ControllerListener listener);
+
     /**
      * Assigns a message service to be used for writing messages to the console
      *
@@ -139,12 +149,23 @@ public interface IController {
     void setSingleStepMode(boolean enabled);
     boolean getSingleStepMode();
 
+    void setFlowControlMode(FlowControlMode mode);
+    FlowControlMode getFlowControlMode();
+
     void setStatusUpdatesEnabled(boolean enabled);
     boolean getStatusUpdatesEnabled();
     
     void setStatusUpdateRate(int rate);
     int getStatusUpdateRate();
 
+    /**
+     * Returns the effective poll rate and the latency of the status reports
+     * requested by the controller.
+     *
+     * @return the status poll metrics
+     */
+    StatusPollTimer.Metrics getStatusPollMetrics();
+
     /*
     Serial
     */
@@ -160,6 +181,7 @@ public interface IController {
     Boolean isStreaming();
     long getSendDuration();
     int rowsInSend();
+    boolean isRowsInSendEstimated();
     int rowsSent();
     int rowsCompleted();
     int rowsRemaining();
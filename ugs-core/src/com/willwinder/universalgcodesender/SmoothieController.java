@@ -108,7 +108,7 @@ public class SmoothieController extends AbstractController {
                 .setState(ControllerState.DISCONNECTED)
                 .build();
 
-        dispatchStatusString(controllerStatus);
+        controllerStatus = dispatchStatusString(controllerStatus);
     }
 
 
@@ -161,7 +161,7 @@ public class SmoothieController extends AbstractController {
                 capabilities.addCapability(CapabilitiesConstants.HOMING);
                 capabilities.addCapability(CapabilitiesConstants.RETURN_TO_ZERO);
                 controllerStatus = ControllerStatusBuilder.newInstance(controllerStatus).setState(ControllerState.IDLE).build();
-                dispatchStatusString(controllerStatus);
+                controllerStatus = dispatchStatusString(controllerStatus);
                 setCurrentState(COMM_IDLE);
                 isReady = true;
 
@@ -196,7 +196,7 @@ public class SmoothieController extends AbstractController {
         UnitUtils.Units currentUnits = getCurrentGcodeState().getUnits();
         controllerStatus = SmoothieUtils.getStatusFromStatusString(controllerStatus, response, currentUnits);
         dispatchStateChange(getControlState());
-        dispatchStatusString(controllerStatus);
+        controllerStatus = dispatchStatusString(controllerStatus);
     }
 
     @Override
@@ -209,6 +209,11 @@ public class SmoothieController extends AbstractController {
         }
     }
 
+    @Override
+    public StatusPollTimer.Metrics getStatusPollMetrics() {
+        return statusPollTimer.getMetrics();
+    }
+
     @Override
     protected void statusUpdatesRateValueChanged() {
         statusPollTimer.stop();
@@ -228,7 +233,7 @@ public class SmoothieController extends AbstractController {
                 .newInstance(controllerStatus)
                 .setState(ControllerState.HOME)
                 .build();
-        dispatchStatusString(controllerStatus);
+        controllerStatus = dispatchStatusString(controllerStatus);
     }
 
     @Override
@@ -1,14 +1,29 @@
 package com.willwinder.universalgcodesender;
 
-import javax.swing.*;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.utils.LatencyHistogram;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A status poll timer that will attempt request status reports from the controller at a fixed interval.
+ * A status poll timer that will attempt request status reports from the controller.
  * If the status report wasn't received it will wait until there was twenty outstanding polls, it will
  * then attempt to request a status report again.
  *
+ * The polls are scheduled on a dedicated thread so that they aren't delayed by a busy user
+ * interface. The interval adapts to what the machine is doing:
+ * <ul>
+ *     <li>the status update rate is used while streaming or when the machine is moving</li>
+ *     <li>a slower rate is used when the machine is idle or alarmed</li>
+ *     <li>the interval is doubled, up to {@value #MAX_BACKOFF} times, when the reports arrive later
+ *     than the interval and is restored as they arrive on time again</li>
+ * </ul>
+ *
  * @author wwinder
  * @author Joacim Breiler
  */
@@ -16,8 +31,28 @@ public class StatusPollTimer {
     private static final Logger LOGGER = Logger.getLogger(StatusPollTimer.class.getName());
     private static final int MAX_OUTSTANDING_POLLS = 20;
 
-    private Timer timer;
-    private IController controller;
+    /**
+     * How many times slower the polls are when the machine isn't moving
+     */
+    static final int IDLE_INTERVAL_FACTOR = 4;
+
+    /**
+     * The longest interval when the machine isn't moving, unless the status update rate is longer
+     */
+    static final long MAX_IDLE_INTERVAL_MS = 1000;
+
+    static final int MAX_BACKOFF = 8;
+
+    private final IController controller;
+    private final LatencyHistogram reportLatency = new LatencyHistogram();
+    private ScheduledExecutorService executor;
+
+    // Written from the poll thread and the thread receiving the status reports
+    private volatile long pollSentTime;
+    private volatile int backoff = 1;
+    private volatile long intervalNanos;
+    private volatile double averagePollIntervalNanos;
+    private long lastPollTime;
     private int outstandingPolls;
 
     public StatusPollTimer(IController controller) {
@@ -27,59 +62,204 @@ public class StatusPollTimer {
     /**
      * Begin issuing status request commands.
      */
-    public void start() {
-        if (controller.getStatusUpdatesEnabled()) {
-            if (timer == null) {
-                timer = createTimer();
-            }
+    public synchronized void start() {
+        if (controller.getStatusUpdatesEnabled() && executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "StatusPollTimer");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-            if (!timer.isRunning()) {
-                outstandingPolls = 0;
-                timer.start();
-            }
+            pollSentTime = 0;
+            outstandingPolls = 0;
+            backoff = 1;
+            lastPollTime = 0;
+            averagePollIntervalNanos = 0;
+            reportLatency.reset();
+            schedule(executor, getInterval());
+        }
+    }
+
+    /**
+     * Stop issuing status request commands.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Resets the outstanding polls, forcing a new status report request.
+     */
+    public void receivedStatus() {
+        long sentTime = pollSentTime;
+        if (sentTime != 0) {
+            long latency = System.nanoTime() - sentTime;
+            reportLatency.record(latency);
+            adjustBackoff(latency);
         }
+
+        pollSentTime = 0;
     }
 
     /**
-     * Create a timer which will execute  position polling mechanism.
+     * @return the current poll metrics
      */
-    private Timer createTimer() {
-        stop();
-
-        return new Timer(controller.getStatusUpdateRate(), actionEvent -> {
-            try {
-                if (outstandingPolls == 0) {
-                    outstandingPolls++;
-                    controller.requestStatusReport();
-                } else {
-                    // If a poll is somehow lost after 20 intervals,
-                    // reset for sending another.
-                    outstandingPolls++;
-                    if (outstandingPolls >= MAX_OUTSTANDING_POLLS) {
-                        outstandingPolls = 0;
-                    }
+    public Metrics getMetrics() {
+        double averageInterval = averagePollIntervalNanos;
+        return new Metrics(
+                TimeUnit.NANOSECONDS.toMillis(intervalNanos),
+                averageInterval > 0 ? TimeUnit.SECONDS.toNanos(1) / averageInterval : 0,
+                backoff,
+                reportLatency.getSummary());
+    }
+
+    private void schedule(ScheduledExecutorService executor, long delayNanos) {
+        intervalNanos = delayNanos;
+        try {
+            executor.schedule(() -> poll(executor), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // The timer has been stopped
+        }
+    }
+
+    private void poll(ScheduledExecutorService executor) {
+        try {
+            if (pollSentTime == 0 || ++outstandingPolls >= MAX_OUTSTANDING_POLLS) {
+                // If a poll is somehow lost after twenty intervals, reset for sending another.
+                if (pollSentTime != 0) {
+                    adjustBackoff(Long.MAX_VALUE);
                 }
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "Couldn't poll for status reports", ex);
-                stop();
+
+                outstandingPolls = 0;
+                long now = System.nanoTime();
+                pollSentTime = now;
+                updatePollRate(now);
+                controller.requestStatusReport();
             }
-        });
+        } catch (Exception ex) {
+            LOGGER.log(Level.SEVERE, "Couldn't poll for status reports", ex);
+            stop();
+            return;
+        }
+
+        if (!executor.isShutdown()) {
+            schedule(executor, getInterval());
+        }
+    }
+
+    private void updatePollRate(long now) {
+        if (lastPollTime != 0) {
+            long interval = now - lastPollTime;
+            double average = averagePollIntervalNanos;
+            averagePollIntervalNanos = average == 0 ? interval : average * 0.8 + interval * 0.2;
+        }
+        lastPollTime = now;
+    }
+
+    private void adjustBackoff(long latency) {
+        long baseInterval = getBaseInterval();
+        int currentBackoff = backoff;
+        if (latency > baseInterval * currentBackoff) {
+            backoff = Math.min(currentBackoff * 2, MAX_BACKOFF);
+        } else if (currentBackoff > 1 && latency < baseInterval * currentBackoff / 4) {
+            backoff = currentBackoff / 2;
+        }
     }
 
     /**
-     * Stop issuing status request commands.
+     * @return the interval until the next poll in nanoseconds
+     */
+    long getInterval() {
+        return getBaseInterval() * backoff;
+    }
+
+    /**
+     * Returns the interval for the current state of the machine without any backoff.
      */
-    public void stop() {
-        if (timer != null) {
-            timer.stop();
-            timer = null;
+    private long getBaseInterval() {
+        long rate = TimeUnit.MILLISECONDS.toNanos(Math.max(1, controller.getStatusUpdateRate()));
+        if (isMoving()) {
+            return rate;
+        }
+
+        long maxIdleInterval = Math.max(rate, TimeUnit.MILLISECONDS.toNanos(MAX_IDLE_INTERVAL_MS));
+        return Math.min(rate * IDLE_INTERVAL_FACTOR, maxIdleInterval);
+    }
+
+    private boolean isMoving() {
+        if (Boolean.TRUE.equals(controller.isStreaming())) {
+            return true;
+        }
+
+        ControllerStatus status = controller.getControllerStatus();
+        if (status == null || status.getState() == null) {
+            // Poll at full rate until the state is known
+            return true;
+        }
+
+        switch (status.getState()) {
+            case IDLE:
+            case ALARM:
+            case SLEEP:
+            case DOOR:
+            case DISCONNECTED:
+                return false;
+            default:
+                return true;
         }
     }
 
     /**
-     * Resets the outstanding polls, forcing a new status report request.
+     * An immutable copy of the metrics of the timer
      */
-    public void receivedStatus() {
-        outstandingPolls = 0;
+    public static class Metrics {
+        public static final Metrics EMPTY = new Metrics(0, 0, 1, new LatencyHistogram().getSummary());
+
+        private final long pollInterval;
+        private final double pollRate;
+        private final int backoff;
+        private final LatencyHistogram.Summary reportLatency;
+
+        public Metrics(long pollInterval, double pollRate, int backoff, LatencyHistogram.Summary reportLatency) {
+            this.pollInterval = pollInterval;
+            this.pollRate = pollRate;
+            this.backoff = backoff;
+            this.reportLatency = reportLatency;
+        }
+
+        /**
+         * @return the current interval between the polls in milliseconds
+         */
+        public long getPollInterval() {
+            return pollInterval;
+        }
+
+        /**
+         * @return the measured number of status requests per second
+         */
+        public double getPollRate() {
+            return pollRate;
+        }
+
+        /**
+         * @return how many times the interval has been extended because of late reports
+         */
+        public int getBackoff() {
+            return backoff;
+        }
+
+        /**
+         * @return the time from requesting a status until it was received, in microseconds
+         */
+        public LatencyHistogram.Summary getReportLatency() {
+            return reportLatency;
+        }
     }
 }
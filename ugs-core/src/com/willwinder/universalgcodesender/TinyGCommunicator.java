@@ -18,20 +18,65 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.google.gson.JsonParseException;
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
+import com.willwinder.universalgcodesender.communicator.IFlowControl;
+import com.willwinder.universalgcodesender.communicator.QueueReportFlowControl;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
 import com.willwinder.universalgcodesender.types.TinyGGcodeCommand;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * TinyG serial port interface class.
  *
+ * The queue reports are handled here rather than in the controller so that
+ * the flow control is updated in order with the responses to the commands.
+ *
  * @author wwinder
  */
 public class TinyGCommunicator extends BufferedCommunicator {
+    private static final Logger LOGGER = Logger.getLogger(TinyGCommunicator.class.getName());
 
     @Override
     public int getBufferSize() {
         return 254;
     }
 
+    @Override
+    protected boolean isFlowControlModeSupported(FlowControlMode mode) {
+        return true;
+    }
+
+    @Override
+    protected IFlowControl createFlowControl(FlowControlMode mode) {
+        if (mode == FlowControlMode.QUEUE_REPORT) {
+            return new QueueReportFlowControl();
+        }
+        return super.createFlowControl(mode);
+    }
+
+    @Override
+    protected void handleResponse(String response) {
+        // Updated on the event loop in order with the completed commands
+        if (TinyGGcodeCommand.isQueueReportResponse(response)) {
+            updateQueueReport(response);
+        }
+        super.handleResponse(response);
+    }
+
+    private void updateQueueReport(String response) {
+        try {
+            TinyGResponse queueReport = TinyGResponse.parse(response);
+            if (queueReport.getQueueReport() != TinyGResponse.NOT_REPORTED) {
+                updateBufferState(new ControllerStatus.BufferState(queueReport.getQueueReport(), queueReport.getReceiveQueue()));
+            }
+        } catch (JsonParseException e) {
+            LOGGER.log(Level.FINE, "Couldn't parse the queue report: " + response, e);
+        }
+    }
+
     @Override
     protected boolean processedCommand(String response) {
         return TinyGGcodeCommand.isOkErrorResponse(response);
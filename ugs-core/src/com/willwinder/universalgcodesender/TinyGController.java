@@ -19,6 +19,7 @@
 package com.willwinder.universalgcodesender;
 
 import com.google.gson.JsonObject;
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
 import com.willwinder.universalgcodesender.firmware.IFirmwareSettings;
 import com.willwinder.universalgcodesender.firmware.tinyg.TinyGFirmwareSettings;
 import com.willwinder.universalgcodesender.gcode.TinyGGcodeCommandCreator;
@@ -173,31 +174,31 @@ public class TinyGController extends AbstractController {
 
     @Override
     protected void rawResponseHandler(String response) {
-        JsonObject jo;
+        TinyGResponse tinyGResponse;
 
         try {
-            jo = TinyGUtils.jsonToObject(response);
+            tinyGResponse = TinyGResponse.parse(response);
         } catch (Exception ignored) {
             // Some TinyG responses aren't JSON, those will end up here.
             this.dispatchConsoleMessage(MessageType.VERBOSE, response + "\n");
             return;
         }
 
-        if (TinyGUtils.isRestartingResponse(jo)) {
+        if (tinyGResponse.isRestartingResponse()) {
             this.dispatchConsoleMessage(MessageType.INFO, "[restarting] " + response + "\n");
-        } else if (TinyGUtils.isReadyResponse(jo)) {
-            handleReadyResponse(response, jo);
-        } else if (jo.has("ack")) {
+        } else if (tinyGResponse.isReadyResponse()) {
+            handleReadyResponse(response, tinyGResponse.getJsonObject());
+        } else if (tinyGResponse.hasAck()) {
             // TODO what do we do with ack=false, or if we don't get any response at all?
             dispatchConsoleMessage(MessageType.INFO, "[ack] " + response + "\n");
             sendInitCommands();
-        } else if (TinyGUtils.isStatusResponse(jo)) {
-            updateControllerStatus(jo);
+        } else if (tinyGResponse.isStatusReport()) {
+            updateControllerStatus(tinyGResponse.getStatusReport());
             dispatchConsoleMessage(MessageType.INFO, response + "\n");
             checkStreamFinished();
         } else if (TinyGGcodeCommand.isOkErrorResponse(response)) {
-            if (jo.get("r").getAsJsonObject().has(TinyGUtils.FIELD_STATUS_REPORT)) {
-                updateControllerStatus(jo.get("r").getAsJsonObject());
+            if (tinyGResponse.getResponseStatusReport() != null) {
+                updateControllerStatus(tinyGResponse.getResponseStatusReport());
                 checkStreamFinished();
             } else if (getActiveCommand().isPresent()) {
                 try {
@@ -210,9 +211,9 @@ public class TinyGController extends AbstractController {
 
             this.dispatchConsoleMessage(MessageType.INFO, response + "\n");
         } else if (TinyGGcodeCommand.isQueueReportResponse(response)) {
-            LOGGER.log(Level.FINE, "Queue buffer usage: " + jo.get("qr").getAsString());
+            LOGGER.log(Level.FINE, "Queue buffer usage: " + tinyGResponse.getQueueReport());
         } else if (TinyGGcodeCommand.isRecieveQueueReportResponse(response)) {
-            LOGGER.log(Level.FINE, "Receive queue buffer usage: " + jo.get("rx").getAsString());
+            LOGGER.log(Level.FINE, "Receive queue buffer usage: " + tinyGResponse.getReceiveQueue());
         } else {
             // Display any unhandled messages
             this.dispatchConsoleMessage(MessageType.INFO, "[unhandled message] " + response + "\n");
@@ -246,18 +247,18 @@ public class TinyGController extends AbstractController {
         sendInitCommands();
     }
 
-    private void updateControllerStatus(JsonObject jo) {
+    private void updateControllerStatus(TinyGStatusReport statusReport) {
         // Save the old state
         ControllerState previousState = controllerStatus.getState();
         UGSEvent.ControlState previousControlState = getControlState(previousState);
 
         // Update the internal state
-        List<String> gcodeList = TinyGUtils.convertStatusReportToGcode(jo);
+        List<String> gcodeList = TinyGUtils.convertStatusReportToGcode(statusReport);
         gcodeList.forEach(gcode -> updateParserModalState(new GcodeCommand(gcode)));
 
         // Notify our listeners about the new status
-        controllerStatus = TinyGUtils.updateControllerStatus(controllerStatus, jo);
-        dispatchStatusString(controllerStatus);
+        controllerStatus = TinyGUtils.updateControllerStatus(controllerStatus, statusReport);
+        controllerStatus = dispatchStatusString(controllerStatus);
 
         // Notify state change to our listeners
         UGSEvent.ControlState newControlState = getControlState(controllerStatus.getState());
@@ -279,9 +280,8 @@ public class TinyGController extends AbstractController {
         // 0=silent, 1=footer, 2=messages, 3=configs, 4=linenum, 5=verbose
         comm.queueCommand(new GcodeCommand("{jv:4}"));
 
-        // Queue report verbosity
-        // 0=off, 1=filtered, 2=verbose
-        comm.queueCommand(new GcodeCommand("{qv:0}"));
+        // Queue report verbosity, only needed by the queue report flow control
+        comm.queueCommand(createQueueReportVerbosityCommand());
 
         // Status report verbosity
         // 0=off, 1=filtered, 2=verbose
@@ -347,7 +347,7 @@ public class TinyGController extends AbstractController {
                 .setState(ControllerState.DISCONNECTED)
                 .build();
 
-        dispatchStatusString(controllerStatus);
+        controllerStatus = dispatchStatusString(controllerStatus);
     }
 
 
@@ -367,6 +367,28 @@ public class TinyGController extends AbstractController {
         // Not needed yet
     }
 
+    @Override
+    public void setFlowControlMode(FlowControlMode mode) {
+        FlowControlMode previousMode = getFlowControlMode();
+        super.setFlowControlMode(mode);
+
+        if (previousMode != getFlowControlMode() && isCommOpen()) {
+            comm.queueCommand(createQueueReportVerbosityCommand());
+            comm.streamCommands();
+        }
+    }
+
+    /**
+     * Creates a command for enabling the queue reports if they are needed by the flow control
+     *
+     * @return the command for setting the queue report verbosity
+     */
+    protected GcodeCommand createQueueReportVerbosityCommand() {
+        // 0=off, 1=filtered, 2=verbose
+        int verbosity = getFlowControlMode() == FlowControlMode.QUEUE_REPORT ? 1 : 0;
+        return new GcodeCommand("{qv:" + verbosity + "}");
+    }
+
     @Override
     protected void statusUpdatesEnabledValueChanged() {
         // We don't care about this
@@ -0,0 +1,339 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * A response from a TinyG/g2core controller such as:
+ * <pre>
+ * {"sr":{"posx":1.000,"posy":2.000,"stat":5}}
+ * {"r":{},"f":[1,0,255]}
+ * {"qr":28,"qi":1,"qo":0}
+ * </pre>
+ * The fields needed for handling the frequent status reports, acknowledgements and queue reports
+ * are read in a single pass without building a JSON tree. Any other fields are skipped and can be
+ * accessed through {@link #getJsonObject()} which parses the full response on demand.
+ *
+ * @author wwinder
+ */
+public class TinyGResponse {
+    public static final int NOT_REPORTED = -1;
+
+    private static final String FIELD_STATUS_REPORT = "sr";
+    private static final String FIELD_RESPONSE = "r";
+    private static final String FIELD_MESSAGE = "msg";
+    private static final String FIELD_FOOTER = "f";
+    private static final String FIELD_ACK = "ack";
+    private static final String FIELD_QUEUE_REPORT = "qr";
+    private static final String FIELD_QUEUE_IN = "qi";
+    private static final String FIELD_QUEUE_OUT = "qo";
+    private static final String FIELD_RECEIVE_QUEUE = "rx";
+    private static final String MESSAGE_RESTARTING = "Loading configs from EEPROM";
+    private static final String MESSAGE_READY = "SYSTEM READY";
+    private static final int[] EMPTY_FOOTER = new int[0];
+
+    private final String response;
+    private TinyGStatusReport statusReport;
+    private TinyGStatusReport responseStatusReport;
+    private boolean hasResponse;
+    private boolean hasAck;
+    private String message;
+    private int[] footer = EMPTY_FOOTER;
+    private int queueReport = NOT_REPORTED;
+    private int queueIn = NOT_REPORTED;
+    private int queueOut = NOT_REPORTED;
+    private int receiveQueue = NOT_REPORTED;
+    private JsonObject jsonObject;
+
+    private TinyGResponse(String response) {
+        this.response = response;
+    }
+
+    /**
+     * Parses a response from the controller.
+     *
+     * @param response the response string
+     * @return the parsed response
+     * @throws JsonParseException if the response isn't a JSON object
+     */
+    public static TinyGResponse parse(String response) {
+        TinyGResponse result = new TinyGResponse(response);
+        try {
+            JsonReader reader = new JsonReader(new StringReader(response));
+            reader.setLenient(true);
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new JsonSyntaxException("Expected a JSON object: " + response);
+            }
+
+            result.readResponse(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("Did not consume the entire document: " + response);
+            }
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonParseException(e);
+        }
+        return result;
+    }
+
+    private void readResponse(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case FIELD_STATUS_REPORT:
+                    statusReport = readStatusReport(reader);
+                    break;
+                case FIELD_RESPONSE:
+                    readResponseBody(reader);
+                    break;
+                case FIELD_FOOTER:
+                    footer = readFooter(reader);
+                    break;
+                case FIELD_ACK:
+                    hasAck = true;
+                    reader.skipValue();
+                    break;
+                case FIELD_QUEUE_REPORT:
+                    queueReport = readInt(reader);
+                    break;
+                case FIELD_QUEUE_IN:
+                    queueIn = readInt(reader);
+                    break;
+                case FIELD_QUEUE_OUT:
+                    queueOut = readInt(reader);
+                    break;
+                case FIELD_RECEIVE_QUEUE:
+                    receiveQueue = readInt(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private void readResponseBody(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            hasResponse = false;
+            message = null;
+            responseStatusReport = null;
+            reader.skipValue();
+            return;
+        }
+
+        hasResponse = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (FIELD_MESSAGE.equals(name)) {
+                message = readString(reader);
+            } else if (FIELD_STATUS_REPORT.equals(name)) {
+                responseStatusReport = readStatusReport(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads a status report object, any other value will result in null
+     */
+    private static TinyGStatusReport readStatusReport(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        TinyGStatusReport result = new TinyGStatusReport();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+                result.set(name, reader.nextString());
+            } else {
+                result.clear(name);
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return result;
+    }
+
+    private static int[] readFooter(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return EMPTY_FOOTER;
+        }
+
+        int[] result = new int[4];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == result.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(result, 0, grown, 0, size);
+                result = grown;
+            }
+            result[size++] = readInt(reader);
+        }
+        reader.endArray();
+
+        if (size == result.length) {
+            return result;
+        }
+        int[] trimmed = new int[size];
+        System.arraycopy(result, 0, trimmed, 0, size);
+        return trimmed;
+    }
+
+    private static int readInt(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return (int) reader.nextDouble();
+        }
+        reader.skipValue();
+        return NOT_REPORTED;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        } else if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(reader.nextBoolean());
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    /**
+     * @return the response string as it was received
+     */
+    public String getResponse() {
+        return response;
+    }
+
+    /**
+     * Returns the full response as a JSON object, it is parsed on the first call
+     * and should only be used for fields that aren't available from this class.
+     *
+     * @return the response as a JSON object
+     */
+    public JsonObject getJsonObject() {
+        if (jsonObject == null) {
+            jsonObject = TinyGUtils.jsonToObject(response);
+        }
+        return jsonObject;
+    }
+
+    /**
+     * @return true if the response is a status report, i.e. <code>{"sr":{...}}</code>
+     */
+    public boolean isStatusReport() {
+        return statusReport != null;
+    }
+
+    /**
+     * @return the status report or null if the response isn't a status report
+     */
+    public TinyGStatusReport getStatusReport() {
+        return statusReport;
+    }
+
+    /**
+     * @return true if the response contains a response object, i.e. <code>{"r":{...}}</code>
+     */
+    public boolean hasResponse() {
+        return hasResponse;
+    }
+
+    /**
+     * @return the status report within the response object, i.e. <code>{"r":{"sr":{...}}}</code>, or null
+     */
+    public TinyGStatusReport getResponseStatusReport() {
+        return responseStatusReport;
+    }
+
+    /**
+     * @return the message within the response object, i.e. <code>{"r":{"msg":"SYSTEM READY"}}</code>, or null
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isRestartingResponse() {
+        return MESSAGE_RESTARTING.equals(message);
+    }
+
+    public boolean isReadyResponse() {
+        return MESSAGE_READY.equals(message);
+    }
+
+    public boolean hasAck() {
+        return hasAck;
+    }
+
+    /**
+     * @return the footer values, i.e. <code>[1,0,255]</code> in <code>{"r":{},"f":[1,0,255]}</code>,
+     * or an empty array if it wasn't reported
+     */
+    public int[] getFooter() {
+        return footer.clone();
+    }
+
+    /**
+     * @return the number of available planner buffers or {@link #NOT_REPORTED}
+     */
+    public int getQueueReport() {
+        return queueReport;
+    }
+
+    /**
+     * @return the number of buffers added to the planner since the last queue report or {@link #NOT_REPORTED}
+     */
+    public int getQueueIn() {
+        return queueIn;
+    }
+
+    /**
+     * @return the number of buffers removed from the planner since the last queue report or {@link #NOT_REPORTED}
+     */
+    public int getQueueOut() {
+        return queueOut;
+    }
+
+    /**
+     * @return the number of available bytes in the receive queue or {@link #NOT_REPORTED}
+     */
+    public int getReceiveQueue() {
+        return receiveQueue;
+    }
+}
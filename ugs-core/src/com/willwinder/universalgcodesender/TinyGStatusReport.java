@@ -0,0 +1,203 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The numeric fields of a TinyG/g2core status report, i.e. the "sr" object in
+ * <code>{"sr":{"posx":1.000,"stat":5}}</code>. Fields that are missing or
+ * aren't plain decimal numbers are treated as not reported.
+ *
+ * @author wwinder
+ */
+public class TinyGStatusReport {
+    static final String FIELD_UNIT = "unit";
+    static final String FIELD_POSX = "posx";
+    static final String FIELD_POSY = "posy";
+    static final String FIELD_POSZ = "posz";
+    static final String FIELD_VELOCITY = "vel";
+    static final String FIELD_COORD = "coor";
+    static final String FIELD_PLANE = "plan";
+    static final String FIELD_DISTANCE_MODE = "dist";
+    static final String FIELD_ARC_DISTANCE_MODE = "admo";
+    static final String FIELD_FEED_MODE = "frmo";
+    static final String FIELD_STATUS = "stat";
+    static final String FIELD_MPOX = "mpox";
+    static final String FIELD_MPOY = "mpoy";
+    static final String FIELD_MPOZ = "mpoz";
+    static final String FIELD_MFO = "mfo";
+    static final String FIELD_SSO = "sso";
+    static final String FIELD_MTO = "mto";
+
+    // In the same order as the indexes in indexOf
+    private static final String[] FIELDS = {
+            FIELD_UNIT, FIELD_POSX, FIELD_POSY, FIELD_POSZ, FIELD_VELOCITY, FIELD_COORD, FIELD_PLANE,
+            FIELD_DISTANCE_MODE, FIELD_ARC_DISTANCE_MODE, FIELD_FEED_MODE, FIELD_STATUS, FIELD_MPOX,
+            FIELD_MPOY, FIELD_MPOZ, FIELD_MFO, FIELD_SSO, FIELD_MTO
+    };
+
+    private final double[] values = new double[FIELDS.length];
+    private int reportedFields;
+
+    /**
+     * Creates a status report from the "sr" object of a parsed response.
+     *
+     * @param statusReport the status report object
+     * @return the numeric fields of the status report
+     */
+    public static TinyGStatusReport fromJson(JsonObject statusReport) {
+        TinyGStatusReport result = new TinyGStatusReport();
+        for (String field : FIELDS) {
+            JsonElement element = statusReport.get(field);
+            if (element != null && element.isJsonPrimitive()) {
+                result.set(field, element.getAsString());
+            } else if (element != null) {
+                result.clear(field);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the value of a known field, a value that isn't a decimal number will
+     * make the field unreported.
+     *
+     * @param field the name of the field
+     * @param value the value as it was written in the response
+     */
+    void set(String field, String value) {
+        int index = indexOf(field);
+        if (index == -1) {
+            return;
+        }
+
+        if (isNumber(value)) {
+            values[index] = Double.parseDouble(value);
+            reportedFields |= 1 << index;
+        } else {
+            reportedFields &= ~(1 << index);
+        }
+    }
+
+    /**
+     * Makes a known field unreported, used when its value isn't a number
+     *
+     * @param field the name of the field
+     */
+    void clear(String field) {
+        int index = indexOf(field);
+        if (index != -1) {
+            reportedFields &= ~(1 << index);
+        }
+    }
+
+    /**
+     * @param field the name of the field, i.e. "posx"
+     * @return true if the field was reported with a numeric value
+     */
+    public boolean has(String field) {
+        int index = indexOf(field);
+        return index != -1 && (reportedFields & (1 << index)) != 0;
+    }
+
+    public double getDouble(String field) {
+        return values[indexOf(field)];
+    }
+
+    public int getInt(String field) {
+        return (int) getDouble(field);
+    }
+
+    private static int indexOf(String field) {
+        switch (field) {
+            case FIELD_UNIT:
+                return 0;
+            case FIELD_POSX:
+                return 1;
+            case FIELD_POSY:
+                return 2;
+            case FIELD_POSZ:
+                return 3;
+            case FIELD_VELOCITY:
+                return 4;
+            case FIELD_COORD:
+                return 5;
+            case FIELD_PLANE:
+                return 6;
+            case FIELD_DISTANCE_MODE:
+                return 7;
+            case FIELD_ARC_DISTANCE_MODE:
+                return 8;
+            case FIELD_FEED_MODE:
+                return 9;
+            case FIELD_STATUS:
+                return 10;
+            case FIELD_MPOX:
+                return 11;
+            case FIELD_MPOY:
+                return 12;
+            case FIELD_MPOZ:
+                return 13;
+            case FIELD_MFO:
+                return 14;
+            case FIELD_SSO:
+                return 15;
+            case FIELD_MTO:
+                return 16;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Checks if the value is a number such as 1, 100.0, -1 or -100.0
+     */
+    private static boolean isNumber(String value) {
+        int length = value.length();
+        int i = 0;
+        if (i < length && value.charAt(i) == '-') {
+            i++;
+        }
+
+        int digitsStart = i;
+        while (i < length && isDigit(value.charAt(i))) {
+            i++;
+        }
+        if (i == digitsStart) {
+            return false;
+        }
+
+        if (i < length && value.charAt(i) == '.') {
+            int decimalsStart = ++i;
+            while (i < length && isDigit(value.charAt(i))) {
+                i++;
+            }
+            if (i == decimalsStart) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
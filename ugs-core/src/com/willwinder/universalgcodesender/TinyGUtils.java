@@ -37,7 +37,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
 
 /**
  * Common utils for TinyG controllers
@@ -60,39 +59,10 @@ public class TinyGUtils {
     public static final String FIELD_STATUS_REPORT = "sr";
     private static final String FIELD_FIRMWARE_VERSION = "fv";
     private static final String FIELD_RESPONSE = "r";
-    private static final String FIELD_STATUS_REPORT_UNIT = "unit";
-    private static final String FIELD_STATUS_REPORT_POSX = "posx";
-    private static final String FIELD_STATUS_REPORT_POSY = "posy";
-    private static final String FIELD_STATUS_REPORT_POSZ = "posz";
-    private static final String FIELD_STATUS_REPORT_VELOCITY = "vel";
-    private static final String FIELD_STATUS_REPORT_COORD = "coor";
-    private static final String FIELD_STATUS_REPORT_PLANE = "plan";
-    private static final String FIELD_STATUS_REPORT_DISTANCE_MODE = "dist";
-    private static final String FIELD_STATUS_REPORT_ARC_DISTANCE_MODE = "admo";
-    private static final String FIELD_STATUS_REPORT_FEED_MODE = "frmo";
-    private static final String FIELD_STATUS_REPORT_STATUS = "stat";
-    private static final String FIELD_STATUS_REPORT_MPOX = "mpox";
-    private static final String FIELD_STATUS_REPORT_MPOY = "mpoy";
-    private static final String FIELD_STATUS_REPORT_MPOZ = "mpoz";
-    private static final String FIELD_STATUS_REPORT_MFO = "mfo";
-    private static final String FIELD_STATUS_REPORT_SSO = "sso";
-    private static final String FIELD_STATUS_REPORT_MTO = "mto";
-
     private static final double OVERRIDE_MIN = 0.05;
     private static final double OVERRIDE_DEFAULT = 1.0;
     private static final double OVERRIDE_MAX = 2.0;
 
-    /**
-     * Matches positive and negative numbers with or without a decimal format such as:
-     * 1
-     * 100
-     * 100.0
-     * -1
-     * -100
-     * -100.0
-     */
-    private static final Pattern NUMBER_REGEX = Pattern.compile("^[-]?[\\d]+(\\.\\d+)?");
-
     private static JsonParser parser = new JsonParser();
 
     public static JsonObject jsonToObject(String response) {
@@ -154,86 +124,96 @@ public class TinyGUtils {
      */
     public static ControllerStatus updateControllerStatus(final ControllerStatus lastControllerStatus, final JsonObject response) {
         if (isStatusResponse(response)) {
-            JsonObject statusResultObject = response.getAsJsonObject(FIELD_STATUS_REPORT);
-
-            Position workCoord = lastControllerStatus.getWorkCoord();
-            UnitUtils.Units feedSpeedUnits = lastControllerStatus.getFeedSpeedUnits();
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_UNIT)) {
-                UnitUtils.Units units = statusResultObject.get(FIELD_STATUS_REPORT_UNIT).getAsInt() == 1 ? UnitUtils.Units.MM : UnitUtils.Units.INCH;
-                workCoord = new Position(workCoord.getX(), workCoord.getY(), workCoord.getZ(), units);
-                feedSpeedUnits = units;
-            }
+            return updateControllerStatus(lastControllerStatus, TinyGStatusReport.fromJson(response.getAsJsonObject(FIELD_STATUS_REPORT)));
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_POSX)) {
-                workCoord.setX(statusResultObject.get(FIELD_STATUS_REPORT_POSX).getAsDouble());
-            }
+        return lastControllerStatus;
+    }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_POSY)) {
-                workCoord.setY(statusResultObject.get(FIELD_STATUS_REPORT_POSY).getAsDouble());
-            }
+    /**
+     * Creates a new current controller status from a TinyG status report
+     *
+     * @param lastControllerStatus the last controller status to update
+     * @param statusReport         the status report from the controller
+     * @return a new updated controller status
+     */
+    public static ControllerStatus updateControllerStatus(final ControllerStatus lastControllerStatus, final TinyGStatusReport statusReport) {
+        // Copy the position as the last status may already have been dispatched to the listeners
+        Position workCoord = new Position(lastControllerStatus.getWorkCoord());
+        UnitUtils.Units feedSpeedUnits = lastControllerStatus.getFeedSpeedUnits();
+        if (statusReport.has(TinyGStatusReport.FIELD_UNIT)) {
+            UnitUtils.Units units = statusReport.getInt(TinyGStatusReport.FIELD_UNIT) == 1 ? UnitUtils.Units.MM : UnitUtils.Units.INCH;
+            workCoord = new Position(workCoord.getX(), workCoord.getY(), workCoord.getZ(), units);
+            feedSpeedUnits = units;
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_POSZ)) {
-                workCoord.setZ(statusResultObject.get(FIELD_STATUS_REPORT_POSZ).getAsDouble());
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_POSX)) {
+            workCoord.setX(statusReport.getDouble(TinyGStatusReport.FIELD_POSX));
+        }
 
-            // The machine coordinates are always in MM, make sure the position is using that unit before updating the values
-            Position machineCoord = lastControllerStatus.getMachineCoord().getPositionIn(UnitUtils.Units.MM);
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_MPOX)) {
-                machineCoord.setX(statusResultObject.get(FIELD_STATUS_REPORT_MPOX).getAsDouble());
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_POSY)) {
+            workCoord.setY(statusReport.getDouble(TinyGStatusReport.FIELD_POSY));
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_MPOY)) {
-                machineCoord.setY(statusResultObject.get(FIELD_STATUS_REPORT_MPOY).getAsDouble());
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_POSZ)) {
+            workCoord.setZ(statusReport.getDouble(TinyGStatusReport.FIELD_POSZ));
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_MPOZ)) {
-                machineCoord.setZ(statusResultObject.get(FIELD_STATUS_REPORT_MPOZ).getAsDouble());
-            }
+        // The machine coordinates are always in MM, make sure the position is using that unit before updating the values
+        Position machineCoord = lastControllerStatus.getMachineCoord().getPositionIn(UnitUtils.Units.MM);
+        if (statusReport.has(TinyGStatusReport.FIELD_MPOX)) {
+            machineCoord.setX(statusReport.getDouble(TinyGStatusReport.FIELD_MPOX));
+        }
 
-            int overrideFeed = 100;
-            int overrideRapid = 100;
-            int overrideSpindle = 100;
-            if (lastControllerStatus.getOverrides() != null) {
-                overrideFeed = lastControllerStatus.getOverrides().feed;
-                overrideRapid = lastControllerStatus.getOverrides().rapid;
-                overrideSpindle = lastControllerStatus.getOverrides().spindle;
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_MPOY)) {
+            machineCoord.setY(statusReport.getDouble(TinyGStatusReport.FIELD_MPOY));
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_MFO)) {
-                double speed = statusResultObject.get(FIELD_STATUS_REPORT_MFO).getAsDouble();
-                overrideFeed = (int) Math.round(speed * 100.0);
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_MPOZ)) {
+            machineCoord.setZ(statusReport.getDouble(TinyGStatusReport.FIELD_MPOZ));
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_SSO)) {
-                double speed = statusResultObject.get(FIELD_STATUS_REPORT_SSO).getAsDouble();
-                overrideSpindle = (int) Math.round(speed * 100.0);
-            }
+        int overrideFeed = 100;
+        int overrideRapid = 100;
+        int overrideSpindle = 100;
+        if (lastControllerStatus.getOverrides() != null) {
+            overrideFeed = lastControllerStatus.getOverrides().feed;
+            overrideRapid = lastControllerStatus.getOverrides().rapid;
+            overrideSpindle = lastControllerStatus.getOverrides().spindle;
+        }
 
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_MTO)) {
-                double speed = statusResultObject.get(FIELD_STATUS_REPORT_MTO).getAsDouble();
-                overrideRapid = (int) Math.round(speed * 100.0);
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_MFO)) {
+            double speed = statusReport.getDouble(TinyGStatusReport.FIELD_MFO);
+            overrideFeed = (int) Math.round(speed * 100.0);
+        }
 
-            Double feedSpeed = lastControllerStatus.getFeedSpeed();
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_VELOCITY)) {
-                feedSpeed = statusResultObject.get(FIELD_STATUS_REPORT_VELOCITY).getAsDouble();
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_SSO)) {
+            double speed = statusReport.getDouble(TinyGStatusReport.FIELD_SSO);
+            overrideSpindle = (int) Math.round(speed * 100.0);
+        }
 
-            ControllerState state = lastControllerStatus.getState();
-            if (hasNumericField(statusResultObject, FIELD_STATUS_REPORT_STATUS)) {
-                state = getState(statusResultObject.get(FIELD_STATUS_REPORT_STATUS).getAsInt());
-            }
+        if (statusReport.has(TinyGStatusReport.FIELD_MTO)) {
+            double speed = statusReport.getDouble(TinyGStatusReport.FIELD_MTO);
+            overrideRapid = (int) Math.round(speed * 100.0);
+        }
 
-            Double spindleSpeed = lastControllerStatus.getSpindleSpeed();
-            Position workCoordinateOffset = lastControllerStatus.getWorkCoordinateOffset();
-            ControllerStatus.EnabledPins enabledPins = lastControllerStatus.getEnabledPins();
-            ControllerStatus.AccessoryStates accessoryStates = lastControllerStatus.getAccessoryStates();
+        Double feedSpeed = lastControllerStatus.getFeedSpeed();
+        if (statusReport.has(TinyGStatusReport.FIELD_VELOCITY)) {
+            feedSpeed = statusReport.getDouble(TinyGStatusReport.FIELD_VELOCITY);
+        }
 
-            ControllerStatus.OverridePercents overrides = new ControllerStatus.OverridePercents(overrideFeed, overrideRapid, overrideSpindle);
-            return new ControllerStatus(state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, enabledPins, accessoryStates);
+        ControllerState state = lastControllerStatus.getState();
+        if (statusReport.has(TinyGStatusReport.FIELD_STATUS)) {
+            state = getState(statusReport.getInt(TinyGStatusReport.FIELD_STATUS));
         }
 
-        return lastControllerStatus;
+        Double spindleSpeed = lastControllerStatus.getSpindleSpeed();
+        Position workCoordinateOffset = lastControllerStatus.getWorkCoordinateOffset();
+        ControllerStatus.EnabledPins enabledPins = lastControllerStatus.getEnabledPins();
+        ControllerStatus.AccessoryStates accessoryStates = lastControllerStatus.getAccessoryStates();
+
+        ControllerStatus.OverridePercents overrides = new ControllerStatus.OverridePercents(overrideFeed, overrideRapid, overrideSpindle);
+        return new ControllerStatus(state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, enabledPins, accessoryStates);
     }
 
     /**
@@ -323,75 +303,79 @@ public class TinyGUtils {
      * @return a list of gcodes representing the state of the controllers
      */
     public static List<String> convertStatusReportToGcode(JsonObject response) {
-        List<String> gcodeList = new ArrayList<>();
         if (isStatusResponse(response)) {
-            JsonObject statusResultObject = response.getAsJsonObject(TinyGUtils.FIELD_STATUS_REPORT);
+            return convertStatusReportToGcode(TinyGStatusReport.fromJson(response.getAsJsonObject(FIELD_STATUS_REPORT)));
+        }
+        return new ArrayList<>();
+    }
 
-            if (hasNumericField(statusResultObject, TinyGUtils.FIELD_STATUS_REPORT_COORD)) {
-                int offsetCode = statusResultObject.get(TinyGUtils.FIELD_STATUS_REPORT_COORD).getAsInt();
-                gcodeList.add(WorkCoordinateSystem.fromPValue(offsetCode).getGcode().name());
-            }
+    /**
+     * Converts the modal state in a status report to gcode
+     *
+     * @param statusReport the status report from the controller
+     * @return a list of gcodes representing the state of the controllers
+     */
+    public static List<String> convertStatusReportToGcode(TinyGStatusReport statusReport) {
+        List<String> gcodeList = new ArrayList<>();
+        if (statusReport.has(TinyGStatusReport.FIELD_COORD)) {
+            int offsetCode = statusReport.getInt(TinyGStatusReport.FIELD_COORD);
+            gcodeList.add(WorkCoordinateSystem.fromPValue(offsetCode).getGcode().name());
+        }
 
-            if (hasNumericField(statusResultObject, TinyGUtils.FIELD_STATUS_REPORT_UNIT)) {
-                int units = statusResultObject.get(TinyGUtils.FIELD_STATUS_REPORT_UNIT).getAsInt();
-                // 0=inch, 1=mm
-                if (units == 0) {
-                    gcodeList.add(Code.G20.toString());
-                } else {
-                    gcodeList.add(Code.G21.toString());
-                }
+        if (statusReport.has(TinyGStatusReport.FIELD_UNIT)) {
+            int units = statusReport.getInt(TinyGStatusReport.FIELD_UNIT);
+            // 0=inch, 1=mm
+            if (units == 0) {
+                gcodeList.add(Code.G20.toString());
+            } else {
+                gcodeList.add(Code.G21.toString());
             }
+        }
 
-            if (hasNumericField(statusResultObject, TinyGUtils.FIELD_STATUS_REPORT_PLANE)) {
-                int plane = statusResultObject.get(TinyGUtils.FIELD_STATUS_REPORT_PLANE).getAsInt();
-                // 0=XY plane, 1=XZ plane, 2=YZ plane
-                if (plane == 0) {
-                    gcodeList.add(Code.G17.toString());
-                } else if (plane == 1) {
-                    gcodeList.add(Code.G18.toString());
-                } else if (plane == 2) {
-                    gcodeList.add(Code.G19.toString());
-                }
+        if (statusReport.has(TinyGStatusReport.FIELD_PLANE)) {
+            int plane = statusReport.getInt(TinyGStatusReport.FIELD_PLANE);
+            // 0=XY plane, 1=XZ plane, 2=YZ plane
+            if (plane == 0) {
+                gcodeList.add(Code.G17.toString());
+            } else if (plane == 1) {
+                gcodeList.add(Code.G18.toString());
+            } else if (plane == 2) {
+                gcodeList.add(Code.G19.toString());
             }
+        }
 
-            if (hasNumericField(statusResultObject, TinyGUtils.FIELD_STATUS_REPORT_FEED_MODE)) {
-                int feedMode = statusResultObject.get(TinyGUtils.FIELD_STATUS_REPORT_FEED_MODE).getAsInt();
-                // 0=units-per-minute-mode, 1=inverse-time-mode
-                if (feedMode == 0) {
-                    gcodeList.add(Code.G93.toString());
-                } else if (feedMode == 1) {
-                    gcodeList.add(Code.G94.toString());
-                }
+        if (statusReport.has(TinyGStatusReport.FIELD_FEED_MODE)) {
+            int feedMode = statusReport.getInt(TinyGStatusReport.FIELD_FEED_MODE);
+            // 0=units-per-minute-mode, 1=inverse-time-mode
+            if (feedMode == 0) {
+                gcodeList.add(Code.G93.toString());
+            } else if (feedMode == 1) {
+                gcodeList.add(Code.G94.toString());
             }
+        }
 
-            if (hasNumericField(statusResultObject, TinyGUtils.FIELD_STATUS_REPORT_DISTANCE_MODE)) {
-                int distance = statusResultObject.get(TinyGUtils.FIELD_STATUS_REPORT_DISTANCE_MODE).getAsInt();
-                // 0=absolute distance mode, 1=incremental distance mode
-                if (distance == 0) {
-                    gcodeList.add(Code.G90.name());
-                } else if (distance == 1) {
-                    gcodeList.add(Code.G91.name());
-                }
+        if (statusReport.has(TinyGStatusReport.FIELD_DISTANCE_MODE)) {
+            int distance = statusReport.getInt(TinyGStatusReport.FIELD_DISTANCE_MODE);
+            // 0=absolute distance mode, 1=incremental distance mode
+            if (distance == 0) {
+                gcodeList.add(Code.G90.name());
+            } else if (distance == 1) {
+                gcodeList.add(Code.G91.name());
             }
+        }
 
-            if (hasNumericField(statusResultObject, TinyGUtils.FIELD_STATUS_REPORT_ARC_DISTANCE_MODE)) {
-                int arcDistance = statusResultObject.get(TinyGUtils.FIELD_STATUS_REPORT_ARC_DISTANCE_MODE).getAsInt();
-                // 0=absolute distance mode, 1=incremental distance mode
-                if (arcDistance == 0) {
-                    gcodeList.add(Code.G90_1.toString());
-                } else if (arcDistance == 1) {
-                    gcodeList.add(Code.G91_1.toString());
-                }
+        if (statusReport.has(TinyGStatusReport.FIELD_ARC_DISTANCE_MODE)) {
+            int arcDistance = statusReport.getInt(TinyGStatusReport.FIELD_ARC_DISTANCE_MODE);
+            // 0=absolute distance mode, 1=incremental distance mode
+            if (arcDistance == 0) {
+                gcodeList.add(Code.G90_1.toString());
+            } else if (arcDistance == 1) {
+                gcodeList.add(Code.G91_1.toString());
             }
         }
         return gcodeList;
     }
 
-    private static boolean hasNumericField(JsonObject statusResultObject, String fieldName) {
-        return statusResultObject.has(fieldName) && !statusResultObject.get(fieldName).isJsonNull() &&
-                NUMBER_REGEX.matcher(statusResultObject.get(fieldName).getAsString()).matches();
-    }
-
     /**
      * Creates an override gcode command based on the current override state.
      *
@@ -411,59 +395,59 @@ public class TinyGUtils {
         switch (command) {
             case CMD_FEED_OVR_COARSE_MINUS:
                 if (feedOverride > OVERRIDE_MIN) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MFO + ":" + Utils.formatter.format(feedOverride - 0.10) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MFO + ":" + Utils.formatter.format(feedOverride - 0.10) + "}"));
                 }
                 break;
             case CMD_FEED_OVR_COARSE_PLUS:
                 if (feedOverride < OVERRIDE_MAX) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MFO + ":" + Utils.formatter.format(feedOverride + 0.10) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MFO + ":" + Utils.formatter.format(feedOverride + 0.10) + "}"));
                 }
                 break;
             case CMD_FEED_OVR_FINE_MINUS:
                 if (feedOverride > OVERRIDE_MIN) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MFO + ":" + Utils.formatter.format(feedOverride - 0.05) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MFO + ":" + Utils.formatter.format(feedOverride - 0.05) + "}"));
                 }
                 break;
             case CMD_FEED_OVR_FINE_PLUS:
                 if (feedOverride < OVERRIDE_MAX) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MFO + ":" + Utils.formatter.format(feedOverride + 0.05) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MFO + ":" + Utils.formatter.format(feedOverride + 0.05) + "}"));
                 }
                 break;
             case CMD_FEED_OVR_RESET:
-                result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MFO + ":" + Utils.formatter.format(OVERRIDE_DEFAULT) + "}"));
+                result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MFO + ":" + Utils.formatter.format(OVERRIDE_DEFAULT) + "}"));
                 break;
 
             case CMD_SPINDLE_OVR_COARSE_MINUS:
                 if (spindleOverride > OVERRIDE_MIN) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_SSO + ":" + Utils.formatter.format(spindleOverride - 0.10) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_SSO + ":" + Utils.formatter.format(spindleOverride - 0.10) + "}"));
                 }
                 break;
             case CMD_SPINDLE_OVR_COARSE_PLUS:
                 if (spindleOverride < OVERRIDE_MAX) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_SSO + ":" + Utils.formatter.format(spindleOverride + 0.10) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_SSO + ":" + Utils.formatter.format(spindleOverride + 0.10) + "}"));
                 }
                 break;
             case CMD_SPINDLE_OVR_FINE_MINUS:
                 if (spindleOverride > OVERRIDE_MIN) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_SSO + ":" + Utils.formatter.format(spindleOverride - 0.05) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_SSO + ":" + Utils.formatter.format(spindleOverride - 0.05) + "}"));
                 }
                 break;
             case CMD_SPINDLE_OVR_FINE_PLUS:
                 if (spindleOverride < OVERRIDE_MAX) {
-                    result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_SSO + ":" + Utils.formatter.format(spindleOverride + 0.05) + "}"));
+                    result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_SSO + ":" + Utils.formatter.format(spindleOverride + 0.05) + "}"));
                 }
                 break;
             case CMD_SPINDLE_OVR_RESET:
-                result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_SSO + ":" + Utils.formatter.format(OVERRIDE_DEFAULT) + "}"));
+                result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_SSO + ":" + Utils.formatter.format(OVERRIDE_DEFAULT) + "}"));
                 break;
             case CMD_RAPID_OVR_LOW:
-                result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MTO + ":" + Utils.formatter.format(0.25) + "}"));
+                result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MTO + ":" + Utils.formatter.format(0.25) + "}"));
                 break;
             case CMD_RAPID_OVR_MEDIUM:
-                result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MTO + ":" + Utils.formatter.format(0.50) + "}"));
+                result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MTO + ":" + Utils.formatter.format(0.50) + "}"));
                 break;
             case CMD_RAPID_OVR_RESET:
-                result = Optional.of(new GcodeCommand("{" + TinyGUtils.FIELD_STATUS_REPORT_MTO + ":" + Utils.formatter.format(1.00) + "}"));
+                result = Optional.of(new GcodeCommand("{" + TinyGStatusReport.FIELD_MTO + ":" + Utils.formatter.format(1.00) + "}"));
                 break;
             default:
         }
@@ -0,0 +1,51 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.utils.CommUtils;
+
+/**
+ * Keeps the controller receive buffer as full as possible by counting the
+ * bytes of the commands that hasn't been responded to yet.
+ *
+ * @author wwinder
+ */
+public class CharacterCountingFlowControl implements IFlowControl {
+
+    @Override
+    public boolean canSend(int activeCommands, int sentBytes, int commandLength, int bufferSize) {
+        return CommUtils.checkRoomInBuffer(sentBytes, commandLength, bufferSize);
+    }
+
+    @Override
+    public void commandCompleted() {
+        // Nothing to track besides the sent bytes
+    }
+
+    @Override
+    public void updateBufferState(ControllerStatus.BufferState bufferState) {
+        // The receive buffer is tracked by counting characters
+    }
+
+    @Override
+    public void reset() {
+        // Nothing to reset
+    }
+}
@@ -0,0 +1,78 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An enum for describing the flow control strategies available when
+ * streaming commands to a controller.
+ *
+ * @author wwinder
+ */
+public enum FlowControlMode {
+    /**
+     * Sends commands as long as they fit in the controller receive buffer.
+     */
+    CHARACTER_COUNTING("Character counting"),
+
+    /**
+     * Character counting which also bounds the number of commands in flight
+     * by the planner blocks available in the controller.
+     */
+    PLANNER_AWARE("Planner aware"),
+
+    /**
+     * Line mode for TinyG and g2core which bounds the lines in flight by the
+     * free planner buffers in the queue reports. Other controllers use
+     * character counting.
+     */
+    QUEUE_REPORT("Queue report (TinyG/g2core)");
+
+    private final String prettyName;
+
+    FlowControlMode(String prettyName) {
+        this.prettyName = prettyName;
+    }
+
+    public String getPrettyName() {
+        return prettyName;
+    }
+
+    public static String[] getPrettyNames() {
+        FlowControlMode[] vals = values();
+        String[] res = new String[vals.length];
+        for(int i = 0; i < vals.length; ++i) {
+            res[i] = vals[i].getPrettyName();
+        }
+        return res;
+    }
+
+    public static FlowControlMode prettyNameToEnum(String prettyName) {
+        return prettyName2Enum.get(prettyName);
+    }
+
+    private static Map<String, FlowControlMode> prettyName2Enum = new HashMap<>();
+    static {
+        for(FlowControlMode v : values()) {
+            prettyName2Enum.put(v.getPrettyName(), v);
+        }
+    }
+}
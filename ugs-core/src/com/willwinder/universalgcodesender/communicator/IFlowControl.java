@@ -0,0 +1,62 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+
+/**
+ * A strategy for deciding when the next command may be sent to the
+ * controller. The methods are only called from the {@link StreamEventLoop}
+ * of the communicator, one at a time, so implementations don't need to be
+ * thread safe. They are called for every streamed command and should not
+ * allocate.
+ *
+ * @author wwinder
+ */
+public interface IFlowControl {
+
+    /**
+     * Returns if the next command may be sent to the controller.
+     *
+     * @param activeCommands the number of commands sent without a response
+     * @param sentBytes      the number of bytes sent without a response
+     * @param commandLength  the length of the next command including its line terminator
+     * @param bufferSize     the size of the controller receive buffer
+     * @return true if the command may be sent
+     */
+    boolean canSend(int activeCommands, int sentBytes, int commandLength, int bufferSize);
+
+    /**
+     * Called when the controller has responded to a command.
+     */
+    void commandCompleted();
+
+    /**
+     * Called when the controller reports the free space in its buffers.
+     *
+     * @param bufferState the buffer state from the controller status
+     */
+    void updateBufferState(ControllerStatus.BufferState bufferState);
+
+    /**
+     * Forgets any state learned from the controller, called when the
+     * streaming is canceled or a new connection is made.
+     */
+    void reset();
+}
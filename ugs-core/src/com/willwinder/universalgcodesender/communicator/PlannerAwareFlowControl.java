@@ -0,0 +1,96 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.utils.CommUtils;
+
+/**
+ * Character counting which also bounds the number of commands in flight by
+ * the planner blocks available in the controller, reported in the "Bf:"
+ * field of the GRBL status report.
+ *
+ * Every command in flight is waiting for a planner block, commands beyond
+ * the free blocks would only wait in the receive buffer. A small number of
+ * extra commands are always allowed so that the next command is ready to be
+ * parsed as soon as a block is freed, keeping the planner full.
+ *
+ * Each response means that a command was parsed and took a planner block,
+ * so the available blocks are counted down until the next status report.
+ * Blocks freed by the machine in the meantime are not known until then,
+ * which makes the estimate err on the safe side. Until a buffer state has
+ * been reported this behaves like {@link CharacterCountingFlowControl}.
+ *
+ * @author wwinder
+ */
+public class PlannerAwareFlowControl implements IFlowControl {
+    public static final int DEFAULT_MIN_COMMANDS_IN_FLIGHT = 4;
+    private static final int UNKNOWN = -1;
+
+    private final int minCommandsInFlight;
+    private int plannerBlocksAvailable = UNKNOWN;
+
+    public PlannerAwareFlowControl() {
+        this(DEFAULT_MIN_COMMANDS_IN_FLIGHT);
+    }
+
+    /**
+     * @param minCommandsInFlight the number of commands which may always be
+     *                            in flight, even if the planner is full
+     */
+    public PlannerAwareFlowControl(int minCommandsInFlight) {
+        if (minCommandsInFlight < 1) {
+            throw new IllegalArgumentException("At least one command must be allowed in flight: " + minCommandsInFlight);
+        }
+        this.minCommandsInFlight = minCommandsInFlight;
+    }
+
+    @Override
+    public boolean canSend(int activeCommands, int sentBytes, int commandLength, int bufferSize) {
+        if (!CommUtils.checkRoomInBuffer(sentBytes, commandLength, bufferSize)) {
+            return false;
+        }
+
+        return plannerBlocksAvailable == UNKNOWN || activeCommands < plannerBlocksAvailable + minCommandsInFlight;
+    }
+
+    @Override
+    public void commandCompleted() {
+        if (plannerBlocksAvailable > 0) {
+            plannerBlocksAvailable--;
+        }
+    }
+
+    @Override
+    public void updateBufferState(ControllerStatus.BufferState bufferState) {
+        plannerBlocksAvailable = bufferState == null ? UNKNOWN : Math.max(bufferState.plannerBlocksAvailable, 0);
+    }
+
+    @Override
+    public void reset() {
+        plannerBlocksAvailable = UNKNOWN;
+    }
+
+    /**
+     * @return the estimated number of free planner blocks or -1 if unknown
+     */
+    public int getPlannerBlocksAvailable() {
+        return plannerBlocksAvailable;
+    }
+}
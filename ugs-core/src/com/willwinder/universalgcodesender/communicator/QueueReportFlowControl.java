@@ -0,0 +1,102 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+
+/**
+ * Line mode flow control for TinyG and g2core which counts lines instead of
+ * characters. The controller reserves a number of line slots in its receive
+ * buffer, so as long as each line fits in the buffer that many lines may be
+ * in flight regardless of their length.
+ *
+ * The free planner buffers from the queue reports, i.e. "qr" in
+ * <code>{"qr":28,"qi":1,"qo":0}</code>, lowers the number of lines in flight
+ * when the planner is almost full. Lines beyond the free planner buffers
+ * would only wait in the receive buffer, delaying feed holds and overrides.
+ * At least one line is always in flight so that the planner is refilled as
+ * soon as a buffer is freed.
+ *
+ * Each response means that a line was parsed and took a planner buffer, so
+ * the free buffers are counted down until the next queue report. Until a
+ * queue report has been received all line slots are used.
+ *
+ * @author wwinder
+ */
+public class QueueReportFlowControl implements IFlowControl {
+    public static final int DEFAULT_LINE_SLOTS = 4;
+    private static final int UNKNOWN = -1;
+
+    private final int lineSlots;
+    private int plannerBuffersAvailable = UNKNOWN;
+
+    public QueueReportFlowControl() {
+        this(DEFAULT_LINE_SLOTS);
+    }
+
+    /**
+     * @param lineSlots the number of lines the controller can receive
+     *                  while the previous lines are waiting to be parsed
+     */
+    public QueueReportFlowControl(int lineSlots) {
+        if (lineSlots < 1) {
+            throw new IllegalArgumentException("At least one line slot is needed: " + lineSlots);
+        }
+        this.lineSlots = lineSlots;
+    }
+
+    @Override
+    public boolean canSend(int activeCommands, int sentBytes, int commandLength, int bufferSize) {
+        return commandLength <= bufferSize && activeCommands < getLinesInFlight();
+    }
+
+    @Override
+    public void commandCompleted() {
+        if (plannerBuffersAvailable > 0) {
+            plannerBuffersAvailable--;
+        }
+    }
+
+    @Override
+    public void updateBufferState(ControllerStatus.BufferState bufferState) {
+        plannerBuffersAvailable = bufferState == null ? UNKNOWN : Math.max(bufferState.plannerBlocksAvailable, 0);
+    }
+
+    @Override
+    public void reset() {
+        plannerBuffersAvailable = UNKNOWN;
+    }
+
+    /**
+     * @return the number of lines which may currently be in flight
+     */
+    public int getLinesInFlight() {
+        if (plannerBuffersAvailable == UNKNOWN) {
+            return lineSlots;
+        }
+        return Math.max(1, Math.min(lineSlots, plannerBuffersAvailable));
+    }
+
+    /**
+     * @return the estimated number of free planner buffers or -1 if unknown
+     */
+    public int getPlannerBuffersAvailable() {
+        return plannerBuffersAvailable;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A mailbox of messages which are handled one at a time, in the order they
+ * were posted, by a single dedicated thread. State which is only touched from
+ * the messages of one loop has a single writer and doesn't need any locks.
+ *
+ * Messages can be posted without waiting with {@link #execute(Runnable)} or
+ * be handled while the caller waits with {@link #invoke(Runnable)} and
+ * {@link #call(Callable)}. A message posted from the loop which waits is run
+ * directly to avoid waiting on itself. The hot path, such as handling the
+ * responses from the controller, should use a {@link Signal} which can be
+ * posted any number of times without allocating.
+ *
+ * The thread is started when the first message is posted and stops after
+ * being idle for a while. Tests can use a direct executor, i.e.
+ * <code>Runnable::run</code>, to handle the messages on the posting thread.
+ *
+ * @author wwinder
+ */
+public class StreamEventLoop implements Executor {
+    private static final Logger LOGGER = Logger.getLogger(StreamEventLoop.class.getName());
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final String name;
+    private final Executor executor;
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+    private volatile Signal[] signals = new Signal[0];
+
+    // The thread currently handling messages
+    private volatile Thread loopThread;
+
+    // The dedicated thread, guarded by this
+    private Thread dedicatedThread;
+
+    /**
+     * Creates a loop with a dedicated thread.
+     *
+     * @param name the name of the thread
+     */
+    public StreamEventLoop(String name) {
+        this.name = name;
+        this.executor = null;
+    }
+
+    /**
+     * Creates a loop which runs on an executor instead of a dedicated thread.
+     *
+     * @param executor the executor which runs the loop, it may use any
+     *                 number of threads as the messages are only handled by
+     *                 one of them at a time
+     */
+    public StreamEventLoop(Executor executor) {
+        this.name = "";
+        this.executor = executor;
+    }
+
+    /**
+     * Posts a message to the loop without waiting for it to be handled.
+     *
+     * @param message the message to handle on the loop
+     */
+    @Override
+    public void execute(Runnable message) {
+        mailbox.add(message);
+        schedule();
+    }
+
+    /**
+     * Handles a message on the loop and waits until it is done.
+     *
+     * @param message the message to handle on the loop
+     */
+    public void invoke(Runnable message) {
+        invoke(() -> {
+            message.run();
+            return null;
+        });
+    }
+
+    /**
+     * Handles a message on the loop and waits for its result.
+     *
+     * @param message the message to handle on the loop
+     * @return the result of the message
+     */
+    public <T> T invoke(Supplier<T> message) {
+        try {
+            return call(message::get);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // Only an interrupt while waiting, suppliers can't throw checked exceptions
+            throw new IllegalStateException("Interrupted while waiting for the stream event loop", e);
+        }
+    }
+
+    /**
+     * Handles a message which may throw an exception on the loop and waits
+     * for its result. Any exception thrown by the message is rethrown to the
+     * caller.
+     *
+     * @param message the message to handle on the loop
+     * @return the result of the message
+     * @throws Exception the exception thrown by the message
+     */
+    public <T> T call(Callable<T> message) throws Exception {
+        if (isInEventLoop()) {
+            return message.call();
+        }
+
+        FutureTask<T> task = new FutureTask<>(message);
+        execute(task);
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a signal which runs the handler on this loop when posted.
+     *
+     * @param handler the handler of the signal
+     * @return a new signal
+     */
+    public synchronized Signal createSignal(Runnable handler) {
+        Signal signal = new Signal(handler);
+        Signal[] newSignals = Arrays.copyOf(signals, signals.length + 1);
+        newSignals[signals.length] = signal;
+        signals = newSignals;
+        return signal;
+    }
+
+    /**
+     * @return true if the current thread is handling the messages of this loop
+     */
+    public boolean isInEventLoop() {
+        return loopThread == Thread.currentThread();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (executor == null) {
+            wakeDedicatedThread();
+            return;
+        }
+
+        try {
+            executor.execute(drainTask);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            LOGGER.log(Level.WARNING, "Couldn't schedule the stream event loop", e);
+        }
+    }
+
+    private synchronized void wakeDedicatedThread() {
+        if (dedicatedThread == null) {
+            dedicatedThread = new Thread(this::runDedicatedThread, name);
+            dedicatedThread.setDaemon(true);
+            dedicatedThread.start();
+        } else {
+            LockSupport.unpark(dedicatedThread);
+        }
+    }
+
+    private void runDedicatedThread() {
+        long idleSince = System.nanoTime();
+        while (true) {
+            if (scheduled.get()) {
+                try {
+                    drain();
+                } catch (Throwable t) {
+                    // Keep the loop alive, the pending messages were rescheduled
+                    LOGGER.log(Level.SEVERE, "Unexpected error in the stream event loop", t);
+                }
+                idleSince = System.nanoTime();
+                continue;
+            }
+
+            LockSupport.parkNanos(this, IDLE_TIMEOUT_NANOS);
+            if (System.nanoTime() - idleSince >= IDLE_TIMEOUT_NANOS) {
+                synchronized (this) {
+                    // A message which is posted from here on starts a new thread
+                    if (!scheduled.get()) {
+                        dedicatedThread = null;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private void drain() {
+        loopThread = Thread.currentThread();
+        try {
+            boolean handled;
+            do {
+                // Signals posted before the message are handled before it
+                Runnable message = mailbox.poll();
+                handled = handleSignals();
+                if (message != null) {
+                    handle(message);
+                    handled = true;
+                }
+            } while (handled);
+        } finally {
+            loopThread = null;
+            scheduled.set(false);
+
+            // A message may have arrived after the mailbox was emptied but before it was released
+            if (hasPendingMessages()) {
+                schedule();
+            }
+        }
+    }
+
+    private boolean handleSignals() {
+        boolean handled = false;
+        for (Signal signal : signals) {
+            if (signal.pending.getAndSet(false)) {
+                handle(signal.handler);
+                handled = true;
+            }
+        }
+        return handled;
+    }
+
+    private boolean hasPendingMessages() {
+        if (!mailbox.isEmpty()) {
+            return true;
+        }
+
+        for (Signal signal : signals) {
+            if (signal.pending.get()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void handle(Runnable message) {
+        try {
+            message.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Couldn't handle the stream event", e);
+        }
+    }
+
+    /**
+     * A message which is handled once for any number of posts made before it
+     * is handled. Posting it doesn't allocate anything, the handler is
+     * expected to drain whatever the signal is about, i.e. a queue of
+     * responses.
+     */
+    public final class Signal {
+        private final Runnable handler;
+        private final AtomicBoolean pending = new AtomicBoolean();
+
+        private Signal(Runnable handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * Makes the loop run the handler unless it is already pending.
+         */
+        public void post() {
+            if (pending.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+    }
+}
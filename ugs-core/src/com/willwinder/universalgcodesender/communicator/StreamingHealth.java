@@ -0,0 +1,235 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks where the time goes while streaming to tell if the controller was
+ * starved by the sender or if it was busy. The communicator reports its
+ * state whenever it has tried to send more commands:
+ * <ul>
+ *     <li>{@link State#STARVED} - there are no commands in flight but rows remain to be sent</li>
+ *     <li>{@link State#WINDOW_FULL} - the next command is waiting for room in the controller buffer</li>
+ *     <li>{@link State#WAITING_ON_READER} - there are commands in flight but the next row hasn't been read</li>
+ *     <li>{@link State#DRAINING} - all rows are sent and the last commands are in flight</li>
+ * </ul>
+ *
+ * The time in each state is accumulated until the state changes. The time
+ * spent blocked reading from the stream is also reported separately and
+ * may overlap with the state times. Time when idle or paused is not counted.
+ *
+ * @author wwinder
+ */
+public class StreamingHealth {
+    public enum State {
+        IDLE,
+        PAUSED,
+        STARVED,
+        WINDOW_FULL,
+        WAITING_ON_READER,
+        DRAINING
+    }
+
+    private final long[] stateTimes = new long[State.values().length];
+    private State state = State.IDLE;
+    private long stateStartTime;
+    private long readerWaitTime;
+    private int starvationCount;
+    private int windowFullCount;
+
+    /**
+     * Changes the current state, accumulating the time spent in the previous state.
+     *
+     * @param newState the new state
+     * @param now      the current time from {@link System#nanoTime()}
+     */
+    public synchronized void update(State newState, long now) {
+        if (newState == state) {
+            return;
+        }
+
+        if (state != State.IDLE) {
+            stateTimes[state.ordinal()] += now - stateStartTime;
+        }
+
+        if (newState == State.STARVED) {
+            starvationCount++;
+        } else if (newState == State.WINDOW_FULL) {
+            windowFullCount++;
+        }
+        state = newState;
+        stateStartTime = now;
+    }
+
+    /**
+     * Adds time spent blocked while reading the next row from the stream.
+     *
+     * @param nanos the time blocked
+     */
+    public synchronized void addReaderWait(long nanos) {
+        readerWaitTime += nanos;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < stateTimes.length; i++) {
+            stateTimes[i] = 0;
+        }
+        state = State.IDLE;
+        readerWaitTime = 0;
+        starvationCount = 0;
+        windowFullCount = 0;
+    }
+
+    /**
+     * Returns a report including the time spent in the current state.
+     *
+     * @param now the current time from {@link System#nanoTime()}
+     * @return a report of the accumulated times
+     */
+    public synchronized Report getReport(long now) {
+        long[] times = stateTimes.clone();
+        if (state != State.IDLE) {
+            times[state.ordinal()] += now - stateStartTime;
+        }
+
+        return new Report(
+                times[State.STARVED.ordinal()],
+                times[State.WINDOW_FULL.ordinal()],
+                times[State.WAITING_ON_READER.ordinal()],
+                times[State.DRAINING.ordinal()],
+                readerWaitTime,
+                starvationCount,
+                windowFullCount);
+    }
+
+    public Report getReport() {
+        return getReport(System.nanoTime());
+    }
+
+    /**
+     * An immutable summary of the streaming health, all times are in nanoseconds
+     */
+    public static class Report {
+        private final long starvedTime;
+        private final long windowFullTime;
+        private final long waitingOnReaderTime;
+        private final long drainingTime;
+        private final long readerWaitTime;
+        private final int starvationCount;
+        private final int windowFullCount;
+
+        public Report(long starvedTime, long windowFullTime, long waitingOnReaderTime, long drainingTime, long readerWaitTime, int starvationCount, int windowFullCount) {
+            this.starvedTime = starvedTime;
+            this.windowFullTime = windowFullTime;
+            this.waitingOnReaderTime = waitingOnReaderTime;
+            this.drainingTime = drainingTime;
+            this.readerWaitTime = readerWaitTime;
+            this.starvationCount = starvationCount;
+            this.windowFullCount = windowFullCount;
+        }
+
+        /**
+         * @return the time with no commands in flight while rows remained to be sent
+         */
+        public long getStarvedTime() {
+            return starvedTime;
+        }
+
+        /**
+         * @return the time a command was ready but the controller buffer was full
+         */
+        public long getWindowFullTime() {
+            return windowFullTime;
+        }
+
+        /**
+         * @return the time with commands in flight while waiting for the next row
+         */
+        public long getWaitingOnReaderTime() {
+            return waitingOnReaderTime;
+        }
+
+        /**
+         * @return the time waiting for the last commands after all rows were sent
+         */
+        public long getDrainingTime() {
+            return drainingTime;
+        }
+
+        /**
+         * @return the time blocked while reading rows from the stream
+         */
+        public long getReaderWaitTime() {
+            return readerWaitTime;
+        }
+
+        /**
+         * @return the number of times the controller ran out of commands while rows remained
+         */
+        public int getStarvationCount() {
+            return starvationCount;
+        }
+
+        /**
+         * @return the number of times a command had to wait for room in the controller buffer
+         */
+        public int getWindowFullCount() {
+            return windowFullCount;
+        }
+
+        /**
+         * @return the time spent streaming, that is not idle or paused
+         */
+        public long getTotalTime() {
+            return starvedTime + windowFullTime + waitingOnReaderTime + drainingTime;
+        }
+
+        /**
+         * @return the fraction of the streaming time the controller was starved
+         */
+        public double getStarvedRatio() {
+            long total = getTotalTime();
+            return total == 0 ? 0 : starvedTime / (double) total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "starved %s (%.1f%%, %d times), buffer full %s (%.1f%%), waiting on reader %s",
+                    format(starvedTime), getStarvedRatio() * 100, starvationCount,
+                    format(windowFullTime), percentOfTotal(windowFullTime),
+                    format(waitingOnReaderTime + readerWaitTime));
+        }
+
+        private double percentOfTotal(long time) {
+            long total = getTotalTime();
+            return total == 0 ? 0 : time * 100.0 / total;
+        }
+
+        private static String format(long nanos) {
+            return String.format(Locale.ROOT, "%.3fs", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
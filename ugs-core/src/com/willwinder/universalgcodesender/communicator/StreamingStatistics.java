@@ -0,0 +1,161 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the latencies and throughput of the commands sent by a
+ * communicator using the timestamps recorded on each {@link GcodeCommand}:
+ * <ul>
+ *     <li>queue wait: from being queued in the communicator until it was written to the controller</li>
+ *     <li>round trip: from being written until the controller responded, which is the time
+ *     the command spent in the controller receive buffer</li>
+ *     <li>total: from being queued until the controller responded</li>
+ * </ul>
+ *
+ * The throughput is measured from the first command being sent until the
+ * last response. Recording doesn't allocate or lock so it may be called
+ * for every streamed command.
+ *
+ * @author wwinder
+ */
+public class StreamingStatistics {
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final AtomicLong completedLines = new AtomicLong();
+    private final AtomicLong completedBytes = new AtomicLong();
+    private final AtomicLong firstSentTime = new AtomicLong();
+    private final AtomicLong lastAckTime = new AtomicLong();
+
+    /**
+     * Records a command which the controller has responded to, the command
+     * needs to have its sent and ack time set.
+     *
+     * @param command the completed command
+     */
+    public void commandCompleted(GcodeCommand command) {
+        long ackLatency = command.getAckLatency();
+        if (ackLatency < 0) {
+            return;
+        }
+
+        long sentTime = command.getSentTime();
+        long ackTime = command.getAckTime();
+
+        if (command.getQueuedTime() != 0) {
+            queueWait.record(sentTime - command.getQueuedTime());
+            total.record(ackTime - command.getQueuedTime());
+        }
+        roundTrip.record(ackLatency);
+
+        completedLines.incrementAndGet();
+        completedBytes.addAndGet(command.getCommandBytes().length);
+        firstSentTime.compareAndSet(0, sentTime);
+        lastAckTime.accumulateAndGet(ackTime, Math::max);
+    }
+
+    public void reset() {
+        queueWait.reset();
+        roundTrip.reset();
+        total.reset();
+        completedLines.set(0);
+        completedBytes.set(0);
+        firstSentTime.set(0);
+        lastAckTime.set(0);
+    }
+
+    /**
+     * @return the current statistics
+     */
+    public Snapshot getSnapshot() {
+        long lines = completedLines.get();
+        long bytes = completedBytes.get();
+        long elapsedNanos = lastAckTime.get() - firstSentTime.get();
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+
+        return new Snapshot(
+                queueWait.getSummary(),
+                roundTrip.getSummary(),
+                total.getSummary(),
+                lines,
+                bytes,
+                seconds > 0 ? lines / seconds : 0,
+                seconds > 0 ? bytes / seconds : 0);
+    }
+
+    /**
+     * An immutable copy of the statistics, the latencies are in microseconds
+     */
+    public static class Snapshot {
+        public static final Snapshot EMPTY = new StreamingStatistics().getSnapshot();
+
+        private final LatencyHistogram.Summary queueWait;
+        private final LatencyHistogram.Summary roundTrip;
+        private final LatencyHistogram.Summary total;
+        private final long completedLines;
+        private final long completedBytes;
+        private final double linesPerSecond;
+        private final double bytesPerSecond;
+
+        public Snapshot(LatencyHistogram.Summary queueWait, LatencyHistogram.Summary roundTrip, LatencyHistogram.Summary total,
+                        long completedLines, long completedBytes, double linesPerSecond, double bytesPerSecond) {
+            this.queueWait = queueWait;
+            this.roundTrip = roundTrip;
+            this.total = total;
+            this.completedLines = completedLines;
+            this.completedBytes = completedBytes;
+            this.linesPerSecond = linesPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        public LatencyHistogram.Summary getQueueWait() {
+            return queueWait;
+        }
+
+        public LatencyHistogram.Summary getRoundTrip() {
+            return roundTrip;
+        }
+
+        public LatencyHistogram.Summary getTotal() {
+            return total;
+        }
+
+        public long getCompletedLines() {
+            return completedLines;
+        }
+
+        public long getCompletedBytes() {
+            return completedBytes;
+        }
+
+        public double getLinesPerSecond() {
+            return linesPerSecond;
+        }
+
+        public double getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+    }
+}
@@ -81,6 +81,27 @@ public interface Connection {
      */
     void sendStringToComm(String command) throws Exception;
 
+    /**
+     * Sends already encoded data to the device. This is used when streaming
+     * to avoid having to encode the command string for each line, the
+     * implementation must not keep a reference to the given array.
+     *
+     * @param bytes  the buffer containing the data to send
+     * @param offset the offset of the first byte to send
+     * @param length the number of bytes to send
+     */
+    void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception;
+
+    /**
+     * Sends a batch of encoded command lines to the device. The lines should
+     * be written in order, preferably using a single write to the device.
+     * The implementation must not keep a reference to the batch as it will
+     * be reused.
+     *
+     * @param batch the lines to send
+     */
+    void sendBatchToComm(LineBatch batch) throws Exception;
+
     /**
      * Checks if the communication is established
      *
@@ -28,9 +28,11 @@ import java.util.Map;
  */
 public enum ConnectionDriver {
     JSERIALCOMM("JSerialComm", "jserialcomm://"),
+    JSERIALCOMM_READER_THREAD("JSerialComm (reader thread)", "jserialcommthread://"),
     JSSC("JSSC", "jssc://"),
     TCP("TCP", "tcp://"),
-    WS("WebSocket", "ws://");
+    WS("WebSocket", "ws://"),
+    GRBL_SIMULATOR("GRBL simulator", "grblsim://");
 
     private final String prettyName;
     private final String protocol;
@@ -36,6 +36,9 @@ public class ConnectionFactory {
      * {@link ConnectionDriver#getProtocol()} that defines which driver to use. The driver may then
      * have different styles for defining paths, ex: jserialcomm://{portname}:{baudrate}
      *
+     * The reader thread of {@link ConnectionDriver#JSERIALCOMM_READER_THREAD} can be tuned with
+     * parameters, ex: jserialcommthread://{portname}:{baudrate}?readTimeoutMs=50&readBufferSize=8192
+     *
      * @param uri the uri for the hardware to connect to
      * @return a connection
      * @throws ConnectionException if something went wron while creating the connection
@@ -43,6 +46,12 @@ public class ConnectionFactory {
     static public Connection getConnection(String uri) throws ConnectionException{
         for (ConnectionDriver connectionDriver : ConnectionDriver.values()) {
             if (StringUtils.startsWithIgnoreCase(uri, connectionDriver.getProtocol())) {
+                if (connectionDriver == ConnectionDriver.JSERIALCOMM_READER_THREAD) {
+                    Connection connection = getReaderThreadConnection(uri);
+                    connection.setUri(StringUtils.substringBefore(uri, "?"));
+                    return connection;
+                }
+
                 Connection connection = getConnection(connectionDriver).orElseThrow(() -> new ConnectionException("Couldn't load connection driver " + connectionDriver + " for uri: " + uri));
                 connection.setUri(uri);
                 return connection;
@@ -52,6 +61,34 @@ public class ConnectionFactory {
         throw new ConnectionException("Couldn't find connection driver for uri: " + uri);
     }
 
+    private static Connection getReaderThreadConnection(String uri) throws ConnectionException {
+        int readTimeoutMs = JSerialCommConnection.DEFAULT_READ_TIMEOUT_MS;
+        int readBufferSize = JSerialCommConnection.DEFAULT_READ_BUFFER_SIZE;
+
+        String parameters = StringUtils.substringAfter(uri, "?");
+        for (String parameter : StringUtils.split(parameters, '&')) {
+            String name = StringUtils.substringBefore(parameter, "=");
+            String value = StringUtils.substringAfter(parameter, "=");
+            try {
+                if (name.equals("readTimeoutMs")) {
+                    readTimeoutMs = Integer.parseInt(value);
+                } else if (name.equals("readBufferSize")) {
+                    readBufferSize = Integer.parseInt(value);
+                } else {
+                    throw new ConnectionException("Unknown parameter " + name + " in uri: " + uri);
+                }
+            } catch (NumberFormatException e) {
+                throw new ConnectionException("Couldn't parse parameter " + parameter + " in uri: " + uri, e);
+            }
+        }
+
+        try {
+            return new JSerialCommConnection(readTimeoutMs, readBufferSize);
+        } catch (IllegalArgumentException e) {
+            throw new ConnectionException(e.getMessage() + ", uri: " + uri, e);
+        }
+    }
+
     public static List<String> getPortNames(ConnectionDriver connectionDriver) {
         return getConnection(connectionDriver)
                 .map(Connection::getPortNames)
@@ -62,12 +99,16 @@ public class ConnectionFactory {
         switch (connectionDriver) {
             case JSERIALCOMM:
                 return Optional.of(new JSerialCommConnection());
+            case JSERIALCOMM_READER_THREAD:
+                return Optional.of(new JSerialCommConnection(JSerialCommConnection.DEFAULT_READ_TIMEOUT_MS, JSerialCommConnection.DEFAULT_READ_BUFFER_SIZE));
             case JSSC:
                 return Optional.of(new JSSCConnection());
             case TCP:
                 return Optional.of(new TCPConnection());
             case WS:
                 return Optional.of(new WSConnection());
+            case GRBL_SIMULATOR:
+                return Optional.of(new SimulatedGrblConnection());
         }
         return Optional.empty();
     }
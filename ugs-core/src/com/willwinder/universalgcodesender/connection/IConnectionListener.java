@@ -12,4 +12,13 @@ public interface IConnectionListener {
      * @param response a response message
      */
     void handleResponseMessage(String response);
+
+    /**
+     * Method is invoked when the connection was lost without being closed,
+     * ex: the device was unplugged or stopped responding.
+     *
+     * @param reason a description of why the connection was lost
+     */
+    default void handleConnectionLost(String reason) {
+    }
 }
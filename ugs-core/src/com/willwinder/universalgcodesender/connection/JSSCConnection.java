@@ -100,6 +100,21 @@ public class JSSCConnection extends AbstractConnection implements SerialPortEven
     public void sendStringToComm(String command) throws Exception {
         this.serialPort.writeString(command);
     }
+
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception {
+        // JSSC can only write complete arrays
+        if (offset == 0 && length == bytes.length) {
+            this.serialPort.writeBytes(bytes);
+        } else {
+            this.serialPort.writeBytes(Arrays.copyOfRange(bytes, offset, offset + length));
+        }
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) throws Exception {
+        sendBytesToComm(batch.getBuffer(), 0, batch.getLength());
+    }
         
     /**
      * Immediately sends a byte, used for real-time commands.
@@ -120,8 +135,7 @@ public class JSSCConnection extends AbstractConnection implements SerialPortEven
                 return;
             }
 
-            String s = new String(buf, 0, buf.length);
-            responseMessageHandler.handleResponse(s);
+            responseMessageHandler.handleResponse(buf, 0, buf.length);
         } catch ( Exception e ) {
             e.printStackTrace();
             System.exit(-1);
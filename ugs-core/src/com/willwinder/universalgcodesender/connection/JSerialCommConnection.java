@@ -24,22 +24,65 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
  * Serial connection using JSerialComm
  *
+ * By default data is read from jSerialComm's event callback. The connection
+ * can instead use a dedicated {@link ReaderThread} doing semi-blocking reads
+ * which hands the data to the response handler as soon as it arrives, this
+ * gives less jitter on the acknowledgements when streaming to fast controllers.
+ *
  * @author Joacim Breiler
  */
 public class JSerialCommConnection extends AbstractConnection implements SerialPortDataListener {
+    private static final Logger LOGGER = Logger.getLogger(JSerialCommConnection.class.getName());
+
+    public static final int DEFAULT_READ_TIMEOUT_MS = 100;
+    public static final int DEFAULT_READ_BUFFER_SIZE = 4096;
+
+    // The number of read errors in a row after which the device is considered disconnected
+    private static final int MAX_CONSECUTIVE_READ_ERRORS = 10;
 
     private final byte[] buffer = new byte[1024];
+    private final boolean useReaderThread;
+    private final int readTimeoutMs;
+    private final int readBufferSize;
     private SerialPort serialPort;
+    private ReaderThread readerThread;
+    private int consecutiveReadErrors = 0;
+
+    /**
+     * Creates a connection reading data from the serial port events
+     */
+    public JSerialCommConnection() {
+        this.useReaderThread = false;
+        this.readTimeoutMs = 0;
+        this.readBufferSize = buffer.length;
+    }
+
+    /**
+     * Creates a connection using a dedicated reader thread.
+     *
+     * @param readTimeoutMs  the maximum time a read waits for data before checking if the connection was closed
+     * @param readBufferSize the maximum number of bytes to read at once
+     */
+    public JSerialCommConnection(int readTimeoutMs, int readBufferSize) {
+        if (readTimeoutMs < 1 || readBufferSize < 1) {
+            throw new IllegalArgumentException("The read timeout and buffer size must be positive");
+        }
+        this.useReaderThread = true;
+        this.readTimeoutMs = readTimeoutMs;
+        this.readBufferSize = readBufferSize;
+    }
 
     @Override
     public void setUri(String uri) {
         try {
-            String portName = StringUtils.substringBetween(uri, ConnectionDriver.JSERIALCOMM.getProtocol(), ":");
+            String portName = StringUtils.substringBetween(uri, "://", ":");
             int baudRate = Integer.valueOf(StringUtils.substringAfterLast(uri, ":"));
             initSerialPort(portName, baudRate);
         } catch (Exception e) {
@@ -53,7 +96,45 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
             throw new ConnectionException("The connection wasn't initialized");
         }
 
-        return serialPort.openPort();
+        if (!serialPort.openPort()) {
+            return false;
+        }
+
+        if (useReaderThread) {
+            consecutiveReadErrors = 0;
+            readerThread = new ReaderThread("JSerialCommReader-" + serialPort.getSystemPortName(),
+                    this::readBytes, responseMessageHandler, readBufferSize);
+            readerThread.start();
+        }
+        return true;
+    }
+
+    private int readBytes(byte[] readBuffer, int length) {
+        int bytesRead = serialPort.readBytes(readBuffer, length);
+        if (bytesRead >= 0 || !serialPort.isOpen()) {
+            consecutiveReadErrors = 0;
+            return bytesRead;
+        }
+
+        // A read error on a port which still reports being open, this happens
+        // when the device is unplugged and the read returns immediately.
+        consecutiveReadErrors++;
+        if (consecutiveReadErrors >= MAX_CONSECUTIVE_READ_ERRORS) {
+            LOGGER.log(Level.WARNING, "Couldn''t read from {0} {1} times in a row, closing the port",
+                    new Object[]{serialPort.getSystemPortName(), consecutiveReadErrors});
+            serialPort.closePort();
+            responseMessageHandler.notifyConnectionLost("Couldn't read from " + serialPort.getSystemPortName());
+            return -1;
+        }
+
+        LOGGER.log(Level.FINE, "Couldn''t read from {0}, retrying", serialPort.getSystemPortName());
+        try {
+            Thread.sleep(readTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        return 0;
     }
 
     private void initSerialPort(String name, int baud) throws Exception {
@@ -65,8 +146,13 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
         serialPort.setParity(SerialPort.NO_PARITY);
         serialPort.setNumStopBits(SerialPort.ONE_STOP_BIT);
         serialPort.setNumDataBits(8);
-        serialPort.addDataListener(this);
         serialPort.setBaudRate(baud);
+
+        if (useReaderThread) {
+            serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, readTimeoutMs, 0);
+        } else {
+            serialPort.addDataListener(this);
+        }
     }
 
     @Override
@@ -75,6 +161,11 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
             serialPort.removeDataListener();
             serialPort.closePort();
         }
+
+        if (readerThread != null) {
+            readerThread.stop(readTimeoutMs * 2L);
+            readerThread = null;
+        }
     }
 
     @Override
@@ -84,7 +175,18 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
 
     @Override
     public void sendStringToComm(String command) throws Exception {
-        serialPort.writeBytes(command.getBytes(), command.length());
+        byte[] bytes = command.getBytes();
+        serialPort.writeBytes(bytes, bytes.length);
+    }
+
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception {
+        serialPort.writeBytes(bytes, length, offset);
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) throws Exception {
+        serialPort.writeBytes(batch.getBuffer(), batch.getLength(), 0);
     }
 
     @Override
@@ -117,8 +219,8 @@ public class JSerialCommConnection extends AbstractConnection implements SerialP
         }
 
         int bytesRead = serialPort.readBytes(buffer, Math.min(buffer.length, bytesAvailable));
-        String response = new String(buffer, 0, bytesRead);
-
-        responseMessageHandler.handleResponse(response);
+        if (bytesRead > 0) {
+            responseMessageHandler.handleResponse(buffer, 0, bytesRead);
+        }
     }
 }
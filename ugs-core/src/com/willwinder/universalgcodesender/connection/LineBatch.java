@@ -0,0 +1,124 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import java.util.Arrays;
+
+/**
+ * A reusable buffer collecting several encoded command lines so that they
+ * can be written to a connection with a single write. The line boundaries
+ * are kept for connections that needs to handle each line separately.
+ *
+ * The batch is not thread safe and is meant to be filled and written by
+ * the streaming thread.
+ *
+ * @author wwinder
+ */
+public class LineBatch {
+    private byte[] buffer;
+    private int[] lineEnds;
+    private int length;
+    private int lineCount;
+
+    /**
+     * Creates a batch with an initial capacity, it will grow if more
+     * data is added.
+     *
+     * @param capacity the initial capacity in bytes
+     */
+    public LineBatch(int capacity) {
+        buffer = new byte[Math.max(capacity, 1)];
+        lineEnds = new int[Math.max(capacity / 2, 1)];
+    }
+
+    /**
+     * Appends an encoded line to the batch, the line should already include
+     * its line terminator.
+     *
+     * @param line the encoded line
+     */
+    public void add(byte[] line) {
+        if (length + line.length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + line.length));
+        }
+        if (lineCount == lineEnds.length) {
+            lineEnds = Arrays.copyOf(lineEnds, lineEnds.length * 2);
+        }
+
+        System.arraycopy(line, 0, buffer, length, line.length);
+        length += line.length;
+        lineEnds[lineCount++] = length;
+    }
+
+    /**
+     * Removes all lines from the batch without releasing the buffer.
+     */
+    public void clear() {
+        length = 0;
+        lineCount = 0;
+    }
+
+    public boolean isEmpty() {
+        return lineCount == 0;
+    }
+
+    /**
+     * Returns the backing buffer, only the first {@link #getLength()} bytes
+     * are valid.
+     *
+     * @return the backing buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the total number of bytes in the batch
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the number of lines in the batch
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the offset in the buffer where the given line starts.
+     *
+     * @param line the index of the line
+     * @return the offset of the first byte of the line
+     */
+    public int getLineStart(int line) {
+        return line == 0 ? 0 : lineEnds[line - 1];
+    }
+
+    /**
+     * Returns the offset in the buffer after the last byte of the given line.
+     *
+     * @param line the index of the line
+     * @return the offset after the line terminator
+     */
+    public int getLineEnd(int line) {
+        return lineEnds[line];
+    }
+}
@@ -22,6 +22,7 @@ import com.willwinder.universalgcodesender.GrblUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.model.Position;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
@@ -57,8 +58,8 @@ public class LoopBackConnection extends AbstractConnection {
 
         int count = 0;
         Position lastCommand = null;
+        GcodeParser gcp = new GcodeParser();
         while (true) {
-            GcodeParser gcp = new GcodeParser();
             try {
                 String command = sent.take().trim();
                 Thread.sleep(ms);
@@ -136,6 +137,20 @@ public class LoopBackConnection extends AbstractConnection {
     public void sendStringToComm(String command) throws Exception {
         this.sent.put(command);
     }
+
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception {
+        this.sent.put(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) throws Exception {
+        // Each line is answered separately
+        for (int i = 0; i < batch.getLineCount(); i++) {
+            int start = batch.getLineStart(i);
+            sendBytesToComm(batch.getBuffer(), start, batch.getLineEnd(i) - start);
+        }
+    }
         
     @Override
     public void sendByteImmediately(byte b) throws Exception {
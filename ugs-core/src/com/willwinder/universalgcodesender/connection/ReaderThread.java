@@ -0,0 +1,122 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A dedicated thread which reads raw bytes from a connection and feeds them
+ * directly to a {@link ResponseMessageHandler}. The reads are expected to be
+ * semi-blocking, returning as soon as any data is available or when a read
+ * timeout has passed, so that responses are handled as soon as they arrive
+ * and the thread can notice when it is stopped.
+ *
+ * @author wwinder
+ */
+public class ReaderThread {
+    private static final Logger LOGGER = Logger.getLogger(ReaderThread.class.getName());
+
+    /**
+     * A source of bytes, typically a port on the hardware.
+     */
+    public interface ByteSource {
+        /**
+         * Reads available bytes into the buffer, waiting at most the read
+         * timeout for data to arrive.
+         *
+         * @param buffer the buffer to read into
+         * @param length the maximum number of bytes to read
+         * @return the number of bytes read, zero on timeout or a negative value if the source is closed
+         * @throws IOException if the source couldn't be read
+         */
+        int read(byte[] buffer, int length) throws IOException;
+    }
+
+    private final ByteSource source;
+    private final ResponseMessageHandler responseMessageHandler;
+    private final byte[] buffer;
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    /**
+     * Creates a reader thread, it needs to be started with {@link #start()}.
+     *
+     * @param name                   the name of the thread
+     * @param source                 the source to read from
+     * @param responseMessageHandler the handler to feed with the bytes that are read
+     * @param bufferSize             the maximum number of bytes to read at once
+     */
+    public ReaderThread(String name, ByteSource source, ResponseMessageHandler responseMessageHandler, int bufferSize) {
+        this.source = source;
+        this.responseMessageHandler = responseMessageHandler;
+        this.buffer = new byte[bufferSize];
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Signals the thread to stop and waits for it to finish its current read.
+     *
+     * @param timeoutMs the maximum time to wait for the thread to stop
+     */
+    public void stop(long timeoutMs) {
+        running = false;
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isAlive() {
+        return thread.isAlive();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                int bytesRead = source.read(buffer, buffer.length);
+                if (bytesRead < 0) {
+                    break;
+                }
+
+                if (bytesRead > 0) {
+                    responseMessageHandler.handleResponse(buffer, 0, bytesRead);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                LOGGER.log(Level.WARNING, "Couldn't read from the connection", e);
+            }
+        } finally {
+            running = false;
+        }
+    }
+}
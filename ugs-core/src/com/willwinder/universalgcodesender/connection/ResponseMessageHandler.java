@@ -18,7 +18,11 @@
  */
 package com.willwinder.universalgcodesender.connection;
 
-import java.util.HashSet;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -26,19 +30,39 @@ import java.util.Set;
  * until we have a complete line. It will then attempt to dispatch that
  * data to a communicator.
  *
+ * The data is framed on byte level, only newly arrived bytes are scanned for
+ * line terminators and each completed line is decoded once. Lines that are
+ * received within a single chunk are decoded directly from that chunk, only
+ * partial lines are copied to the internal buffer while waiting for the rest.
+ *
+ * The handler is not thread safe and expects to be fed from a single reader
+ * thread.
+ *
  * @author wwinder
  * @author Joacim Breiler
  */
 public class ResponseMessageHandler {
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private final Charset charset;
+    private final Set<IConnectionListener> listeners = new LinkedHashSet<>();
+    private volatile IConnectionListener[] listenerArray = new IConnectionListener[0];
 
-    private final StringBuilder inputBuffer;
-    private Set<IConnectionListener> listeners = new HashSet<>();
+    /**
+     * Buffered bytes of a line which hasn't been terminated yet
+     */
+    private byte[] lineBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private int lineLength = 0;
+
+    private final byte[] directBufferChunk = new byte[INITIAL_BUFFER_SIZE * 4];
 
     public ResponseMessageHandler() {
-        inputBuffer = new StringBuilder();
+        this(StandardCharsets.UTF_8);
     }
 
-
+    public ResponseMessageHandler(Charset charset) {
+        this.charset = charset;
+    }
 
     /**
      * Appends the response data to a buffer, then splits out response rows and sends them
@@ -47,37 +71,97 @@ public class ResponseMessageHandler {
      * @param response a complete or part of a response message
      */
     public void handleResponse(String response) {
-        inputBuffer.append(response);
+        byte[] bytes = response.getBytes(charset);
+        handleResponse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Frames the raw response bytes into lines and sends each completed
+     * line to the listeners. Any trailing bytes without a line terminator
+     * are buffered until the rest of the line arrives.
+     *
+     * @param bytes  a buffer with a complete or part of a response message
+     * @param offset the offset of the first byte to handle
+     * @param length the number of bytes to handle
+     */
+    public void handleResponse(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+
+            if (lineLength == 0) {
+                // The whole line is in this chunk, decode it directly
+                dispatchLine(bytes, lineStart, i);
+            } else {
+                appendToLineBuffer(bytes, lineStart, i - lineStart);
+                dispatchLine(lineBuffer, 0, lineLength);
+                lineLength = 0;
+            }
+            lineStart = i + 1;
+        }
 
-        // Only continue if there is a line terminator and split out command(response).
-        if (!inputBuffer.toString().contains("\n")) {
+        if (lineStart < end) {
+            appendToLineBuffer(bytes, lineStart, end - lineStart);
+        }
+    }
+
+    /**
+     * Frames the remaining bytes in the buffer into lines, the position of
+     * the buffer will be moved to its limit.
+     *
+     * @param buffer a buffer with a complete or part of a response message
+     */
+    public void handleResponse(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            handleResponse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
             return;
         }
 
-        // Split with the -1 option will give an empty string at
-        // the end if there is a terminator there as well.
-        String[] messages = inputBuffer.toString().split("\\r?\\n", -1);
-        for (int i = 0; i < messages.length; i++) {
-            // Make sure this isn't the last command.
-            if ((i + 1) < messages.length) {
+        // Copies direct buffers in chunks to avoid reading them byte by byte
+        while (buffer.hasRemaining()) {
+            int length = Math.min(buffer.remaining(), directBufferChunk.length);
+            buffer.get(directBufferChunk, 0, length);
+            handleResponse(directBufferChunk, 0, length);
+        }
+    }
 
-                notifyListeners(messages[i]);
+    private void appendToLineBuffer(byte[] bytes, int offset, int length) {
+        if (lineLength + length > lineBuffer.length) {
+            lineBuffer = Arrays.copyOf(lineBuffer, Math.max(lineBuffer.length * 2, lineLength + length));
+        }
+        System.arraycopy(bytes, offset, lineBuffer, lineLength, length);
+        lineLength += length;
+    }
 
-                // Append last command to input buffer because it didn't have a terminator.
-            } else {
-                inputBuffer.setLength(0);
-                inputBuffer.append(messages[i]);
-            }
+    /**
+     * Decodes the line between start and end, excluding a trailing carriage
+     * return, and sends it to the listeners.
+     */
+    private void dispatchLine(byte[] bytes, int start, int end) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
         }
+        notifyListeners(new String(bytes, start, end - start, charset));
     }
 
     public void notifyListeners(String message) {
-        listeners.forEach(listener -> {
+        for (IConnectionListener listener : listenerArray) {
             listener.handleResponseMessage(message);
-        });
+        }
+    }
+
+    public void notifyConnectionLost(String reason) {
+        for (IConnectionListener listener : listenerArray) {
+            listener.handleConnectionLost(reason);
+        }
     }
 
-    public void addListener(IConnectionListener connectionListener) {
+    public synchronized void addListener(IConnectionListener connectionListener) {
         listeners.add(connectionListener);
+        listenerArray = listeners.toArray(new IConnectionListener[0]);
     }
 }
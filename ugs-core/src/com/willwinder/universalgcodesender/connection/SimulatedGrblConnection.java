@@ -0,0 +1,217 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import com.willwinder.universalgcodesender.connection.simulator.GrblSimulator;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A connection to a simulated GRBL controller, see {@link GrblSimulator}.
+ * It is used for measuring the streaming throughput without any hardware,
+ * unlike the {@link LoopBackConnection} the responses are limited by the
+ * receive buffer, the planner queue and the acceleration of the machine.
+ *
+ * The bytes are delivered to the simulator at the rate given by the baud
+ * rate in the uri, ex: grblsim://grbl:115200. The simulation can be run
+ * faster than real time with a time scale.
+ *
+ * @author wwinder
+ */
+public class SimulatedGrblConnection extends AbstractConnection {
+    public static final String PORT_NAME = "grbl";
+    public static final int DEFAULT_BAUD_RATE = 115200;
+
+    private static final long TICK_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+
+    private final int rxBufferSize;
+    private final int plannerBlocks;
+    private final double timeScale;
+    private final Object simulatorLock = new Object();
+    private final Object wireLock = new Object();
+    private final List<String> output = new ArrayList<>();
+
+    private GrblSimulator simulator;
+    private byte[] wire = new byte[1024];
+    private int wireHead;
+    private int wireCount;
+    private int baudRate = DEFAULT_BAUD_RATE;
+    private volatile boolean open = false;
+    private Thread thread;
+
+    public SimulatedGrblConnection() {
+        this(GrblSimulator.DEFAULT_RX_BUFFER_SIZE, GrblSimulator.DEFAULT_PLANNER_BLOCKS, 1);
+    }
+
+    /**
+     * @param rxBufferSize  the size of the receive buffer in the controller
+     * @param plannerBlocks the number of blocks in the planner of the controller
+     * @param timeScale     how much faster than real time the simulation runs
+     */
+    public SimulatedGrblConnection(int rxBufferSize, int plannerBlocks, double timeScale) {
+        if (timeScale <= 0) {
+            throw new IllegalArgumentException("The time scale must be positive: " + timeScale);
+        }
+        this.rxBufferSize = rxBufferSize;
+        this.plannerBlocks = plannerBlocks;
+        this.timeScale = timeScale;
+    }
+
+    @Override
+    public void setUri(String uri) {
+        try {
+            String baud = StringUtils.substringAfterLast(StringUtils.substringAfter(uri, "://"), ":");
+            baudRate = StringUtils.isEmpty(baud) ? DEFAULT_BAUD_RATE : Integer.parseInt(baud);
+        } catch (NumberFormatException e) {
+            throw new ConnectionException("Couldn't parse connection string " + uri, e);
+        }
+    }
+
+    @Override
+    public boolean openPort() throws Exception {
+        synchronized (simulatorLock) {
+            simulator = new GrblSimulator(rxBufferSize, plannerBlocks, output::add);
+        }
+        synchronized (wireLock) {
+            wireHead = 0;
+            wireCount = 0;
+        }
+
+        open = true;
+        thread = new Thread(this::run, "SimulatedGrbl");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public void closePort() throws Exception {
+        open = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+            thread.join(1000);
+        }
+        thread = null;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public List<String> getPortNames() {
+        return Collections.singletonList(PORT_NAME);
+    }
+
+    @Override
+    public void sendByteImmediately(byte b) throws Exception {
+        sendBytesToComm(new byte[]{b}, 0, 1);
+    }
+
+    @Override
+    public void sendStringToComm(String command) throws Exception {
+        byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+        sendBytesToComm(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception {
+        synchronized (wireLock) {
+            ensureWireCapacity(wireCount + length);
+            for (int i = 0; i < length; i++) {
+                wire[(wireHead + wireCount + i) % wire.length] = bytes[offset + i];
+            }
+            wireCount += length;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) throws Exception {
+        sendBytesToComm(batch.getBuffer(), 0, batch.getLength());
+    }
+
+    /**
+     * @return the number of bytes the simulated controller had to drop because its receive buffer was full
+     */
+    public long getRxOverflowCount() {
+        synchronized (simulatorLock) {
+            return simulator == null ? 0 : simulator.getRxOverflowCount();
+        }
+    }
+
+    private void ensureWireCapacity(int capacity) {
+        if (capacity <= wire.length) {
+            return;
+        }
+
+        byte[] newWire = new byte[Math.max(capacity, wire.length * 2)];
+        for (int i = 0; i < wireCount; i++) {
+            newWire[i] = wire[(wireHead + i) % wire.length];
+        }
+        wire = newWire;
+        wireHead = 0;
+    }
+
+    private void run() {
+        List<String> responses = new ArrayList<>();
+        double bytesPerNano = baudRate / 10.0 / TimeUnit.SECONDS.toNanos(1);
+        double byteCredit = 0;
+        long lastTime = System.nanoTime();
+
+        while (open) {
+            LockSupport.parkNanos(TICK_NANOS);
+            long now = System.nanoTime();
+            long elapsed = (long) ((now - lastTime) * timeScale);
+            lastTime = now;
+
+            // Delivers the bytes on the wire at the baud rate
+            byteCredit = Math.min(byteCredit + elapsed * bytesPerNano, wire.length);
+            synchronized (simulatorLock) {
+                synchronized (wireLock) {
+                    while (wireCount > 0 && byteCredit >= 1) {
+                        simulator.receive(wire[wireHead]);
+                        wireHead = (wireHead + 1) % wire.length;
+                        wireCount--;
+                        byteCredit--;
+                    }
+                    if (wireCount == 0) {
+                        byteCredit = Math.min(byteCredit, 1);
+                    }
+                }
+                simulator.advance(elapsed);
+                responses.addAll(output);
+                output.clear();
+            }
+
+            // The listeners are notified outside the lock as they may send more commands
+            for (String response : responses) {
+                responseMessageHandler.handleResponse(response + "\r\n");
+            }
+            responses.clear();
+        }
+    }
+}
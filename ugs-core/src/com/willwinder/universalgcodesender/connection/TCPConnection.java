@@ -18,34 +18,74 @@
 */
 package com.willwinder.universalgcodesender.connection;
 
-import java.io.OutputStream;
-import java.io.InputStreamReader;
-import java.io.IOException;
-import java.io.BufferedReader;
-import java.net.*;
-import java.net.Socket;
-
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.List;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A TCP connection object implementing the connection API.
  *
+ * The connection uses a non-blocking {@link SocketChannel} with TCP_NODELAY
+ * enabled so that commands are sent immediately instead of being held back
+ * by Nagle's algorithm. Responses are read by a selector driven thread which
+ * passes the raw bytes to the response framer. A write which can't complete
+ * because the remote host stops reading fails after a timeout.
+ *
  * @author Adam Carmicahel <carneeki@carneeki.net>
  */
 public class TCPConnection extends AbstractConnection implements Runnable, Connection {
+	private static final Logger LOGGER = Logger.getLogger(TCPConnection.class.getName());
+	private static final int BUFFER_SIZE = 8192;
+	private static final long CLOSE_TIMEOUT_MS = 1000;
+	private static final long DEFAULT_WRITE_TIMEOUT_MS = 10000;
+
+	private final long writeTimeoutMs;
 
 	private String host;
 	private int port;
 
 	// General variables
-	private Socket client;
-	private BufferedReader bufIn;
-	private OutputStream bufOut;
-	private InputStreamReader inStream;
+	private SocketChannel channel;
+	private Selector readSelector;
+	private Selector writeSelector;
 	private Thread replyThread;
+	private volatile boolean running;
+
+	private final Object writeLock = new Object();
+	private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private final byte[] singleByte = new byte[1];
+	private final ByteBuffer[] singleBuffer = new ByteBuffer[1];
+	private ByteBuffer[] batchBuffers = new ByteBuffer[16];
+
+	public TCPConnection() {
+		this(DEFAULT_WRITE_TIMEOUT_MS);
+	}
+
+	/**
+	 * @param writeTimeoutMs the maximum time to wait for the remote host to accept the data of a write
+	 */
+	TCPConnection(long writeTimeoutMs) {
+		this.writeTimeoutMs = writeTimeoutMs;
+	}
 
 	@Override
 	public void setUri(String uri) {
@@ -66,106 +106,202 @@ public class TCPConnection extends AbstractConnection implements Runnable, Conne
 
 	@Override
 	public boolean openPort() throws Exception {
+		SocketChannel socketChannel = SocketChannel.open();
 		try {
-			client = new Socket(host, port);
+			socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			socketChannel.connect(new InetSocketAddress(host, port));
 		} catch( BindException e) {
+			socketChannel.close();
 			throw new ConnectionException("Could not bind a local port.", e);
 		} catch( NoRouteToHostException e) {
+			socketChannel.close();
 			throw new ConnectionException("No route to host. The remote host may not be running, blocked by a firewall, or disconnected.", e);
 		} catch( ConnectException e) {
+			socketChannel.close();
 			throw new ConnectionException("The port is unreachable on the remote host. The server may not be running, or blocked by a firewall.", e);
-		}
-		
-		if (client == null) {
-			throw new ConnectionException("Socket unable to connect.");
+		} catch( UnresolvedAddressException e) {
+			socketChannel.close();
+			throw new ConnectionException("Could not resolve the host " + host + ".", e);
 		}
 
-		bufOut = client.getOutputStream();
-		inStream = new InputStreamReader(client.getInputStream());
-		bufIn = new BufferedReader(inStream);
+		socketChannel.configureBlocking(false);
+		readSelector = Selector.open();
+		writeSelector = Selector.open();
+		socketChannel.register(readSelector, SelectionKey.OP_READ);
+		socketChannel.register(writeSelector, SelectionKey.OP_WRITE);
+		channel = socketChannel;
 
 		// start thread so replies can be handled
-		replyThread = new Thread(this);
+		running = true;
+		replyThread = new Thread(this, "TCPConnectionReader");
+		replyThread.setDaemon(true);
 		replyThread.start();
 
-		return client.isConnected();
+		return channel.isConnected();
 	}
 
-	/**
-	 * TODO: toggle the disconnect/connect icon; investigate how...
-	 *       UGS correctly goes into offline state when called, potentially a bug elsewhere?
-	 */
 	@Override
 	public void closePort() throws Exception {
-		if (client != null) {
-			try {
-				replyThread.interrupt();
-				client.close();
-			} catch (SocketException e) {
-				// ignore socketexception if connection was broken early
-			} finally {
-				client = null;
+		if (channel == null) {
+			return;
+		}
+
+		running = false;
+		try {
+			readSelector.wakeup();
+			channel.close();
+			if (Thread.currentThread() != replyThread) {
+				replyThread.join(CLOSE_TIMEOUT_MS);
 			}
+		} finally {
+			readSelector.close();
+			writeSelector.close();
 		}
 	}
 
 	@Override
 	public boolean isOpen() {
-		return (client != null) && (!client.isClosed());
+		return (channel != null) && channel.isOpen();
 	}
 
 	/**
 	 * Sends a command to remote host.
 	 * @param command Command to be sent to remote host.
 	 */
+	@Override
 	public void sendStringToComm(String command) throws Exception {
-		try {
-			bufOut.write(command.getBytes());
-			bufOut.flush();
-		} catch (SocketException e) {
-			closePort(); // very likely we got disconnected, attempt to disconnect gracefully
-			throw e;
-		} catch (IOException e) {
-			closePort(); // very likely we got disconnected, attempt to disconnect gracefully
-			throw e;
+		byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+		sendBytesToComm(bytes, 0, bytes.length);
+	}
+
+	@Override
+	public void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception {
+		synchronized (writeLock) {
+			try {
+				int end = offset + length;
+				while (offset < end) {
+					int chunk = Math.min(end - offset, writeBuffer.capacity());
+					writeBuffer.clear();
+					writeBuffer.put(bytes, offset, chunk);
+					writeBuffer.flip();
+					writeFully(writeBuffer);
+					offset += chunk;
+				}
+			} catch (IOException e) {
+				closePort(); // very likely we got disconnected, attempt to disconnect gracefully
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Sends all lines in the batch with a single gathering write of the
+	 * lines in the batch buffer, without copying them.
+	 */
+	@Override
+	public void sendBatchToComm(LineBatch batch) throws Exception {
+		synchronized (writeLock) {
+			int lineCount = batch.getLineCount();
+			if (batchBuffers.length < lineCount) {
+				batchBuffers = new ByteBuffer[Math.max(lineCount, batchBuffers.length * 2)];
+			}
+
+			byte[] bytes = batch.getBuffer();
+			for (int i = 0; i < lineCount; i++) {
+				int start = batch.getLineStart(i);
+				batchBuffers[i] = ByteBuffer.wrap(bytes, start, batch.getLineEnd(i) - start);
+			}
+
+			try {
+				writeFully(batchBuffers, lineCount);
+			} catch (IOException e) {
+				closePort(); // very likely we got disconnected, attempt to disconnect gracefully
+				throw e;
+			} finally {
+				Arrays.fill(batchBuffers, 0, lineCount, null);
+			}
 		}
 	}
 
 	/**
 	 * Immediately sends a byte, used for real-time commands.
 	 */
+	@Override
 	public void sendByteImmediately(byte b) throws Exception {
+		synchronized (writeLock) {
+			singleByte[0] = b;
+			sendBytesToComm(singleByte, 0, 1);
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		singleBuffer[0] = buffer;
 		try {
-			bufOut.write(b);
-			bufOut.flush();
-		} catch (SocketException e) {
-			closePort(); // very likely we got disconnected, attempt to disconnect gracefully
-			throw e;
-		} catch (IOException e) {
-			closePort(); // very likely we got disconnected, attempt to disconnect gracefully
-			throw e;
+			writeFully(singleBuffer, 1);
+		} finally {
+			singleBuffer[0] = null;
+		}
+	}
+
+	/**
+	 * Writes the whole buffers, waiting for the socket to become writable if
+	 * its send buffer is full.
+	 *
+	 * @throws IOException if the remote host doesn't accept the data within the write timeout
+	 */
+	private void writeFully(ByteBuffer[] buffers, int length) throws IOException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeTimeoutMs);
+		int offset = 0;
+		while (offset < length) {
+			if (channel.write(buffers, offset, length - offset) == 0) {
+				long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remainingMs <= 0) {
+					throw new IOException("Timed out writing to " + host + ":" + port + " after " + writeTimeoutMs + "ms");
+				}
+				writeSelector.select(remainingMs);
+				writeSelector.selectedKeys().clear();
+			}
+
+			if (!channel.isOpen()) {
+				throw new ClosedChannelException();
+			}
+
+			while (offset < length && !buffers[offset].hasRemaining()) {
+				offset++;
+			}
 		}
 	}
 
 	/**
 	 * Thread to accept data from remote host, and pass it to responseHandler
 	 */
+	@Override
 	public void run() {
-		String resp;
-		while(!Thread.interrupted() && !client.isClosed())
-		{
-			try {
-				if(inStream.ready() && (resp = bufIn.readLine()) != null) {
-					responseMessageHandler.handleResponse(resp + "\n");
+		try {
+			while (running) {
+				readSelector.select();
+				readSelector.selectedKeys().clear();
+
+				int bytesRead;
+				while ((bytesRead = channel.read(readBuffer)) > 0) {
+					readBuffer.flip();
+					responseMessageHandler.handleResponse(readBuffer);
+					readBuffer.clear();
 				}
-			} catch (SocketException e) {
-				e.printStackTrace();
-				return; // terminate thread if disconnected
-						//TODO: at some point, reconnecting should be considered
-			} catch (IOException e) {
-				e.printStackTrace();
-				return; // terminate thread if disconnected
-						//TODO: at some point, reconnecting should be considered
+
+				if (bytesRead < 0) {
+					LOGGER.info("The connection was closed by the remote host");
+					channel.close();
+					responseMessageHandler.notifyConnectionLost("The connection was closed by the remote host");
+					return;
+				}
+			}
+		} catch (IOException e) {
+			// terminate thread if disconnected
+			//TODO: at some point, reconnecting should be considered
+			if (running) {
+				LOGGER.log(Level.WARNING, "Couldn't read from the connection", e);
+				responseMessageHandler.notifyConnectionLost("Couldn't read from the connection: " + e.getMessage());
 			}
 		}
 	}
@@ -81,6 +81,16 @@ public class WSConnection  extends AbstractConnection implements Connection  {
         this.userSession.getBasicRemote().sendBinary(ByteBuffer.wrap(command.getBytes("UTF-8")), true);
     }
 
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) throws Exception {
+        this.userSession.getBasicRemote().sendBinary(ByteBuffer.wrap(bytes, offset, length), true);
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) throws Exception {
+        sendBytesToComm(batch.getBuffer(), 0, batch.getLength());
+    }
+
     @Override
     public boolean isOpen() {
         return this.userSession != null && this.userSession.isOpen();
@@ -0,0 +1,901 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.simulator;
+
+import com.willwinder.universalgcodesender.GrblUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodeTokenizer;
+import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.types.PointSegment;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A model of a GRBL 1.1 controller for testing the streaming without any
+ * hardware. It has:
+ * <ul>
+ *     <li>a bounded receive buffer where bytes that doesn't fit are dropped</li>
+ *     <li>a planner queue with a configurable number of blocks</li>
+ *     <li>motion with trapezoidal acceleration, see {@link SimulatorPlanner}</li>
+ *     <li>real time commands for status, feed hold, resume, reset, jog cancel and overrides</li>
+ *     <li>status reports with the "Bf:", "FS:" and "Ov:" fields</li>
+ * </ul>
+ *
+ * Like GRBL a line is read from the receive buffer and acknowledged with
+ * "ok" when all its motions have been queued in the planner, a full planner
+ * blocks the reading of more lines. Arcs are split into segments using the
+ * arc tolerance. The max rates ($110-$112), accelerations ($120-$122) and
+ * junction deviation ($11) settings are used for the motion, the same
+ * settings are used for the rotational axes as for X.
+ *
+ * Work coordinate offsets, probing, limits and the spindle are not
+ * simulated. The buffer data is included in the status report by default
+ * ($10=3).
+ *
+ * The simulator is not thread safe, it is driven by calling
+ * {@link #receive(byte)} and {@link #advance(long)} from a single thread.
+ *
+ * @author wwinder
+ */
+public class GrblSimulator {
+    public static final int DEFAULT_RX_BUFFER_SIZE = 128;
+    public static final int DEFAULT_PLANNER_BLOCKS = 15;
+    public static final String VERSION = "1.1h";
+    public static final String WELCOME_MESSAGE = "Grbl " + VERSION + " ['$' for help]";
+
+    private static final int AXES = 6;
+    private static final int LINE_BUFFER_SIZE = 80;
+    private static final double MM_PER_INCH = 25.4;
+
+    private enum State {
+        IDLE("Idle"),
+        RUN("Run"),
+        HOLD("Hold"),
+        JOG("Jog"),
+        ALARM("Alarm"),
+        CHECK("Check"),
+        DOOR("Door");
+
+        private final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Something which needs to be done before a line is acknowledged
+     */
+    private static class Action {
+        final SimulatorPlanner.Block block;
+        final boolean synchronize;
+        double dwellSeconds;
+
+        Action(SimulatorPlanner.Block block, boolean synchronize, double dwellSeconds) {
+            this.block = block;
+            this.synchronize = synchronize;
+            this.dwellSeconds = dwellSeconds;
+        }
+    }
+
+    private final Consumer<String> output;
+    private final byte[] rxBuffer;
+    private final int plannerBlocks;
+    private final SimulatorPlanner planner;
+    private final Map<Integer, String> settings = new LinkedHashMap<>();
+    private final Deque<Action> lineActions = new ArrayDeque<>();
+    private final StringBuilder line = new StringBuilder(LINE_BUFFER_SIZE);
+    private final GcodeTokenizer tokenizer = new GcodeTokenizer();
+
+    private int rxHead;
+    private int rxCount;
+    private long rxOverflowCount;
+    private long linesProcessed;
+
+    private GcodeState gcodeState;
+    private State state;
+    private boolean checkMode;
+    private boolean lineInProgress;
+    private boolean holdRequested;
+    private boolean doorOpen;
+    private boolean jogCancelRequested;
+    private boolean flood;
+    private boolean mist;
+
+    private int feedOverride = 100;
+    private int rapidOverride = 100;
+    private int spindleOverride = 100;
+    private int overrideReportCounter;
+    private int wcoReportCounter;
+
+    /**
+     * @param rxBufferSize  the size of the receive buffer in bytes
+     * @param plannerBlocks the number of blocks in the planner queue
+     * @param output        receives each response line from the controller
+     */
+    public GrblSimulator(int rxBufferSize, int plannerBlocks, Consumer<String> output) {
+        if (rxBufferSize < LINE_BUFFER_SIZE || plannerBlocks < 1) {
+            throw new IllegalArgumentException("The receive buffer must fit a line and the planner needs at least one block");
+        }
+
+        this.output = output;
+        this.rxBuffer = new byte[rxBufferSize];
+        this.plannerBlocks = plannerBlocks;
+        this.planner = new SimulatorPlanner(plannerBlocks, AXES);
+        initializeSettings();
+        reset();
+    }
+
+    public GrblSimulator(Consumer<String> output) {
+        this(DEFAULT_RX_BUFFER_SIZE, DEFAULT_PLANNER_BLOCKS, output);
+    }
+
+    private void initializeSettings() {
+        settings.put(0, "10");
+        settings.put(1, "25");
+        settings.put(2, "0");
+        settings.put(3, "0");
+        settings.put(4, "0");
+        settings.put(5, "0");
+        settings.put(6, "0");
+        settings.put(10, "3");
+        settings.put(11, "0.010");
+        settings.put(12, "0.002");
+        settings.put(13, "0");
+        settings.put(20, "0");
+        settings.put(21, "0");
+        settings.put(22, "0");
+        settings.put(23, "0");
+        settings.put(24, "25.000");
+        settings.put(25, "500.000");
+        settings.put(26, "250");
+        settings.put(27, "1.000");
+        settings.put(30, "1000");
+        settings.put(31, "0");
+        settings.put(32, "0");
+        settings.put(100, "250.000");
+        settings.put(101, "250.000");
+        settings.put(102, "250.000");
+        settings.put(110, "500.000");
+        settings.put(111, "500.000");
+        settings.put(112, "500.000");
+        settings.put(120, "10.000");
+        settings.put(121, "10.000");
+        settings.put(122, "10.000");
+        settings.put(130, "200.000");
+        settings.put(131, "200.000");
+        settings.put(132, "200.000");
+    }
+
+    /**
+     * Performs a soft reset, if the machine was moving the position is lost
+     * and the controller goes into alarm.
+     */
+    public final void reset() {
+        boolean wasMoving = planner.isMoving() && state != null;
+
+        rxHead = 0;
+        rxCount = 0;
+        line.setLength(0);
+        lineActions.clear();
+        lineInProgress = false;
+        planner.clear();
+        planner.setJunctionDeviation(getSetting(11));
+
+        Position position = new Position(planner.getPosition()[0], planner.getPosition()[1], planner.getPosition()[2],
+                planner.getPosition()[3], planner.getPosition()[4], planner.getPosition()[5], Units.MM);
+        gcodeState = new GcodeState();
+        gcodeState.currentPoint = position;
+
+        holdRequested = false;
+        doorOpen = false;
+        jogCancelRequested = false;
+        checkMode = false;
+        flood = false;
+        mist = false;
+        feedOverride = 100;
+        rapidOverride = 100;
+        spindleOverride = 100;
+        overrideReportCounter = 0;
+        wcoReportCounter = 0;
+
+        if (wasMoving) {
+            output.accept("ALARM:3");
+            state = State.ALARM;
+        } else if (state != State.ALARM) {
+            state = State.IDLE;
+        }
+
+        output.accept("");
+        output.accept(WELCOME_MESSAGE);
+        if (state == State.ALARM) {
+            output.accept("[MSG:'$H'|'$X' to unlock]");
+        }
+    }
+
+    /**
+     * Receives a byte from the host. Real time commands are handled at once
+     * while other bytes are added to the receive buffer.
+     *
+     * @param b the byte to receive
+     * @return false if the receive buffer was full and the byte was dropped
+     */
+    public boolean receive(byte b) {
+        if (handleRealTimeCommand(b)) {
+            return true;
+        }
+
+        if (rxCount == rxBuffer.length) {
+            rxOverflowCount++;
+            return false;
+        }
+
+        rxBuffer[(rxHead + rxCount) % rxBuffer.length] = b;
+        rxCount++;
+        return true;
+    }
+
+    /**
+     * Moves the simulation forward in time, reading any lines which can be
+     * processed and moving the machine.
+     *
+     * @param nanos the time to simulate
+     */
+    public void advance(long nanos) {
+        double seconds = nanos / 1e9;
+        processLines();
+
+        boolean hold = holdRequested || jogCancelRequested || doorOpen;
+        planner.advance(seconds, feedOverride / 100.0, rapidOverride / 100.0, hold);
+        advanceDwell(seconds);
+
+        if (jogCancelRequested && planner.getCurrentSpeed() <= 0) {
+            finishJogCancel();
+        }
+
+        updateState();
+        processLines();
+        updateState();
+    }
+
+    private void advanceDwell(double seconds) {
+        Action action = lineActions.peek();
+        if (action != null && action.block == null && !action.synchronize && !planner.isMoving()) {
+            action.dwellSeconds -= seconds;
+        }
+    }
+
+    public long getRxOverflowCount() {
+        return rxOverflowCount;
+    }
+
+    public long getLinesProcessed() {
+        return linesProcessed;
+    }
+
+    public int getRxBytesAvailable() {
+        return rxBuffer.length - rxCount;
+    }
+
+    public int getPlannerBlocksAvailable() {
+        return planner.available();
+    }
+
+    /**
+     * @return the machine position in millimeters
+     */
+    public Position getMachinePosition() {
+        double[] p = planner.getPosition();
+        return new Position(p[0], p[1], p[2], p[3], p[4], p[5], Units.MM);
+    }
+
+    /**
+     * @return the current feed rate in millimeters per minute
+     */
+    public double getFeedRate() {
+        return planner.getCurrentSpeed() * 60;
+    }
+
+    /**
+     * @return true if there are no pending lines, planned blocks or motion
+     */
+    public boolean isIdle() {
+        return rxCount == 0 && !lineInProgress && !planner.isMoving();
+    }
+
+    public String getState() {
+        return getStateString();
+    }
+
+    private void updateState() {
+        if (state == State.ALARM || state == State.DOOR) {
+            if (state == State.DOOR && !doorOpen && !planner.isMoving()) {
+                state = State.IDLE;
+            }
+            return;
+        }
+
+        if (doorOpen) {
+            state = State.DOOR;
+        } else if (holdRequested && (planner.isMoving() || state == State.HOLD)) {
+            state = State.HOLD;
+        } else if (planner.isJogging()) {
+            state = State.JOG;
+        } else if (planner.isMoving()) {
+            state = State.RUN;
+        } else {
+            state = checkMode ? State.CHECK : State.IDLE;
+        }
+    }
+
+    private String getStateString() {
+        switch (state) {
+            case HOLD:
+                return state.name + (planner.getCurrentSpeed() > 0 ? ":1" : ":0");
+            case DOOR:
+                return state.name + (planner.getCurrentSpeed() > 0 ? ":2" : ":0");
+            default:
+                return state.name;
+        }
+    }
+
+    private boolean handleRealTimeCommand(byte b) {
+        switch (b) {
+            case GrblUtils.GRBL_STATUS_COMMAND:
+                output.accept(createStatusReport());
+                return true;
+            case GrblUtils.GRBL_PAUSE_COMMAND:
+                if (planner.isJogging()) {
+                    jogCancelRequested = true;
+                } else if (state == State.RUN || state == State.IDLE && !planner.isEmpty()) {
+                    holdRequested = true;
+                    state = State.HOLD;
+                }
+                return true;
+            case GrblUtils.GRBL_RESUME_COMMAND:
+                if (state == State.HOLD && planner.getCurrentSpeed() <= 0) {
+                    holdRequested = false;
+                    updateState();
+                } else if (state == State.DOOR && !planner.isMoving()) {
+                    doorOpen = false;
+                    state = State.IDLE;
+                    updateState();
+                }
+                return true;
+            case GrblUtils.GRBL_RESET_COMMAND:
+                reset();
+                return true;
+            case GrblUtils.GRBL_DOOR_COMMAND:
+                if (state != State.ALARM) {
+                    doorOpen = true;
+                    state = State.DOOR;
+                }
+                return true;
+            case GrblUtils.GRBL_JOG_CANCEL_COMMAND:
+                if (planner.isJogging()) {
+                    jogCancelRequested = true;
+                }
+                return true;
+            default:
+                break;
+        }
+
+        // All other extended ASCII characters are real time commands
+        if ((b & 0x80) == 0) {
+            return false;
+        }
+
+        int command = b & 0xFF;
+        int feedBefore = feedOverride;
+        int rapidBefore = rapidOverride;
+        int spindleBefore = spindleOverride;
+        switch (command) {
+            case 0x90: feedOverride = 100; break;
+            case 0x91: feedOverride = Math.min(200, feedOverride + 10); break;
+            case 0x92: feedOverride = Math.max(10, feedOverride - 10); break;
+            case 0x93: feedOverride = Math.min(200, feedOverride + 1); break;
+            case 0x94: feedOverride = Math.max(10, feedOverride - 1); break;
+            case 0x95: rapidOverride = 100; break;
+            case 0x96: rapidOverride = 50; break;
+            case 0x97: rapidOverride = 25; break;
+            case 0x99: spindleOverride = 100; break;
+            case 0x9A: spindleOverride = Math.min(200, spindleOverride + 10); break;
+            case 0x9B: spindleOverride = Math.max(10, spindleOverride - 10); break;
+            case 0x9C: spindleOverride = Math.min(200, spindleOverride + 1); break;
+            case 0x9D: spindleOverride = Math.max(10, spindleOverride - 1); break;
+            case 0xA0: flood = !flood; overrideReportCounter = 0; break;
+            case 0xA1: mist = !mist; overrideReportCounter = 0; break;
+            default:
+                // Unknown commands are ignored
+                break;
+        }
+
+        if (feedBefore != feedOverride || rapidBefore != rapidOverride || spindleBefore != spindleOverride) {
+            overrideReportCounter = 0;
+        }
+        return true;
+    }
+
+    private void finishJogCancel() {
+        jogCancelRequested = false;
+        planner.clear();
+        lineActions.clear();
+        if (lineInProgress) {
+            lineInProgress = false;
+            output.accept("ok");
+        }
+
+        // Any buffered jog commands are discarded as well
+        rxHead = 0;
+        rxCount = 0;
+        line.setLength(0);
+        syncGcodePosition();
+    }
+
+    private void syncGcodePosition() {
+        Position machinePosition = getMachinePosition();
+        gcodeState.currentPoint = machinePosition.getPositionIn(gcodeState.getUnits());
+    }
+
+    /**
+     * Reads and executes lines from the receive buffer until it is empty or
+     * a line is waiting for room in the planner.
+     */
+    private void processLines() {
+        while (true) {
+            if (lineInProgress && !continueLine()) {
+                return;
+            }
+
+            String nextLine = readLine();
+            if (nextLine == null) {
+                return;
+            }
+            executeLine(nextLine);
+        }
+    }
+
+    private String readLine() {
+        for (int i = 0; i < rxCount; i++) {
+            byte b = rxBuffer[(rxHead + i) % rxBuffer.length];
+            if (b == '\n' || b == '\r') {
+                line.setLength(0);
+                for (int j = 0; j < i; j++) {
+                    line.append((char) (rxBuffer[(rxHead + j) % rxBuffer.length] & 0xFF));
+                }
+                rxHead = (rxHead + i + 1) % rxBuffer.length;
+                rxCount -= i + 1;
+                return line.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Completes the actions of the current line, returns true if the line
+     * has been acknowledged.
+     */
+    private boolean continueLine() {
+        while (!lineActions.isEmpty()) {
+            Action action = lineActions.peek();
+            if (action.synchronize) {
+                if (planner.isMoving()) {
+                    return false;
+                }
+            } else if (action.block != null) {
+                if (planner.isFull()) {
+                    return false;
+                }
+                planner.add(action.block);
+            } else if (action.dwellSeconds > 0) {
+                return false;
+            }
+            lineActions.poll();
+        }
+
+        lineInProgress = false;
+        output.accept("ok");
+        return true;
+    }
+
+    private void executeLine(String command) {
+        linesProcessed++;
+        String trimmed = command.trim();
+        if (trimmed.replace(" ", "").length() >= LINE_BUFFER_SIZE) {
+            output.accept("error:14");
+            return;
+        }
+
+        if (trimmed.isEmpty()) {
+            output.accept("ok");
+        } else if (trimmed.startsWith("$")) {
+            executeSystemCommand(trimmed);
+        } else if (state == State.ALARM || state == State.JOG) {
+            output.accept("error:9");
+        } else {
+            executeGcode(trimmed);
+        }
+    }
+
+    private void executeSystemCommand(String command) {
+        String upper = command.toUpperCase(Locale.ROOT);
+        if (upper.startsWith("$J=")) {
+            executeJog(command.substring(3));
+            return;
+        }
+
+        switch (upper) {
+            case "$":
+                output.accept("[HLP:$$ $# $G $I $N $x=val $Nx=line $J=line $SLP $C $X $H ~ ! ? ctrl-x]");
+                break;
+            case "$$":
+                settings.forEach((key, value) -> output.accept("$" + key + "=" + value));
+                break;
+            case "$#":
+                for (String offset : new String[]{"G54", "G55", "G56", "G57", "G58", "G59", "G28", "G30", "G92"}) {
+                    output.accept("[" + offset + ":0.000,0.000,0.000]");
+                }
+                output.accept("[TLO:0.000]");
+                output.accept("[PRB:0.000,0.000,0.000:0]");
+                break;
+            case "$G":
+                output.accept(createParserStateReport());
+                break;
+            case "$I":
+                output.accept("[VER:" + VERSION + ".20190825:]");
+                output.accept("[OPT:V," + plannerBlocks + "," + rxBuffer.length + "]");
+                break;
+            case "$N":
+                output.accept("$N0=");
+                output.accept("$N1=");
+                break;
+            case "$C":
+                if (checkMode) {
+                    output.accept("[MSG:Disabled]");
+                    output.accept("ok");
+                    reset();
+                    return;
+                } else if (state != State.IDLE) {
+                    output.accept("error:8");
+                    return;
+                }
+                checkMode = true;
+                state = State.CHECK;
+                output.accept("[MSG:Enabled]");
+                break;
+            case "$X":
+                if (state == State.ALARM) {
+                    output.accept("[MSG:Caution: Unlocked]");
+                    state = State.IDLE;
+                }
+                break;
+            case "$H":
+                if (getSetting(22) == 0) {
+                    output.accept("error:5");
+                    return;
+                }
+                planner.setPosition(new double[AXES]);
+                syncGcodePosition();
+                state = State.IDLE;
+                break;
+            case "$SLP":
+                break;
+            default:
+                if (!executeSettingCommand(upper)) {
+                    output.accept("error:3");
+                    return;
+                }
+                break;
+        }
+        output.accept("ok");
+    }
+
+    private boolean executeSettingCommand(String command) {
+        int separator = command.indexOf('=');
+        if (separator < 2) {
+            return false;
+        }
+
+        String key = command.substring(1, separator);
+        String value = command.substring(separator + 1);
+        if (key.startsWith("N") || key.startsWith("RST")) {
+            return true;
+        }
+
+        try {
+            int setting = Integer.parseInt(key);
+            Double.parseDouble(value);
+            if (!settings.containsKey(setting)) {
+                return false;
+            }
+            settings.put(setting, value);
+            planner.setJunctionDeviation(getSetting(11));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void executeJog(String jogCommand) {
+        if (state != State.IDLE && state != State.JOG) {
+            output.accept("error:8");
+            return;
+        }
+
+        if (Double.isNaN(tokenizer.tokenize(jogCommand).value('F'))) {
+            output.accept("error:22");
+            return;
+        }
+
+        try {
+            // The jog command doesn't change the modal state except for the position
+            GcodeState jogState = gcodeState.copy();
+            jogState.currentMotionMode = Code.G1;
+            List<GcodeParser.GcodeMeta> metas = GcodeParserUtils.processCommand("G1 " + jogCommand, 0, jogState, false);
+            double[] start = planner.getPlannedPosition().clone();
+            for (GcodeParser.GcodeMeta meta : metas) {
+                if (meta.point != null) {
+                    double feedRate = toMillimeters(meta.point.getSpeed(), meta.state.isMetric) / 60;
+                    double[] target = toMachinePosition(meta.point.point());
+                    lineActions.add(new Action(createBlock(start, target, feedRate, false, true), false, 0));
+                    start = target;
+                    gcodeState.currentPoint = meta.point.point().getPositionIn(gcodeState.getUnits());
+                }
+            }
+            startLine();
+        } catch (GcodeParserException e) {
+            output.accept("error:20");
+        }
+    }
+
+    private void executeGcode(String command) {
+        if (checkMode) {
+            try {
+                gcodeState = parseGcode(command, null);
+                output.accept("ok");
+            } catch (GcodeParserException e) {
+                output.accept("error:20");
+            }
+            return;
+        }
+
+        try {
+            GcodeState before = gcodeState;
+            gcodeState = parseGcode(command, lineActions);
+            if (before.spindle != gcodeState.spindle || before.coolant != gcodeState.coolant) {
+                // Spindle and coolant changes waits for the motion to complete
+                lineActions.addFirst(new Action(null, true, 0));
+            }
+            startLine();
+        } catch (GcodeParserException e) {
+            lineActions.clear();
+            output.accept(e.getMessage() != null && e.getMessage().startsWith("error:") ? e.getMessage() : "error:20");
+        }
+    }
+
+    private void startLine() {
+        lineInProgress = true;
+        continueLine();
+    }
+
+    /**
+     * Parses a gcode command and creates the actions for it.
+     *
+     * @param command the command to parse
+     * @param actions the actions to add to, or null if the command should only be parsed
+     * @return the new gcode state
+     */
+    private GcodeState parseGcode(String command, Deque<Action> actions) throws GcodeParserException {
+        List<GcodeParser.GcodeMeta> metas = GcodeParserUtils.processCommand(command, 0, gcodeState, true);
+        if (metas == null || metas.isEmpty()) {
+            return gcodeState;
+        }
+
+        GcodeState state = gcodeState;
+        double[] start = planner.getPlannedPosition().clone();
+        for (GcodeParser.GcodeMeta meta : metas) {
+            if (meta.code == Code.G4) {
+                double seconds = tokenizer.tokenize(command).value('P');
+                if (actions != null && !Double.isNaN(seconds)) {
+                    actions.add(new Action(null, true, 0));
+                    actions.add(new Action(null, false, seconds));
+                }
+            } else if (meta.code == Code.G28 || meta.code == Code.G30) {
+                // Moves to the stored position which is always the origin
+                double[] target = new double[AXES];
+                if (actions != null) {
+                    actions.add(new Action(createBlock(start, target, 0, true, false), false, 0));
+                }
+                start = target;
+                meta.state.currentPoint = new Position(0, 0, 0, 0, 0, 0, meta.state.getUnits());
+            } else if (meta.point != null && meta.code != null && meta.code.consumesMotion()) {
+                boolean rapid = meta.point.isFastTraverse();
+                double feedRate = toMillimeters(meta.point.getSpeed(), meta.state.isMetric) / 60;
+                if (!rapid && feedRate <= 0) {
+                    throw new GcodeParserException("error:22");
+                }
+
+                for (double[] target : getTargets(meta.point, state)) {
+                    if (actions != null) {
+                        actions.add(new Action(createBlock(start, target, feedRate, rapid, false), false, 0));
+                    }
+                    start = target;
+                }
+            }
+
+            if (meta.state != null) {
+                state = meta.state;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns the targets for a motion, an arc is split into segments
+     * using the arc tolerance like in GRBL.
+     */
+    private Iterable<double[]> getTargets(PointSegment point, GcodeState startState) {
+        Deque<double[]> targets = new ArrayDeque<>();
+        if (!point.isArc()) {
+            targets.add(toMachinePosition(point.point()));
+            return targets;
+        }
+
+        double radius = point.getRadius();
+        double tolerance = getSetting(12);
+        double segmentLength = 2 * Math.sqrt(Math.max(tolerance * (2 * radius - tolerance), 0));
+        List<Position> positions = GcodePreprocessorUtils.generatePointsAlongArcBDring(
+                startState.currentPoint, point.point(), point.center(), point.isClockwise(), radius,
+                0, segmentLength > 0 ? segmentLength : radius, new PlaneFormatter(point.getPlaneState()));
+
+        if (positions == null) {
+            targets.add(toMachinePosition(point.point()));
+            return targets;
+        }
+
+        // The first position is the start point
+        for (int i = 1; i < positions.size(); i++) {
+            targets.add(toMachinePosition(positions.get(i)));
+        }
+        return targets;
+    }
+
+    private SimulatorPlanner.Block createBlock(double[] start, double[] target, double feedRate, boolean rapid, boolean jog) {
+        // Limit the speed and acceleration by the axes which are moving
+        double length = 0;
+        for (int i = 0; i < AXES; i++) {
+            length += (target[i] - start[i]) * (target[i] - start[i]);
+        }
+        length = Math.sqrt(length);
+
+        double maxSpeed = Double.MAX_VALUE;
+        double acceleration = Double.MAX_VALUE;
+        for (int i = 0; i < AXES && length > 0; i++) {
+            double unit = Math.abs(target[i] - start[i]) / length;
+            if (unit > 0) {
+                int axis = Math.min(i, 2);
+                maxSpeed = Math.min(maxSpeed, getSetting(110 + axis) / 60 / unit);
+                acceleration = Math.min(acceleration, getSetting(120 + axis) / unit);
+            }
+        }
+
+        double nominalSpeed = rapid ? maxSpeed : Math.min(feedRate, maxSpeed);
+        return new SimulatorPlanner.Block(start, target, nominalSpeed, maxSpeed, acceleration, rapid, jog);
+    }
+
+    private double[] toMachinePosition(Position position) {
+        Position mm = position.getPositionIn(Units.MM);
+        return new double[]{
+                mm.x, mm.y, mm.z,
+                Double.isNaN(mm.a) ? 0 : mm.a,
+                Double.isNaN(mm.b) ? 0 : mm.b,
+                Double.isNaN(mm.c) ? 0 : mm.c};
+    }
+
+    private static double toMillimeters(double value, boolean isMetric) {
+        return isMetric ? value : value * MM_PER_INCH;
+    }
+
+    private double getSetting(int setting) {
+        return Double.parseDouble(settings.getOrDefault(setting, "0"));
+    }
+
+    private String createParserStateReport() {
+        return String.format(Locale.ROOT, "[GC:%s %s %s %s %s %s %s %s T0 F%.0f S%.0f]",
+                gcodeState.currentMotionMode == null ? Code.G0 : gcodeState.currentMotionMode,
+                gcodeState.offset,
+                gcodeState.plane == null ? Code.G17 : gcodeState.plane.code,
+                gcodeState.units,
+                gcodeState.distanceMode,
+                gcodeState.feedMode,
+                gcodeState.spindle,
+                gcodeState.coolant,
+                gcodeState.speed,
+                gcodeState.spindleSpeed);
+    }
+
+    private String createStatusReport() {
+        double[] position = planner.getPosition();
+        StringBuilder report = new StringBuilder(96);
+        report.append('<').append(getStateString());
+
+        int statusMask = (int) getSetting(10);
+        report.append((statusMask & 1) != 0 ? "|MPos:" : "|WPos:");
+        report.append(String.format(Locale.ROOT, "%.3f,%.3f,%.3f", position[0], position[1], position[2]));
+
+        if ((statusMask & 2) != 0) {
+            report.append("|Bf:").append(planner.available()).append(',').append(getRxBytesAvailable());
+        }
+
+        boolean spindleOn = gcodeState.spindle == Code.M3 || gcodeState.spindle == Code.M4;
+        double spindleSpeed = spindleOn ? gcodeState.spindleSpeed * spindleOverride / 100 : 0;
+        report.append(String.format(Locale.ROOT, "|FS:%.0f,%.0f", getFeedRate(), spindleSpeed));
+
+        boolean busy = state != State.IDLE && state != State.CHECK && state != State.ALARM;
+        if (wcoReportCounter > 0) {
+            wcoReportCounter--;
+        } else {
+            wcoReportCounter = busy ? 29 : 9;
+            report.append("|WCO:0.000,0.000,0.000");
+            // The overrides are reported in the next status
+            if (overrideReportCounter == 0) {
+                overrideReportCounter = 1;
+            }
+        }
+
+        if (overrideReportCounter > 0) {
+            overrideReportCounter--;
+        } else {
+            overrideReportCounter = busy ? 19 : 9;
+            report.append("|Ov:").append(feedOverride).append(',').append(rapidOverride).append(',').append(spindleOverride);
+
+            StringBuilder accessories = new StringBuilder();
+            if (gcodeState.spindle == Code.M3) {
+                accessories.append('S');
+            } else if (gcodeState.spindle == Code.M4) {
+                accessories.append('C');
+            }
+            if (flood || gcodeState.coolant == Code.M8) {
+                accessories.append('F');
+            }
+            if (mist || gcodeState.coolant == Code.M7) {
+                accessories.append('M');
+            }
+            if (accessories.length() > 0) {
+                report.append("|A:").append(accessories);
+            }
+        }
+
+        report.append('>');
+        return report.toString();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.simulator;
+
+/**
+ * A simulated motion planner modeled after the GRBL planner. Blocks are
+ * queued with a maximum junction speed calculated from the junction
+ * deviation, and the entry speeds are recalculated with a backward and
+ * forward pass whenever the queue changes so that the machine always can
+ * stop at the end of the last block.
+ *
+ * The executing block is integrated in small time steps with a trapezoidal
+ * velocity profile: accelerating towards the nominal speed, cruising and
+ * decelerating when needed to reach the planned exit speed.
+ *
+ * All lengths are in millimeters and all speeds in millimeters per second.
+ *
+ * @author wwinder
+ */
+class SimulatorPlanner {
+    // The largest time step used when integrating the motion
+    private static final double MAX_TIME_STEP = 0.001;
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * A linear motion or a dwell
+     */
+    static class Block {
+        final double[] target;
+        final double[] unitVector;
+        final double length;
+        final double nominalSpeed;
+        final double maxSpeed;
+        final double acceleration;
+        final boolean rapid;
+        final boolean jog;
+
+        double maxEntrySpeed;
+        double entrySpeed;
+
+        Block(double[] start, double[] target, double nominalSpeed, double maxSpeed, double acceleration, boolean rapid, boolean jog) {
+            this.target = target.clone();
+            this.unitVector = new double[target.length];
+            double sum = 0;
+            for (int i = 0; i < target.length; i++) {
+                unitVector[i] = target[i] - start[i];
+                sum += unitVector[i] * unitVector[i];
+            }
+            this.length = Math.sqrt(sum);
+            if (length > 0) {
+                for (int i = 0; i < target.length; i++) {
+                    unitVector[i] /= length;
+                }
+            }
+            this.nominalSpeed = nominalSpeed;
+            this.maxSpeed = maxSpeed;
+            this.acceleration = acceleration;
+            this.rapid = rapid;
+            this.jog = jog;
+        }
+    }
+
+    private final Block[] blocks;
+    private final double[] position;
+    private int head = 0;
+    private int count = 0;
+
+    // The distance traveled along the executing block
+    private double blockDistance = 0;
+    private double currentSpeed = 0;
+    private double junctionDeviation = 0.01;
+
+    SimulatorPlanner(int capacity, int axes) {
+        this.blocks = new Block[capacity];
+        this.position = new double[axes];
+    }
+
+    void setJunctionDeviation(double junctionDeviation) {
+        this.junctionDeviation = junctionDeviation;
+    }
+
+    boolean isFull() {
+        return count == blocks.length;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int available() {
+        return blocks.length - count;
+    }
+
+    /**
+     * @return the current speed in mm/s
+     */
+    double getCurrentSpeed() {
+        return currentSpeed;
+    }
+
+    boolean isMoving() {
+        return count > 0 || currentSpeed > 0;
+    }
+
+    boolean isJogging() {
+        return count > 0 && blocks[head].jog;
+    }
+
+    double[] getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the position where the last queued block ends, which is where
+     * the next block starts.
+     */
+    double[] getPlannedPosition() {
+        if (count == 0) {
+            return position;
+        }
+        return blocks[index(count - 1)].target;
+    }
+
+    void setPosition(double[] newPosition) {
+        System.arraycopy(newPosition, 0, position, 0, position.length);
+    }
+
+    /**
+     * Queues a block, the planner must not be full.
+     */
+    void add(Block block) {
+        if (isFull()) {
+            throw new IllegalStateException("The planner is full");
+        }
+
+        if (block.length < EPSILON) {
+            return;
+        }
+
+        if (count == 0) {
+            // The machine is at rest when there are no blocks
+            block.maxEntrySpeed = 0;
+        } else {
+            Block previous = blocks[index(count - 1)];
+            block.maxEntrySpeed = Math.min(
+                    getJunctionSpeed(previous, block),
+                    Math.min(previous.nominalSpeed, block.nominalSpeed));
+        }
+
+        blocks[index(count)] = block;
+        count++;
+    }
+
+    /**
+     * Removes all blocks and stops the motion immediately, the current
+     * position is kept.
+     */
+    void clear() {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = null;
+        }
+        head = 0;
+        count = 0;
+        blockDistance = 0;
+        currentSpeed = 0;
+    }
+
+    /**
+     * Moves the machine forward in time.
+     *
+     * @param seconds the time to move
+     * @param feedFactor the feed override factor
+     * @param rapidFactor the rapid override factor
+     * @param hold true if the motion should decelerate to a stop
+     */
+    void advance(double seconds, double feedFactor, double rapidFactor, boolean hold) {
+        double remainingTime = seconds;
+        while (remainingTime > EPSILON && count > 0) {
+            if (hold && currentSpeed <= 0) {
+                return;
+            }
+
+            double dt = Math.min(remainingTime, MAX_TIME_STEP);
+            remainingTime -= step(dt, feedFactor, rapidFactor, hold);
+        }
+
+        if (count == 0) {
+            currentSpeed = 0;
+        }
+    }
+
+    /**
+     * Integrates the executing block for a time step or until the block
+     * is completed.
+     *
+     * @return the time that was used
+     */
+    private double step(double dt, double feedFactor, double rapidFactor, boolean hold) {
+        recalculate();
+
+        Block block = blocks[head];
+        double remaining = block.length - blockDistance;
+        double nominal = Math.min(block.nominalSpeed * (block.rapid ? rapidFactor : feedFactor), block.maxSpeed);
+        double exitSpeed = hold ? 0 : getExitSpeed();
+        double acceleration = block.acceleration;
+
+        double speed = currentSpeed;
+        double newSpeed;
+        if (hold) {
+            newSpeed = Math.max(0, speed - acceleration * dt);
+        } else if ((speed * speed - exitSpeed * exitSpeed) / (2 * acceleration) >= remaining - EPSILON) {
+            newSpeed = Math.max(exitSpeed, speed - acceleration * dt);
+        } else if (speed > nominal) {
+            newSpeed = Math.max(nominal, speed - acceleration * dt);
+        } else {
+            newSpeed = Math.min(nominal, speed + acceleration * dt);
+        }
+
+        double distance = (speed + newSpeed) / 2 * dt;
+        if (distance < remaining && !(newSpeed <= 0 && !hold)) {
+            blockDistance += distance;
+            currentSpeed = newSpeed;
+            updatePosition(block);
+            return dt;
+        }
+
+        // The block is completed within this step
+        double averageSpeed = Math.max((speed + newSpeed) / 2, EPSILON);
+        double usedTime = Math.min(dt, remaining / averageSpeed);
+        System.arraycopy(block.target, 0, position, 0, position.length);
+        blocks[head] = null;
+        head = index(1);
+        count--;
+        blockDistance = 0;
+        currentSpeed = count == 0 ? 0 : Math.min(newSpeed, blocks[head].entrySpeed);
+        return Math.max(usedTime, EPSILON);
+    }
+
+    private void updatePosition(Block block) {
+        for (int i = 0; i < position.length; i++) {
+            position[i] = block.target[i] - block.unitVector[i] * (block.length - blockDistance);
+        }
+    }
+
+    private double getExitSpeed() {
+        return count > 1 ? blocks[index(1)].entrySpeed : 0;
+    }
+
+    /**
+     * Calculates the entry speeds of the queued blocks, making sure that the
+     * machine can stop at the end of the last block and that the speeds can
+     * be reached from the current speed of the executing block.
+     */
+    private void recalculate() {
+        if (count < 2) {
+            return;
+        }
+
+        // Backward pass, the last block must end at rest
+        double exitSpeed = 0;
+        for (int i = count - 1; i > 0; i--) {
+            Block block = blocks[index(i)];
+            block.entrySpeed = Math.min(block.maxEntrySpeed,
+                    Math.sqrt(exitSpeed * exitSpeed + 2 * block.acceleration * block.length));
+            exitSpeed = block.entrySpeed;
+        }
+
+        // Forward pass from the executing block
+        Block executing = blocks[head];
+        double remaining = executing.length - blockDistance;
+        double reachable = Math.sqrt(currentSpeed * currentSpeed + 2 * executing.acceleration * remaining);
+        for (int i = 1; i < count; i++) {
+            Block block = blocks[index(i)];
+            block.entrySpeed = Math.min(block.entrySpeed, reachable);
+            reachable = Math.sqrt(block.entrySpeed * block.entrySpeed + 2 * block.acceleration * block.length);
+        }
+    }
+
+    /**
+     * The maximum speed through the junction between two blocks using the
+     * junction deviation, the same approximation of the centripetal
+     * acceleration as in GRBL.
+     */
+    private double getJunctionSpeed(Block previous, Block block) {
+        double cosTheta = 0;
+        for (int i = 0; i < block.unitVector.length; i++) {
+            cosTheta -= previous.unitVector[i] * block.unitVector[i];
+        }
+
+        if (cosTheta > 0.999999) {
+            // A full reversal
+            return 0;
+        }
+        if (cosTheta < -0.999999) {
+            // A straight line
+            return Double.MAX_VALUE;
+        }
+
+        double sinThetaD2 = Math.sqrt(0.5 * (1.0 - cosTheta));
+        double acceleration = Math.min(previous.acceleration, block.acceleration);
+        return Math.sqrt(acceleration * junctionDeviation * sinThetaD2 / (1.0 - sinThetaD2));
+    }
+
+    private int index(int offset) {
+        return (head + offset) % blocks.length;
+    }
+}
@@ -91,6 +91,13 @@ public class GcodeParser implements IGcodeParser {
         return this.processors.size();
     }
 
+    /**
+     * @return the command processor at the given index, in the order they are applied.
+     */
+    public CommandProcessor getCommandProcessor(int index) {
+        return this.processors.get(index);
+    }
+
     /**
      * Add a preprocessor to use with the preprocessCommand method.
      */
@@ -121,6 +128,23 @@ public class GcodeParser implements IGcodeParser {
         this.state = new GcodeState();
         this.state.commandNumber = -1;
     }
+
+    /**
+     * Resets the parser to continue from the given state, for example the
+     * state at the beginning of a chunk of a larger program.
+     */
+    public void reset(GcodeState initialState) {
+        this.statsProcessor = new Stats();
+        this.state = initialState.copy();
+    }
+
+    /**
+     * @return true if any command processor must see the commands one at a time, in order.
+     * @see CommandProcessor#isSequential()
+     */
+    public boolean isSequential() {
+        return processors.isSequential();
+    }
     
     /**
      * Add a command to be processed with no line number association.
@@ -180,4 +204,16 @@ public class GcodeParser implements IGcodeParser {
     public List<String> preprocessCommand(String command, final GcodeState initialState) throws GcodeParserException {
         return processors.processCommand(command, initialState);
     }
+
+    /**
+     * Applies a single command processor to the results of the processors before it, which makes it possible to
+     * continue processing commands from the results of an earlier run. Does not change the parser state.
+     *
+     * @param commands the commands returned by the processors before the given index
+     * @param initialState the state before the original command was applied
+     * @param index the index of the command processor to apply
+     */
+    public List<String> preprocessCommands(List<String> commands, final GcodeState initialState, int index) throws GcodeParserException {
+        return processors.processCommands(commands, initialState, index);
+    }
 }
@@ -21,6 +21,7 @@ package com.willwinder.universalgcodesender.gcode;
 import com.google.common.base.Preconditions;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeTokenizer;
 import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
@@ -45,9 +46,10 @@ public class GcodePreprocessorUtils {
     private static final String EMPTY = "";
     private static final Pattern COMMENTPARSE = Pattern.compile("(?<=\\()[^()]*|(?<=;).*|%");
 
-    private static int decimalLength = -1;
-    private static Pattern decimalPattern;
-    private static DecimalFormat decimalFormatter;
+    // The formatter isn't thread safe, keep one per thread.
+    private static final ThreadLocal<DecimalTruncator> DECIMAL_TRUNCATOR = new ThreadLocal<>();
+
+    private static final ThreadLocal<GcodeTokenizer> TOKENIZER = ThreadLocal.withInitial(GcodeTokenizer::new);
 
     /**
      * Searches the command string for an 'f' and replaces the speed value 
@@ -97,19 +99,20 @@ public class GcodePreprocessorUtils {
     }
     
     static public String truncateDecimals(int length, String command) {
-        if (length != decimalLength) {
+        DecimalTruncator truncator = DECIMAL_TRUNCATOR.get();
+        if (truncator == null || truncator.length != length) {
             //Only build the decimal formatter if the truncation length has changed.
-            updateDecimalFormatter(length);
-
+            truncator = new DecimalTruncator(length);
+            DECIMAL_TRUNCATOR.set(truncator);
         }
-        Matcher matcher = decimalPattern.matcher(command);
+        Matcher matcher = truncator.pattern.matcher(command);
 
         // Build up the truncated command.
         double d;
         StringBuffer sb = new StringBuffer();
         while (matcher.find()) {
             d = Double.parseDouble(matcher.group());
-            matcher.appendReplacement(sb, decimalFormatter.format(d));
+            matcher.appendReplacement(sb, truncator.formatter.format(d));
         }
         matcher.appendTail(sb);
         
@@ -117,30 +120,36 @@ public class GcodePreprocessorUtils {
         return sb.toString();
     }
 
-    private static void updateDecimalFormatter(int length) {
-        StringBuilder df = new StringBuilder();
+    private static final class DecimalTruncator {
+        private final int length;
+        private final Pattern pattern;
+        private final DecimalFormat formatter;
 
-        // Build up the decimal formatter.
-        df.append("#");
+        private DecimalTruncator(int length) {
+            StringBuilder df = new StringBuilder();
 
-        if (length != 0) {
-            df.append(".");
-        }
-        for (int i = 0; i < length; i++) {
-            df.append('#');
-        }
+            // Build up the decimal formatter.
+            df.append("#");
 
-        decimalFormatter = new DecimalFormat(df.toString(), Localization.dfs);
+            if (length != 0) {
+                df.append(".");
+            }
+            for (int i = 0; i < length; i++) {
+                df.append('#');
+            }
 
-        // Build up the regular expression.
-        df = new StringBuilder();
-        df.append("\\d+\\.\\d");
-        for (int i = 0; i < length; i++) {
-            df.append("\\d");
+            this.formatter = new DecimalFormat(df.toString(), Localization.dfs);
+
+            // Build up the regular expression.
+            df = new StringBuilder();
+            df.append("\\d+\\.\\d");
+            for (int i = 0; i < length; i++) {
+                df.append("\\d");
+            }
+            df.append('+');
+            this.pattern = Pattern.compile(df.toString());
+            this.length = length;
         }
-        df.append('+');
-        decimalPattern = Pattern.compile(df.toString());
-        decimalLength = length;
     }
 
     static public List<String> parseCodes(List<String> args, char code) {
@@ -176,6 +185,26 @@ public class GcodePreprocessorUtils {
         return updatePointWithCommand(initial, x, y, z, a, b, c, absoluteMode);
     }
 
+    /**
+     * Update a point given the arguments of a command, using a tokenized command.
+     */
+    static public Position updatePointWithCommand(GcodeTokenizer tokens, Position initial, boolean absoluteMode) {
+
+        double x = tokens.value('X');
+        double y = tokens.value('Y');
+        double z = tokens.value('Z');
+        double a = tokens.value('A');
+        double b = tokens.value('B');
+        double c = tokens.value('C');
+
+        if (Double.isNaN(x) && Double.isNaN(y) && Double.isNaN(z) &&
+            Double.isNaN(a) && Double.isNaN(b) && Double.isNaN(c)) {
+            return null;
+        }
+
+        return updatePointWithCommand(initial, x, y, z, a, b, c, absoluteMode);
+    }
+
     /**
      * Update a point given the new coordinates.
      */
@@ -248,6 +277,27 @@ public class GcodePreprocessorUtils {
 
     }
 
+    static public Position updateCenterWithCommand(
+            GcodeTokenizer tokens,
+            Position initial,
+            Position nextPoint,
+            boolean absoluteIJKMode,
+            boolean clockwise,
+            PlaneFormatter plane) {
+        double i      = tokens.value('I');
+        double j      = tokens.value('J');
+        double k      = tokens.value('K');
+        double radius = tokens.value('R');
+
+        if (Double.isNaN(i) && Double.isNaN(j) && Double.isNaN(k)) {
+            return GcodePreprocessorUtils.convertRToCenter(
+                            initial, nextPoint, radius, absoluteIJKMode,
+                            clockwise, plane);
+        }
+
+        return updatePointWithCommand(initial, i, j, k, 0, 0, 0, absoluteIJKMode);
+    }
+
     static public String generateLineFromPoints(final Code command, final Position start, final Position end, final boolean absoluteMode, DecimalFormat formatter) {
         DecimalFormat df = formatter;
         if (df == null) {
@@ -692,21 +742,28 @@ public class GcodePreprocessorUtils {
      * http://linuxcnc.org/docs/html/gcode/g-code.html#gcode:g53
      */
     public static SplitCommand extractMotion(Code code, String command) {
-        List<String> args = splitCommand(command);
-        if (args.isEmpty()) return null;
-        
+        return extractMotion(code, TOKENIZER.get().tokenize(command));
+    }
+
+    /**
+     * Return extracted motion words and remainder words from a tokenized command.
+     *
+     * @see #extractMotion(Code, String)
+     */
+    public static SplitCommand extractMotion(Code code, GcodeTokenizer tokens) {
+        if (tokens.size() == 0) return null;
+
         StringBuilder extracted = new StringBuilder();
         StringBuilder remainder = new StringBuilder();
 
         boolean includeG53 = code == G0 || code == G1;
-        for (String arg : args) {
-            char c = arg.charAt(0);
-            Code lookup = Code.lookupCode(arg);
+        for (int i = 0; i < tokens.size(); i++) {
+            Code lookup = tokens.code(i);
             if (lookup.getType() == Motion && lookup != code) return null;
-            if (lookup == code || isMotionWord(c) || (includeG53 && lookup == G53)) {
-                extracted.append(arg);
+            if (lookup == code || isMotionWord(tokens.letter(i)) || (includeG53 && lookup == G53)) {
+                tokens.appendWord(extracted, i);
             } else {
-                remainder.append(arg);
+                tokens.appendWord(remainder, i);
             }
         }
 
@@ -735,22 +792,22 @@ public class GcodePreprocessorUtils {
      * @return normalized command.
      */
     public static String normalizeCommand(String command, GcodeState state) throws GcodeParserException {
-        List<String> args = GcodePreprocessorUtils.splitCommand(command);
-        Set<Code> gCodes = getGCodes(args);
+        GcodeTokenizer tokens = TOKENIZER.get().tokenize(command);
 
         Code code = null;
-        for (Code c : gCodes) {
-            if (c.getType() == Motion) {
-                code = c;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.letter(i) == 'G' && tokens.code(i).getType() == Motion) {
+                code = tokens.code(i);
             }
         }
 
         // Fallback to current motion mode if the motion cannot be detected from command.
+        boolean hasMotionCode = code != null;
         if (code == null) {
             code = state.currentMotionMode;
         }
 
-        SplitCommand split = extractMotion(code, command);
+        SplitCommand split = extractMotion(code, tokens);
 
         // This could happen if the currentMotionMode is wrong.
         if (split == null) {
@@ -766,7 +823,7 @@ public class GcodePreprocessorUtils {
         result.append("S").append(state.spindleSpeed);
 
         // Check if we need to add the motion command back in.
-        if (!gCodes.contains(code)) {
+        if (!hasMotionCode) {
             result.append(state.currentMotionMode.toString());
         }
 
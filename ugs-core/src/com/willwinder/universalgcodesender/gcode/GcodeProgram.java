@@ -0,0 +1,472 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode;
+
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodeTokenizer;
+import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.types.PointSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A compiled, read only, representation of a processed gcode program. Each
+ * processed command is parsed exactly once and stored as an entry in a set of
+ * primitive arrays (struct of arrays) so that the visualizer, file stats, run
+ * from and other tools can share the result instead of parsing the file again.
+ *
+ * Endpoints are stored in the units of the entry's modal state, arc centers and
+ * radiuses are stored in millimeters. Entries are grouped by the source command
+ * which generated them, i.e. the command from the original file before any
+ * command processors were applied.
+ *
+ * @author wwinder
+ */
+public class GcodeProgram implements GcodeStats {
+    private static final Code[] CODES = Code.values();
+    private static final short NO_CODE = -1;
+
+    private static final byte MOTION = 1;
+    private static final byte ARC = 1 << 1;
+    private static final byte CLOCKWISE = 1 << 2;
+    private static final byte FAST_TRAVERSE = 1 << 3;
+    private static final byte Z_MOVEMENT = 1 << 4;
+    private static final byte ROTATION = 1 << 5;
+    private static final byte PROBE = 1 << 6;
+
+    // Per entry data
+    private int size = 0;
+    private int[] lineNumbers = new int[16];
+    private short[] codes = new short[16];
+    private byte[] flags = new byte[16];
+    private int[] stateIndexes = new int[16];
+    private double[] x = new double[16];
+    private double[] y = new double[16];
+    private double[] z = new double[16];
+    private double[] a = new double[16];
+    private double[] b = new double[16];
+    private double[] c = new double[16];
+
+    // Arc data, indexed by the position of the entry in arcEntries.
+    private int arcCount = 0;
+    private int[] arcEntries = new int[16];
+    private double[] centerX = new double[16];
+    private double[] centerY = new double[16];
+    private double[] centerZ = new double[16];
+    private double[] radius = new double[16];
+
+    // First entry of each source command.
+    private int sourceCommandCount = 0;
+    private int[] sourceCommandStarts = new int[16];
+
+    // Distinct modal states, the current point is stored with each entry.
+    private final List<GcodeState> states = new ArrayList<>();
+
+    private final Position min = new Position(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Units.MM);
+    private final Position max = new Position(Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Units.MM);
+
+    private GcodeProgram() {
+    }
+
+    /**
+     * @return the number of processed commands in the program.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the line number in the source file of the given entry, one source
+     * line may be expanded into several entries sharing the same line number.
+     */
+    public int getLineNumber(int entry) {
+        return lineNumbers[entry];
+    }
+
+    /**
+     * @return the motion code of the entry or null if the entry didn't move.
+     */
+    public Code getCode(int entry) {
+        return codes[entry] == NO_CODE ? null : CODES[codes[entry]];
+    }
+
+    public boolean isMotion(int entry) {
+        return (flags[entry] & MOTION) != 0;
+    }
+
+    public boolean isArc(int entry) {
+        return (flags[entry] & ARC) != 0;
+    }
+
+    public boolean isClockwise(int entry) {
+        return (flags[entry] & CLOCKWISE) != 0;
+    }
+
+    public boolean isFastTraverse(int entry) {
+        return (flags[entry] & FAST_TRAVERSE) != 0;
+    }
+
+    public boolean isZMovement(int entry) {
+        return (flags[entry] & Z_MOVEMENT) != 0;
+    }
+
+    public boolean isRotation(int entry) {
+        return (flags[entry] & ROTATION) != 0;
+    }
+
+    public boolean isProbe(int entry) {
+        return (flags[entry] & PROBE) != 0;
+    }
+
+    /**
+     * @return the units of the entry's endpoint.
+     */
+    public Units getUnits(int entry) {
+        return states.get(stateIndexes[entry]).getUnits();
+    }
+
+    /**
+     * @return the active plane after the entry, used to interpret arcs.
+     */
+    public Plane getPlane(int entry) {
+        return states.get(stateIndexes[entry]).plane;
+    }
+
+    /**
+     * @return the machine position after the entry, in the units of the entry's modal state.
+     */
+    public Position getEnd(int entry) {
+        return new Position(x[entry], y[entry], z[entry], a[entry], b[entry], c[entry], getUnits(entry));
+    }
+
+    /**
+     * @return the machine position after the entry converted to the given units.
+     */
+    public Position getEnd(int entry, Units units) {
+        double scale = UnitUtils.scaleUnits(getUnits(entry), units);
+        return new Position(x[entry] * scale, y[entry] * scale, z[entry] * scale, a[entry], b[entry], c[entry], units);
+    }
+
+    /**
+     * @return the raw z coordinate after the entry, in the units of the entry's modal state.
+     */
+    public double getZ(int entry) {
+        return z[entry];
+    }
+
+    /**
+     * @return the arc center of the entry in millimeters or null if the entry isn't an arc.
+     */
+    public Position getArcCenter(int entry) {
+        int arc = Arrays.binarySearch(arcEntries, 0, arcCount, entry);
+        if (arc < 0) {
+            return null;
+        }
+        return new Position(centerX[arc], centerY[arc], centerZ[arc], Units.MM);
+    }
+
+    /**
+     * @return the arc radius of the entry in millimeters or 0 if the entry isn't an arc.
+     */
+    public double getArcRadius(int entry) {
+        int arc = Arrays.binarySearch(arcEntries, 0, arcCount, entry);
+        return arc < 0 ? 0 : radius[arc];
+    }
+
+    /**
+     * @return a copy of the gcode state after the entry was processed.
+     */
+    public GcodeState getState(int entry) {
+        GcodeState state = states.get(stateIndexes[entry]).copy();
+        state.currentPoint = getEnd(entry);
+        state.commandNumber = lineNumbers[entry];
+        return state;
+    }
+
+    /**
+     * @return a copy of the gcode state before the entry was processed.
+     */
+    public GcodeState getStateBefore(int entry) {
+        return entry == 0 ? new GcodeState() : getState(entry - 1);
+    }
+
+    /**
+     * @return the number of source commands which were used to build the program.
+     */
+    public int getSourceCommandCount() {
+        return sourceCommandCount;
+    }
+
+    /**
+     * @param sourceCommand the zero based index of a non empty command in the source file.
+     * @return the first entry generated by the source command or {@link #size()}
+     *         if the command is past the end of the program.
+     */
+    public int getFirstEntry(int sourceCommand) {
+        return sourceCommand < sourceCommandCount ? sourceCommandStarts[sourceCommand] : size;
+    }
+
+    @Override
+    public Position getMin() {
+        return min;
+    }
+
+    @Override
+    public Position getMax() {
+        return max;
+    }
+
+    /**
+     * @return the number of processed commands in the program.
+     */
+    @Override
+    public long getCommandCount() {
+        return size;
+    }
+
+    private void updateExtremes(int entry) {
+        double scale = UnitUtils.scaleUnits(getUnits(entry), Units.MM);
+        updateExtremes(x[entry] * scale, y[entry] * scale, z[entry] * scale);
+    }
+
+    private void updateExtremes(double px, double py, double pz) {
+        min.x = Math.min(min.x, px);
+        min.y = Math.min(min.y, py);
+        min.z = Math.min(min.z, pz);
+        max.x = Math.max(max.x, px);
+        max.y = Math.max(max.y, py);
+        max.z = Math.max(max.z, pz);
+    }
+
+    private void ensureEntryCapacity() {
+        if (size < lineNumbers.length) {
+            return;
+        }
+
+        int capacity = lineNumbers.length + (lineNumbers.length >> 1);
+        lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        stateIndexes = Arrays.copyOf(stateIndexes, capacity);
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        a = Arrays.copyOf(a, capacity);
+        b = Arrays.copyOf(b, capacity);
+        c = Arrays.copyOf(c, capacity);
+    }
+
+    private void ensureArcCapacity() {
+        if (arcCount < arcEntries.length) {
+            return;
+        }
+
+        int capacity = arcEntries.length + (arcEntries.length >> 1);
+        arcEntries = Arrays.copyOf(arcEntries, capacity);
+        centerX = Arrays.copyOf(centerX, capacity);
+        centerY = Arrays.copyOf(centerY, capacity);
+        centerZ = Arrays.copyOf(centerZ, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+    }
+
+    private void trimToSize() {
+        lineNumbers = Arrays.copyOf(lineNumbers, size);
+        codes = Arrays.copyOf(codes, size);
+        flags = Arrays.copyOf(flags, size);
+        stateIndexes = Arrays.copyOf(stateIndexes, size);
+        x = Arrays.copyOf(x, size);
+        y = Arrays.copyOf(y, size);
+        z = Arrays.copyOf(z, size);
+        a = Arrays.copyOf(a, size);
+        b = Arrays.copyOf(b, size);
+        c = Arrays.copyOf(c, size);
+        arcEntries = Arrays.copyOf(arcEntries, arcCount);
+        centerX = Arrays.copyOf(centerX, arcCount);
+        centerY = Arrays.copyOf(centerY, arcCount);
+        centerZ = Arrays.copyOf(centerZ, arcCount);
+        radius = Arrays.copyOf(radius, arcCount);
+        sourceCommandStarts = Arrays.copyOf(sourceCommandStarts, sourceCommandCount);
+    }
+
+    /**
+     * Compares everything except the current point and command number, which
+     * are stored with each entry.
+     */
+    private static boolean isSameModalState(GcodeState s1, GcodeState s2) {
+        return s1.currentMotionMode == s2.currentMotionMode &&
+                s1.plane == s2.plane &&
+                s1.inAbsoluteMode == s2.inAbsoluteMode &&
+                s1.distanceMode == s2.distanceMode &&
+                s1.inAbsoluteIJKMode == s2.inAbsoluteIJKMode &&
+                s1.arcDistanceMode == s2.arcDistanceMode &&
+                s1.feedMode == s2.feedMode &&
+                Double.compare(s1.speed, s2.speed) == 0 &&
+                s1.isMetric == s2.isMetric &&
+                s1.units == s2.units &&
+                s1.offset == s2.offset &&
+                s1.spindle == s2.spindle &&
+                s1.coolant == s2.coolant &&
+                Double.compare(s1.spindleSpeed, s2.spindleSpeed) == 0;
+    }
+
+    /**
+     * Incrementally builds a program from processed commands. A builder is
+     * not thread safe and the program should only be shared after
+     * {@link #build()} has been called.
+     */
+    public static class Builder {
+        private final GcodeTokenizer tokenizer = new GcodeTokenizer();
+        private GcodeProgram program = new GcodeProgram();
+        private GcodeState state = new GcodeState();
+
+        /**
+         * Marks the beginning of a new non empty source command, every command
+         * added until the next call belongs to it.
+         */
+        public Builder startCommand() {
+            GcodeProgram p = getProgram();
+            if (p.sourceCommandCount == p.sourceCommandStarts.length) {
+                p.sourceCommandStarts = Arrays.copyOf(p.sourceCommandStarts, p.sourceCommandCount * 2);
+            }
+            p.sourceCommandStarts[p.sourceCommandCount++] = p.size;
+            return this;
+        }
+
+        /**
+         * Parses a processed command and appends it to the program.
+         *
+         * @param command    a processed command.
+         * @param lineNumber the line number of the original command in the source file.
+         */
+        public Builder addCommand(String command, int lineNumber) throws GcodeParserException {
+            GcodeProgram p = getProgram();
+            List<GcodeParser.GcodeMeta> metaObjects =
+                    GcodeParserUtils.processCommand(tokenizer.tokenize(command), lineNumber, state, true);
+            if (metaObjects == null || metaObjects.isEmpty()) {
+                return this;
+            }
+
+            GcodeState previous = state;
+            PointSegment point = null;
+            Code code = null;
+            for (GcodeParser.GcodeMeta meta : metaObjects) {
+                if (meta.state != null) {
+                    state = meta.state;
+                }
+                if (meta.point != null) {
+                    point = meta.point;
+                    code = meta.code;
+                }
+            }
+
+            if (p.size == 0) {
+                // The starting point is part of the program extents.
+                Position start = previous.currentPoint.getPositionIn(Units.MM);
+                p.updateExtremes(start.x, start.y, start.z);
+            }
+
+            p.ensureEntryCapacity();
+            int entry = p.size++;
+            p.lineNumbers[entry] = lineNumber;
+            p.codes[entry] = code == null ? NO_CODE : (short) code.ordinal();
+            p.stateIndexes[entry] = addState(p, state);
+
+            Position end = state.currentPoint;
+            p.x[entry] = end.x;
+            p.y[entry] = end.y;
+            p.z[entry] = end.z;
+            p.a[entry] = end.a;
+            p.b[entry] = end.b;
+            p.c[entry] = end.c;
+
+            byte flags = 0;
+            if (point != null) {
+                flags |= MOTION;
+                flags |= point.isFastTraverse() ? FAST_TRAVERSE : 0;
+                flags |= point.isZMovement() ? Z_MOVEMENT : 0;
+                flags |= point.isRotation() ? ROTATION : 0;
+                flags |= point.isProbe() ? PROBE : 0;
+                if (point.isArc()) {
+                    flags |= ARC;
+                    flags |= point.isClockwise() ? CLOCKWISE : 0;
+                    addArc(p, entry, point);
+                }
+            }
+            p.flags[entry] = flags;
+            p.updateExtremes(entry);
+            return this;
+        }
+
+        /**
+         * @return the current state of the program being built.
+         */
+        public GcodeState getCurrentState() {
+            return state;
+        }
+
+        /**
+         * Completes the program, the builder can't be used afterwards.
+         */
+        public GcodeProgram build() {
+            GcodeProgram p = getProgram();
+            p.trimToSize();
+            program = null;
+            return p;
+        }
+
+        private GcodeProgram getProgram() {
+            return Objects.requireNonNull(program, "The program has already been built");
+        }
+
+        private static int addState(GcodeProgram p, GcodeState state) {
+            int last = p.states.size() - 1;
+            if (last >= 0 && isSameModalState(p.states.get(last), state)) {
+                return last;
+            }
+
+            GcodeState modal = state.copy();
+            modal.currentPoint = null;
+            modal.commandNumber = 0;
+            p.states.add(modal);
+            return last + 1;
+        }
+
+        private static void addArc(GcodeProgram p, int entry, PointSegment point) {
+            Units units = point.isMetric() ? Units.MM : Units.INCH;
+            double scale = UnitUtils.scaleUnits(units, Units.MM);
+            Position center = point.center();
+
+            p.ensureArcCapacity();
+            int arc = p.arcCount++;
+            p.arcEntries[arc] = entry;
+            p.centerX[arc] = center.x * scale;
+            p.centerY[arc] = center.y * scale;
+            p.centerZ[arc] = center.z * scale;
+            p.radius[arc] = point.getRadius() * scale;
+        }
+    }
+}
@@ -47,13 +47,24 @@ import java.util.List;
 public class ArcExpander implements CommandProcessor {
     final private boolean convertToLines;
     final private double length;
-    final private DecimalFormat df;
+    // DecimalFormat isn't thread safe and commands may be processed in parallel.
+    final private ThreadLocal<DecimalFormat> df;
 
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.arcs") + "\n"
                 + Localization.getString("sender.arcs.length")
-                + ": " + df.format(length);
+                + ": " + df.get().format(length);
+    }
+
+    @Override
+    public String getConfigurationKey() {
+        return getClass().getSimpleName() + ":" + convertToLines + ":" + length;
+    }
+
+    @Override
+    public boolean isExpensive() {
+        return true;
     }
 
     /**
@@ -65,7 +76,7 @@ public class ArcExpander implements CommandProcessor {
         this.length = length;
 
         // Setup decimal formatter
-        df = new DecimalFormat("#.#########", Localization.dfs);
+        df = ThreadLocal.withInitial(() -> new DecimalFormat("#.#########", Localization.dfs));
     }
 
     @Override
@@ -105,7 +116,7 @@ public class ArcExpander implements CommandProcessor {
             // changed the feed value.
             String feed = "F" + arcMeta.point.getSpeed();
             for (Position point : points) {
-                results.add(GcodePreprocessorUtils.generateLineFromPoints(G1, start, point, state.inAbsoluteMode, df) + feed);
+                results.add(GcodePreprocessorUtils.generateLineFromPoints(G1, start, point, state.inAbsoluteMode, df.get()) + feed);
                 start = point;
                 feed = "";
             }
@@ -6,6 +6,7 @@ import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.GcodeTokenizer;
 import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.types.PointSegment;
@@ -34,11 +35,19 @@ public class BacklashCompensation implements CommandProcessor {
     // Latest command, used if given coordinates without new command
     private static String latestCommand = "G0";
 
+    private final GcodeTokenizer tokenizer = new GcodeTokenizer();
+
     @Override
     public String getHelp() {
         return "Provides backlash compensation in the X and Y axes.";
     }
 
+    @Override
+    public boolean isSequential() {
+        // The compensation depends on the direction of the previous moves.
+        return true;
+    }
+
     public BacklashCompensation(double xComp, double yComp) {
         this.xComp = Math.abs(xComp);
         this.yComp = Math.abs(yComp);
@@ -48,12 +57,15 @@ public class BacklashCompensation implements CommandProcessor {
     @Override
     public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
         String noComments = GcodePreprocessorUtils.removeComment(command);
-        List<String> commandWords = GcodePreprocessorUtils.splitCommand(noComments);
+        GcodeTokenizer tokens = tokenizer.tokenize(noComments);
+        if (tokens.size() == 0) {
+            return Collections.singletonList(command);
+        }
 
         // Update lastestCommand variable.
-        if (Character.toUpperCase(commandWords.get(0).charAt(0)) == 'G') {
-            latestCommand = commandWords.get(0);
-        } else if (Character.toUpperCase(commandWords.get(0).charAt(0)) != 'M'){ // Things crash without a G command...
+        if (tokens.letter(0) == 'G') {
+            latestCommand = tokens.word(0);
+        } else if (tokens.letter(0) != 'M'){ // Things crash without a G command...
             noComments = latestCommand + " " + noComments;
         }
 
@@ -69,7 +81,7 @@ public class BacklashCompensation implements CommandProcessor {
 
     private List<String> compensateLine(String command, GcodeState state) throws GcodeParserException {
         // Note: can have X, Y, and Z directions. Need to make sure all 3 are accounted for based on received command
-        List<String> commandWords = GcodePreprocessorUtils.splitCommand(command);
+        GcodeTokenizer tokens = tokenizer.tokenize(command);
 
         // Booleans to keep track of which axes need to be updated by command
         boolean xCommand = false;
@@ -80,16 +92,16 @@ public class BacklashCompensation implements CommandProcessor {
         double yEnd = 0;
         double zEnd = 0;
 
-        for (String t : commandWords) {
-            char c = Character.toUpperCase(t.charAt(0));
+        for (int i = 0; i < tokens.size(); i++) {
+            char c = tokens.letter(i);
             if (c == 'X') {
-                xEnd = Double.parseDouble(t.substring(1));
+                xEnd = tokens.value(i);
                 xCommand = true;
             } else if (c == 'Y') {
-                yEnd = Double.parseDouble(t.substring(1));
+                yEnd = tokens.value(i);
                 yCommand = true;
             } else if (c == 'Z') {
-                zEnd = Double.parseDouble(t.substring(1));
+                zEnd = tokens.value(i);
                 zCommand = true;
             }
         }
@@ -136,7 +148,7 @@ public class BacklashCompensation implements CommandProcessor {
     }
 
     private List<String> compensateArcQuadrants(String command, GcodeState state) throws GcodeParserException {
-        List<String> commandWords = GcodePreprocessorUtils.splitCommand(command);
+        GcodeTokenizer tokens = tokenizer.tokenize(command);
 
         // Center of Rotation
         double xCOR;
@@ -167,16 +179,16 @@ public class BacklashCompensation implements CommandProcessor {
         double yStart = plane.axis1(start);
 
         // Get info from command
-        for (String t : commandWords) {
-            char c = Character.toUpperCase(t.charAt(0));
+        for (int i = 0; i < tokens.size(); i++) {
+            char c = tokens.letter(i);
             if (c == 'X') {
-                xEnd = Double.parseDouble(t.substring(1));
+                xEnd = tokens.value(i);
             } else if (c == 'Y') {
-                yEnd = Double.parseDouble(t.substring(1));
+                yEnd = tokens.value(i);
             } else if (c == 'I') {
-                iOffset = Double.parseDouble(t.substring(1));
+                iOffset = tokens.value(i);
             } else if (c == 'J') {
-                jOffset = Double.parseDouble(t.substring(1));
+                jOffset = tokens.value(i);
             }
         }
 
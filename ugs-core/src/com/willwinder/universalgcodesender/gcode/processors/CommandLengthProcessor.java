@@ -44,6 +44,11 @@ public class CommandLengthProcessor implements CommandProcessor {
                 + ": " + length;
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return getClass().getSimpleName() + ":" + length;
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
         if (command.length() > length)
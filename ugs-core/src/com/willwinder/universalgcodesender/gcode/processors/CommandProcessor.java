@@ -44,4 +44,40 @@ public interface CommandProcessor {
      * @return 
      */
     String getHelp();
+
+    /**
+     * Processors which keep history between commands, like the direction of
+     * the previous move, must see every command in order. Those processors
+     * return true so that the program isn't split into chunks which are
+     * processed in parallel.
+     *
+     * @return true if the commands must be processed one at a time, in order.
+     */
+    default boolean isSequential() {
+        return false;
+    }
+
+    /**
+     * Returns a key describing the configuration of the processor, two
+     * processors with the same key must return the same commands given the
+     * same input. The results of the processors before a changed processor
+     * are cached using the keys of those processors.
+     *
+     * @return the configuration key or null if the results can't be cached.
+     */
+    default String getConfigurationKey() {
+        return null;
+    }
+
+    /**
+     * Processors which are slow or rewrite most commands, like the arc
+     * expander, return true to have their results cached. Changing the
+     * configuration of a later processor then only runs the processors after
+     * it again.
+     *
+     * @return true if the results of the processor should be cached.
+     */
+    default boolean isExpensive() {
+        return false;
+    }
 }
@@ -32,26 +32,42 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
     public List<String> processCommand(String command, final GcodeState initialState) throws GcodeParserException {
         List<String> ret = new ArrayList<>();
         ret.add(command);
-        GcodeState tempState;
-        for (CommandProcessor p : commandProcessors) {
-            // Reset point segments after each pass. The final pass is what we will return.
-            tempState = initialState.copy();
-            // Process each command in the list and add results to the end.
-            // Don't re-process the results with the same preprocessor.
-            for (int i = ret.size(); i > 0; i--) {
-                // The arc expander changes the lastGcodeCommand which causes the following to fail:
-                // G2 Y-0.7 J-14.7
-                // Y28.7 J14.7 (this line treated as a G1)
-                tempState.currentMotionMode = initialState.currentMotionMode;
-                List<String> intermediate = p.processCommand(ret.remove(0), tempState);
-
-                // process results to update the state and collect PointSegments
-                for(String c : intermediate) {
-                    tempState = testState(c, tempState);
-                }
+        for (int i = 0; i < commandProcessors.size(); i++) {
+            ret = processCommands(ret, initialState, i);
+        }
 
-                ret.addAll(intermediate);
+        return ret;
+    }
+
+    /**
+     * Applies a single command processor to the results of the processors
+     * before it, see {@link #processCommand(String, GcodeState)}. Does not
+     * change the given list.
+     *
+     * @param commands     the commands returned by the preceding processors.
+     * @param initialState the state before the original command was applied.
+     * @param index        the index of the processor to apply.
+     */
+    public List<String> processCommands(List<String> commands, final GcodeState initialState, int index) throws GcodeParserException {
+        CommandProcessor p = commandProcessors.get(index);
+        List<String> ret = new ArrayList<>(commands.size());
+
+        // Reset point segments after each pass. The final pass is what we will return.
+        GcodeState tempState = initialState.copy();
+        // Process each command in the list, the results are not re-processed by the same preprocessor.
+        for (String command : commands) {
+            // The arc expander changes the lastGcodeCommand which causes the following to fail:
+            // G2 Y-0.7 J-14.7
+            // Y28.7 J14.7 (this line treated as a G1)
+            tempState.currentMotionMode = initialState.currentMotionMode;
+            List<String> intermediate = p.processCommand(command, tempState);
+
+            // process results to update the state and collect PointSegments
+            for(String c : intermediate) {
+                tempState = testState(c, tempState);
             }
+
+            ret.addAll(intermediate);
         }
 
         return ret;
@@ -62,6 +78,11 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
         return "Combines several processors and runs them in sequence";
     }
 
+    @Override
+    public boolean isSequential() {
+        return commandProcessors.stream().anyMatch(CommandProcessor::isSequential);
+    }
+
     /**
      * Helper to statically process the next step in a program without modifying the parser.
      */
@@ -95,6 +116,10 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
         return commandProcessors.size();
     }
 
+    public CommandProcessor get(int index) {
+        return commandProcessors.get(index);
+    }
+
     public void clear() {
         commandProcessors.clear();
     }
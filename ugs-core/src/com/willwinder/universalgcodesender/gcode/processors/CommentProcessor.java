@@ -35,4 +35,9 @@ public class CommentProcessor extends PatternRemover {
     public CommentProcessor() {
         super(GcodePreprocessorUtils.COMMENT.pattern());
     }
+
+    @Override
+    public boolean isExpensive() {
+        return true;
+    }
 }
\ No newline at end of file
@@ -47,6 +47,11 @@ public class DecimalProcessor implements CommandProcessor {
                 + Localization.getString("sender.truncate") + ": " + numDecimals;
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return getClass().getSimpleName() + ":" + numDecimals;
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) {
         List<String> ret = new ArrayList<>();
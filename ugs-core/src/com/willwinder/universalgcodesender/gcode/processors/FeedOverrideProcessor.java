@@ -46,6 +46,11 @@ public class FeedOverrideProcessor implements CommandProcessor {
                 + ": " + percentOverride;
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return getClass().getSimpleName() + ":" + percentOverride;
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) {
         List<String> ret = new ArrayList<>();
@@ -53,6 +53,16 @@ public class LineSplitter implements CommandProcessor {
         return "Split G0 and G1 commands into multiple commands.";
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return getClass().getSimpleName() + ":" + maxSegmentLength;
+    }
+
+    @Override
+    public boolean isExpensive() {
+        return true;
+    }
+
     private Code hasLine(List<GcodeMeta> commands) {
         if (commands == null) return null;
         for (GcodeMeta command : commands) {
@@ -245,4 +245,28 @@ public class MeshLeveler implements CommandProcessor {
     public String getHelp() {
         return null;
     }
+
+    @Override
+    public String getConfigurationKey() {
+        StringBuilder key = new StringBuilder(getClass().getSimpleName())
+                .append(':').append(materialSurfaceHeight)
+                .append(':').append(unit);
+        for (Position[] row : surfaceMesh) {
+            for (Position p : row) {
+                key.append(':').append(p.x).append(',').append(p.y).append(',').append(p.z);
+            }
+        }
+        return key.toString();
+    }
+
+    @Override
+    public boolean isExpensive() {
+        return true;
+    }
+
+    @Override
+    public boolean isSequential() {
+        // Plunges are remembered and applied to the following moves.
+        return true;
+    }
 }
@@ -44,6 +44,11 @@ public class PatternRemover implements CommandProcessor {
                 + ": \"" + p.pattern() + "\"";
     }
 
+    @Override
+    public String getConfigurationKey() {
+        return getClass().getSimpleName() + ":" + p.pattern();
+    }
+
     @Override
     public List<String> processCommand(String command, GcodeState state) {
         List<String> ret = new ArrayList<>();
@@ -20,6 +20,7 @@ package com.willwinder.universalgcodesender.gcode.processors;
 
 import com.google.common.collect.ImmutableList;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.model.Position;
@@ -33,6 +34,8 @@ public class RunFromProcessor implements CommandProcessor {
     private int lineNumber;
     private GcodeParser parser = new GcodeParser();
     private Double clearanceHeight = 0.0;
+    private GcodeProgram program;
+
     /**
      * Truncates gcode to the specified line, and rewrites the preamble with the GcodeState.
      *
@@ -48,6 +51,19 @@ public class RunFromProcessor implements CommandProcessor {
 
     public void setLineNumber(int lineNumber) {
         this.lineNumber = lineNumber;
+        this.parser = new GcodeParser();
+        this.clearanceHeight = 0.0;
+    }
+
+    /**
+     * Sets the compiled version of the complete program which will be processed.
+     * When available the gcode state at the run from line is looked up in the
+     * program instead of replaying every skipped command through a parser.
+     *
+     * @param program the program, or null to replay the skipped commands.
+     */
+    public void setProgram(GcodeProgram program) {
+        this.program = program;
     }
 
     @Override
@@ -57,6 +73,10 @@ public class RunFromProcessor implements CommandProcessor {
             return Collections.singletonList(command);
         }
 
+        if (program != null) {
+            return processCommandWithProgram(command, state);
+        }
+
         // Don't trust the input's machine state, this processor is discarding lines which would have updated it.
         Position pos = parser.getCurrentState().currentPoint;
 
@@ -67,35 +87,66 @@ public class RunFromProcessor implements CommandProcessor {
         }
 
         if (state.commandNumber == lineNumber) {
+            return generatePreamble(command, parser.getCurrentState(), clearanceHeight);
+        }
 
-            String moveToClearanceHeight = "G0Z" + clearanceHeight;
-            String moveToXY = "G0X" + pos.x + "Y" + pos.y;
-            String plunge = "G1Z" + pos.z;
-
-            GcodeState s = parser.getCurrentState();
-            String normalized = normalizeCommand(command, s);
-            return ImmutableList.of(
-                    // Initialize state
-                    s.machineStateCode(),
-
-                    // Move to start location
-                    moveToClearanceHeight,
-                    moveToXY,
+        return ImmutableList.of(command);
+    }
 
-                    // Start spindle and set feed/speed before plunging into the work.
-                    s.toAccessoriesCode(),
-                    plunge,
+    /**
+     * Same as the parser replay, but looks up the state in the program. The
+     * state passed along with a command is the one from before the command,
+     * so the command at the run from line is source command lineNumber + 1.
+     */
+    private List<String> processCommandWithProgram(String command, GcodeState state) throws GcodeParserException {
+        if (state.commandNumber < lineNumber) {
+            return ImmutableList.of();
+        }
 
-                    // Append normalized command
-                    normalized
-            );
+        if (state.commandNumber == lineNumber) {
+            int entry = program.getFirstEntry(lineNumber + 1);
+            double clearance = 0.0;
+            for (int i = 0; i < entry - 1; i++) {
+                clearance = Math.max(clearance, program.getZ(i));
+            }
+            return generatePreamble(command, program.getStateBefore(entry), clearance);
         }
 
         return ImmutableList.of(command);
     }
 
+    private static List<String> generatePreamble(String command, GcodeState s, double clearanceHeight) throws GcodeParserException {
+        Position pos = s.currentPoint;
+        String moveToClearanceHeight = "G0Z" + clearanceHeight;
+        String moveToXY = "G0X" + pos.x + "Y" + pos.y;
+        String plunge = "G1Z" + pos.z;
+
+        String normalized = normalizeCommand(command, s);
+        return ImmutableList.of(
+                // Initialize state
+                s.machineStateCode(),
+
+                // Move to start location
+                moveToClearanceHeight,
+                moveToXY,
+
+                // Start spindle and set feed/speed before plunging into the work.
+                s.toAccessoriesCode(),
+                plunge,
+
+                // Append normalized command
+                normalized
+        );
+    }
+
     @Override
     public String getHelp() {
         return null;
     }
+
+    @Override
+    public boolean isSequential() {
+        // Without a program the skipped commands are replayed to find the state.
+        return lineNumber != 0 && program == null;
+    }
 }
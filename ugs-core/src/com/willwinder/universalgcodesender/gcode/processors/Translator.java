@@ -18,35 +18,40 @@
  */
 package com.willwinder.universalgcodesender.gcode.processors;
 
+import com.willwinder.universalgcodesender.Utils;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.GcodeTokenizer;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 
-import java.text.ParseException;
+import java.text.NumberFormat;
 import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 
-import static com.willwinder.universalgcodesender.Utils.formatter;
-
 /**
  *
  * @author wwinder
  */
 public class Translator implements CommandProcessor {
+  // Neither of these are thread safe and commands may be processed in parallel.
+  private static final ThreadLocal<GcodeTokenizer> TOKENIZER = ThreadLocal.withInitial(GcodeTokenizer::new);
+  private static final ThreadLocal<NumberFormat> FORMATTER =
+      ThreadLocal.withInitial(() -> (NumberFormat) Utils.formatter.clone());
+
   private final Position offset;
 
   public Translator(Position offset) {
     this.offset = offset;
   }
 
-  private String shift(String part, double amount) {
-    try {
-      return "" + part.charAt(0) + formatter.format(formatter.parse(part.substring(1)).doubleValue() + amount);
-    } catch (ParseException e) {
-      throw new IllegalArgumentException("Could not parse '" + part + "' as a double");
+  private void shift(StringBuilder sb, GcodeTokenizer tokens, int index, double amount) {
+    double value = tokens.value(index);
+    if (Double.isNaN(value)) {
+      throw new IllegalArgumentException("Could not parse '" + tokens.word(index) + "' as a double");
     }
+    sb.append(tokens.wordChar(index, 0)).append(FORMATTER.get().format(value + amount));
   }
 
   @Override
@@ -58,7 +63,7 @@ public class Translator implements CommandProcessor {
 
     String comment = GcodePreprocessorUtils.parseComment(command);
     String rawCommand = GcodePreprocessorUtils.removeComment(command);
-    List<String> parts = GcodePreprocessorUtils.splitCommand(rawCommand);
+    GcodeTokenizer tokens = TOKENIZER.get().tokenize(rawCommand);
     StringBuilder sb = new StringBuilder();
 
     UnitUtils.Units currentUnits = state.getUnits();
@@ -66,39 +71,39 @@ public class Translator implements CommandProcessor {
     double y = offset.getPositionIn(currentUnits).y;
     double z = offset.getPositionIn(currentUnits).z;
 
-    for (String part : parts) {
-      switch (Character.toUpperCase(part.charAt(0))) {
+    for (int i = 0; i < tokens.size(); i++) {
+      switch (tokens.letter(i)) {
         case 'X':
-          sb.append(shift(part, x));
+          shift(sb, tokens, i, x);
           break;
         case 'Y':
-          sb.append(shift(part, y));
+          shift(sb, tokens, i, y);
           break;
         case 'Z':
-          sb.append(shift(part, z));
+          shift(sb, tokens, i, z);
           break;
 
         // Grbl doesn't support absolute arcs, but what the hell.
         case 'I':
           if (state.inAbsoluteIJKMode) {
-            sb.append(shift(part, x));
+            shift(sb, tokens, i, x);
             break;
           }
         // fall through if not in absolute mode...
         case 'J':
           if (state.inAbsoluteIJKMode) {
-            sb.append(shift(part, y));
+            shift(sb, tokens, i, y);
             break;
           }
         // fall through if not in absolute mode...
         case 'K':
           if (state.inAbsoluteIJKMode) {
-            sb.append(shift(part, z));
+            shift(sb, tokens, i, z);
             break;
           }
         // fall through if not in absolute mode...
         default:
-          sb.append(part);
+          tokens.appendWord(sb, i);
       }
     }
 
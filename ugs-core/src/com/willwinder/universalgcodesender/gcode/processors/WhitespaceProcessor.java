@@ -29,4 +29,9 @@ public class WhitespaceProcessor extends PatternRemover {
     public WhitespaceProcessor() {
         super("\\s");
     }
+
+    @Override
+    public boolean isExpensive() {
+        return true;
+    }
 }
\ No newline at end of file
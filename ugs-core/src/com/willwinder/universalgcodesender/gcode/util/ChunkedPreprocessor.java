@@ -0,0 +1,241 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the command processors of a parser on chunks of a program in parallel.
+ *
+ * The processors only depend on the gcode state before each command, which in
+ * turn only depends on the unprocessed commands. So the parser is fed every
+ * command in order to find the state at the start of each chunk, the expensive
+ * part, running the processors, is done by workers continuing from that state.
+ * Processed chunks are written in order so the output is identical to
+ * processing the commands one at a time.
+ *
+ * Chunks may continue from the results of the processors stored in a
+ * checkpoint, and the results of later processors are stored as checkpoints
+ * as the chunks are written, see {@link PreprocessorStages}.
+ *
+ * This must not be used if any of the processors which are run is
+ * sequential, see {@link PreprocessorStages#isSequential(GcodeParser)}.
+ *
+ * @author wwinder
+ */
+class ChunkedPreprocessor implements AutoCloseable {
+    private final GcodeParser gcp;
+    private final PreprocessorStages stages;
+    private final IGcodeWriter output;
+    private final GcodeProgram.Builder program;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    private final Deque<Future<Chunk>> inFlight = new ArrayDeque<>();
+    private Chunk chunk = null;
+
+    /**
+     * @param gcp               the parser with the command processors, its state is updated with each command.
+     * @param stages            the command processors to run and the checkpoints to store.
+     * @param output            where the processed commands are written.
+     * @param program           a builder receiving each processed command, may be null.
+     * @param executor          runs the workers.
+     * @param chunkSize         number of lines in each chunk.
+     * @param maxChunksInFlight number of chunks to keep in memory before waiting for the oldest one.
+     */
+    ChunkedPreprocessor(GcodeParser gcp, PreprocessorStages stages, IGcodeWriter output, GcodeProgram.Builder program,
+                        ExecutorService executor, int chunkSize, int maxChunksInFlight) {
+        this.gcp = gcp;
+        this.stages = stages;
+        this.output = output;
+        this.program = program;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+    }
+
+    /**
+     * Adds the next line of the program, see {@link PreprocessorStages#forEachLine}.
+     */
+    void add(String command, String comment, int idx, List<String> commands) throws GcodeParserException {
+        if (chunk == null) {
+            chunk = new Chunk(gcp.getCurrentState().copy(), chunkSize);
+        }
+
+        chunk.add(command, comment, idx, commands);
+        if (commands != null) {
+            gcp.addCommand(command);
+        }
+
+        if (chunk.size() == chunkSize) {
+            submit();
+        }
+    }
+
+    /**
+     * Processes the remaining lines and waits until everything has been written.
+     */
+    void finish() throws GcodeParserException {
+        if (chunk != null) {
+            submit();
+        }
+
+        while (!inFlight.isEmpty()) {
+            write(await(inFlight.poll()));
+        }
+    }
+
+    /**
+     * Cancels any chunks which haven't been written, for example after an error.
+     */
+    @Override
+    public void close() {
+        inFlight.forEach(f -> f.cancel(true));
+        inFlight.clear();
+    }
+
+    private void submit() throws GcodeParserException {
+        Chunk next = chunk;
+        chunk = null;
+        inFlight.add(executor.submit(() -> next.process(gcp, stages)));
+
+        while (inFlight.size() > maxChunksInFlight) {
+            write(await(inFlight.poll()));
+        }
+    }
+
+    private static Chunk await(Future<Chunk> future) throws GcodeParserException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GcodeParserException("Interrupted while processing gcode");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GcodeParserException) {
+                throw (GcodeParserException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void write(Chunk processed) throws GcodeParserException {
+        for (int i = 0; i < processed.size(); i++) {
+            String command = processed.commands.get(i);
+            String comment = processed.comments.get(i);
+            int idx = processed.lineNumbers[i];
+            List<String> lines = processed.results.get(i);
+
+            if (lines == null) {
+                output.addLine(command, command, comment, idx);
+                stages.write(command, comment, idx, null);
+                continue;
+            }
+
+            if (processed.checkpointResults != null) {
+                stages.write(command, comment, idx, processed.checkpointResults.get(i));
+            }
+
+            if (program != null) {
+                program.startCommand();
+            }
+            for (String processedLine : lines) {
+                output.addLine(command, processedLine, comment, idx);
+                if (program != null) {
+                    program.addCommand(processedLine, idx);
+                }
+            }
+        }
+    }
+
+    /**
+     * A range of lines along with the state before the first one.
+     */
+    private static class Chunk {
+        private final GcodeState initialState;
+        private final List<String> commands;
+        private final List<String> comments;
+        private final int[] lineNumbers;
+        private final List<List<String>> inputs;
+        private final List<List<String>> results;
+        private List<List<List<String>>> checkpointResults;
+
+        private Chunk(GcodeState initialState, int capacity) {
+            this.initialState = initialState;
+            this.commands = new ArrayList<>(capacity);
+            this.comments = new ArrayList<>(capacity);
+            this.lineNumbers = new int[capacity];
+            this.inputs = new ArrayList<>(capacity);
+            this.results = new ArrayList<>(capacity);
+        }
+
+        private int size() {
+            return commands.size();
+        }
+
+        private void add(String command, String comment, int idx, List<String> input) {
+            lineNumbers[commands.size()] = idx;
+            commands.add(command);
+            comments.add(comment);
+            inputs.add(input);
+        }
+
+        /**
+         * Runs the processors of the parser with a local copy of the state.
+         */
+        private Chunk process(GcodeParser gcp, PreprocessorStages stages) throws GcodeParserException {
+            GcodeParser stateParser = new GcodeParser();
+            stateParser.reset(initialState);
+            if (stages.hasCheckpoints()) {
+                checkpointResults = new ArrayList<>(size());
+            }
+
+            for (int i = 0; i < size(); i++) {
+                List<String> input = inputs.get(i);
+                List<List<String>> checkpoints = checkpointResults != null ? new ArrayList<>() : null;
+                if (checkpointResults != null) {
+                    checkpointResults.add(checkpoints);
+                }
+
+                if (input == null) {
+                    results.add(null);
+                    continue;
+                }
+
+                results.add(stages.process(gcp, input, stateParser.getCurrentState(), checkpoints));
+                stateParser.addCommand(commands.get(i));
+            }
+            return this;
+        }
+    }
+}
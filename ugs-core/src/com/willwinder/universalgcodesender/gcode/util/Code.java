@@ -178,6 +178,12 @@ public enum Code {
         Arrays.stream(Code.values())
                 .collect(Collectors.toMap(Code::toString, c -> c));
 
+    /**
+     * Codes indexed by letter, number and sub code (0 if there is none, 1-10
+     * for ".0" to ".9") to be able to lookup codes without creating strings.
+     */
+    private static final Code[][][] numberLookup = createNumberLookup();
+
     private final ModalGroup type;
     private final boolean nonModalMotionCode;
     private final boolean motionOptional;
@@ -239,4 +245,78 @@ public enum Code {
         Code c = codeLookup.get(type + rest);
         return c == null ? UNKNOWN : c;
     }
+
+    /**
+     * Lookup code from the characters of a word without creating any strings.
+     * Gives the same result as {@link #lookupCode(String)} with the letter
+     * followed by the characters.
+     *
+     * @param letter the upper case letter of the word, like G or M
+     * @param chars buffer containing the characters following the letter
+     * @param from the index of the first character after the letter
+     * @param to the index after the last character of the word
+     * @return the enum value
+     */
+    public static Code lookupCode(char letter, char[] chars, int from, int to) {
+        if (letter < 'A' || letter > 'Z' || numberLookup[letter - 'A'] == null) {
+            return UNKNOWN;
+        }
+        Code[][] numbers = numberLookup[letter - 'A'];
+
+        // Strip leading zeros in a way that leaves the last zero in case of 'G0'
+        int start = from;
+        while (start < to - 1 && chars[start] == '0') {
+            start++;
+        }
+
+        int number = 0;
+        int i = start;
+        for (; i < to && chars[i] >= '0' && chars[i] <= '9'; i++) {
+            number = number * 10 + (chars[i] - '0');
+            if (number >= numbers.length) {
+                return UNKNOWN;
+            }
+        }
+        if (i == start) {
+            return UNKNOWN;
+        }
+
+        int subCode = 0;
+        if (i < to) {
+            if (i + 2 != to || chars[i] != '.' || chars[i + 1] < '0' || chars[i + 1] > '9') {
+                return UNKNOWN;
+            }
+            subCode = chars[i + 1] - '0' + 1;
+        }
+
+        Code[] subCodes = numbers[number];
+        Code c = subCodes == null ? null : subCodes[subCode];
+        return c == null ? UNKNOWN : c;
+    }
+
+    private static Code[][][] createNumberLookup() {
+        Code[][][] lookup = new Code[26][][];
+        for (Code c : values()) {
+            if (c == UNKNOWN) {
+                continue;
+            }
+
+            String name = c.toString();
+            int letter = name.charAt(0) - 'A';
+            int dot = name.indexOf('.');
+            int number = Integer.parseInt(dot < 0 ? name.substring(1) : name.substring(1, dot));
+            int subCode = dot < 0 ? 0 : name.charAt(dot + 1) - '0' + 1;
+
+            if (lookup[letter] == null) {
+                lookup[letter] = new Code[number + 1][];
+            } else if (lookup[letter].length <= number) {
+                lookup[letter] = Arrays.copyOf(lookup[letter], number + 1);
+            }
+            if (lookup[letter][number] == null) {
+                lookup[letter][number] = new Code[11];
+            }
+            lookup[letter][number][subCode] = c;
+        }
+        return lookup;
+    }
 }
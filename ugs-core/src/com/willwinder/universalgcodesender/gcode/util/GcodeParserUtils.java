@@ -18,8 +18,8 @@
  */
 package com.willwinder.universalgcodesender.gcode.util;
 
-import com.google.common.collect.Iterables;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.i18n.Localization;
@@ -40,10 +40,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import static com.willwinder.universalgcodesender.gcode.util.Code.G20;
 import static com.willwinder.universalgcodesender.gcode.util.Code.G21;
@@ -61,6 +60,13 @@ import static com.willwinder.universalgcodesender.gcode.util.Code.UNKNOWN;
 public class GcodeParserUtils {
     private static final Logger LOGGER = Logger.getLogger(GcodeParserUtils.class.getName());
 
+    /**
+     * Number of lines in each chunk when preprocessing in parallel.
+     */
+    private static final int PARALLEL_CHUNK_SIZE = 10000;
+
+    private static final ThreadLocal<GcodeTokenizer> TOKENIZER = ThreadLocal.withInitial(GcodeTokenizer::new);
+
     /**
      * For backwards compatibility this method calls processCommand with includeNonMotionStates = false.
      */
@@ -79,8 +85,22 @@ public class GcodeParserUtils {
     public static List<GcodeParser.GcodeMeta> processCommand(String command, int line, final GcodeState inputState,
                                                              boolean includeNonMotionStates)
             throws GcodeParserException {
-        List<String> args = GcodePreprocessorUtils.splitCommand(command);
-        if (args.isEmpty()) return null;
+        return processCommand(TOKENIZER.get().tokenize(command), line, inputState, includeNonMotionStates);
+    }
+
+    /**
+     * Process a tokenized command given an initial state. This method will
+     * not modify its input parameters.
+     *
+     * @param tokens                 the tokenized command, see {@link GcodeTokenizer#tokenize(String)}
+     * @param includeNonMotionStates Create gcode meta responses even if there is no motion, for example "F100" will not
+     *                               return a GcodeMeta entry unless this flag is set to true.
+     */
+    public static List<GcodeParser.GcodeMeta> processCommand(GcodeTokenizer tokens, int line, final GcodeState inputState,
+                                                             boolean includeNonMotionStates)
+            throws GcodeParserException {
+        if (tokens.size() == 0) return null;
+        String command = tokens.getCommand();
 
         // Initialize with original state
         GcodeState state = inputState.copy();
@@ -88,8 +108,12 @@ public class GcodeParserUtils {
         state.commandNumber = line;
 
         // handle M codes.
-        Set<Code> mCodes = GcodePreprocessorUtils.getMCodes(args);
-        for (Code c : mCodes) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.letter(i) != 'M' || !tokens.isFirstOccurrence(i)) {
+                continue;
+            }
+
+            Code c = tokens.code(i);
             switch (c.getType()) {
                 case Spindle:
                     state.spindle = c;
@@ -102,61 +126,51 @@ public class GcodeParserUtils {
             }
         }
 
-        List<String> fCodes = GcodePreprocessorUtils.parseCodes(args, 'F');
-        if (!fCodes.isEmpty()) {
-            try {
-                state.speed = Double.parseDouble(Iterables.getOnlyElement(fCodes));
-            } catch (IllegalArgumentException e) {
+        if (tokens.indexOf('F') >= 0) {
+            double speed = tokens.value('F');
+            if (tokens.count('F') > 1 || Double.isNaN(speed)) {
                 throw new GcodeParserException("Multiple F-codes on one line.");
             }
+            state.speed = speed;
         }
 
-        List<String> sCodes = GcodePreprocessorUtils.parseCodes(args, 'S');
-        if (!sCodes.isEmpty()) {
-            try {
-                state.spindleSpeed = Double.parseDouble(Iterables.getOnlyElement(sCodes));
-            } catch (IllegalArgumentException e) {
+        if (tokens.indexOf('S') >= 0) {
+            double spindleSpeed = tokens.value('S');
+            if (tokens.count('S') > 1 || Double.isNaN(spindleSpeed)) {
                 throw new GcodeParserException("Multiple S-codes on one line.");
             }
+            state.spindleSpeed = spindleSpeed;
         }
 
-        // Gather G codes.
-        Set<Code> gCodes = GcodePreprocessorUtils.getGCodes(args);
-
-        boolean hasAxisWords = GcodePreprocessorUtils.hasAxisWords(args);
-
-        // Error to mix group 1 (Motion) and certain group 0 (NonModal) codes (G10, G28, G30, G92)
-        Collection<Code> motionCodes = gCodes.stream()
-                .filter(Code::consumesMotion)
-                .collect(Collectors.toList());
-
-        // 1 motion code per line.
-        if (motionCodes.size() > 1) {
-            throw new GcodeParserException(Localization.getString("parser.gcode.multiple-axis-commands")
-                    + ": " + StringUtils.join(motionCodes, ", "));
-        }
+        // Gather G codes, each code is only applied once.
+        Code motionCode = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.letter(i) != 'G' || !tokens.isFirstOccurrence(i) || !tokens.code(i).consumesMotion()) {
+                continue;
+            }
 
-        // If there are axis words and nothing to use them, add the currentMotionMode.
-        if (hasAxisWords && motionCodes.isEmpty() && state.currentMotionMode != null) {
-            gCodes.add(state.currentMotionMode);
+            // Error to mix group 1 (Motion) and certain group 0 (NonModal) codes (G10, G28, G30, G92)
+            // 1 motion code per line.
+            if (motionCode != null) {
+                throw new GcodeParserException(Localization.getString("parser.gcode.multiple-axis-commands")
+                        + ": " + StringUtils.join(getMotionCodes(tokens), ", "));
+            }
+            motionCode = tokens.code(i);
         }
 
         // Apply each code to the state.
         List<GcodeParser.GcodeMeta> results = new ArrayList<>();
-        for (Code i : gCodes) {
-            if (i == UNKNOWN) {
-                LOGGER.warning("An unknown gcode command was detected in: " + command);
-            } else {
-                GcodeParser.GcodeMeta meta = handleGCode(i, args, line, state);
-                meta.command = command;
-                // Commands like 'G21' don't return a point segment.
-                if (meta.point != null) {
-                    meta.point.setSpeed(state.speed);
-                }
-                results.add(meta);
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.letter(i) == 'G' && tokens.isFirstOccurrence(i)) {
+                handleCode(tokens.code(i), tokens, line, state, results);
             }
         }
 
+        // If there are axis words and nothing to use them, add the currentMotionMode.
+        if (motionCode == null && state.currentMotionMode != null && tokens.hasAxisWords()) {
+            handleCode(state.currentMotionMode, tokens, line, state, results);
+        }
+
         // Return updated state / command.
         if (results.isEmpty() && includeNonMotionStates) {
             GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
@@ -169,6 +183,31 @@ public class GcodeParserUtils {
         return results;
     }
 
+    private static void handleCode(Code code, GcodeTokenizer tokens, int line, GcodeState state,
+                                   List<GcodeParser.GcodeMeta> results) throws GcodeParserException {
+        if (code == UNKNOWN) {
+            LOGGER.warning("An unknown gcode command was detected in: " + tokens.getCommand());
+        } else {
+            GcodeParser.GcodeMeta meta = handleGCode(code, tokens, line, state);
+            meta.command = tokens.getCommand();
+            // Commands like 'G21' don't return a point segment.
+            if (meta.point != null) {
+                meta.point.setSpeed(state.speed);
+            }
+            results.add(meta);
+        }
+    }
+
+    private static List<Code> getMotionCodes(GcodeTokenizer tokens) {
+        List<Code> motionCodes = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.letter(i) == 'G' && tokens.isFirstOccurrence(i) && tokens.code(i).consumesMotion()) {
+                motionCodes.add(tokens.code(i));
+            }
+        }
+        return motionCodes;
+    }
+
     private static PointSegment addProbePointSegment(Position nextPoint, boolean fastTraverse, int line, GcodeState state) {
         PointSegment ps = addLinearPointSegment(nextPoint, fastTraverse, line, state);
         ps.setIsProbe(true);
@@ -201,7 +240,7 @@ public class GcodeParserUtils {
     /**
      * Create a PointSegment representing the arc command.
      */
-    private static PointSegment addArcPointSegment(Position nextPoint, boolean clockwise, List<String> args, int line, GcodeState state) {
+    private static PointSegment addArcPointSegment(Position nextPoint, boolean clockwise, GcodeTokenizer tokens, int line, GcodeState state) {
         if (nextPoint == null) {
             return null;
         }
@@ -211,9 +250,9 @@ public class GcodeParserUtils {
         PlaneFormatter plane = new PlaneFormatter(state.plane);
         Position center =
                 GcodePreprocessorUtils.updateCenterWithCommand(
-                        args, state.currentPoint, nextPoint, state.inAbsoluteIJKMode, clockwise, plane);
+                        tokens, state.currentPoint, nextPoint, state.inAbsoluteIJKMode, clockwise, plane);
 
-        double radius = GcodePreprocessorUtils.parseCoord(args, 'R');
+        double radius = tokens.value('R');
 
         // Calculate radius if necessary, according to the current G17/18/19 Plane
         if (Double.isNaN(radius)) {
@@ -244,7 +283,7 @@ public class GcodeParserUtils {
      * <p>
      * A copy of the state object should go in the resulting GcodeMeta object.
      */
-    private static GcodeParser.GcodeMeta handleGCode(final Code code, List<String> args, int line, GcodeState state)
+    private static GcodeParser.GcodeMeta handleGCode(final Code code, GcodeTokenizer tokens, int line, GcodeState state)
             throws GcodeParserException {
         GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
 
@@ -254,7 +293,7 @@ public class GcodeParserUtils {
 
         // If it is a movement code make sure it has some coordinates.
         if (code.consumesMotion()) {
-            nextPoint = GcodePreprocessorUtils.updatePointWithCommand(args, state.currentPoint, state.inAbsoluteMode);
+            nextPoint = GcodePreprocessorUtils.updatePointWithCommand(tokens, state.currentPoint, state.inAbsoluteMode);
 
             if (nextPoint == null) {
                 if (!code.motionOptional()) {
@@ -278,10 +317,10 @@ public class GcodeParserUtils {
 
             // Arc command.
             case G2:
-                meta.point = addArcPointSegment(nextPoint, true, args, line, state);
+                meta.point = addArcPointSegment(nextPoint, true, tokens, line, state);
                 break;
             case G3:
-                meta.point = addArcPointSegment(nextPoint, false, args, line, state);
+                meta.point = addArcPointSegment(nextPoint, false, tokens, line, state);
                 break;
 
             case G17:
@@ -365,34 +404,127 @@ public class GcodeParserUtils {
      */
     public static void processAndExport(GcodeParser gcp, File input, IGcodeWriter output)
             throws IOException, GcodeParserException {
-        try(BufferedReader br = new BufferedReader(new FileReader(input))) {
-            if (processAndExportGcodeStream(gcp, br, output)) {
-                return;
-            }
+        processAndExport(gcp, input, output, null);
+    }
+
+    /**
+     * Same as {@link #processAndExport(GcodeParser, File, IGcodeWriter)} but also
+     * compiles the processed commands into a program while they are written.
+     *
+     * @param program a builder receiving each processed command, may be null.
+     */
+    public static void processAndExport(GcodeParser gcp, File input, IGcodeWriter output, GcodeProgram.Builder program)
+            throws IOException, GcodeParserException {
+        try (PreprocessorStages stages = PreprocessorStages.all(input)) {
+            processAndExport(gcp, stages, output, program);
+        }
+    }
+
+    /**
+     * Same as {@link #processAndExport(GcodeParser, File, IGcodeWriter, GcodeProgram.Builder)} but continues from the
+     * results of the processors stored in the cache, and stores the results of the expensive processors which are run.
+     *
+     * @param cache the results of earlier runs, may be null.
+     */
+    public static void processAndExport(GcodeParser gcp, File input, IGcodeWriter output, GcodeProgram.Builder program,
+                                        PreprocessorCache cache)
+            throws IOException, GcodeParserException {
+        if (cache == null) {
+            processAndExport(gcp, input, output, program);
+            return;
+        }
+
+        try (PreprocessorStages stages = cache.open(gcp, input)) {
+            processAndExport(gcp, stages, output, program);
+            stages.commit();
+        }
+    }
+
+    private static void processAndExport(GcodeParser gcp, PreprocessorStages stages, IGcodeWriter output, GcodeProgram.Builder program)
+            throws IOException, GcodeParserException {
+        // Split large programs in chunks which are processed in parallel unless a processor needs every command in order.
+        if (stages.isSequential(gcp) || ForkJoinPool.getCommonPoolParallelism() < 2) {
+            processAndExportSequentially(gcp, stages, output, program);
+            return;
+        }
+
+        try (ChunkedPreprocessor chunks = new ChunkedPreprocessor(gcp, stages, output, program, ForkJoinPool.commonPool(),
+                PARALLEL_CHUNK_SIZE, ForkJoinPool.getCommonPoolParallelism() * 2)) {
+            stages.forEachLine(chunks::add);
+            chunks.finish();
+        }
+    }
+
+    /**
+     * Processes the commands one at a time on the calling thread.
+     */
+    static void processAndExportSequentially(GcodeParser gcp, File input, IGcodeWriter output, GcodeProgram.Builder program)
+            throws IOException, GcodeParserException {
+        try (PreprocessorStages stages = PreprocessorStages.all(input)) {
+            processAndExportSequentially(gcp, stages, output, program);
+        }
+    }
+
+    private static void processAndExportSequentially(GcodeParser gcp, PreprocessorStages stages, IGcodeWriter output,
+                                                     GcodeProgram.Builder program)
+            throws IOException, GcodeParserException {
+        stages.forEachLine((command, comment, idx, commands) ->
+                preprocessAndWrite(gcp, stages, output, program, command, comment, idx, commands));
+    }
+
+    /**
+     * Receives each line of a gcode file.
+     */
+    @FunctionalInterface
+    interface LineHandler {
+        void handle(String command, String comment, int idx) throws GcodeParserException;
+    }
+
+    /**
+     * Reads the input file, either in GcodeStream or gcode-text format.
+     */
+    static void forEachLine(File input, LineHandler handler) throws IOException, GcodeParserException {
+        if (forEachGcodeStreamLine(input, handler)) {
+            return;
         }
 
         try(BufferedReader br = new BufferedReader(new FileReader(input))) {
-            processAndExportText(gcp, br, output);
+            forEachTextLine(br, handler);
         }
     }
 
     /**
      * Common logic in processAndExport* methods.
+     *
+     * @param commands the results of the processors before the first one to run, null if the line isn't processed.
      */
-    private static void preprocessAndWrite(GcodeParser gcp, IGcodeWriter gsw, String command, String comment, int idx) throws GcodeParserException {
+    private static void preprocessAndWrite(GcodeParser gcp, PreprocessorStages stages, IGcodeWriter gsw,
+                                           GcodeProgram.Builder program, String command, String comment, int idx,
+                                           List<String> commands) throws GcodeParserException {
         if (idx % 100000 == 0) {
             LOGGER.log(Level.FINE, "gcode processing line: " + idx);
         }
 
-        if (StringUtils.isEmpty(command)) {
+        if (commands == null) {
             gsw.addLine(command, command, comment, idx);
+            stages.write(command, comment, idx, null);
         }
         else {
             // Parse the gcode for the buffer.
-            Collection<String> lines = gcp.preprocessCommand(command, gcp.getCurrentState());
+            List<List<String>> checkpointResults = stages.hasCheckpoints() ? new ArrayList<>() : null;
+            Collection<String> lines = stages.process(gcp, commands, gcp.getCurrentState(), checkpointResults);
+            if (checkpointResults != null) {
+                stages.write(command, comment, idx, checkpointResults);
+            }
 
+            if (program != null) {
+                program.startCommand();
+            }
             for(String processedLine : lines) {
                 gsw.addLine(command, processedLine, comment, idx);
+                if (program != null) {
+                    program.addCommand(processedLine, idx);
+                }
             }
 
             gcp.addCommand(command);
@@ -403,7 +535,7 @@ public class GcodeParserUtils {
      * Attempts to read the input file in GcodeStream format.
      * @return whether or not we succeed processing the file.
      */
-    private static boolean processAndExportGcodeStream(GcodeParser gcp, BufferedReader input, IGcodeWriter output)
+    private static boolean forEachGcodeStreamLine(File input, LineHandler handler)
             throws IOException, GcodeParserException {
 
         // Preprocess a GcodeStream file.
@@ -412,7 +544,7 @@ public class GcodeParserUtils {
             while (gsr.getNumRowsRemaining() > 0) {
                 i++;
                 GcodeCommand gc = gsr.getNextCommand();
-                preprocessAndWrite(gcp, output, gc.getCommandString(), gc.getComment(), i);
+                handler.handle(gc.getCommandString(), gc.getComment(), i);
             }
 
             // Done processing GcodeStream file.
@@ -427,7 +559,7 @@ public class GcodeParserUtils {
      * Attempts to read the input file in gcode-text format.
      * @return whether or not we succeed processing the file.
      */
-    private static void processAndExportText(GcodeParser gcp, BufferedReader input, IGcodeWriter output)
+    private static void forEachTextLine(BufferedReader input, LineHandler handler)
             throws IOException, GcodeParserException {
         // Preprocess a regular gcode file.
         try(BufferedReader br = input) {
@@ -436,7 +568,7 @@ public class GcodeParserUtils {
                 i++;
 
                 String comment = GcodePreprocessorUtils.parseComment(line);
-                preprocessAndWrite(gcp, output, line, comment, i);
+                handler.handle(line, comment, i);
             }
         }
     }
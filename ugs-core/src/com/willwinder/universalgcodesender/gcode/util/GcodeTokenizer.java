@@ -0,0 +1,329 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.utils.DecimalParser;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Splits a gcode command into words, giving a flat index based view of the
+ * words with their upper case letter, parsed numeric value, code and offsets
+ * in the source command. The words are the same as the ones returned by
+ * {@link com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils#splitCommand(String)}
+ * which means that whitespace inside a word is ignored, "G 01" is the word "G01".
+ *
+ * The tokenizer is meant to be reused for each command, after the internal
+ * buffers have grown to the size of the longest command no objects are
+ * created while tokenizing. Because of that it is not thread safe and the
+ * words are only valid until the next call to {@link #tokenize(String)}.
+ *
+ * @author wwinder
+ */
+public class GcodeTokenizer {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String command = "";
+    private int size;
+
+    private char[] letters = new char[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private Code[] codes = new Code[INITIAL_CAPACITY];
+    private int[] wordStarts = new int[INITIAL_CAPACITY];
+    private int[] wordEnds = new int[INITIAL_CAPACITY];
+    private int[] sourceStarts = new int[INITIAL_CAPACITY];
+    private int[] sourceEnds = new int[INITIAL_CAPACITY];
+
+    // The characters of all words without ignored characters
+    private char[] chars = new char[INITIAL_CAPACITY * 4];
+    private CharBuffer charSequence = CharBuffer.wrap(chars);
+    private int charCount;
+
+    // The word currently being read
+    private int wordStart;
+    private int sourceStart;
+    private int sourceEnd;
+
+    /**
+     * Splits the command into words, replacing the words of the previous command.
+     *
+     * @param command the command to tokenize
+     * @return this tokenizer
+     */
+    public GcodeTokenizer tokenize(String command) {
+        this.command = command;
+        size = 0;
+        charCount = 0;
+        wordStart = 0;
+
+        int length = command.length();
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+            charSequence = CharBuffer.wrap(chars);
+        }
+
+        // Special handling for GRBL system commands which will not be splitted
+        if (command.startsWith("$")) {
+            for (int i = 0; i < length; i++) {
+                append(command.charAt(i), i);
+            }
+            finishWord();
+            return this;
+        }
+
+        boolean readNumeric = false;
+        boolean readLineComment = false;
+        boolean readBlockComment = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = command.charAt(i);
+
+            if (c == '(' && !readLineComment && !readBlockComment) {
+                finishWord();
+                append(c, i);
+                readBlockComment = true;
+            } else if (readBlockComment && c == ')') {
+                readBlockComment = false;
+                append(c, i);
+                finishWord();
+            } else if (c == ';' && !readLineComment && !readBlockComment) {
+                finishWord();
+                append(c, i);
+                readLineComment = true;
+            } else if (readLineComment || readBlockComment) {
+                append(c, i);
+            } else if (Character.isWhitespace(c)) {
+                continue;
+            }
+            // If the last character was numeric (readNumeric is true) and this
+            // character is a letter or whitespace, then we hit a boundary.
+            else if (readNumeric && !Character.isDigit(c) && c != '.') {
+                readNumeric = false;
+                finishWord();
+
+                if (Character.isLetter(c)) {
+                    append(c, i);
+                }
+            } else if (Character.isDigit(c) || c == '.' || c == '-') {
+                append(c, i);
+                readNumeric = true;
+            } else if (Character.isLetter(c)) {
+                append(c, i);
+            }
+        }
+
+        // Add final one
+        finishWord();
+        return this;
+    }
+
+    /**
+     * @return the last tokenized command
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the number of words in the command
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the upper case first character of the word, '(' or ';' for comments
+     */
+    public char letter(int index) {
+        return letters[index];
+    }
+
+    /**
+     * @return the numeric value following the letter or NaN if it isn't a number
+     */
+    public double value(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return the code of the word, {@link Code#UNKNOWN} if it isn't a known code
+     */
+    public Code code(int index) {
+        return codes[index];
+    }
+
+    /**
+     * @return the index of the first character of the word in the command
+     */
+    public int sourceStart(int index) {
+        return sourceStarts[index];
+    }
+
+    /**
+     * @return the index after the last character of the word in the command
+     */
+    public int sourceEnd(int index) {
+        return sourceEnds[index];
+    }
+
+    /**
+     * @return the number of characters in the word, not counting ignored whitespace
+     */
+    public int wordLength(int index) {
+        return wordEnds[index] - wordStarts[index];
+    }
+
+    /**
+     * @return a character of the word in its original case
+     */
+    public char wordChar(int index, int offset) {
+        return chars[wordStarts[index] + offset];
+    }
+
+    /**
+     * @return true if the word is a block or line comment
+     */
+    public boolean isComment(int index) {
+        return letters[index] == '(' || letters[index] == ';';
+    }
+
+    /**
+     * Appends the word as it would have been returned by splitCommand.
+     */
+    public StringBuilder appendWord(StringBuilder sb, int index) {
+        return sb.append(chars, wordStarts[index], wordLength(index));
+    }
+
+    /**
+     * Creates a string of the word, prefer the other accessors to avoid allocations.
+     */
+    public String word(int index) {
+        return new String(chars, wordStarts[index], wordLength(index));
+    }
+
+    /**
+     * @return the index of the first word with the letter or -1 if there is none
+     */
+    public int indexOf(char letter) {
+        char address = Character.toUpperCase(letter);
+        for (int i = 0; i < size; i++) {
+            if (letters[i] == address) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of words with the letter
+     */
+    public int count(char letter) {
+        char address = Character.toUpperCase(letter);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (letters[i] == address) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the value of the first word with the letter, like "X-0.5" for 'X'.
+     *
+     * @return the value or NaN if there is no such word or it has no numeric value
+     */
+    public double value(char letter) {
+        int index = indexOf(letter);
+        return index < 0 ? Double.NaN : values[index];
+    }
+
+    /**
+     * @return true if the command has a word for any of the X, Y, Z, A, B or C axes
+     */
+    public boolean hasAxisWords() {
+        for (int i = 0; i < size; i++) {
+            if (wordLength(i) > 1) {
+                char c = letters[i];
+                if (c == 'X' || c == 'Y' || c == 'Z' || c == 'A' || c == 'B' || c == 'C') {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Codes are applied once per command even if they are repeated, this
+     * returns false if the same code has been given in an earlier word.
+     *
+     * @return true if this is the first word with its code
+     */
+    public boolean isFirstOccurrence(int index) {
+        for (int i = 0; i < index; i++) {
+            if (letters[i] == letters[index] && codes[i] == codes[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(char c, int sourceIndex) {
+        if (charCount == wordStart) {
+            sourceStart = sourceIndex;
+        }
+        chars[charCount++] = c;
+        sourceEnd = sourceIndex + 1;
+    }
+
+    private void finishWord() {
+        if (charCount == wordStart) {
+            return;
+        }
+
+        if (size == letters.length) {
+            grow();
+        }
+
+        char letter = Character.toUpperCase(chars[wordStart]);
+        boolean isText = letter == '(' || letter == ';' || letter == '$';
+        letters[size] = letter;
+        values[size] = isText ? Double.NaN : DecimalParser.parseDoubleOrNaN(charSequence, wordStart + 1, charCount);
+        codes[size] = isText ? Code.UNKNOWN : Code.lookupCode(letter, chars, wordStart + 1, charCount);
+        wordStarts[size] = wordStart;
+        wordEnds[size] = charCount;
+        sourceStarts[size] = sourceStart;
+        sourceEnds[size] = sourceEnd;
+        size++;
+
+        wordStart = charCount;
+    }
+
+    private void grow() {
+        int capacity = letters.length * 2;
+        letters = Arrays.copyOf(letters, capacity);
+        values = Arrays.copyOf(values, capacity);
+        codes = Arrays.copyOf(codes, capacity);
+        wordStarts = Arrays.copyOf(wordStarts, capacity);
+        wordEnds = Arrays.copyOf(wordEnds, capacity);
+        sourceStarts = Arrays.copyOf(sourceStarts, capacity);
+        sourceEnds = Arrays.copyOf(sourceEnds, capacity);
+    }
+}
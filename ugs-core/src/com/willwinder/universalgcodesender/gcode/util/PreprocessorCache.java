@@ -0,0 +1,170 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.google.common.hash.Hashing;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches the results of the expensive command processors when preprocessing
+ * a file, see {@link CommandProcessor#isExpensive()}.
+ *
+ * The results after a processor are stored as a checkpoint keyed by the file
+ * and the configuration of that processor and every processor before it. When
+ * the file is processed again only the processors after the last matching
+ * checkpoint are run, so changing the configuration of one processor, or
+ * adding one at the end, doesn't run the processors before it again.
+ *
+ * Processors without a configuration key, and every processor after them,
+ * are never cached.
+ *
+ * @author wwinder
+ */
+public class PreprocessorCache {
+    private static final Logger LOGGER = Logger.getLogger(PreprocessorCache.class.getName());
+
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final int DEFAULT_MAX_CHECKPOINTS = 16;
+
+    private final File directory;
+    private final int maxCheckpoints;
+
+    /**
+     * @param directory where the checkpoints are stored.
+     */
+    public PreprocessorCache(File directory) {
+        this(directory, DEFAULT_MAX_CHECKPOINTS);
+    }
+
+    /**
+     * @param directory      where the checkpoints are stored.
+     * @param maxCheckpoints the number of checkpoints to keep, the least recently used ones are deleted first.
+     */
+    public PreprocessorCache(File directory, int maxCheckpoints) {
+        this.directory = directory;
+        this.maxCheckpoints = maxCheckpoints;
+    }
+
+    /**
+     * Finds the processors which need to run to preprocess the file with the given parser, continuing from the last
+     * checkpoint in the cache and storing the results after the following expensive processors.
+     */
+    PreprocessorStages open(GcodeParser gcp, File input) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create the preprocessor cache directory: " + directory);
+        }
+
+        // The checkpoint of each expensive processor, as long as it and every processor before it can be cached.
+        File[] files = new File[gcp.numCommandProcessors()];
+        StringBuilder key = new StringBuilder()
+                .append(input.getCanonicalPath()).append('\n')
+                .append(input.length()).append('\n')
+                .append(input.lastModified()).append('\n');
+        for (int i = 0; i < files.length; i++) {
+            CommandProcessor processor = gcp.getCommandProcessor(i);
+            String configurationKey = processor.getConfigurationKey();
+            if (configurationKey == null) {
+                break;
+            }
+
+            key.append(configurationKey).append('\n');
+            if (processor.isExpensive()) {
+                String hash = Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+                files[i] = new File(directory, hash + CHECKPOINT_SUFFIX);
+            }
+        }
+
+        // Continue from the last checkpoint.
+        int firstProcessor = 0;
+        File source = null;
+        for (int i = files.length - 1; i >= 0; i--) {
+            if (files[i] != null && files[i].isFile()) {
+                source = files[i];
+                firstProcessor = i + 1;
+
+                // Mark as recently used
+                if (!source.setLastModified(System.currentTimeMillis())) {
+                    LOGGER.log(Level.FINE, "Couldn't update the modification time of {0}", source);
+                }
+                break;
+            }
+        }
+
+        List<Integer> checkpoints = new ArrayList<>();
+        List<File> checkpointFiles = new ArrayList<>();
+        for (int i = firstProcessor; i < files.length; i++) {
+            if (files[i] != null) {
+                checkpoints.add(i);
+                checkpointFiles.add(files[i]);
+            }
+        }
+
+        LOGGER.log(Level.INFO, "Preprocessing from command processor {0} of {1}, storing {2} checkpoints",
+                new Object[]{firstProcessor, files.length, checkpoints.size()});
+        return new PreprocessorStages(input, source, firstProcessor,
+                checkpoints.stream().mapToInt(Integer::intValue).toArray(),
+                checkpointFiles.toArray(new File[0]), this);
+    }
+
+    /**
+     * Deletes every checkpoint.
+     */
+    public void clear() {
+        for (File checkpoint : listCheckpoints()) {
+            delete(checkpoint);
+        }
+    }
+
+    /**
+     * Deletes the least recently used checkpoints until at most the maximum number of checkpoints are left.
+     */
+    void evict() {
+        File[] checkpoints = listCheckpoints();
+        if (checkpoints.length <= maxCheckpoints) {
+            return;
+        }
+
+        Arrays.sort(checkpoints, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = maxCheckpoints; i < checkpoints.length; i++) {
+            delete(checkpoints[i]);
+        }
+    }
+
+    private File[] listCheckpoints() {
+        File[] checkpoints = directory.listFiles((dir, name) -> name.endsWith(CHECKPOINT_SUFFIX));
+        return checkpoints == null ? new File[0] : checkpoints;
+    }
+
+    private static void delete(File checkpoint) {
+        if (!checkpoint.delete()) {
+            LOGGER.log(Level.WARNING, "Couldn''t delete the preprocessor checkpoint {0}", checkpoint);
+        }
+    }
+}
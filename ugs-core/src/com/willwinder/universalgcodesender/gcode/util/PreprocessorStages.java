@@ -0,0 +1,339 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The command processors of a parser which are run when preprocessing a file.
+ *
+ * Processing either starts from the original file or continues from a
+ * checkpoint, the stored results of the processors before the first one to
+ * run. The results after other processors can be stored as new checkpoints
+ * while processing, which are only kept once the whole file has been
+ * processed, see {@link PreprocessorCache}.
+ *
+ * @author wwinder
+ */
+class PreprocessorStages implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(PreprocessorStages.class.getName());
+
+    private static final byte[] CHECKPOINT_MAGIC = {'U', 'G', 'S', 'P'};
+    private static final int CHECKPOINT_VERSION = 1;
+
+    // Written instead of the number of commands for empty lines, which aren't processed.
+    private static final int UNPROCESSED = -1;
+
+    private final File input;
+    private final File source;
+    private final int firstProcessor;
+    private final int[] checkpoints;
+    private final File[] checkpointFiles;
+    private final File[] tempFiles;
+    private final DataOutputStream[] writers;
+    private final PreprocessorCache cache;
+
+    private IOException writeException;
+    private boolean committed = false;
+
+    /**
+     * @param input           the file to preprocess.
+     * @param source          a checkpoint with the results of the processors before the first one, or null to start
+     *                        from the input.
+     * @param firstProcessor  the index of the first processor to run.
+     * @param checkpoints     the indices of the processors after which the results are stored, in ascending order.
+     * @param checkpointFiles where the results after each of the checkpoints are stored.
+     * @param cache           notified when new checkpoints have been stored, may be null.
+     */
+    PreprocessorStages(File input, File source, int firstProcessor, int[] checkpoints, File[] checkpointFiles,
+                       PreprocessorCache cache) throws IOException {
+        this.input = input;
+        this.source = source;
+        this.firstProcessor = firstProcessor;
+        this.checkpoints = checkpoints;
+        this.checkpointFiles = checkpointFiles;
+        this.cache = cache;
+        this.tempFiles = new File[checkpoints.length];
+        this.writers = new DataOutputStream[checkpoints.length];
+
+        try {
+            for (int i = 0; i < checkpoints.length; i++) {
+                tempFiles[i] = new File(checkpointFiles[i].getPath() + ".tmp");
+                writers[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFiles[i]), 64 * 1024));
+                writers[i].write(CHECKPOINT_MAGIC);
+                writers[i].writeInt(CHECKPOINT_VERSION);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs every processor of the parser on the input without storing any checkpoints.
+     */
+    static PreprocessorStages all(File input) throws IOException {
+        return new PreprocessorStages(input, null, 0, new int[0], new File[0], null);
+    }
+
+    /**
+     * @return true if processing continues from a checkpoint.
+     */
+    boolean isResumed() {
+        return source != null;
+    }
+
+    /**
+     * @return true if the results of any processor are stored as a checkpoint.
+     */
+    boolean hasCheckpoints() {
+        return checkpoints.length > 0;
+    }
+
+    /**
+     * @return true if any of the processors which are run must see the commands one at a time, in order.
+     */
+    boolean isSequential(GcodeParser gcp) {
+        for (int i = firstProcessor; i < gcp.numCommandProcessors(); i++) {
+            if (gcp.getCommandProcessor(i).isSequential()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads each line of the input along with the results of the processors before the first one to run. The results
+     * are null for empty lines, which aren't processed. Stops with an exception if the thread is interrupted.
+     */
+    void forEachLine(StagedLineHandler handler) throws IOException, GcodeParserException {
+        if (source == null) {
+            GcodeParserUtils.forEachLine(input, (command, comment, idx) -> {
+                checkInterrupted();
+                handler.handle(command, comment, idx,
+                        StringUtils.isEmpty(command) ? null : Collections.singletonList(command));
+            });
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source), 64 * 1024))) {
+            byte[] magic = new byte[CHECKPOINT_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, CHECKPOINT_MAGIC) || in.readInt() != CHECKPOINT_VERSION) {
+                throw new IOException("Not a preprocessor checkpoint: " + source);
+            }
+
+            while (true) {
+                int idx;
+                try {
+                    idx = in.readInt();
+                } catch (EOFException e) {
+                    // No more lines
+                    return;
+                }
+
+                String command = readField(in);
+                String comment = readField(in);
+                int count = in.readInt();
+
+                List<String> commands = null;
+                if (count != UNPROCESSED) {
+                    commands = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        commands.add(readField(in));
+                    }
+                }
+                checkInterrupted();
+                handler.handle(command, comment, idx, commands);
+            }
+        }
+    }
+
+    /**
+     * Runs the processors on the results of the processors before them. Does not change the parser state.
+     *
+     * @param commands          the results of the processors before the first one to run.
+     * @param initialState      the state before the original command was applied.
+     * @param checkpointResults receives the results after each checkpoint, may be null.
+     * @return the processed commands.
+     */
+    List<String> process(GcodeParser gcp, List<String> commands, GcodeState initialState,
+                         List<List<String>> checkpointResults) throws GcodeParserException {
+        int checkpoint = 0;
+        for (int i = firstProcessor; i < gcp.numCommandProcessors(); i++) {
+            commands = gcp.preprocessCommands(commands, initialState, i);
+
+            if (checkpoint < checkpoints.length && checkpoints[checkpoint] == i) {
+                checkpoint++;
+                if (checkpointResults != null) {
+                    checkpointResults.add(commands);
+                }
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * Stores the results after each checkpoint for a line, in the order the lines are read.
+     *
+     * @param checkpointResults the results collected by {@link #process}, or null if the line wasn't processed.
+     */
+    void write(String command, String comment, int idx, List<List<String>> checkpointResults) {
+        if (writeException != null) {
+            return;
+        }
+
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                DataOutputStream out = writers[i];
+                out.writeInt(idx);
+                writeField(out, command);
+                writeField(out, comment);
+
+                if (checkpointResults == null) {
+                    out.writeInt(UNPROCESSED);
+                    continue;
+                }
+
+                List<String> commands = checkpointResults.get(i);
+                out.writeInt(commands.size());
+                for (String c : commands) {
+                    writeField(out, c);
+                }
+            }
+        } catch (IOException e) {
+            writeException = e;
+        }
+    }
+
+    /**
+     * Keeps the checkpoints once every line has been processed and written.
+     */
+    void commit() {
+        closeWriters();
+        if (writeException != null) {
+            // The file has been processed anyway, it just won't be cached.
+            LOGGER.log(Level.WARNING, "Couldn't store the preprocessor checkpoints", writeException);
+            return;
+        }
+
+        try {
+            for (int i = 0; i < tempFiles.length; i++) {
+                Files.move(tempFiles[i].toPath(), checkpointFiles[i].toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            committed = true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't store the preprocessor checkpoints", e);
+        }
+
+        if (cache != null) {
+            cache.evict();
+        }
+    }
+
+    /**
+     * Discards any checkpoints which weren't committed.
+     */
+    @Override
+    public void close() {
+        closeWriters();
+        if (!committed) {
+            for (File tempFile : tempFiles) {
+                if (tempFile != null && tempFile.exists() && !tempFile.delete()) {
+                    LOGGER.log(Level.WARNING, "Couldn''t delete the preprocessor checkpoint {0}", tempFile);
+                }
+            }
+        }
+    }
+
+    private void closeWriters() {
+        for (int i = 0; i < writers.length; i++) {
+            if (writers[i] == null) {
+                continue;
+            }
+
+            try {
+                writers[i].close();
+            } catch (IOException e) {
+                if (writeException == null) {
+                    writeException = e;
+                }
+            }
+            writers[i] = null;
+        }
+    }
+
+    private static void checkInterrupted() throws GcodeParserException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new GcodeParserException("Interrupted while processing gcode");
+        }
+    }
+
+    private static void writeField(DataOutputStream out, String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            out.writeInt(0);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readField(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return "";
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Receives each line of the input along with the results of the processors before the first one to run.
+     */
+    @FunctionalInterface
+    interface StagedLineHandler {
+        void handle(String command, String comment, int idx, List<String> commands) throws GcodeParserException;
+    }
+}
@@ -55,4 +55,13 @@ public interface CommunicatorListener {
      * processing of commands.
      */
     void communicatorPausedOnError();
+
+    /**
+     * This method will be called when the connection to the controller was lost
+     * without being closed, ex: the device was unplugged or a write failed.
+     *
+     * @param reason a description of why the connection was lost
+     */
+    default void communicatorConnectionLost(String reason) {
+    }
 }
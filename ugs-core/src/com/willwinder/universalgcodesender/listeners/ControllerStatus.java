@@ -21,11 +21,32 @@ package com.willwinder.universalgcodesender.listeners;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 
+import java.util.Objects;
+
 /**
+ * The status of the controller.
+ *
+ * A status that has been dispatched to the listeners carries a version which
+ * increases for each dispatched status and a mask of the fields that changed
+ * since the previous one, which can be checked with {@link #hasChanged(int)}.
+ * Identical statuses aren't dispatched at all.
  *
  * @author wwinder
  */
 public class ControllerStatus {
+    public static final int STATE = 1;
+    public static final int MACHINE_COORD = 1 << 1;
+    public static final int WORK_COORD = 1 << 2;
+    public static final int WORK_COORDINATE_OFFSET = 1 << 3;
+    public static final int FEED_SPEED = 1 << 4;
+    public static final int FEED_SPEED_UNITS = 1 << 5;
+    public static final int SPINDLE_SPEED = 1 << 6;
+    public static final int OVERRIDES = 1 << 7;
+    public static final int PINS = 1 << 8;
+    public static final int ACCESSORY_STATES = 1 << 9;
+    public static final int BUFFER_STATE = 1 << 10;
+    public static final int ALL = (1 << 11) - 1;
+
     private final Position machineCoord;
     private final Position workCoord;
     private final Position workCoordinateOffset;
@@ -36,6 +57,9 @@ public class ControllerStatus {
     private final AccessoryStates accessoryStates;
     private final ControllerState state;
     private final UnitUtils.Units feedSpeedUnits;
+    private final BufferState bufferState;
+    private final long version;
+    private final int changes;
 
     /**
      * Baseline constructor. This data should always be present. Represents the
@@ -56,6 +80,16 @@ public class ControllerStatus {
                             Position workCoord, Double feedSpeed, UnitUtils.Units feedSpeedUnits, Double spindleSpeed,
                             OverridePercents overrides, Position workCoordinateOffset,
                             EnabledPins pins, AccessoryStates states) {
+        this(state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, pins, states, null);
+    }
+
+    /**
+     * Additional parameters including the state of the controller buffers
+     */
+    public ControllerStatus(ControllerState state, Position machineCoord,
+                            Position workCoord, Double feedSpeed, UnitUtils.Units feedSpeedUnits, Double spindleSpeed,
+                            OverridePercents overrides, Position workCoordinateOffset,
+                            EnabledPins pins, AccessoryStates states, BufferState bufferState) {
         this.state = state;
         this.machineCoord = machineCoord;
         this.workCoord = workCoord;
@@ -66,6 +100,94 @@ public class ControllerStatus {
         this.overrides = overrides;
         this.pins = pins;
         this.accessoryStates = states;
+        this.bufferState = bufferState;
+        this.version = 0;
+        this.changes = ALL;
+    }
+
+    private ControllerStatus(ControllerStatus status, long version, int changes) {
+        this.state = status.state;
+        this.machineCoord = status.machineCoord;
+        this.workCoord = status.workCoord;
+        this.workCoordinateOffset = status.workCoordinateOffset;
+        this.feedSpeed = status.feedSpeed;
+        this.feedSpeedUnits = status.feedSpeedUnits;
+        this.spindleSpeed = status.spindleSpeed;
+        this.overrides = status.overrides;
+        this.pins = status.pins;
+        this.accessoryStates = status.accessoryStates;
+        this.bufferState = status.bufferState;
+        this.version = version;
+        this.changes = changes;
+    }
+
+    /**
+     * Creates a copy of this status with the given version and change mask.
+     *
+     * @param version the version of the status
+     * @param changes the mask of fields that changed since the previous version
+     * @return a copy of the status
+     */
+    public ControllerStatus withVersion(long version, int changes) {
+        return new ControllerStatus(this, version, changes);
+    }
+
+    /**
+     * Compares this status with a previous one.
+     *
+     * @param previous the previous status, or null if there is none
+     * @return a mask of the fields that differ, {@link #ALL} if there is no previous status
+     */
+    public int getChangesSince(ControllerStatus previous) {
+        if (previous == null) {
+            return ALL;
+        }
+
+        int result = 0;
+        if (state != previous.state) result |= STATE;
+        if (!Objects.equals(machineCoord, previous.machineCoord)) result |= MACHINE_COORD;
+        if (!Objects.equals(workCoord, previous.workCoord)) result |= WORK_COORD;
+        if (!Objects.equals(workCoordinateOffset, previous.workCoordinateOffset)) result |= WORK_COORDINATE_OFFSET;
+        if (!Objects.equals(feedSpeed, previous.feedSpeed)) result |= FEED_SPEED;
+        if (feedSpeedUnits != previous.feedSpeedUnits) result |= FEED_SPEED_UNITS;
+        if (!Objects.equals(spindleSpeed, previous.spindleSpeed)) result |= SPINDLE_SPEED;
+        if (!Objects.equals(overrides, previous.overrides)) result |= OVERRIDES;
+        if (!Objects.equals(pins, previous.pins)) result |= PINS;
+        if (!Objects.equals(accessoryStates, previous.accessoryStates)) result |= ACCESSORY_STATES;
+        if (!Objects.equals(bufferState, previous.bufferState)) result |= BUFFER_STATE;
+        return result;
+    }
+
+    /**
+     * Returns the version of the status, which increases for every status
+     * that is dispatched by the controller. Statuses that haven't been
+     * dispatched have version zero.
+     *
+     * @return the version of the status
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns a mask of the fields that changed since the previously
+     * dispatched status, i.e. {@link #MACHINE_COORD} | {@link #FEED_SPEED}.
+     * Statuses that haven't been dispatched have all fields changed.
+     *
+     * @return the mask of changed fields
+     */
+    public int getChanges() {
+        return changes;
+    }
+
+    /**
+     * Checks if any of the given fields changed since the previous status.
+     *
+     * @param fields a mask of fields, i.e. {@link #MACHINE_COORD} | {@link #WORK_COORD}
+     * @return true if any of the fields changed
+     */
+    public boolean hasChanged(int fields) {
+        return (changes & fields) != 0;
     }
 
     public ControllerState getState() {
@@ -108,6 +230,15 @@ public class ControllerStatus {
         return feedSpeedUnits;
     }
 
+    /**
+     * Returns the state of the controller buffers if it was reported.
+     *
+     * @return the buffer state or null if not reported by the controller
+     */
+    public BufferState getBufferState() {
+        return bufferState;
+    }
+
     public static class EnabledPins {
         final public boolean X;
         final public boolean Y;
@@ -135,6 +266,21 @@ public class ControllerStatus {
             SoftReset = enabledUpper.contains("R");
             CycleStart = enabledUpper.contains("S");
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            EnabledPins that = (EnabledPins) o;
+            return X == that.X && Y == that.Y && Z == that.Z && A == that.A && B == that.B && C == that.C &&
+                    Probe == that.Probe && Door == that.Door && Hold == that.Hold &&
+                    SoftReset == that.SoftReset && CycleStart == that.CycleStart;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(X, Y, Z, A, B, C, Probe, Door, Hold, SoftReset, CycleStart);
+        }
     }
 
     public static class AccessoryStates {
@@ -150,6 +296,19 @@ public class ControllerStatus {
             Flood = enabledUpper.contains("F");
             Mist = enabledUpper.contains("M");
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            AccessoryStates that = (AccessoryStates) o;
+            return SpindleCW == that.SpindleCW && SpindleCCW == that.SpindleCCW && Flood == that.Flood && Mist == that.Mist;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(SpindleCW, SpindleCCW, Flood, Mist);
+        }
     }
 
     public static class OverridePercents {
@@ -161,5 +320,44 @@ public class ControllerStatus {
             this.rapid = rapid;
             this.spindle = spindle;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            OverridePercents that = (OverridePercents) o;
+            return feed == that.feed && rapid == that.rapid && spindle == that.spindle;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(feed, rapid, spindle);
+        }
+    }
+
+    /**
+     * The available space in the controller buffers, for GRBL this is
+     * reported in the "Bf:" field of the status report.
+     */
+    public static class BufferState {
+        final public int plannerBlocksAvailable;
+        final public int rxBytesAvailable;
+        public BufferState(int plannerBlocksAvailable, int rxBytesAvailable) {
+            this.plannerBlocksAvailable = plannerBlocksAvailable;
+            this.rxBytesAvailable = rxBytesAvailable;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            BufferState that = (BufferState) o;
+            return plannerBlocksAvailable == that.plannerBlocksAvailable && rxBytesAvailable == that.rxBytesAvailable;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(plannerBlocksAvailable, rxBytesAvailable);
+        }
     }
 }
\ No newline at end of file
@@ -37,6 +37,7 @@ public class ControllerStatusBuilder {
     private Position workCoordinateOffset = Position.ZERO;
     private ControllerStatus.EnabledPins pins = null;
     private ControllerStatus.AccessoryStates states = null;
+    private ControllerStatus.BufferState bufferState = null;
 
     public static ControllerStatusBuilder newInstance() {
         return new ControllerStatusBuilder();
@@ -55,7 +56,8 @@ public class ControllerStatusBuilder {
                 .setOverrides(controllerStatus.getOverrides())
                 .setWorkCoordinateOffset(controllerStatus.getWorkCoordinateOffset())
                 .setPins(controllerStatus.getEnabledPins())
-                .setStates(controllerStatus.getAccessoryStates());
+                .setStates(controllerStatus.getAccessoryStates())
+                .setBufferState(controllerStatus.getBufferState());
         }
         return controllerStatusBuilder;
     }
@@ -110,7 +112,12 @@ public class ControllerStatusBuilder {
         return this;
     }
 
+    public ControllerStatusBuilder setBufferState(ControllerStatus.BufferState bufferState) {
+        this.bufferState = bufferState;
+        return this;
+    }
+
     public ControllerStatus build() {
-        return new ControllerStatus(state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, pins, states);
+        return new ControllerStatus(state, machineCoord, workCoord, feedSpeed, feedSpeedUnits, spindleSpeed, overrides, workCoordinateOffset, pins, states, bufferState);
     }
 }
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.listeners;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single slot mailbox which delivers controller statuses to a listener on
+ * an executor. Only the latest status is kept, if the listener hasn't
+ * received the previous status when a new one arrives the previous one is
+ * dropped. The change mask of a dropped status is merged into the status
+ * replacing it so that the listener still sees all fields that changed.
+ *
+ * Offering a status never blocks and the statuses are delivered to the
+ * listener one at a time in the order they were offered.
+ *
+ * @author wwinder
+ */
+public class StatusMailbox {
+    private static final Logger LOGGER = Logger.getLogger(StatusMailbox.class.getName());
+
+    private final ControllerListener listener;
+    private final Executor executor;
+    private final AtomicReference<ControllerStatus> latestStatus = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile boolean closed;
+
+    public StatusMailbox(ControllerListener listener, Executor executor) {
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    /**
+     * Puts the status in the mailbox, replacing any status that hasn't been
+     * delivered yet.
+     *
+     * @param status the new status
+     */
+    public void offer(ControllerStatus status) {
+        if (closed) {
+            return;
+        }
+
+        ControllerStatus pendingStatus;
+        ControllerStatus mergedStatus;
+        do {
+            pendingStatus = latestStatus.get();
+            mergedStatus = pendingStatus == null ? status :
+                    status.withVersion(status.getVersion(), status.getChanges() | pendingStatus.getChanges());
+        } while (!latestStatus.compareAndSet(pendingStatus, mergedStatus));
+
+        if (pendingStatus != null) {
+            droppedCount.incrementAndGet();
+        }
+        schedule();
+    }
+
+    /**
+     * Stops delivering statuses to the listener.
+     */
+    public void close() {
+        closed = true;
+        latestStatus.set(null);
+    }
+
+    public ControllerListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return the number of statuses which were replaced before the listener received them
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                LOGGER.log(Level.WARNING, "Couldn't deliver the controller status", e);
+            }
+        }
+    }
+
+    private void drain() {
+        ControllerStatus status;
+        while ((status = latestStatus.getAndSet(null)) != null && !closed) {
+            try {
+                listener.statusStringListener(status);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "The listener couldn't handle the controller status", e);
+            }
+        }
+
+        // A status may have arrived after the mailbox was emptied but before it was released
+        scheduled.set(false);
+        if (latestStatus.get() != null && !closed) {
+            schedule();
+        }
+    }
+}
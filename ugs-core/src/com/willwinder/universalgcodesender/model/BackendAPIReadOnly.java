@@ -18,6 +18,8 @@
  */
 package com.willwinder.universalgcodesender.model;
 
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.listeners.MessageListener;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
@@ -91,6 +93,14 @@ public interface BackendAPIReadOnly {
     File getGcodeFile();
     File getProcessedGcodeFile();
 
+    /**
+     * Returns the compiled program of the processed gcode file, it is parsed
+     * once when the file is loaded and shared by anyone who needs to inspect it.
+     *
+     * @return the program or null if no file has been processed
+     */
+    GcodeProgram getGcodeProgram();
+
     // Controller status
     boolean isConnected();
     boolean isActive();
@@ -107,6 +117,13 @@ public interface BackendAPIReadOnly {
 
     // Send status
     long getNumRows();
+
+    /**
+     * Returns true while the file being sent is still being preprocessed
+     * and the number of rows is an estimate.
+     */
+    boolean isNumRowsEstimated();
+
     long getNumSentRows();
     long getNumRemainingRows();
     long getNumCompletedRows();
@@ -115,6 +132,14 @@ public interface BackendAPIReadOnly {
     long getSendRemainingDuration();
     String getPauseResumeText();
 
+    /**
+     * Returns the latencies from queueing, sending and acknowledging the
+     * commands and the throughput of the current or last stream.
+     *
+     * @return the streaming statistics, empty if there is no connection
+     */
+    StreamingStatistics.Snapshot getStreamingStatistics();
+
     // Shouldn't be needed often.
     Settings getSettings();
 }
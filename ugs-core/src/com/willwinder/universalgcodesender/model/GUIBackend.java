@@ -20,14 +20,17 @@ package com.willwinder.universalgcodesender.model;
 
 import com.google.common.io.Files;
 import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
 import com.willwinder.universalgcodesender.connection.ConnectionFactory;
 import com.willwinder.universalgcodesender.firmware.FirmwareSetting;
 import com.willwinder.universalgcodesender.firmware.IFirmwareSettingsListener;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.gcode.GcodeStats;
 import com.willwinder.universalgcodesender.gcode.processors.*;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.PreprocessorCache;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.*;
 import com.willwinder.universalgcodesender.model.UGSEvent.ControlState;
@@ -44,10 +47,14 @@ import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -61,6 +68,7 @@ import java.util.stream.Collectors;
 public class GUIBackend implements BackendAPI, ControllerListener, SettingChangeListener, IFirmwareSettingsListener {
     private static final Logger logger = Logger.getLogger(GUIBackend.class.getName());
     private static final String NEW_LINE = "\n    ";
+    private static final long CANCEL_PREPROCESSING_TIMEOUT_MS = 2000;
 
     private final MessageService messageService = new MessageService();
 
@@ -75,8 +83,14 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
     // GUI State
     private File gcodeFile = null;
-    private File processedGcodeFile = null;
+    private volatile File processedGcodeFile = null;
+    private volatile GcodeProgram gcodeProgram = null;
+    // The stream being written while preprocessing in the background
+    private volatile GcodeStreamWriter preprocessingStream = null;
+    private volatile Thread preprocessingThread = null;
+    private volatile boolean preprocessingCancelled = false;
     private File tempDir = null;
+    private PreprocessorCache preprocessorCache = null;
     private String firmware = null;
 
     private long lastResponse = Long.MIN_VALUE;
@@ -173,6 +187,16 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         GcodeParserUtils.processAndExport(gcp, input, gcw);
     }
 
+    /**
+     * Same as {@link #preprocessAndExportToFile(GcodeParser, File, IGcodeWriter)} but also compiles the processed
+     * commands into the given program builder. The results of the expensive command processors are cached so that
+     * only the processors after a changed one are run when the file is processed again.
+     */
+    protected void preprocessAndExportToFile(GcodeParser gcp, File input, IGcodeWriter gcw, GcodeProgram.Builder program) throws Exception {
+        logger.log(Level.INFO, "Preprocessing {0} to {1}", new Object[]{input.getCanonicalPath(), gcw.getCanonicalPath()});
+        GcodeParserUtils.processAndExport(gcp, input, gcw, program, getPreprocessorCache());
+    }
+
     private void initGcodeParser() {
         // Configure gcode parser.
         gcp.clearCommandProcessors();
@@ -418,9 +442,17 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         return tempDir;
     }
 
+    private synchronized PreprocessorCache getPreprocessorCache() {
+        if (preprocessorCache == null) {
+            preprocessorCache = new PreprocessorCache(new File(getTempDir(), "preprocessor_cache"));
+        }
+        return preprocessorCache;
+    }
+
     @Override
     public void setGcodeFile(File file) throws Exception {
         logger.log(Level.INFO, "Setting gcode file.");
+        cancelPreprocessing();
         this.sendUGSEvent(new UGSEvent(FileState.OPENING_FILE, file.getAbsolutePath()), false);
         initGcodeParser();
         this.gcodeFile = file;
@@ -430,16 +462,25 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     @Override
     public void reloadGcodeFile() throws Exception {
         logger.log(Level.INFO, "Reloading gcode file.");
+        cancelPreprocessing();
         this.sendUGSEvent(new UGSEvent(FileState.OPENING_FILE, gcodeFile.getAbsolutePath()), false);
         processGcodeFile();
     }
 
     private void processGcodeFile() throws Exception {
+        cancelPreprocessing();
         this.processedGcodeFile = null;
+        this.gcodeProgram = null;
 
         this.sendUGSEvent(new UGSEvent(FileState.FILE_LOADING,
                 this.gcodeFile.getAbsolutePath()), false);
 
+        if (settings != null && settings.isStreamWhilePreprocessing()) {
+            // The file is loaded once the background preprocessing completes
+            startPreprocessing(this.gcodeFile, this.gcp);
+            return;
+        }
+
         initializeProcessedLines(true, this.gcodeFile, this.gcp);
 
         this.sendUGSEvent(new UGSEvent(FileState.FILE_LOADED,
@@ -503,6 +544,7 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     @Override
     public void applyCommandProcessor(CommandProcessor commandProcessor) throws Exception {
         logger.log(Level.INFO, "Applying new command processor");
+        cancelPreprocessing();
         gcp.addCommandProcessor(commandProcessor);
 
         if(gcodeFile != null) {
@@ -512,6 +554,7 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
     @Override
     public void removeCommandProcessor(CommandProcessor commandProcessor) throws Exception {
+        cancelPreprocessing();
         gcp.removeCommandProcessor(commandProcessor);
         processGcodeFile();
 
@@ -531,6 +574,11 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         logger.log(Level.INFO, "Getting processed gcode file.");
         return this.processedGcodeFile;
     }
+
+    @Override
+    public GcodeProgram getGcodeProgram() {
+        return this.gcodeProgram;
+    }
     
     @Override
     public void send() throws Exception {
@@ -542,7 +590,14 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
             // This will throw an exception and prevent that other stuff from
             // happening (clearing the table before its ready for clearing.
             this.controller.isReadyToStreamFile();
-            this.controller.queueStream(new GcodeStreamReader(this.processedGcodeFile));
+
+            // Follow the stream if it is still being preprocessed
+            GcodeStreamWriter stream = this.preprocessingStream;
+            IGcodeStreamReader reader = stream != null ?
+                    new GcodeStreamReader(stream) : new GcodeStreamReader(this.processedGcodeFile);
+
+            // Read ahead in a separate thread to keep disk access off the streaming thread
+            this.controller.queueStream(new PrefetchingGcodeStreamReader(reader));
             this.controller.beginStreaming();
         } catch (Exception e) {
             this.sendUGSEvent(new UGSEvent(ControlState.COMM_IDLE), false);
@@ -556,6 +611,11 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         return controller == null ? 0 : this.controller.rowsInSend();
     }
     
+    @Override
+    public boolean isNumRowsEstimated() {
+        return controller != null && this.controller.isRowsInSendEstimated();
+    }
+
     @Override
     public long getNumSentRows() {
         logger.log(Level.FINEST, "Getting number of sent rows.");
@@ -578,6 +638,14 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         return controller == null ? 0 : controller.getSendDuration();
     }
     
+    @Override
+    public StreamingStatistics.Snapshot getStreamingStatistics() {
+        if (controller == null || controller.getCommunicator() == null) {
+            return StreamingStatistics.Snapshot.EMPTY;
+        }
+        return controller.getCommunicator().getStreamingStatistics().getSnapshot();
+    }
+
     @Override
     public long getSendRemainingDuration() {
         long completedRows = getNumCompletedRows();
@@ -777,6 +845,7 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
         try {
             controller.setSingleStepMode(settings.isSingleStepMode());
+            controller.setFlowControlMode(settings.getFlowControlMode());
             controller.setStatusUpdatesEnabled(settings.isStatusUpdatesEnabled());
             controller.setStatusUpdateRate(settings.getStatusUpdateRate());
         } catch (Exception ex) {
@@ -841,8 +910,11 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         boolean connected;
         try {
             connected = controller.openCommPort(settings.getConnectionDriver(), port, baudRate);
-            
-            this.initializeProcessedLines(false, this.gcodeFile, this.gcp);
+
+            // A file being preprocessed in the background is loaded when it completes
+            if (this.preprocessingStream == null) {
+                this.initializeProcessedLines(false, this.gcodeFile, this.gcp);
+            }
         } catch (Exception e) {
             logger.log(Level.INFO, "Exception in openCommConnection.", e);
             throw new Exception(Localization.getString("mainWindow.error.connection")
@@ -862,29 +934,166 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
             if (this.processedGcodeFile == null || forceReprocess) {
                 gcodeParser.reset();
 
-                String name = startFile.getName();
-
-                // If this is being re-processed, strip the ugs postfix and try again.
-                Pattern word = Pattern.compile("(.*)_ugs_[\\d]+$");
-                Matcher match = word.matcher(name);
-                if (match.matches()) {
-                    name = match.group(1);
-                }
-                this.processedGcodeFile =
-                        new File(this.getTempDir(), name + "_ugs_" + System.currentTimeMillis());
+                this.processedGcodeFile = createProcessedGcodeFile(startFile);
+                GcodeProgram.Builder program = new GcodeProgram.Builder();
                 try (IGcodeWriter gcw = new GcodeStreamWriter(this.processedGcodeFile)) {
-                    this.preprocessAndExportToFile(gcodeParser, startFile, gcw);
+                    this.preprocessAndExportToFile(gcodeParser, startFile, gcw, program);
                 }
-
-                // Store gcode file stats.
-                GcodeStats gs = gcodeParser.getCurrentStats();
-                this.settings.setFileStats(new FileStats(
-                    gs.getMin(), gs.getMax(), gs.getCommandCount()));
+                setGcodeProgram(program.build());
             }
             long end = System.currentTimeMillis();
             logger.info("Took " + (end - start) + "ms to preprocess");
         }
     }
+
+    private File createProcessedGcodeFile(File startFile) {
+        String name = startFile.getName();
+
+        // If this is being re-processed, strip the ugs postfix and try again.
+        Pattern word = Pattern.compile("(.*)_ugs_[\\d]+$");
+        Matcher match = word.matcher(name);
+        if (match.matches()) {
+            name = match.group(1);
+        }
+        return new File(this.getTempDir(), name + "_ugs_" + System.currentTimeMillis());
+    }
+
+    private void setGcodeProgram(GcodeProgram program) {
+        this.gcodeProgram = program;
+
+        // Store gcode file stats.
+        GcodeStats gs = program;
+        this.settings.setFileStats(new FileStats(
+            gs.getMin(), gs.getMax(), gs.getCommandCount()));
+    }
+
+    /**
+     * Starts preprocessing the file in a background thread. The processed
+     * stream can be sent while it is being written and the file is loaded
+     * once the preprocessing completes.
+     */
+    private void startPreprocessing(File startFile, GcodeParser gcodeParser) throws Exception {
+        try (FileReader fr = new FileReader(startFile)) {
+            Charset.forName(fr.getEncoding());
+        }
+        gcodeParser.reset();
+
+        File target = createProcessedGcodeFile(startFile);
+        GcodeStreamWriter gcw = new GcodeStreamWriter(target);
+        this.preprocessingStream = gcw;
+        this.preprocessingCancelled = false;
+
+        preprocessingThread = new Thread(() -> preprocessInBackground(gcodeParser, startFile, target, gcw), "GcodePreprocessor");
+        preprocessingThread.setDaemon(true);
+        preprocessingThread.start();
+    }
+
+    private void preprocessInBackground(GcodeParser gcodeParser, File startFile, File target, GcodeStreamWriter gcw) {
+        logger.info("Start preprocessing in the background");
+        long start = System.currentTimeMillis();
+        try {
+            GcodeProgram.Builder program = new GcodeProgram.Builder();
+            try (GcodeStreamWriter writer = gcw) {
+                try {
+                    writer.setSourceLineCount(countLines(startFile));
+                    this.preprocessAndExportToFile(gcodeParser, startFile, writer, program);
+                } catch (Exception e) {
+                    // Let anyone streaming the file know that it won't be completed
+                    writer.fail(e);
+                    throw e;
+                }
+            }
+
+            if (preprocessingCancelled) {
+                // Another file is being loaded
+                this.preprocessingStream = null;
+                return;
+            }
+
+            this.processedGcodeFile = target;
+            setGcodeProgram(program.build());
+            this.preprocessingStream = null;
+            logger.info("Took " + (System.currentTimeMillis() - start) + "ms to preprocess");
+
+            this.sendUGSEvent(new UGSEvent(FileState.FILE_LOADED,
+                    target.getAbsolutePath()), false);
+        } catch (Exception e) {
+            this.preprocessingStream = null;
+            if (preprocessingCancelled) {
+                logger.log(Level.INFO, "Cancelled preprocessing {0}", startFile);
+            } else {
+                logger.log(Level.SEVERE, "Couldn't preprocess the gcode file", e);
+                messageService.dispatchMessage(MessageType.ERROR, e.getMessage() + "\n");
+
+                // Let the listeners stop waiting for the file to be loaded
+                this.sendUGSEvent(new UGSEvent(FileState.FILE_LOAD_FAILED,
+                        startFile.getAbsolutePath()), false);
+                cancelSendingFile();
+            }
+        } finally {
+            this.preprocessingThread = null;
+        }
+    }
+
+    /**
+     * Cancels any preprocessing running in the background, as it is using
+     * the gcode parser. Any send following the file being preprocessed is
+     * canceled as well.
+     *
+     * This is called on the event dispatch thread, so it only waits a short
+     * while for the preprocessing to stop and fails if it hasn't.
+     *
+     * @throws Exception if the preprocessing didn't stop in time
+     */
+    private void cancelPreprocessing() throws Exception {
+        Thread thread = this.preprocessingThread;
+        if (thread == null) {
+            return;
+        }
+
+        logger.info("Cancelling the background preprocessing");
+        preprocessingCancelled = true;
+        GcodeStreamWriter stream = this.preprocessingStream;
+        if (stream != null) {
+            stream.fail(new CancellationException("Preprocessing was cancelled"));
+            cancelSendingFile();
+        }
+
+        // The preprocessing checks for interruption on every line, and once
+        // cancelled it doesn't call the controller or the listeners.
+        thread.interrupt();
+        thread.join(CANCEL_PREPROCESSING_TIMEOUT_MS);
+        if (thread.isAlive()) {
+            throw new Exception("The gcode file is still being preprocessed, please try again");
+        }
+        this.preprocessingThread = null;
+    }
+
+    private void cancelSendingFile() {
+        if (isSendingFile()) {
+            try {
+                this.controller.cancelSend();
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Couldn't cancel the send", e);
+            }
+        }
+    }
+
+    private static int countLines(File file) throws IOException {
+        int lines = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        return lines;
+    }
     
     private void sendUGSEvent(UGSEvent event, boolean force) {
         if (event.isControllerStatusEvent()) return;
@@ -53,6 +53,7 @@ public class UGSEvent {
         OPENING_FILE,
         FILE_LOADING,
         FILE_LOADED,
+        FILE_LOAD_FAILED,
         FILE_STREAM_COMPLETE
     }
         
@@ -132,6 +133,8 @@ public class UGSEvent {
      * FILE_LOADING: This event provides a path to an unprocessed gcode file.
      * FILE_LOADED: This event provides a path to a processed gcode file which
      *              should be opened with a GcodeStreamReader.
+     * FILE_LOAD_FAILED: This event provides a path to an unprocessed gcode
+     *              file which couldn't be processed.
      * @param state the new file state.
      * @param filepath the file related to the file event.
      */
@@ -56,6 +56,12 @@ public class RunFromService implements UGSEventListener {
     public void UGSEvent(UGSEvent evt) {
         if(evt.isFileChangeEvent() && evt.getFileState() == UGSEvent.FileState.OPENING_FILE) {
             runFromProcessor.setLineNumber(0);
+            runFromProcessor.setProgram(null);
+        }
+
+        // Keep the complete program around, once a line is selected the processed program is truncated.
+        if(evt.isFileChangeEvent() && evt.getFileState() == UGSEvent.FileState.FILE_LOADED && runFromProcessor.getLineNumber() == 0) {
+            runFromProcessor.setProgram(backend.getGcodeProgram());
         }
     }
 }
@@ -25,6 +25,7 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -52,6 +53,22 @@ public class GcodeCommand {
     private boolean isTemporaryParserModalChange = false;
     private Integer id = ID_GENERATOR.getAndIncrement();
 
+    /**
+     * The command as it is written to the controller, lazily encoded and
+     * cached so that the streaming thread doesn't need to re-encode it.
+     */
+    private transient byte[] commandBytes;
+
+    /**
+     * Timestamps from {@link System#nanoTime()} for when the command was
+     * queued in the communicator, written to the controller and acknowledged,
+     * zero if it hasn't happened. The ack time is set when the ok or error
+     * response is matched to the command.
+     */
+    private transient long queuedTime;
+    private transient long sentTime;
+    private transient long ackTime;
+
     public GcodeCommand(String command) {
         this(command, -1);
     }
@@ -81,6 +98,7 @@ public class GcodeCommand {
     /** Setters. */
     public void setCommand(String command) {
         this.command = command;
+        this.commandBytes = null;
     }
     
     public void setCommandNumber(int i) {
@@ -109,6 +127,24 @@ public class GcodeCommand {
         return this.command;
     }
 
+    /**
+     * Returns the command as it should be written to the controller, that is
+     * the trimmed command string terminated with a newline encoded as UTF-8.
+     * The bytes are encoded once and then reused, the returned array must
+     * not be modified.
+     *
+     * @return the encoded command including its line terminator
+     */
+    public byte[] getCommandBytes() {
+        byte[] bytes = this.commandBytes;
+        if (bytes == null) {
+            String trimmed = this.command == null ? "" : this.command.trim();
+            bytes = (trimmed + "\n").getBytes(StandardCharsets.UTF_8);
+            this.commandBytes = bytes;
+        }
+        return bytes;
+    }
+
     public String getOriginalCommandString() {
         return this.originalCommand == null ? this.command : this.originalCommand;
     }
@@ -175,6 +211,41 @@ public class GcodeCommand {
         return id;
     }
 
+    public long getQueuedTime() {
+        return queuedTime;
+    }
+
+    public void setQueuedTime(long queuedTime) {
+        this.queuedTime = queuedTime;
+    }
+
+    public long getSentTime() {
+        return sentTime;
+    }
+
+    public void setSentTime(long sentTime) {
+        this.sentTime = sentTime;
+    }
+
+    public long getAckTime() {
+        return ackTime;
+    }
+
+    public void setAckTime(long ackTime) {
+        this.ackTime = ackTime;
+    }
+
+    /**
+     * @return the nanoseconds from the command being written until it was
+     * acknowledged by the controller, or -1 if it hasn't been acknowledged.
+     */
+    public long getAckLatency() {
+        if (sentTime == 0 || ackTime == 0) {
+            return -1;
+        }
+        return ackTime - sentTime;
+    }
+
     public boolean isGenerated() {
         return isGenerated;
     }
@@ -18,6 +18,7 @@
  */
 package com.willwinder.universalgcodesender.uielements.panels;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.i18n.AvailableLanguages;
 import com.willwinder.universalgcodesender.i18n.Language;
@@ -59,6 +60,7 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
             Localization.getString("sender.autostartpendant"));
     private final JComboBox<Language> languageCombo = new JComboBox<>(AvailableLanguages.getAvailableLanguages().toArray(new Language[0]));
     private final JComboBox<String> connectionDriver = new JComboBox<>(ConnectionDriver.getPrettyNames());
+    private final JComboBox<String> flowControlMode = new JComboBox<>(FlowControlMode.getPrettyNames());
     private final JTextField workspaceDirectory = new JTextField();
     private final JButton workspaceDirectoryBrowseButton = new JButton("Browse");
 
@@ -76,6 +78,7 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
     public String getHelpMessage() {
         return Localization.getString("sender.help.verbose.console") + "\n\n" +
                 Localization.getString("sender.help.singlestep") + "\n\n" +
+                Localization.getString("sender.help.flowcontrol") + "\n\n" +
                 Localization.getString("sender.help.status") + "\n\n" +
                 Localization.getString("sender.help.status.rate") + "\n\n" +
                 Localization.getString("sender.help.state") + "\n\n";
@@ -94,6 +97,7 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
         settings.setAutoStartPendant(autoStartPendant.getValue());
         settings.setLanguage(((Language) languageCombo.getSelectedItem()).getLanguageCode());
         settings.setConnectionDriver(ConnectionDriver.prettyNameToEnum(connectionDriver.getSelectedItem().toString()));
+        settings.setFlowControlMode(FlowControlMode.prettyNameToEnum(flowControlMode.getSelectedItem().toString()));
         settings.setWorkspaceDirectory(workspaceDirectory.getText());
         SettingsFactory.saveSettings(settings);
     }
@@ -149,6 +153,10 @@ public class ConnectionSettingsPanel extends AbstractUGSSettings {
         add(new JLabel(Localization.getString("settings.connectionDriver")), "gapleft 56");
         add(connectionDriver, "grow, wrap");
 
+        flowControlMode.setSelectedItem(s.getFlowControlMode().getPrettyName());
+        add(new JLabel(Localization.getString("settings.flowControl")), "gapleft 56");
+        add(flowControlMode, "grow, wrap");
+
         workspaceDirectory.setText(settings.getWorkspaceDirectory());
         JPanel panel = new JPanel();
         panel.setLayout(new MigLayout("insets 0", "fill"));
@@ -49,6 +49,7 @@ public class SendStatusLine extends JLabel implements UGSEventListener, Controll
     private static final String LOAD_PREFIX = "Loaded File: ";
     private static final String NO_FILE_LOADED = "No file loaded";
     private static final String SEND_FORMAT = SEND_PREFIX + "(%d/%d) %s / %s";
+    private static final String ESTIMATING_SEND_FORMAT = SEND_PREFIX + "(%d/~%d, preprocessing) %s / %s";
     private static final String COMPLETED_FORMAT = SEND_PREFIX + "completed after %s";
     private static final String ROWS_FORMAT = LOAD_PREFIX + "%d rows";
 
@@ -78,7 +79,8 @@ public class SendStatusLine extends JLabel implements UGSEventListener, Controll
                     @Override
                     public void run() {
                         try {
-                            setText(String.format(SEND_FORMAT, 
+                            String format = backend.isNumRowsEstimated() ? ESTIMATING_SEND_FORMAT : SEND_FORMAT;
+                            setText(String.format(format,
                                     backend.getNumSentRows(),
                                     backend.getNumRows(),
                                     Utils.formattedMillis(backend.getSendDuration()),
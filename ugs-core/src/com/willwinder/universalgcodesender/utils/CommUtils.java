@@ -42,6 +42,14 @@ public class CommUtils {
         return characters <= bufferSize;
     }
     
+    /**
+     * Checks if there is enough room in the GRBL buffer for a command which
+     * has already been encoded, the length should include the line terminator.
+     */
+    static public boolean checkRoomInBuffer(int sentBuffer, int commandLength, int bufferSize) {
+        return sentBuffer + commandLength <= bufferSize;
+    }
+
     /** 
      * Checks if there is enough room in the GRBL buffer for nextCommand.
      */
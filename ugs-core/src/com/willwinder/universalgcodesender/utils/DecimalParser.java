@@ -0,0 +1,127 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+/**
+ * Parses decimal numbers from a range of characters without creating a
+ * substring, used when parsing gcode and controller responses.
+ *
+ * @author wwinder
+ */
+public final class DecimalParser {
+
+    /**
+     * The largest integer where all smaller integers can be represented exactly by a double
+     */
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    /**
+     * Powers of ten that can be represented exactly by a double
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private DecimalParser() {
+    }
+
+    /**
+     * Parses a decimal number with an optional leading minus sign. The fast
+     * path handles numbers where the digits fit in 53 bits, which gives the
+     * same result as {@link Double#parseDouble} since both the digits and the
+     * power of ten are exact doubles and the division is correctly rounded.
+     * Any other number is handed to {@link Double#parseDouble}.
+     *
+     * @param chars the characters to parse from
+     * @param start the index of the first character of the number
+     * @param end   the index after the last character of the number
+     * @return the parsed value
+     * @throws NumberFormatException if the characters aren't a number
+     */
+    public static double parseDouble(CharSequence chars, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && chars.charAt(i) == '-') {
+            negative = true;
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean exact = true;
+        for (; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (c - '0');
+                } else {
+                    exact = false;
+                }
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                return Double.parseDouble(chars.subSequence(start, end).toString());
+            }
+        }
+
+        if (digits == 0 || !exact || mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(chars.subSequence(start, end).toString());
+        }
+
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a decimal number like {@link #parseDouble(CharSequence, int, int)}
+     * but gives NaN instead of an exception if the characters aren't a number.
+     * Characters which can never be part of a number are rejected before
+     * parsing, so no exception is created for words such as system commands.
+     *
+     * @param chars the characters to parse from
+     * @param start the index of the first character of the number
+     * @param end   the index after the last character of the number
+     * @return the parsed value or NaN if the characters aren't a number
+     */
+    public static double parseDoubleOrNaN(CharSequence chars, int start, int end) {
+        if (start == end) {
+            return Double.NaN;
+        }
+
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+            if (c != '.' && c != '-' && !Character.isDigit(c)) {
+                return Double.NaN;
+            }
+        }
+
+        try {
+            return parseDouble(chars, start, end);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -29,6 +29,17 @@ package com.willwinder.universalgcodesender.utils;
 import java.util.regex.Pattern;
 
 /**
+ * Common definitions for the "GcodeStream" file format.
+ *
+ * Streams are written in an indexed binary format:
+ * <pre>
+ * header:  magic "UGSB", int version, int numRows, int indexInterval, long indexOffset
+ * rows:    int commandNumber, then original, processed and comment as
+ *          int length followed by that many UTF-8 bytes
+ * index:   for every indexInterval:th row, long rowOffset and int commandNumber
+ * </pre>
+ * All numbers are big-endian. The older text format with one separator
+ * delimited row per line can still be read.
  *
  * @author wwinder
  */
@@ -43,4 +54,13 @@ public abstract class GcodeStream {
     protected final String separator = "++";
     protected final Pattern splitPattern = Pattern.compile(Pattern.quote(separator));
     protected final String metaPrefix = "gsw_meta:";
+
+    protected static final byte[] BINARY_MAGIC = {'U', 'G', 'S', 'B'};
+    protected static final int BINARY_VERSION = 1;
+    protected static final int DEFAULT_INDEX_INTERVAL = 256;
+
+    protected static final int HEADER_NUM_ROWS_OFFSET = 8;
+    protected static final int HEADER_INDEX_OFFSET_OFFSET = 16;
+    protected static final int HEADER_SIZE = 24;
+    protected static final int INDEX_ENTRY_SIZE = 12;
 }
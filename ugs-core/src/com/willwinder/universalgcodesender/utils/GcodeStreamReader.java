@@ -23,26 +23,143 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 /**
  * Reads a 'GcodeStream' file containing command processing information, actual
  * command to send and other metadata like total number of commands.
  *
+ * Files in the indexed binary format are memory mapped and can be positioned
+ * at any row or command number using {@link #seek(int)} and
+ * {@link #seekToCommandNumber(int)}. A single mapping is limited to 2GB, so
+ * larger files are instead read through a reusable window. Files in the older
+ * text format can only be read sequentially.
+ *
+ * A stream can also be read while it is being written by following its
+ * {@link GcodeStreamWriter}, the reader then waits for the writer to publish
+ * more rows until it has been closed.
+ *
  * @author wwinder
  */
 public class GcodeStreamReader extends GcodeStream implements IGcodeStreamReader {
+    private static final int DEFAULT_WINDOW_SIZE = 1024 * 1024;
+
     private BufferedReader reader;
+    private ByteBuffer buffer;
     private int numRows = 0;
     private int numRowsRemaining = 0;
 
+    private int indexInterval;
+    private long[] indexOffsets;
+    private int[] indexCommandNumbers;
+    private byte[] fieldBuffer = new byte[128];
+
+    // Used when reading through a window instead of mapping the whole file
+    private boolean windowed = false;
+    private FileChannel windowChannel;
+    private long windowOffset = 0;
+    private long dataEnd;
+
+    // Used when following a stream that is being written
+    private GcodeStreamWriter writer;
+    private int rowsRead = 0;
+
     public static class NotGcodeStreamFile extends Exception {}
 
+    /**
+     * Reads a gcode stream in the text format.
+     *
+     * @param reader the reader to read the stream from
+     * @throws NotGcodeStreamFile if the reader doesn't contain a gcode stream
+     */
     public GcodeStreamReader(BufferedReader reader) throws NotGcodeStreamFile {
         this.reader = reader;
-        
+        readTextMetadata();
+    }
+
+    /**
+     * Reads a gcode stream file in either the binary or the text format.
+     *
+     * @param f the file to read
+     * @throws NotGcodeStreamFile if the file isn't a gcode stream
+     * @throws FileNotFoundException if the file doesn't exist
+     */
+    public GcodeStreamReader(File f) throws NotGcodeStreamFile, FileNotFoundException {
+        if (isBinaryFormat(f)) {
+            openBinaryFile(f, 0);
+        } else {
+            this.reader = new BufferedReader(new FileReader(f));
+            readTextMetadata();
+        }
+    }
+
+    /**
+     * Reads a gcode stream file in the binary format through a window of the
+     * given size instead of mapping it, as is done for files larger than 2GB.
+     *
+     * @param f          the file to read
+     * @param windowSize the number of bytes to read at a time
+     * @throws NotGcodeStreamFile if the file isn't a binary gcode stream
+     */
+    GcodeStreamReader(File f, int windowSize) throws NotGcodeStreamFile {
+        openBinaryFile(f, windowSize);
+    }
+
+    /**
+     * Reads a gcode stream while it is being written. Getting the next command
+     * will block until the writer has published it, until then the number of
+     * rows is an estimate. The published rows are read through a window.
+     *
+     * @param writer the writer of the stream to follow
+     * @throws FileNotFoundException if the stream file doesn't exist
+     */
+    public GcodeStreamReader(GcodeStreamWriter writer) throws FileNotFoundException {
+        try {
+            this.windowChannel = FileChannel.open(writer.getFile().toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            FileNotFoundException exception = new FileNotFoundException(writer.getFile().getPath());
+            exception.initCause(e);
+            throw exception;
+        }
+        this.writer = writer;
+        this.windowed = true;
+        this.buffer = ByteBuffer.allocateDirect(DEFAULT_WINDOW_SIZE);
+        this.buffer.limit(0);
+        this.windowOffset = HEADER_SIZE;
+        this.dataEnd = HEADER_SIZE;
+        writer.follow();
+    }
+
+    private static boolean isBinaryFormat(File f) throws NotGcodeStreamFile, FileNotFoundException {
+        try (InputStream in = new FileInputStream(f)) {
+            byte[] magic = new byte[BINARY_MAGIC.length];
+            int read = 0;
+            while (read < magic.length) {
+                int count = in.read(magic, read, magic.length - read);
+                if (count < 0) {
+                    return false;
+                }
+                read += count;
+            }
+            return Arrays.equals(magic, BINARY_MAGIC);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new NotGcodeStreamFile();
+        }
+    }
+
+    private void readTextMetadata() throws NotGcodeStreamFile {
         try {
             String line = reader.readLine();
             if (StringUtils.isEmpty(line)) {
@@ -62,10 +179,132 @@ public class GcodeStreamReader extends GcodeStream implements IGcodeStreamReader
         }
     }
 
-    public GcodeStreamReader(File f) throws NotGcodeStreamFile, FileNotFoundException {
-        this(new BufferedReader(new FileReader(f)));
+    /**
+     * Opens a file in the binary format, which is mapped unless a window size
+     * is given or it is too large to be mapped.
+     */
+    private void openBinaryFile(File f, int windowSize) throws NotGcodeStreamFile {
+        FileChannel channel = null;
+        boolean opened = false;
+        try {
+            channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            dataEnd = channel.size();
+
+            // A single mapping is limited to 2GB
+            if (windowSize == 0 && channel.size() <= Integer.MAX_VALUE) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                channel.close();
+            } else {
+                windowed = true;
+                windowChannel = channel;
+                buffer = ByteBuffer.allocateDirect(windowSize > 0 ? windowSize : DEFAULT_WINDOW_SIZE);
+                buffer.limit(0);
+            }
+
+            position(BINARY_MAGIC.length);
+            ensureRemaining(HEADER_SIZE - BINARY_MAGIC.length);
+            if (buffer.getInt() != BINARY_VERSION) {
+                throw new NotGcodeStreamFile();
+            }
+
+            numRows = buffer.getInt();
+            indexInterval = buffer.getInt();
+            long indexOffset = buffer.getLong();
+
+            // The index offset is written when the stream is closed
+            if (numRows < 0 || indexInterval < 1 || indexOffset < HEADER_SIZE || indexOffset > dataEnd) {
+                throw new NotGcodeStreamFile();
+            }
+
+            int entries = (int) (((long) numRows + indexInterval - 1) / indexInterval);
+            if ((long) entries * INDEX_ENTRY_SIZE > dataEnd - indexOffset) {
+                throw new NotGcodeStreamFile();
+            }
+            indexOffsets = new long[entries];
+            indexCommandNumbers = new int[entries];
+            position(indexOffset);
+            for (int i = 0; i < entries; i++) {
+                ensureRemaining(INDEX_ENTRY_SIZE);
+                indexOffsets[i] = buffer.getLong();
+                indexCommandNumbers[i] = buffer.getInt();
+            }
+
+            position(HEADER_SIZE);
+            dataEnd = indexOffset;
+            if (!windowed) {
+                buffer.limit((int) indexOffset);
+            }
+            numRowsRemaining = numRows;
+            opened = true;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            throw new NotGcodeStreamFile();
+        } finally {
+            if (!opened && channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // The file isn't read anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the position in the file of the next byte to read
+     */
+    private long position() {
+        return windowOffset + buffer.position();
+    }
+
+    /**
+     * Positions the stream at the given position in the file, a window is
+     * only read when the position is outside of the current one.
+     */
+    private void position(long position) {
+        if (!windowed) {
+            buffer.position((int) position);
+        } else if (position >= windowOffset && position <= windowOffset + buffer.limit()) {
+            buffer.position((int) (position - windowOffset));
+        } else {
+            windowOffset = position;
+            buffer.position(0).limit(0);
+        }
+    }
+
+    /**
+     * Reads the next window if there are fewer bytes than needed left in the
+     * current one. Mapped files are always available in full.
+     *
+     * @throws BufferUnderflowException if the data ends before that
+     */
+    private void ensureRemaining(int bytes) throws IOException {
+        if (!windowed || buffer.remaining() >= bytes) {
+            return;
+        }
+
+        long position = position();
+        if (bytes > dataEnd - position) {
+            throw new BufferUnderflowException();
+        }
+        if (bytes > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        }
+
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), dataEnd - position));
+        while (buffer.hasRemaining()) {
+            if (windowChannel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        windowOffset = position;
+
+        if (buffer.remaining() < bytes) {
+            throw new BufferUnderflowException();
+        }
     }
-    
+
     @Override
     public boolean ready() {
         return getNumRowsRemaining() > 0;
@@ -73,12 +312,147 @@ public class GcodeStreamReader extends GcodeStream implements IGcodeStreamReader
 
     @Override
     public int getNumRows() {
-        return numRows;
+        return writer != null ? writer.getNumRows() : numRows;
     }
 
     @Override
     public int getNumRowsRemaining() {
-        return numRowsRemaining;
+        return writer != null ? writer.getNumRows() - rowsRead : numRowsRemaining;
+    }
+
+    @Override
+    public boolean isNumRowsEstimated() {
+        return writer != null && writer.isNumRowsEstimated();
+    }
+
+    /**
+     * Returns if the stream is in the indexed binary format which supports
+     * seeking.
+     *
+     * @return true if {@link #seek(int)} and {@link #seekToCommandNumber(int)} are supported
+     */
+    public boolean isIndexed() {
+        return buffer != null && writer == null;
+    }
+
+    /**
+     * Positions the stream so that the next command returned is the one on
+     * the given row.
+     *
+     * @param row the row to continue reading from, zero based
+     * @throws IOException if the stream is corrupt
+     * @throws UnsupportedOperationException if the stream isn't indexed
+     */
+    public void seek(int row) throws IOException {
+        assertIndexed();
+        if (row < 0 || row > numRows) {
+            throw new IllegalArgumentException("The row " + row + " is outside of the stream with " + numRows + " rows");
+        }
+
+        if (row == numRows) {
+            position(dataEnd);
+            numRowsRemaining = 0;
+            return;
+        }
+
+        int entry = row / indexInterval;
+        position(indexOffsets[entry]);
+        try {
+            for (int i = entry * indexInterval; i < row; i++) {
+                skipRow();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt data found while seeking in gcode stream");
+        }
+        numRowsRemaining = numRows - row;
+    }
+
+    /**
+     * Positions the stream at the first row with a command number equal to
+     * or greater than the given number. Command numbers are expected to be
+     * in ascending order, as they are when written by the preprocessor.
+     *
+     * @param commandNumber the command number to find
+     * @return the row the stream was positioned at, or the number of rows if
+     * no such command was found
+     * @throws IOException if the stream is corrupt
+     * @throws UnsupportedOperationException if the stream isn't indexed
+     */
+    public int seekToCommandNumber(int commandNumber) throws IOException {
+        assertIndexed();
+
+        // Find the last index entry before the command number
+        int low = 0;
+        int high = indexCommandNumbers.length - 1;
+        int entry = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexCommandNumbers[middle] < commandNumber) {
+                entry = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int row = Math.min(entry * indexInterval, numRows);
+        seek(row);
+        try {
+            while (row < numRows && peekInt() < commandNumber) {
+                skipRow();
+                row++;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Corrupt data found while seeking in gcode stream");
+        }
+        numRowsRemaining = numRows - row;
+        return row;
+    }
+
+    private void assertIndexed() {
+        if (!isIndexed()) {
+            throw new UnsupportedOperationException("Seeking is only supported in indexed gcode streams");
+        }
+    }
+
+    private int peekInt() throws IOException {
+        ensureRemaining(Integer.BYTES);
+        return buffer.getInt(buffer.position());
+    }
+
+    private void skipRow() throws IOException {
+        position(position() + Integer.BYTES);
+        for (int i = 0; i < 3; i++) {
+            int length = readFieldLength();
+            position(position() + length);
+        }
+    }
+
+    /**
+     * Reads the length of the next field, checking that the field is within
+     * the data before anything is allocated for it.
+     */
+    private int readFieldLength() throws IOException {
+        ensureRemaining(Integer.BYTES);
+        int length = buffer.getInt();
+        if (length < 0 || length > dataEnd - position()) {
+            throw new IOException("Corrupt data found while processing gcode stream at offset " + position());
+        }
+        return length;
+    }
+
+    private String readField() throws IOException {
+        int length = readFieldLength();
+        if (length == 0) {
+            return "";
+        }
+
+        if (length > fieldBuffer.length) {
+            fieldBuffer = new byte[Math.max(length, fieldBuffer.length * 2)];
+        }
+        ensureRemaining(length);
+        buffer.get(fieldBuffer, 0, length);
+        return new String(fieldBuffer, 0, length, StandardCharsets.UTF_8);
     }
 
     private String[] parseLine(String line) {
@@ -87,14 +461,55 @@ public class GcodeStreamReader extends GcodeStream implements IGcodeStreamReader
 
     @Override
     public GcodeCommand getNextCommand() throws IOException {
+        if (writer != null) {
+            return readFollowedCommand();
+        }
+
         if (numRowsRemaining == 0) return null;
 
+        GcodeCommand command = buffer != null ? readBinaryCommand() : readTextCommand();
+        numRowsRemaining--;
+
+        // Encode the command while reading instead of when it is being streamed
+        command.getCommandBytes();
+        return command;
+    }
+
+    private GcodeCommand readFollowedCommand() throws IOException {
+        if (position() >= dataEnd) {
+            // Rows are published whole, so the published data always ends on a row
+            long publishedPosition = writer.awaitRows(dataEnd);
+            if (publishedPosition <= dataEnd) {
+                return null;
+            }
+            dataEnd = publishedPosition;
+        }
+
+        GcodeCommand command = readBinaryCommand();
+        rowsRead++;
+        command.getCommandBytes();
+        return command;
+    }
+
+    private GcodeCommand readBinaryCommand() throws IOException {
+        try {
+            ensureRemaining(Integer.BYTES);
+            int commandNumber = buffer.getInt();
+            String original = readField();
+            String processed = readField();
+            String comment = readField();
+            return new GcodeCommand(processed, original, comment, commandNumber, false);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Corrupt data found while processing gcode stream at offset " + position());
+        }
+    }
+
+    private GcodeCommand readTextCommand() throws IOException {
         String line = reader.readLine();
         String[] nextLine = parseLine(line);
         if (nextLine.length != NUM_COLUMNS) {
             throw new IOException("Corrupt data found while processing gcode stream: " + line);
         }
-        numRowsRemaining--;
         return new GcodeCommand(
                 nextLine[COL_PROCESSED_COMMAND],
                 nextLine[COL_ORIGINAL_COMMAND],
@@ -105,6 +520,13 @@ public class GcodeStreamReader extends GcodeStream implements IGcodeStreamReader
 
     @Override
     public void close() throws IOException {
-        reader.close();
+        // The mapping is released when the buffer is garbage collected
+        buffer = null;
+        if (reader != null) {
+            reader.close();
+        }
+        if (windowChannel != null) {
+            windowChannel.close();
+        }
     }
 }
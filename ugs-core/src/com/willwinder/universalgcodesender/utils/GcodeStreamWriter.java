@@ -27,30 +27,85 @@
 package com.willwinder.universalgcodesender.utils;
 
 import com.willwinder.universalgcodesender.types.GcodeCommand;
-import java.io.Closeable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
- * Writes a "GcodeStream" file in a machine readable format.
+ * Writes a "GcodeStream" file in the indexed binary format described in
+ * {@link GcodeStream}. The row count and index location are patched into
+ * the header when the writer is closed.
+ *
+ * A stream can be read while it is still being written by creating a
+ * {@link GcodeStreamReader} following the writer. Once followed the writer
+ * flushes and publishes its rows every index interval, the readers then wait
+ * for more rows until the writer is closed.
+ *
  * @author wwinder
  */
 public class GcodeStreamWriter extends GcodeStream implements IGcodeWriter {
     private final File file;
-    private final PrintWriter fileWriter;
-    private final String metadataReservedSize = "                                                  ";
+    private final DataOutputStream out;
+    private final int indexInterval;
+
+    private long position = 0;
+    private int lineCount = 0;
+    private long[] indexOffsets = new long[64];
+    private int[] indexCommandNumbers = new int[64];
+    private int lastCommandNumber = 0;
+
+    // Set by the writing thread or by fail() from any thread, guarded by publishLock
+    private volatile IOException writeException;
 
-    private Integer lineCount = 0;
+    // State published to readers following the stream while it is written
+    private final Object publishLock = new Object();
+    private volatile boolean followed = false;
+    private volatile boolean finished = false;
+    private volatile int publishedRows = 0;
+    private volatile long publishedPosition = HEADER_SIZE;
+    private volatile int publishedCommandNumber = 0;
+    private volatile int sourceLineCount = 0;
+    private volatile IOException failure;
 
     public GcodeStreamWriter(File f) throws FileNotFoundException {
-        file = f;
-        fileWriter = new PrintWriter(f);
-        // 50 bytes at the beginning of the file to store metadata
-        fileWriter.append(metadataReservedSize);
-        fileWriter.append("\n");
+        this(f, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * Creates a writer with a custom index interval, a smaller interval gives
+     * faster seeks at the cost of a larger index.
+     *
+     * @param f             the file to write to
+     * @param indexInterval the number of rows between each index entry
+     * @throws FileNotFoundException if the file couldn't be created
+     */
+    public GcodeStreamWriter(File f, int indexInterval) throws FileNotFoundException {
+        if (indexInterval < 1) {
+            throw new IllegalArgumentException("The index interval must be at least one: " + indexInterval);
+        }
+
+        this.file = f;
+        this.indexInterval = indexInterval;
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 64 * 1024));
+
+        try {
+            out.write(BINARY_MAGIC);
+            out.writeInt(BINARY_VERSION);
+            out.writeInt(0); // Number of rows, written on close
+            out.writeInt(indexInterval);
+            out.writeLong(0); // Index offset, written on close
+            position = HEADER_SIZE;
+        } catch (IOException e) {
+            setWriteException(e);
+        }
     }
 
     private String getString(String str) {
@@ -62,74 +117,231 @@ public class GcodeStreamWriter extends GcodeStream implements IGcodeWriter {
         return file.getCanonicalPath();
     }
 
+    @Override
     public void addLine(GcodeCommand command) {
-        lineCount++;
-        String sep = "";
-        for (int i = 0; i < NUM_COLUMNS; i++) {
-            fileWriter.append(sep);
-            switch (i) {
-                case COL_ORIGINAL_COMMAND:
-                    fileWriter.append(command.getOriginalCommandString());
-                    break;
-                case COL_PROCESSED_COMMAND:
-                    fileWriter.append(command.getCommandString());
-                    break;
-                case COL_COMMENT:
-                    fileWriter.append(command.getComment());
-                    break;
-                case COL_COMMAND_NUMBER:
-                    fileWriter.append(Integer.toString(command.getCommandNumber()));
-                    break;
-                default:
-                    break;
-            }
-            sep = separator;
-        }
-        fileWriter.append("\n");
+        writeRow(command.getOriginalCommandString(), command.getCommandString(), command.getComment(), command.getCommandNumber());
     }
 
+    @Override
     public void addLine(String original, String processed, String comment, int commandNumber) {
-        if (    (original != null && original.trim().contains("\n")) || 
+        if (    (original != null && original.trim().contains("\n")) ||
                 (processed != null && processed.trim().contains("\n")) ||
                 (comment != null && comment.trim().contains("\n"))) {
             throw new IllegalArgumentException("Cannot include newlines in gcode stream.");
         }
 
+        writeRow(getString(original), getString(processed), getString(comment), commandNumber);
+    }
+
+    private void writeRow(String original, String processed, String comment, int commandNumber) {
+        if (writeException != null) {
+            return;
+        }
+
+        if (lineCount % indexInterval == 0) {
+            if (followed && lineCount > publishedRows) {
+                publish();
+            }
+            addIndexEntry(commandNumber);
+        }
         lineCount++;
-        String sep = "";
-        for (int i = 0; i < NUM_COLUMNS; i++) {
-            fileWriter.append(sep);
-            switch (i) {
-                case COL_ORIGINAL_COMMAND:
-                    fileWriter.append(getString(original));
-                    break;
-                case COL_PROCESSED_COMMAND:
-                    fileWriter.append(getString(processed));
-                    break;
-                case COL_COMMENT:
-                    fileWriter.append(getString(comment));
-                    break;
-                case COL_COMMAND_NUMBER:
-                    fileWriter.append(Integer.toString(commandNumber));
-                    break;
-                default:
-                    break;
+        lastCommandNumber = commandNumber;
+
+        try {
+            out.writeInt(commandNumber);
+            position += Integer.BYTES;
+            writeField(original);
+            writeField(processed);
+            writeField(comment);
+        } catch (IOException e) {
+            setWriteException(e);
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null || value.isEmpty()) {
+            out.writeInt(0);
+            position += Integer.BYTES;
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        position += Integer.BYTES + bytes.length;
+    }
+
+    private void addIndexEntry(int commandNumber) {
+        int entry = lineCount / indexInterval;
+        if (entry == indexOffsets.length) {
+            indexOffsets = Arrays.copyOf(indexOffsets, entry * 2);
+            indexCommandNumbers = Arrays.copyOf(indexCommandNumbers, entry * 2);
+        }
+        indexOffsets[entry] = position;
+        indexCommandNumbers[entry] = commandNumber;
+    }
+
+    /**
+     * Sets the number of lines in the file being preprocessed into this
+     * stream. The command numbers written are expected to be the line numbers
+     * of the source, as they are when written by the preprocessor, which is
+     * used for estimating the total number of rows while the stream is still
+     * being written.
+     *
+     * @param sourceLineCount the number of lines in the source file
+     */
+    public void setSourceLineCount(int sourceLineCount) {
+        this.sourceLineCount = sourceLineCount;
+    }
+
+    /**
+     * Marks the stream as failed, the error is thrown when the writer is
+     * closed and to any reader following the stream once it has read all
+     * rows written before the failure.
+     *
+     * @param cause the reason the stream couldn't be completed
+     */
+    public void fail(Exception cause) {
+        setWriteException(new IOException("The gcode stream could not be completed", cause));
+    }
+
+    /**
+     * Keeps the first error, later errors are most likely caused by it.
+     */
+    private void setWriteException(IOException e) {
+        synchronized (publishLock) {
+            if (writeException == null) {
+                writeException = e;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows in the stream, while the stream is being
+     * written this is an estimate which is always larger than the number of
+     * published rows.
+     *
+     * @return the number of rows in the stream
+     */
+    public int getNumRows() {
+        if (finished) {
+            return publishedRows;
+        }
+        int rows = publishedRows;
+        return rows + Math.max(1, sourceLineCount - publishedCommandNumber);
+    }
+
+    /**
+     * Returns if the stream is still being written and the number of rows is
+     * an estimate.
+     *
+     * @return true until the writer has been closed
+     */
+    public boolean isNumRowsEstimated() {
+        return !finished;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Makes the writer publish its rows to readers following the stream.
+     */
+    void follow() {
+        followed = true;
+    }
+
+    /**
+     * Waits until rows beyond the given file position have been published or
+     * the writer has been closed.
+     *
+     * @param position the file position up to which the rows have been read
+     * @return the file position up to which rows have been published
+     * @throws IOException if the stream failed or the thread was interrupted
+     */
+    long awaitRows(long position) throws IOException {
+        synchronized (publishLock) {
+            while (publishedPosition <= position && !finished) {
+                try {
+                    publishLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the gcode stream");
+                }
+            }
+
+            if (publishedPosition <= position && failure != null) {
+                throw failure;
             }
-            sep = separator;
+            return publishedPosition;
+        }
+    }
+
+    private void publish() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            setWriteException(e);
+            return;
+        }
+
+        synchronized (publishLock) {
+            publishedCommandNumber = lastCommandNumber;
+            publishedPosition = position;
+            publishedRows = lineCount;
+            publishLock.notifyAll();
+        }
+    }
+
+    private void finish() {
+        synchronized (publishLock) {
+            failure = writeException;
+            if (failure == null) {
+                publishedCommandNumber = lastCommandNumber;
+                publishedPosition = position;
+                publishedRows = lineCount;
+            }
+            finished = true;
+            publishLock.notifyAll();
         }
-        fileWriter.append("\n");
     }
 
     @Override
     public void close() throws IOException {
-        fileWriter.close();
-        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
-            raw.seek(0);
-            String metadata = "gsw_meta:" + lineCount.toString();
-            if (metadata.length() > metadataReservedSize.length()) {
-                throw new IOException("Too many lines to write metadata for GcodeStreamWriter!");
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            setWriteException(e);
+            throw e;
+        } finally {
+            finish();
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        long indexOffset = position;
+        try {
+            if (writeException == null) {
+                int entries = (lineCount + indexInterval - 1) / indexInterval;
+                for (int i = 0; i < entries; i++) {
+                    out.writeLong(indexOffsets[i]);
+                    out.writeInt(indexCommandNumbers[i]);
+                }
             }
-            raw.write(metadata.getBytes(), 0, metadata.length());
+        } finally {
+            out.close();
+        }
+
+        if (writeException != null) {
+            throw writeException;
+        }
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(HEADER_NUM_ROWS_OFFSET);
+            raw.writeInt(lineCount);
+            raw.seek(HEADER_INDEX_OFFSET_OFFSET);
+            raw.writeLong(indexOffset);
         }
     }
 }
@@ -58,4 +58,24 @@ public interface IGcodeStreamReader extends Closeable {
      * @throws IOException if the stream can not be read
      */
     GcodeCommand getNextCommand() throws IOException;
+
+    /**
+     * Returns true while the stream is still being written and the number of
+     * rows is an estimate that may change
+     *
+     * @return true if the number of rows is estimated
+     */
+    default boolean isNumRowsEstimated() {
+        return false;
+    }
+
+    /**
+     * Sets a listener to be notified when a stream which is still being
+     * written becomes ready after it has run out of rows, or when it has been
+     * completed. Streams with a known number of rows never notify the listener.
+     *
+     * @param listener the listener to notify
+     */
+    default void setReadyListener(Runnable listener) {
+    }
 }
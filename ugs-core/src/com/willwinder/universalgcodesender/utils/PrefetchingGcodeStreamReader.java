@@ -0,0 +1,229 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A gcode stream which reads commands from another stream in a background
+ * thread into a bounded buffer. This keeps disk reads and command decoding
+ * away from the thread that is streaming commands to the controller, getting
+ * the next command is then only a matter of polling the buffer.
+ *
+ * If the buffer runs dry the reader will block until the next command has
+ * been read, how many times this has happened is available through
+ * {@link #getBufferUnderrunCount()}.
+ *
+ * Streams that are still being written are never waited for, instead the
+ * reader isn't ready until the next command has been read and the listener
+ * set through {@link #setReadyListener(Runnable)} is notified.
+ *
+ * @author wwinder
+ */
+public class PrefetchingGcodeStreamReader implements IGcodeStreamReader {
+    private static final Logger logger = Logger.getLogger(PrefetchingGcodeStreamReader.class.getName());
+    public static final int DEFAULT_BUFFER_SIZE = 1024;
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final IGcodeStreamReader reader;
+    private final BlockingQueue<GcodeCommand> buffer;
+    private final Thread prefetchThread;
+    private final int numRows;
+    private final boolean growing;
+    private final AtomicInteger bufferUnderrunCount = new AtomicInteger();
+
+    private volatile boolean closed = false;
+    private volatile boolean starved = false;
+    private volatile Runnable readyListener;
+    private volatile IOException readException;
+    private volatile int numRowsRead;
+
+    public PrefetchingGcodeStreamReader(IGcodeStreamReader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a prefetching stream and starts reading commands from the given
+     * stream in a background thread.
+     *
+     * @param reader     the stream to read commands from
+     * @param bufferSize the maximum number of commands to read ahead
+     */
+    public PrefetchingGcodeStreamReader(IGcodeStreamReader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.numRows = reader.getNumRows();
+        this.growing = reader.isNumRowsEstimated();
+        this.numRowsRead = numRows - reader.getNumRowsRemaining();
+
+        prefetchThread = new Thread(this::prefetch, "GcodeStreamPrefetcher");
+        prefetchThread.setDaemon(true);
+        prefetchThread.start();
+    }
+
+    private void prefetch() {
+        try {
+            while (!closed && reader.ready()) {
+                GcodeCommand command = reader.getNextCommand();
+                if (command == null) {
+                    break;
+                }
+
+                while (!closed && !buffer.offer(command, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    // Wait until there is room in the buffer or the stream is closed
+                }
+
+                if (starved) {
+                    starved = false;
+                    notifyReady();
+                }
+            }
+        } catch (InterruptedIOException ignored) {
+            // The stream was closed
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Couldn't read from the gcode stream", e);
+            readException = e;
+        } catch (InterruptedException ignored) {
+            // The stream was closed
+        }
+
+        if (growing && !closed) {
+            notifyReady();
+        }
+    }
+
+    private void notifyReady() {
+        Runnable listener = readyListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @Override
+    public boolean ready() {
+        if (getNumRowsRemaining() <= 0) {
+            return false;
+        }
+
+        if (!buffer.isEmpty() || !isNumRowsEstimated()) {
+            return true;
+        }
+
+        // Check again in case a command was read before the flag was set
+        starved = true;
+        return !buffer.isEmpty() || !isNumRowsEstimated();
+    }
+
+    @Override
+    public int getNumRows() {
+        return growing ? reader.getNumRows() : numRows;
+    }
+
+    @Override
+    public boolean isNumRowsEstimated() {
+        return growing && reader.isNumRowsEstimated();
+    }
+
+    @Override
+    public void setReadyListener(Runnable listener) {
+        this.readyListener = listener;
+    }
+
+    /**
+     * Returns the number of rows that hasn't yet been fetched from this
+     * stream, this doesn't include the rows that have been read ahead.
+     *
+     * @return the number of remaining rows
+     */
+    @Override
+    public int getNumRowsRemaining() {
+        return getNumRows() - numRowsRead;
+    }
+
+    @Override
+    public GcodeCommand getNextCommand() throws IOException {
+        if (getNumRowsRemaining() <= 0) {
+            return null;
+        }
+
+        GcodeCommand command = buffer.poll();
+        if (command == null) {
+            bufferUnderrunCount.incrementAndGet();
+            command = waitForNextCommand();
+        }
+
+        numRowsRead++;
+        return command;
+    }
+
+    private GcodeCommand waitForNextCommand() throws IOException {
+        try {
+            while (!closed) {
+                GcodeCommand command = buffer.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (command != null) {
+                    return command;
+                }
+
+                if (!prefetchThread.isAlive() && buffer.isEmpty()) {
+                    if (readException != null) {
+                        throw readException;
+                    }
+                    throw new IOException("The gcode stream ended with " + getNumRowsRemaining() + " rows remaining");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the gcode stream", e);
+        }
+        throw new IOException("The gcode stream has been closed");
+    }
+
+    /**
+     * Returns the number of times a command was requested while the read
+     * ahead buffer was empty, meaning that the stream had to wait for the
+     * underlying stream.
+     *
+     * @return the number of buffer underruns
+     */
+    public int getBufferUnderrunCount() {
+        return bufferUnderrunCount.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        prefetchThread.interrupt();
+        try {
+            prefetchThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        buffer.clear();
+        reader.close();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, pre-allocated, lock-free FIFO queue which doesn't allocate
+ * anything when elements are added or removed.
+ *
+ * Threading contract:
+ * <ul>
+ *     <li>{@link #offer(Object)} may only be called by one thread at a time,
+ *     if several threads are producing they need to be serialized with a lock
+ *     (the producer is single-writer of the tail).</li>
+ *     <li>{@link #poll()} and {@link #clear()} may be called from any thread,
+ *     they are claiming elements using compare-and-set so an element is
+ *     never removed twice.</li>
+ *     <li>{@link #size()}, {@link #peek()} and iterating are safe from any
+ *     thread but only gives a snapshot which may be stale.</li>
+ * </ul>
+ *
+ * Removed elements are not cleared from the buffer and will be kept
+ * referenced until they are overwritten.
+ *
+ * @param <E> the element type
+ * @author wwinder
+ */
+public class RingBuffer<E> implements Iterable<E> {
+    private final Object[] elements;
+    private final int mask;
+
+    /**
+     * The position of the next element to be removed, written by consumers.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The position where the next element will be added, only written by the producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Creates a ring buffer that can hold at least the given number of
+     * elements, the capacity will be rounded up to the nearest power of two.
+     *
+     * @param capacity the minimum capacity
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be at least one: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        elements = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an element to the end of the queue. Must only be called from one
+     * thread at a time.
+     *
+     * @param element the element to add
+     * @return true if the element was added or false if the buffer is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+
+        long currentTail = tail.get();
+        if (currentTail - head.get() >= elements.length) {
+            return false;
+        }
+
+        elements[(int) currentTail & mask] = element;
+
+        // Publishes the element to the consumers
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Removes and returns the first element in the queue.
+     *
+     * @return the first element or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long currentHead = head.get();
+            if (currentHead >= tail.get()) {
+                return null;
+            }
+
+            E element = (E) elements[(int) currentHead & mask];
+            if (head.compareAndSet(currentHead, currentHead + 1)) {
+                return element;
+            }
+        }
+    }
+
+    /**
+     * Returns the first element in the queue without removing it.
+     *
+     * @return the first element or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        while (true) {
+            long currentHead = head.get();
+            if (currentHead >= tail.get()) {
+                return null;
+            }
+
+            E element = (E) elements[(int) currentHead & mask];
+            if (head.get() == currentHead) {
+                return element;
+            }
+        }
+    }
+
+    /**
+     * Removes all elements currently in the queue.
+     */
+    public void clear() {
+        while (true) {
+            long currentHead = head.get();
+            long currentTail = tail.get();
+            if (currentHead >= currentTail || head.compareAndSet(currentHead, currentTail)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements in the queue
+     */
+    public int size() {
+        long currentHead = head.get();
+        long size = tail.get() - currentHead;
+        return (int) Math.max(0, Math.min(size, elements.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the maximum number of elements the queue can hold
+     */
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * @return the number of elements that can be added before the queue is full
+     */
+    public int remainingCapacity() {
+        return elements.length - size();
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements currently in the
+     * queue, this will allocate and is not intended for the hot path.
+     *
+     * @return an iterator
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long currentHead = head.get();
+        long currentTail = tail.get();
+        for (long i = currentHead; i < currentTail; i++) {
+            snapshot.add((E) elements[(int) i & mask]);
+        }
+        return snapshot.iterator();
+    }
+}
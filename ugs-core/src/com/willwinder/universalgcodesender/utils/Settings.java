@@ -18,6 +18,7 @@
  */
 package com.willwinder.universalgcodesender.utils;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.model.Axis;
 import com.willwinder.universalgcodesender.model.Position;
@@ -69,6 +70,7 @@ public class Settings {
     private WindowSettings mainWindowSettings = new WindowSettings(0,0,640,520);
     private WindowSettings visualizerWindowSettings = new WindowSettings(0,0,640,480);
     private boolean singleStepMode = false;
+    private FlowControlMode flowControlMode = FlowControlMode.CHARACTER_COUNTING;
     private boolean statusUpdatesEnabled = true;
     private int statusUpdateRate = 200;
     private Units preferredUnits = Units.MM;
@@ -80,6 +82,12 @@ public class Settings {
     private boolean autoConnect = false;
     private boolean autoReconnect = false;
 
+    /**
+     * Preprocess files in the background and allow streaming them before the
+     * preprocessing is complete
+     */
+    private boolean streamWhilePreprocessing = false;
+
     private AutoLevelSettings autoLevelSettings = new AutoLevelSettings();
 
     private FileStats fileStats = new FileStats();
@@ -341,6 +349,19 @@ public class Settings {
         changed();
     }
 
+    public FlowControlMode getFlowControlMode() {
+        // Unknown modes in the settings file are read as null
+        if (flowControlMode == null) {
+            return FlowControlMode.CHARACTER_COUNTING;
+        }
+        return flowControlMode;
+    }
+
+    public void setFlowControlMode(FlowControlMode flowControlMode) {
+        this.flowControlMode = flowControlMode;
+        changed();
+    }
+
     public boolean isStatusUpdatesEnabled() {
         return statusUpdatesEnabled;
     }
@@ -495,6 +516,15 @@ public class Settings {
         return this.autoStartPendant;
     }
 
+    public void setStreamWhilePreprocessing(boolean streamWhilePreprocessing) {
+        this.streamWhilePreprocessing = streamWhilePreprocessing;
+        changed();
+    }
+
+    public boolean isStreamWhilePreprocessing() {
+        return this.streamWhilePreprocessing;
+    }
+
     public void setWorkspaceDirectory(String workspaceDirectory) {
         this.workspaceDirectory = workspaceDirectory;
     }
@@ -28,6 +28,7 @@ package com.willwinder.universalgcodesender.visualizer;
 import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
 import com.willwinder.universalgcodesender.gcode.processors.WhitespaceProcessor;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
@@ -156,6 +157,58 @@ public class GcodeViewParse {
         return lines;
     }
     
+    /**
+     * Convert a compiled program to a LineSegment collection without parsing
+     * the gcode again.
+     *
+     * @param program the program to visualize.
+     * @param arcSegmentLength length of line segments when expanding an arc.
+     */
+    public List<LineSegment> toObjFromProgram(GcodeProgram program, double arcSegmentLength) {
+        lines.clear();
+
+        Position start = program.size() > 0 ?
+                program.getStateBefore(0).currentPoint.getPositionIn(UnitUtils.Units.MM) :
+                new Position(UnitUtils.Units.MM);
+
+        for (int i = 0; i < program.size(); i++) {
+            if (!program.isMotion(i)) {
+                continue;
+            }
+
+            Position end = program.getEnd(i, UnitUtils.Units.MM);
+            try {
+                // Expand arc for graphics.
+                if (program.isArc(i)) {
+                    List<Position> points =
+                        GcodePreprocessorUtils.generatePointsAlongArcBDring(
+                            start, end, program.getArcCenter(i), program.isClockwise(i),
+                            program.getArcRadius(i), 0, arcSegmentLength, new PlaneFormatter(program.getPlane(i)));
+                    // Create line segments from points.
+                    if (points != null) {
+                        Position startPoint = start;
+                        for (Position nextPoint : points) {
+                            lines.add(createLineSegment(startPoint, nextPoint, program, i));
+                            this.testExtremes(nextPoint);
+                            startPoint = nextPoint;
+                        }
+                    }
+                // Line
+                } else {
+                    lines.add(createLineSegment(start, end, program, i));
+                    this.testExtremes(end);
+                }
+            } catch (Exception e) {
+                String message = program.getLineNumber(i) + ": " + e.getMessage();
+                GUIHelpers.displayErrorDialog(message, true);
+                LOGGER.log(Level.SEVERE, message, e);
+            }
+            start = end;
+        }
+
+        return lines;
+    }
+
     /**
      * The original (working) gcode to LineSegment collection code.
      *
@@ -212,6 +265,18 @@ public class GcodeViewParse {
       return ls;
     }
 
+    /**
+     * Helper to create a line segment with flags initialized from a program entry.
+     */
+    private static LineSegment createLineSegment(Position a, Position b, GcodeProgram program, int entry) {
+      LineSegment ls = new LineSegment(a, b, program.getLineNumber(entry));
+      ls.setIsArc(program.isArc(entry));
+      ls.setIsFastTraverse(program.isFastTraverse(entry));
+      ls.setIsZMovement(program.isZMovement(entry));
+      ls.setIsRotation(program.isRotation(entry));
+      return ls;
+    }
+
     /**
      * Turns a point segment into one or more LineSegment. Arcs are expanded.
      * Keeps track of the minimum and maximum x/y/z locations.
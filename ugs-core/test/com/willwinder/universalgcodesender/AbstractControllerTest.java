@@ -19,6 +19,7 @@
 
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.StreamingHealth;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
 import com.willwinder.universalgcodesender.gcode.GcodeCommandCreator;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
@@ -53,9 +54,15 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -204,6 +211,7 @@ public class AbstractControllerTest {
         startStreamExpectation(port, rate);
         expect(mockCommunicator.numActiveCommands()).andReturn(1);
         expect(mockCommunicator.numActiveCommands()).andReturn(0);
+        expect(mockCommunicator.getStreamingHealth()).andReturn(new StreamingHealth());
         expect(instance.getControllerStatus()).andReturn(new ControllerStatus(ControllerState.IDLE, new Position(0,0,0, UnitUtils.Units.MM), new Position(0,0,0, UnitUtils.Units.MM)));
         replay(instance, mockCommunicator);
 
@@ -430,6 +438,7 @@ public class AbstractControllerTest {
         expect(mockCommunicator.areActiveCommands()).andReturn(true);
         expect(mockCommunicator.areActiveCommands()).andReturn(false);
         expect(mockCommunicator.numActiveCommands()).andReturn(0);
+        expect(mockCommunicator.getStreamingHealth()).andReturn(new StreamingHealth());
         replay(instance, mockCommunicator, mockListener);
 
         GcodeCommand first = instance.getActiveCommand().orElseThrow(() -> new RuntimeException("Couldn't find first command"));
@@ -589,4 +598,107 @@ public class AbstractControllerTest {
         System.out.println("statusUpdatesRateValueChanged");
         System.out.println("-N/A Abstract Function-");
     }
+
+    @Test
+    public void dispatchStatusStringShouldSkipIdenticalStatuses() {
+        instance.setStatusExecutor(Runnable::run);
+        Capture<ControllerStatus> statuses = EasyMock.newCapture(CaptureType.ALL);
+        mockListener.statusStringListener(capture(statuses));
+        expectLastCall().times(2);
+        replay(mockListener);
+
+        ControllerStatus first = instance.dispatchStatusString(new ControllerStatus(ControllerState.IDLE, new Position(1, 2, 3, UnitUtils.Units.MM), new Position(1, 2, 3, UnitUtils.Units.MM)));
+        ControllerStatus second = instance.dispatchStatusString(new ControllerStatus(ControllerState.IDLE, new Position(1, 2, 3, UnitUtils.Units.MM), new Position(1, 2, 3, UnitUtils.Units.MM)));
+        ControllerStatus third = instance.dispatchStatusString(new ControllerStatus(ControllerState.RUN, new Position(1, 2, 3, UnitUtils.Units.MM), new Position(1, 2, 3, UnitUtils.Units.MM)));
+
+        verify(mockListener);
+        assertEquals(Arrays.asList(first, third), statuses.getValues());
+        Assert.assertSame(first, second);
+        assertEquals(ControllerStatus.ALL, first.getChanges());
+        assertEquals(ControllerStatus.STATE, third.getChanges());
+        assertEquals(first.getVersion() + 1, third.getVersion());
+    }
+
+    @Test
+    public void concurrentStreamEventsShouldKeepTheRowCountsConsistent() throws Exception {
+        // Given a stream where the communicator has active commands until the end
+        String port = "/some/port";
+        int rate = 1234;
+        int rows = 5000;
+        openInstanceExpectUtility(port, rate, true);
+        instance.isReadyToStreamCommandsEvent();
+        expect(expectLastCall()).once();
+        expect(mockCommunicator.areActiveCommands()).andReturn(false).once();
+        expect(mockCommunicator.areActiveCommands()).andStubReturn(true);
+        mockCommunicator.queueStreamForComm(anyObject(IGcodeStreamReader.class));
+        mockCommunicator.streamCommands();
+        mockCommunicator.pauseSend();
+        expect(expectLastCall()).anyTimes();
+        mockCommunicator.resumeSend();
+        expect(expectLastCall()).anyTimes();
+        instance.pauseStreamingEvent();
+        expect(expectLastCall()).anyTimes();
+        instance.resumeStreamingEvent();
+        expect(expectLastCall()).anyTimes();
+        mockListener.commandSent(anyObject(GcodeCommand.class));
+        expect(expectLastCall()).anyTimes();
+        mockListener.commandComplete(anyObject(GcodeCommand.class));
+        expect(expectLastCall()).anyTimes();
+        replay(instance, mockCommunicator, mockListener, mockMessageService);
+
+        String[] lines = new String[rows];
+        Arrays.fill(lines, "G0X1");
+        instance.openCommPort(getSettings().getConnectionDriver(), port, rate);
+        instance.queueStream(new SimpleGcodeStreamReader(lines));
+        instance.beginStreaming();
+
+        // When the communicator events and the user actions come from different threads
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            AtomicBoolean done = new AtomicBoolean();
+            Future<?> sender = executor.submit(() -> {
+                for (int i = 0; i < rows; i++) {
+                    instance.commandSent(new GcodeCommand("G0X" + i));
+                }
+            });
+            Future<?> completer = executor.submit(() -> {
+                int completed = 0;
+                while (completed < rows) {
+                    if (instance.getActiveCommand().isPresent()) {
+                        instance.commandComplete("ok");
+                        completed++;
+                    }
+                }
+                return null;
+            });
+            Future<Integer> user = executor.submit(() -> {
+                int inconsistentReads = 0;
+                while (!done.get()) {
+                    instance.pauseStreaming();
+                    int completed = instance.rowsCompleted();
+                    int sent = instance.rowsSent();
+                    if (completed > sent || sent > rows) {
+                        inconsistentReads++;
+                    }
+                    instance.resumeStreaming();
+                }
+                return inconsistentReads;
+            });
+
+            sender.get(30, TimeUnit.SECONDS);
+            completer.get(30, TimeUnit.SECONDS);
+            done.set(true);
+
+            // Then
+            assertEquals(0, (int) user.get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(rows, instance.rowsSent());
+        assertEquals(rows, instance.rowsCompleted());
+        assertEquals(0, instance.rowsRemaining());
+        assertFalse(instance.getActiveCommand().isPresent());
+        assertTrue(instance.isStreaming());
+    }
 }
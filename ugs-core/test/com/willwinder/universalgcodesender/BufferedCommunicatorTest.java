@@ -18,33 +18,55 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
+import com.willwinder.universalgcodesender.communicator.PlannerAwareFlowControl;
+import com.willwinder.universalgcodesender.communicator.StreamEventLoop;
+import com.willwinder.universalgcodesender.communicator.StreamingHealth;
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
 import com.willwinder.universalgcodesender.connection.Connection;
 import com.willwinder.universalgcodesender.connection.ConnectionDriver;
+import com.willwinder.universalgcodesender.connection.LineBatch;
 import com.willwinder.universalgcodesender.listeners.CommunicatorListener;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.mockobjects.MockConnection;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.GcodeStreamTest;
 import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.RingBuffer;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.StringUtils;
 import org.easymock.EasyMock;
+import org.easymock.IArgumentMatcher;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
-import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -57,9 +79,14 @@ public class BufferedCommunicatorTest {
     private static File tempDir;
     private final static Connection mockConnection = EasyMock.createMock(Connection.class);
     private final static CommunicatorListener mockScl = EasyMock.createMock(CommunicatorListener.class);
+    /**
+     * The number of bytes which may be allocated on average per streamed line.
+     */
+    private static final int LINE_ALLOCATION_LIMIT = 0;
+
     private BufferedCommunicator instance;
     private LinkedBlockingDeque<GcodeCommand> cb;
-    private LinkedBlockingDeque<GcodeCommand> asl;
+    private RingBuffer<GcodeCommand> asl;
 
     public BufferedCommunicatorTest() {
     }
@@ -78,9 +105,10 @@ public class BufferedCommunicatorTest {
     public void setUp() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException {
         EasyMock.reset(mockConnection, mockScl);
         cb = new LinkedBlockingDeque<>();
-        asl = new LinkedBlockingDeque<>();
+        asl = new RingBuffer<>(101);
 
         instance = new BufferedCommunicatorImpl(cb, asl);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         instance.setConnection(mockConnection);
         instance.addListener(mockScl);
 
@@ -133,8 +161,8 @@ public class BufferedCommunicatorTest {
 
         // Check events and connection:
         // console message, connection stream, sent event
-        mockConnection.sendStringToComm(input + "\n");
-        EasyMock.expect(EasyMock.expectLastCall()).times(2);
+        expectSendBatch(input + "\n" + input + "\n");
+        EasyMock.expect(EasyMock.expectLastCall()).once();
         mockScl.commandSent(EasyMock.anyObject(GcodeCommand.class));
         EasyMock.expect(EasyMock.expectLastCall()).times(2);
 
@@ -152,10 +180,9 @@ public class BufferedCommunicatorTest {
     public void testSimpleStreamStream() throws Exception {
         String[] inputs = {"input1", "input2"};
 
+        expectSendBatch("input1\ninput2\n");
+        EasyMock.expect(EasyMock.expectLastCall());
         for (String i : inputs) {
-            mockConnection.sendStringToComm(i + "\n");
-            EasyMock.expect(EasyMock.expectLastCall());
-
             mockScl.commandSent(EasyMock.<GcodeCommand>anyObject());
             EasyMock.expect(EasyMock.expectLastCall());
         }
@@ -190,8 +217,8 @@ public class BufferedCommunicatorTest {
         String input = "input";
 
         // Setup 2 active commands.
-        mockConnection.sendStringToComm(input + "\n");
-        EasyMock.expect(EasyMock.expectLastCall()).times(2);
+        expectSendBatch(input + "\n" + input + "\n");
+        EasyMock.expect(EasyMock.expectLastCall()).once();
 
         mockScl.commandSent(EasyMock.<GcodeCommand>anyObject());
         EasyMock.expect(EasyMock.expectLastCall()).times(2);
@@ -231,6 +258,104 @@ public class BufferedCommunicatorTest {
         EasyMock.verify(mockConnection, mockScl);
     }
 
+    @Test
+    public void plannerAwareFlowControlShouldBoundCommandsInFlight() throws Exception {
+        // A full planner allows the minimum number of commands in flight
+        expectSendBatch("G1X1\nG1X2\nG1X3\nG1X4\n");
+        mockScl.commandSent(EasyMock.<GcodeCommand>anyObject());
+        EasyMock.expect(EasyMock.expectLastCall()).times(PlannerAwareFlowControl.DEFAULT_MIN_COMMANDS_IN_FLIGHT);
+        EasyMock.replay(mockConnection, mockScl);
+
+        instance.setFlowControlMode(FlowControlMode.PLANNER_AWARE);
+        instance.updateBufferState(new ControllerStatus.BufferState(0, 128));
+        for (int i = 1; i <= 10; i++) {
+            instance.queueCommand(new GcodeCommand("G1X" + i));
+        }
+        instance.streamCommands();
+
+        EasyMock.verify(mockConnection, mockScl);
+        assertEquals(FlowControlMode.PLANNER_AWARE, instance.getFlowControlMode());
+        assertEquals("G1X1, G1X2, G1X3, G1X4", instance.activeCommandSummary());
+    }
+
+    @Test
+    public void unsupportedFlowControlModeShouldFallBackToCharacterCounting() {
+        instance.setFlowControlMode(FlowControlMode.PLANNER_AWARE);
+        instance.setFlowControlMode(FlowControlMode.QUEUE_REPORT);
+        assertEquals(FlowControlMode.CHARACTER_COUNTING, instance.getFlowControlMode());
+    }
+
+    @Test
+    public void completedCommandsShouldBeRecordedInTheStatistics() throws Exception {
+        expectSendBatch("G1X1\nG1X2\n");
+        mockScl.commandSent(EasyMock.<GcodeCommand>anyObject());
+        EasyMock.expect(EasyMock.expectLastCall()).times(2);
+        mockScl.rawResponseListener("ok");
+        EasyMock.expect(EasyMock.expectLastCall()).times(2);
+        EasyMock.replay(mockConnection, mockScl);
+
+        GcodeCommand first = new GcodeCommand("G1X1");
+        GcodeCommand second = new GcodeCommand("G1X2");
+        instance.queueCommand(first);
+        instance.queueCommand(second);
+        instance.streamCommands();
+        instance.handleResponseMessage("ok");
+        instance.handleResponseMessage("ok");
+
+        assertTrue(first.getQueuedTime() != 0);
+        assertTrue(first.getSentTime() >= first.getQueuedTime());
+        assertTrue(first.getAckTime() >= first.getSentTime());
+        assertTrue(second.getAckTime() >= first.getAckTime());
+        assertEquals(first.getAckTime() - first.getSentTime(), first.getAckLatency());
+
+        StreamingStatistics.Snapshot statistics = instance.getStreamingStatistics().getSnapshot();
+        assertEquals(2, statistics.getCompletedLines());
+        assertEquals(10, statistics.getCompletedBytes());
+        assertEquals(2, statistics.getRoundTrip().getCount());
+        assertEquals(2, statistics.getQueueWait().getCount());
+        assertEquals(2, statistics.getTotal().getCount());
+
+        // A new stream starts new statistics
+        instance.queueStreamForComm(EasyMock.createNiceMock(IGcodeStreamReader.class));
+        assertEquals(0, instance.getStreamingStatistics().getSnapshot().getCompletedLines());
+    }
+
+    @Test
+    public void streamingHealthShouldTrackStarvationAndFullBuffer() throws Exception {
+        String command = StringUtils.repeat("X", 99);
+        expectSendBatch(command + "\n");
+        EasyMock.expect(EasyMock.expectLastCall()).times(2);
+        EasyMock.replay(mockConnection);
+
+        // The first command fills the buffer and the second has to wait
+        instance.queueCommand(new GcodeCommand(command));
+        instance.queueCommand(new GcodeCommand(command));
+        instance.streamCommands();
+        assertEquals(StreamingHealth.State.WINDOW_FULL, instance.getStreamingHealth().getState());
+
+        instance.handleResponseMessage("ok");
+        assertEquals(StreamingHealth.State.DRAINING, instance.getStreamingHealth().getState());
+
+        instance.handleResponseMessage("ok");
+        assertEquals(StreamingHealth.State.IDLE, instance.getStreamingHealth().getState());
+
+        // A stream with rows which aren't ready starves the controller
+        IGcodeStreamReader stream = EasyMock.createNiceMock(IGcodeStreamReader.class);
+        EasyMock.expect(stream.ready()).andReturn(false).anyTimes();
+        EasyMock.expect(stream.getNumRowsRemaining()).andReturn(1).anyTimes();
+        EasyMock.replay(stream);
+        instance.queueStreamForComm(stream);
+        instance.streamCommands();
+        assertEquals(StreamingHealth.State.STARVED, instance.getStreamingHealth().getState());
+
+        instance.pauseSend();
+        assertEquals(StreamingHealth.State.PAUSED, instance.getStreamingHealth().getState());
+
+        EasyMock.verify(mockConnection);
+        StreamingHealth.Report report = instance.getStreamingHealth().getReport();
+        assertEquals(1, report.getStarvationCount());
+    }
+
     /**
      * Test of pauseSend method, of class BufferedCommunicator.
      */
@@ -239,10 +364,10 @@ public class BufferedCommunicatorTest {
         System.out.println("pauseSend");
 
         String input = "123456789";
-        for (int i = 0; i < 11; i++) {
-            mockConnection.sendStringToComm(input + "\n");
-            EasyMock.expect(EasyMock.expectLastCall());
-        }
+        expectSendBatch(StringUtils.repeat(input + "\n", 10));
+        EasyMock.expect(EasyMock.expectLastCall());
+        expectSendBatch(input + "\n");
+        EasyMock.expect(EasyMock.expectLastCall());
         EasyMock.replay(mockConnection);
 
         // Send the first 10 commands, pause 11th
@@ -305,7 +430,7 @@ public class BufferedCommunicatorTest {
 
         EasyMock.replay(mockScl);
 
-        asl.add(new GcodeCommand("command"));
+        asl.offer(new GcodeCommand("command"));
         instance.handleResponseMessage(first);
         assertEquals(1, asl.size());
         instance.handleResponseMessage("ok");
@@ -358,9 +483,7 @@ public class BufferedCommunicatorTest {
         byte b = 10;
 
         String tenChar = "123456789";
-        for (int i = 0; i < 10; i++) {
-            mockConnection.sendStringToComm(tenChar + "\n");
-        }
+        expectSendBatch(StringUtils.repeat(tenChar + "\n", 10));
         mockConnection.sendByteImmediately(b);
 
         EasyMock.replay(mockConnection);
@@ -401,8 +524,15 @@ public class BufferedCommunicatorTest {
         Connection connection = mock(Connection.class);
         instance.setConnection(connection);
 
-        ArgumentCaptor<String> commandCaptor = ArgumentCaptor.forClass(String.class);
-        doNothing().when(connection).sendStringToComm(commandCaptor.capture());
+        List<String> sentLines = new ArrayList<>();
+        doAnswer(invocation -> {
+            LineBatch batch = invocation.getArgument(0);
+            for (int i = 0; i < batch.getLineCount(); i++) {
+                int start = batch.getLineStart(i);
+                sentLines.add(new String(batch.getBuffer(), start, batch.getLineEnd(i) - start, StandardCharsets.UTF_8));
+            }
+            return null;
+        }).when(connection).sendBatchToComm(any(LineBatch.class));
 
         // Create a gcode file stream
         File gcodeFile = new File(tempDir,"gcodeFile");
@@ -417,9 +547,87 @@ public class BufferedCommunicatorTest {
         instance.streamCommands();
 
         // Then
-        assertEquals(2, commandCaptor.getAllValues().size());
-        assertEquals("The first command processed should be the string command", "G1\n", commandCaptor.getAllValues().get(0));
-        assertEquals("The second command should be from the stream", "G0\n", commandCaptor.getAllValues().get(1));
+        assertEquals(2, sentLines.size());
+        assertEquals("The first command processed should be the string command", "G1\n", sentLines.get(0));
+        assertEquals("The second command should be from the stream", "G0\n", sentLines.get(1));
+    }
+
+    @Test
+    public void streamCommandsShouldWriteCommandsThatFitInBufferAsOneBatch() throws Exception {
+        // Given
+        Connection connection = mock(Connection.class);
+        instance.setConnection(connection);
+        CommunicatorListener communicatorListener = mock(CommunicatorListener.class);
+        instance.addListener(communicatorListener);
+
+        GcodeCommand command1 = new GcodeCommand("G0X1");
+        GcodeCommand command2 = new GcodeCommand("G0X2");
+        GcodeCommand command3 = new GcodeCommand("G0X3");
+        instance.queueCommand(command1);
+        instance.queueCommand(command2);
+        instance.queueCommand(command3);
+
+        // When
+        instance.streamCommands();
+
+        // Then
+        verify(connection, times(1)).sendBatchToComm(any(LineBatch.class));
+        InOrder inOrder = inOrder(communicatorListener);
+        inOrder.verify(communicatorListener).commandSent(command1);
+        inOrder.verify(communicatorListener).commandSent(command2);
+        inOrder.verify(communicatorListener).commandSent(command3);
+        assertEquals(3, asl.size());
+    }
+
+    @Test
+    public void concurrentStreamingAndAcknowledgingShouldKeepCommandOrder() throws Exception {
+        // Given
+        BufferedCommunicator communicator = new BufferedCommunicatorImpl(new LinkedBlockingDeque<>(), new RingBuffer<>(101));
+        Field f = AbstractCommunicator.class.getDeclaredField("launchEventsInDispatchThread");
+        f.setAccessible(true);
+        f.set(communicator, false);
+
+        // A simulated controller acknowledging each received line from its own thread
+        BlockingQueue<String> receivedLines = new LinkedBlockingQueue<>();
+        List<String> processedLines = new ArrayList<>();
+        communicator.setConnection(new MockConnection(null, new NullOutputStream()) {
+            @Override
+            public void sendBatchToComm(LineBatch batch) {
+                for (int i = 0; i < batch.getLineCount(); i++) {
+                    int start = batch.getLineStart(i);
+                    receivedLines.add(new String(batch.getBuffer(), start, batch.getLineEnd(i) - start - 1, StandardCharsets.UTF_8));
+                }
+            }
+        });
+
+        int numberOfCommands = 20000;
+        Thread controllerThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < numberOfCommands; i++) {
+                    processedLines.add(receivedLines.take());
+                    communicator.handleResponseMessage("ok");
+                }
+            } catch (InterruptedException ignored) {
+                // Test will fail on missing lines
+            }
+        });
+        controllerThread.start();
+
+        // When
+        for (int i = 0; i < numberOfCommands; i++) {
+            communicator.queueCommand(new GcodeCommand("G1X" + i));
+            communicator.streamCommands();
+        }
+        controllerThread.join(TimeUnit.SECONDS.toMillis(30));
+
+        // Then
+        assertFalse("The controller didn't receive all commands", controllerThread.isAlive());
+        assertEquals(numberOfCommands, processedLines.size());
+        for (int i = 0; i < numberOfCommands; i++) {
+            assertEquals("G1X" + i, processedLines.get(i));
+        }
+        assertEquals(0, communicator.numActiveCommands());
+        assertEquals(0, communicator.numBufferedCommands());
     }
 
     @Test
@@ -427,7 +635,7 @@ public class BufferedCommunicatorTest {
         // Given
         Connection connection = mock(Connection.class);
         instance.setConnection(connection);
-        asl.add(new GcodeCommand("G0"));
+        asl.offer(new GcodeCommand("G0"));
         cb.add(new GcodeCommand("G0"));
 
         instance.pauseSend();
@@ -449,8 +657,8 @@ public class BufferedCommunicatorTest {
         // Given
         Connection connection = mock(Connection.class);
         instance.setConnection(connection);
-        asl.add(new GcodeCommand("G0"));
-        asl.add(new GcodeCommand("G0"));
+        asl.offer(new GcodeCommand("G0"));
+        asl.offer(new GcodeCommand("G0"));
         instance.streamCommands();
 
         // When
@@ -469,8 +677,8 @@ public class BufferedCommunicatorTest {
         CommunicatorListener communicatorListener = mock(CommunicatorListener.class);
         instance.addListener(communicatorListener);
 
-        asl.add(new GcodeCommand("G0"));
-        asl.add(new GcodeCommand("G0"));
+        asl.offer(new GcodeCommand("G0"));
+        asl.offer(new GcodeCommand("G0"));
         instance.streamCommands();
 
         // When
@@ -517,7 +725,7 @@ public class BufferedCommunicatorTest {
         // Given
         Connection connection = mock(Connection.class);
         instance.setConnection(connection);
-        asl.add(new GcodeCommand("G0"));
+        asl.offer(new GcodeCommand("G0"));
         instance.streamCommands();
 
         // When
@@ -574,8 +782,78 @@ public class BufferedCommunicatorTest {
         assertFalse(instance.isPaused());
     }
 
+    @Test
+    public void streamingPreEncodedCommandsShouldNotAllocatePerLine() throws Exception {
+        // Given
+        BufferedCommunicator communicator = new BufferedCommunicatorImpl(cb, asl);
+        communicator.setEventLoop(new StreamEventLoop(Runnable::run));
+        communicator.setConnection(new MockConnection(null, new NullOutputStream()));
+        Field f = AbstractCommunicator.class.getDeclaredField("launchEventsInDispatchThread");
+        f.setAccessible(true);
+        f.set(communicator, false);
+
+        GcodeCommand[] commands = new GcodeCommand[10];
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new GcodeCommand("G1X" + i + "Y" + i, i);
+            commands[i].getCommandBytes();
+        }
+
+        // Warm up so that the measurement isn't affected by class loading and compilation
+        streamLines(communicator, commands, 50000);
+
+        // When
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        int lines = 100000;
+        streamLines(communicator, commands, lines);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Then
+        assertTrue("Streaming allocated " + allocated + " bytes for " + lines + " lines", allocated / lines <= LINE_ALLOCATION_LIMIT);
+    }
+
+    /**
+     * Streams the given number of lines through the communicator acknowledging
+     * each one to keep the buffer moving.
+     */
+    private static void streamLines(BufferedCommunicator communicator, GcodeCommand[] commands, int lines) {
+        communicator.queueStreamForComm(new ArrayGcodeStreamReader(commands, lines));
+        communicator.streamCommands();
+        while (communicator.areActiveCommands()) {
+            communicator.handleResponseMessage("ok");
+        }
+    }
+
+    private static void expectSendBatch(String data) throws Exception {
+        mockConnection.sendBatchToComm(batchEq(data));
+    }
+
+    /**
+     * Matches a line batch containing the given data, the batch is reused
+     * by the communicator so it needs to be matched when it is written.
+     */
+    private static LineBatch batchEq(String data) {
+        EasyMock.reportMatcher(new IArgumentMatcher() {
+            @Override
+            public boolean matches(Object argument) {
+                if (!(argument instanceof LineBatch)) {
+                    return false;
+                }
+                LineBatch batch = (LineBatch) argument;
+                return data.equals(new String(batch.getBuffer(), 0, batch.getLength(), StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void appendTo(StringBuffer buffer) {
+                buffer.append("batchEq(\"").append(data).append("\")");
+            }
+        });
+        return null;
+    }
+
     public class BufferedCommunicatorImpl extends BufferedCommunicator {
-        BufferedCommunicatorImpl(LinkedBlockingDeque<GcodeCommand> cb, LinkedBlockingDeque<GcodeCommand> asl) {
+        BufferedCommunicatorImpl(Queue<GcodeCommand> cb, RingBuffer<GcodeCommand> asl) {
             super(cb, asl);
         }
 
@@ -595,4 +873,48 @@ public class BufferedCommunicatorTest {
             return (response != null && response.startsWith("error"));
         }
     }
+
+    /**
+     * A stream reader which cycles through a fixed set of commands without
+     * doing any allocations.
+     */
+    private static class ArrayGcodeStreamReader implements IGcodeStreamReader {
+        private final GcodeCommand[] commands;
+        private final int numRows;
+        private int numRowsRemaining;
+
+        ArrayGcodeStreamReader(GcodeCommand[] commands, int numRows) {
+            this.commands = commands;
+            this.numRows = numRows;
+            this.numRowsRemaining = numRows;
+        }
+
+        @Override
+        public boolean ready() {
+            return numRowsRemaining > 0;
+        }
+
+        @Override
+        public int getNumRows() {
+            return numRows;
+        }
+
+        @Override
+        public int getNumRowsRemaining() {
+            return numRowsRemaining;
+        }
+
+        @Override
+        public GcodeCommand getNextCommand() {
+            if (numRowsRemaining == 0) {
+                return null;
+            }
+            numRowsRemaining--;
+            return commands[numRowsRemaining % commands.length];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
@@ -18,6 +18,7 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
@@ -92,6 +93,18 @@ public class G2CoreControllerTest {
         assertEquals("{mfoe:1}", queueCommandArgumentCaptor.getAllValues().get(6).getCommandString());
     }
 
+    @Test
+    public void rawResponseWithAckResponseShouldEnableQueueReportsForTheQueueReportFlowControl() {
+        // Given
+        when(communicator.getFlowControlMode()).thenReturn(FlowControlMode.QUEUE_REPORT);
+
+        // When
+        controller.rawResponseHandler("{\"ack\":true}");
+
+        // Then
+        assertEquals("{qv:1}", queueCommandArgumentCaptor.getAllValues().get(3).getCommandString());
+    }
+
     @Test
     public void rawResponseWithStatusReport() {
         // Given
@@ -18,10 +18,12 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.StreamEventLoop;
 import com.willwinder.universalgcodesender.utils.CommUtils;
 import com.willwinder.universalgcodesender.mockobjects.MockConnection;
 import com.willwinder.universalgcodesender.mockobjects.MockGrbl;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.RingBuffer;
 import java.util.LinkedList;
 import java.util.concurrent.LinkedBlockingDeque;
 import static org.junit.Assert.*;
@@ -35,7 +37,7 @@ import org.junit.Test;
 public class GrblCommunicatorTest {
     private MockGrbl mg;
     private LinkedBlockingDeque<GcodeCommand> cb;
-    private LinkedBlockingDeque<GcodeCommand> asl;
+    private RingBuffer<GcodeCommand> asl;
     
     public GrblCommunicatorTest() {
     }
@@ -44,7 +46,7 @@ public class GrblCommunicatorTest {
     public void setUp() {
         this.mg = new MockGrbl();
         this.cb = new LinkedBlockingDeque<>();
-        this.asl = new LinkedBlockingDeque<>();
+        this.asl = new RingBuffer<>(GrblUtils.GRBL_RX_BUFFER_SIZE);
     }
 
     /**
@@ -75,6 +77,7 @@ public class GrblCommunicatorTest {
         String input = "someCommand";
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         
         try {
             instance.queueCommand(new GcodeCommand(input));
@@ -94,6 +97,7 @@ public class GrblCommunicatorTest {
             cb = new LinkedBlockingDeque<>();
             mc = new MockConnection(mg.in, mg.out);
             instance = new GrblCommunicator(cb, asl, mc);
+            instance.setEventLoop(new StreamEventLoop(Runnable::run));
 
             instance.queueCommand(new GcodeCommand(input));
             // Test that instance doesn't add superfluous newlines.
@@ -113,6 +117,7 @@ public class GrblCommunicatorTest {
     public void testSendStringToComm() {
         System.out.println("sendStringToComm");
         GrblCommunicator instance = new GrblCommunicator(mg.in, mg.out, cb, asl);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
 
         
         String command = "someCommand";
@@ -130,6 +135,7 @@ public class GrblCommunicatorTest {
         System.out.println("sendByteImmediately");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
 
         // Ctrl-C is a common byte to send immediately.
         byte b = 0x18;
@@ -173,6 +179,7 @@ public class GrblCommunicatorTest {
         System.out.println("areActiveCommands");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         
         boolean expResult = false;
         boolean result = instance.areActiveCommands();
@@ -211,6 +218,7 @@ public class GrblCommunicatorTest {
         System.out.println("streamCommands");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         String term = "\n";
         String thirtyNineCharString = "thirty-nine character command here.....";
 
@@ -269,6 +277,49 @@ public class GrblCommunicatorTest {
         assertEquals(expResult, result);
     }
     
+    @Test
+    public void streamCommandsShouldUseTheChangedBufferSize() {
+        MockConnection mc = new MockConnection(mg.in, mg.out);
+        GrblCommunicator instance = new GrblCommunicator(cb, new RingBuffer<>(1024), mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
+        String twentyCharString = "twenty characters...";
+
+        for (int i = 0; i < 100; i++) {
+            instance.queueCommand(new GcodeCommand(twentyCharString));
+        }
+
+        // A controller reporting a 1024 byte receive buffer
+        instance.setBufferSize(1024 - GrblUtils.GRBL_RX_BUFFER_RESERVED);
+        instance.streamCommands();
+
+        String[] sent = mg.readStringFromGrblBuffer().split("\n");
+        assertEquals((1024 - GrblUtils.GRBL_RX_BUFFER_RESERVED) / (twentyCharString.length() + 1), sent.length);
+    }
+
+    @Test
+    public void shrinkingTheBufferSizeShouldWaitForActiveCommands() {
+        MockConnection mc = new MockConnection(mg.in, mg.out);
+        GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
+        String twentyCharString = "twenty characters...";
+
+        for (int i = 0; i < 10; i++) {
+            instance.queueCommand(new GcodeCommand(twentyCharString));
+        }
+        instance.streamCommands();
+        assertEquals(GrblUtils.GRBL_RX_BUFFER_SIZE / (twentyCharString.length() + 1), mg.readStringFromGrblBuffer().split("\n").length);
+
+        // Nothing more should be sent until the active commands fit in the new buffer
+        instance.setBufferSize(42);
+        for (int i = 0; i < 3; i++) {
+            mc.sendResponse("ok");
+        }
+        assertEquals(0, mg.readStringFromGrblBuffer().length());
+
+        mc.sendResponse("ok");
+        assertEquals(twentyCharString + "\n", mg.readStringFromGrblBuffer());
+    }
+
     /**
      * Test of pauseSend method, of class GrblCommunicator.
      */
@@ -277,6 +328,7 @@ public class GrblCommunicatorTest {
         System.out.println("pauseSend");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         String twentyCharString = "twenty characters...";
         String grblReceiveString;
         String arr[];
@@ -326,6 +378,7 @@ public class GrblCommunicatorTest {
         System.out.println("cancelSend");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         String twentyCharString = "twenty characters...";
         String grblReceiveString;
         String arr[];
@@ -381,6 +434,7 @@ public class GrblCommunicatorTest {
         System.out.println("softReset");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         String twentyCharString = "twenty characters...";
         int expectedInt;
         Boolean expectedBool;
@@ -402,6 +456,7 @@ public class GrblCommunicatorTest {
         System.out.println("streamCommands");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         instance.setSingleStepMode(true);
         String thirtyEightCharString = "thirty-nine character command here....";
 
@@ -459,6 +514,7 @@ public class GrblCommunicatorTest {
         System.out.println("streamCommands");
         MockConnection mc = new MockConnection(mg.in, mg.out);
         GrblCommunicator instance = new GrblCommunicator(cb, asl, mc);
+        instance.setEventLoop(new StreamEventLoop(Runnable::run));
         instance.setSingleStepMode(true);
         String thirtyEightCharString = "thirty-nine character command here....";
 
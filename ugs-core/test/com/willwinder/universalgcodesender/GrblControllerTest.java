@@ -23,6 +23,7 @@ import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
 import com.willwinder.universalgcodesender.listeners.MessageType;
 import com.willwinder.universalgcodesender.mockobjects.MockGrblCommunicator;
 import com.willwinder.universalgcodesender.model.PartialPosition;
@@ -44,6 +45,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.File;
 import java.io.IOException;
@@ -1533,4 +1535,34 @@ public class GrblControllerTest {
         hasRealTime = gc.getCapabilities().hasCapability(GrblCapabilitiesConstants.REAL_TIME);
         assertFalse(hasRealTime);
     }
+
+    @Test
+    public void identicalStatusReportsShouldOnlyBeDispatchedOnce() throws Exception {
+        ControllerListener controllerListener = mock(ControllerListener.class);
+        GrblController gc = new GrblController(mgc);
+        gc.setStatusExecutor(Runnable::run);
+        gc.addListener(controllerListener);
+        gc.openCommPort(getSettings().getConnectionDriver(), "foo", 2400);
+        gc.rawResponseHandler("Grbl 1.1f");
+
+        // When
+        gc.rawResponseHandler("<Idle|MPos:1.000,2.000,3.000|FS:0,0|WCO:0.000,0.000,0.000>");
+        gc.rawResponseHandler("<Idle|MPos:1.000,2.000,3.000|FS:0,0>");
+        gc.rawResponseHandler("<Run|MPos:1.000,2.000,3.000|FS:0,0>");
+        gc.rawResponseHandler("<Run|MPos:1.500,2.000,3.000|FS:500,0>");
+        gc.rawResponseHandler("<Run|MPos:1.500,2.000,3.000|FS:500,0>");
+
+        // Then
+        ArgumentCaptor<ControllerStatus> statusCaptor = ArgumentCaptor.forClass(ControllerStatus.class);
+        verify(controllerListener, times(3)).statusStringListener(statusCaptor.capture());
+        List<ControllerStatus> statuses = statusCaptor.getAllValues();
+
+        assertEquals(ControllerStatus.ALL, statuses.get(0).getChanges());
+        assertEquals(ControllerStatus.STATE, statuses.get(1).getChanges());
+        assertEquals(ControllerStatus.MACHINE_COORD | ControllerStatus.WORK_COORD | ControllerStatus.FEED_SPEED, statuses.get(2).getChanges());
+
+        assertTrue(statuses.get(0).getVersion() < statuses.get(1).getVersion());
+        assertTrue(statuses.get(1).getVersion() < statuses.get(2).getVersion());
+        assertEquals(statuses.get(2), gc.getControllerStatus());
+    }
 }
@@ -0,0 +1,92 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single pass {@link GrblStatusParser} with the previous
+ * implementation which split the report and used regular expressions for
+ * the positions.
+ *
+ * The reports are a typical sequence while streaming a program where the
+ * work coordinate offset and overrides are only sent now and then. Run it
+ * with the main method from the test classpath.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrblStatusParserBenchmark {
+    private static final String[] REPORTS = {
+            "<Idle|MPos:0.000,0.000,0.000|FS:0,0|WCO:0.000,0.000,0.000>",
+            "<Run|MPos:12.000,-4.250,1.000|Bf:15,128|FS:1200,12000|Ov:100,100,100>",
+            "<Run|MPos:12.125,-4.375,1.000|Bf:14,97|FS:1200,12000>",
+            "<Run|MPos:12.250,-4.500,0.875|Bf:12,54|FS:1200,12000>",
+            "<Run|MPos:12.375,-4.625,0.750|Bf:15,128|FS:1200,12000|Pn:P>",
+            "<Hold:0|MPos:12.500,-4.750,0.625|Bf:15,128|FS:0,12000|Ov:100,100,100|A:SF>",
+            "<Run|MPos:12.625,-4.875,0.500,90.000|Bf:13,73|FS:1200,12000>",
+            "<Idle|MPos:12.750,-5.000,0.500|Bf:15,128|FS:0,0|WCO:-100.000,-50.000,-20.000>"
+    };
+
+    private ControllerStatus lastStatus;
+    private ControllerStatus legacyLastStatus;
+
+    @Benchmark
+    public void parser(Blackhole blackhole) {
+        for (String report : REPORTS) {
+            lastStatus = GrblStatusParser.parse(lastStatus, report, Units.MM);
+            blackhole.consume(lastStatus);
+        }
+    }
+
+    @Benchmark
+    public void legacyParser(Blackhole blackhole) {
+        for (String report : REPORTS) {
+            legacyLastStatus = LegacyGrblStatusParser.parse(legacyLastStatus, report, Units.MM);
+            blackhole.consume(legacyLastStatus);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GrblStatusParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Verifies that {@link GrblStatusParser} gives identical results to the
+ * previous regular expression based parser in {@link LegacyGrblStatusParser}.
+ *
+ * @author wwinder
+ */
+public class GrblStatusParserTest {
+
+    private static final List<String> CORPUS = Arrays.asList(
+            "<Idle|MPos:0.000,0.000,0.000|FS:0,0|WCO:0.000,0.000,0.000>",
+            "<Idle|MPos:0.000,0.000,0.000|FS:0,0|Ov:100,100,100>",
+            "<Idle|MPos:0.000,0.000,0.000|FS:0,0>",
+            "<Run|MPos:12.000,-4.250,1.000|Bf:15,128|FS:1200,12000|Ov:100,100,100>",
+            "<Run|MPos:-10.125,-0.000,-.5|Bf:3,54|FS:1500.5,0|Pn:XZP|A:SFM>",
+            "<Jog|WPos:1.000,2.000,3.000|Bf:15,127|FS:500,0|WCO:-1.500,2.250,-3.125>",
+            "<Jog|WPos:-1.000,-2.000,-3.000|FS:500,0>",
+            "<Hold:0|MPos:5.000,5.000,5.000|FS:0,0|Pn:H>",
+            "<Hold:1|MPos:5.000,5.000,5.000|FS:0,0|Ov:10,25,200|A:C>",
+            "<Door:0|MPos:0.000,0.000,0.000|FS:0,0|Pn:D>",
+            "<Door:3|WPos:0.000,0.000,0.000|F:0>",
+            "<Alarm|MPos:0.000,0.000,0.000|FS:0,0|Pn:XYZ>",
+            "<Check|MPos:0.000,0.000,0.000|FS:0,0>",
+            "<Home|MPos:-1.000,-2.000,0.000|FS:800,0>",
+            "<Sleep|MPos:0.000,0.000,0.000|FS:0,0>",
+            "<Unknown|MPos:0.000,0.000,0.000|FS:0,0>",
+            "<Idle|MPos:0.0000,0.0000,0.0000|F:0.>",
+            "<Idle|WPos:0.0000,0.0000,0.0000|F:1000.0>",
+            "<Run|WPos:10.0000,0.0000,0.0000|F:3000.0,100.0,100.0>",
+            "<Run|WPos:10.0000,0.0000,0.0000|F:3000.0,100.0>",
+            "<Idle|MPos:1.000,2.000,3.000,4.000|FS:0,0>",
+            "<Idle|MPos:1.000,2.000,3.000,4.000,5.000|FS:0,0|WCO:1.000,1.000,1.000,1.000,1.000>",
+            "<Idle|MPos:1.000,2.000,3.000,4.000,5.000,-6.500|FS:0,0|WCO:1.000,1.000,1.000,1.000,1.000,1.000>",
+            "<Idle|WPos:1.000,2.000,3.000,4.000,5.000,6.000|FS:0,0|WCO:1,2,3,4,5,6>",
+            "<Idle|MPos:1.000,2.000,3.000,4.|FS:0,0>",
+            "<Idle|MPos:1,2,3|FS:0,0>",
+            "<Idle|MPos:123456789.123456789,-98765.4321,0.1|FS:0,0>",
+            "<Idle|MPos:1.000,2.000|FS:0,0>",
+            "<Idle|MPos:1.000,2.000,3.000|Ov:100,100|Bf:15>",
+            "<Idle|MPos:1.000,2.000,3.000|Ov:100,100,100,100|Bf:15,128,3>",
+            "<Idle|MPos:1.000,2.000,3.000|Ov: 100,100,100 |Bf: 15,128 >",
+            "<Idle|MPos:1.000,2.000,3.000|Ov:100,100,100,|Bf:15,128,>",
+            "<Idle|MPos:1.000,2.000,3.000|Ov:|Pn:|A:>",
+            "<Idle|MPos:1.000,2.000,3.000|FS:0,0,0>",
+            "<Idle|Pn:PDHRSXYZABC>",
+            "<Idle>",
+            "<Idle:>",
+            "<>"
+    );
+
+    @Test
+    public void parseShouldGiveSameResultAsLegacyParser() {
+        for (String status : CORPUS) {
+            for (Units units : Units.values()) {
+                assertSameAsLegacy(null, status, units);
+            }
+        }
+    }
+
+    @Test
+    public void parseShouldCarryOverValuesFromLastStatusLikeLegacyParser() {
+        for (String previous : CORPUS) {
+            ControllerStatus lastStatus = LegacyGrblStatusParser.parse(null, previous, Units.MM);
+            for (String status : CORPUS) {
+                assertSameAsLegacy(lastStatus, status, Units.MM);
+            }
+        }
+    }
+
+    @Test
+    public void parseShouldGiveSameResultAsLegacyParserForGeneratedReports() {
+        Random random = new Random(42);
+        ControllerStatus lastStatus = null;
+        for (int i = 0; i < 2000; i++) {
+            String status = generateStatus(random);
+            ControllerStatus parsed = assertSameAsLegacy(lastStatus, status, Units.MM);
+            lastStatus = random.nextInt(4) == 0 ? null : parsed;
+        }
+    }
+
+    @Test
+    public void parseShouldHandleStateNamesInAnyCase() {
+        assertEquals(ControllerState.IDLE, GrblStatusParser.parse(null, "<idle|MPos:0,0,0>", Units.MM).getState());
+        assertEquals(ControllerState.ALARM, GrblStatusParser.parse(null, "<ALARM|MPos:0,0,0>", Units.MM).getState());
+        assertEquals(ControllerState.UNKNOWN, GrblStatusParser.parse(null, "<Idler|MPos:0,0,0>", Units.MM).getState());
+    }
+
+    @Test
+    public void parseShouldReturnNullPositionsWhenTheyAreIncomplete() {
+        ControllerStatus status = GrblStatusParser.parse(null, "<Idle|MPos:1.0,2.0|FS:0,0>", Units.MM);
+        assertNull(status.getMachineCoord());
+        assertNull(status.getWorkCoord());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseShouldThrowOnInvalidNumbersLikeLegacyParser() {
+        GrblStatusParser.parse(null, "<Idle|MPos:0,0,0|Ov:100,x,100>", Units.MM);
+    }
+
+    @Test
+    public void parseIntShouldGiveSameResultAsJdk() {
+        for (String number : Arrays.asList("0", "-0", "100", "-100", "+5", "999999999", "2147483647", "-2147483648")) {
+            String padded = "," + number + ",";
+            assertEquals(number, Integer.parseInt(number), GrblStatusParser.parseInt(padded, 1, padded.length() - 1));
+        }
+    }
+
+    private static ControllerStatus assertSameAsLegacy(ControllerStatus lastStatus, String status, Units units) {
+        ControllerStatus expected = LegacyGrblStatusParser.parse(lastStatus, status, units);
+        ControllerStatus actual = GrblStatusParser.parse(lastStatus, status, units);
+        assertThat(actual)
+                .as(status)
+                .isEqualToComparingFieldByFieldRecursively(expected);
+        return actual;
+    }
+
+    private static String generateStatus(Random random) {
+        String[] states = {"Idle", "Run", "Hold:0", "Hold:1", "Jog", "Alarm", "Door:0", "Check", "Home", "Sleep"};
+        StringBuilder status = new StringBuilder("<").append(states[random.nextInt(states.length)]);
+
+        List<String> fields = new ArrayList<>();
+        fields.add((random.nextBoolean() ? "MPos:" : "WPos:") + generatePosition(random));
+        if (random.nextBoolean()) {
+            fields.add("Bf:" + random.nextInt(16) + "," + random.nextInt(128));
+        }
+        if (random.nextBoolean()) {
+            fields.add("FS:" + random.nextInt(5000) + "," + random.nextInt(24000));
+        } else if (random.nextBoolean()) {
+            fields.add("F:" + generateNumber(random));
+        }
+        if (random.nextInt(4) == 0) {
+            fields.add("WCO:" + generatePosition(random));
+        } else if (random.nextInt(3) == 0) {
+            fields.add("Ov:" + (10 + random.nextInt(191)) + "," + (25 + random.nextInt(76)) + "," + (10 + random.nextInt(191)));
+            if (random.nextBoolean()) {
+                fields.add("A:" + "SCFM".substring(random.nextInt(4)));
+            }
+        }
+        if (random.nextInt(5) == 0) {
+            fields.add("Pn:" + "XYZPDHRS".substring(random.nextInt(8)));
+        }
+
+        for (String field : fields) {
+            status.append('|').append(field);
+        }
+        return status.append('>').toString();
+    }
+
+    private static String generatePosition(Random random) {
+        int axes = 3 + random.nextInt(4);
+        StringBuilder position = new StringBuilder();
+        for (int i = 0; i < axes; i++) {
+            if (i > 0) {
+                position.append(',');
+            }
+            position.append(generateNumber(random));
+        }
+        return position.toString();
+    }
+
+    private static String generateNumber(Random random) {
+        double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(6));
+        return String.format(Locale.US, "%." + random.nextInt(5) + "f", value);
+    }
+}
@@ -647,4 +647,28 @@ public class GrblUtilsTest {
         String SixAxis = "[PRB:1.1,2.2,3.3,4.4,5.5,6.6:1]";
         assertEquals(new Position(1.1, 2.2, 3.3, 4.4, 5.5, 6.6, MM), GrblUtils.parseProbePosition(SixAxis, MM));
     }
+
+    @Test
+    public void getStatusFromStatusStringV1ShouldParseBufferState() {
+        String status = "<Idle|MPos:1.1,2.2,3.3|Bf:15,128|FS:0,0>";
+
+        ControllerStatus controllerStatus = GrblUtils.getStatusFromStatusStringV1(null, status, MM);
+
+        assertEquals(15, controllerStatus.getBufferState().plannerBlocksAvailable);
+        assertEquals(128, controllerStatus.getBufferState().rxBytesAvailable);
+
+        controllerStatus = GrblUtils.getStatusFromStatusStringV1(controllerStatus, "<Idle|MPos:1.1,2.2,3.3|FS:0,0>", MM);
+        assertNull("The buffer state should not be kept from the last status", controllerStatus.getBufferState());
+    }
+
+    @Test
+    public void getRxBufferSizeFromBuildOptions() {
+        assertTrue(GrblUtils.isGrblBuildOptionsMessage("[OPT:VL,15,128]"));
+        assertFalse(GrblUtils.isGrblBuildOptionsMessage("[GC:G0 G54 G17 G21 G90 G94 M5 M9 T0 F0 S0]"));
+
+        assertEquals(128, GrblUtils.getRxBufferSizeFromBuildOptions("[OPT:VL,15,128]"));
+        assertEquals(1024, GrblUtils.getRxBufferSizeFromBuildOptions("[OPT:VNMHSL,35,1024,3,0]"));
+        assertEquals(-1, GrblUtils.getRxBufferSizeFromBuildOptions("[OPT:VL]"));
+        assertEquals(-1, GrblUtils.getRxBufferSizeFromBuildOptions("[GC:G0 G54]"));
+    }
 }
@@ -0,0 +1,200 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.AccessoryStates;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.BufferState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.EnabledPins;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.OverridePercents;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The previous implementation of {@link GrblUtils#getStatusFromStatusStringV1}
+ * which splits the report and uses regular expressions for the positions. It
+ * is used as a reference for {@link GrblStatusParser}.
+ *
+ * @author wwinder
+ */
+class LegacyGrblStatusParser {
+    private static final Pattern machinePattern = Pattern.compile("(?<=MPos:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
+    private static final Pattern workPattern = Pattern.compile("(?<=WPos:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
+    private static final Pattern wcoPattern = Pattern.compile("(?<=WCO:)(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*),(-?\\d*\\.?\\d*)(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?(?:,(-?\\d*\\.?\\d+))?");
+
+    static ControllerStatus parse(ControllerStatus lastStatus, String status, Units reportingUnits) {
+        String stateString = "";
+        Position MPos = null;
+        Position WPos = null;
+        Position WCO = null;
+
+        OverridePercents overrides = null;
+        EnabledPins pins = null;
+        AccessoryStates accessoryStates = null;
+        BufferState bufferState = null;
+
+        double feedSpeed = 0;
+        double spindleSpeed = 0;
+        if(lastStatus != null) {
+            feedSpeed = lastStatus.getFeedSpeed();
+            spindleSpeed = lastStatus.getSpindleSpeed();
+        }
+        boolean isOverrideReport = false;
+
+        // Parse out the status messages.
+        for (String part : status.substring(0, status.length()-1).split("\\|")) {
+            if (part.startsWith("<")) {
+                int idx = part.indexOf(':');
+                if (idx == -1)
+                    stateString = part.substring(1);
+                else
+                    stateString = part.substring(1, idx);
+            }
+            else if (part.startsWith("MPos:")) {
+                MPos = getPositionFromStatusString(status, machinePattern, reportingUnits);
+            }
+            else if (part.startsWith("WPos:")) {
+                WPos = getPositionFromStatusString(status, workPattern, reportingUnits);
+            }
+            else if (part.startsWith("WCO:")) {
+                WCO = getPositionFromStatusString(status, wcoPattern, reportingUnits);
+            }
+            else if (part.startsWith("Ov:")) {
+                isOverrideReport = true;
+                String[] overrideParts = part.substring(3).trim().split(",");
+                if (overrideParts.length == 3) {
+                    overrides = new OverridePercents(
+                            Integer.parseInt(overrideParts[0]),
+                            Integer.parseInt(overrideParts[1]),
+                            Integer.parseInt(overrideParts[2]));
+                }
+            }
+            else if (part.startsWith("F:")) {
+                feedSpeed = parseFeedSpeed(part);
+            }
+            else if (part.startsWith("FS:")) {
+                String[] parts = part.substring(3).split(",");
+                feedSpeed = Double.parseDouble(parts[0]);
+                spindleSpeed = Double.parseDouble(parts[1]);
+            }
+            else if (part.startsWith("Pn:")) {
+                String value = part.substring(part.indexOf(':')+1);
+                pins = new EnabledPins(value);
+            }
+            else if (part.startsWith("A:")) {
+                String value = part.substring(part.indexOf(':')+1);
+                accessoryStates = new AccessoryStates(value);
+            }
+            else if (part.startsWith("Bf:")) {
+                String[] bufferParts = part.substring(3).trim().split(",");
+                if (bufferParts.length == 2) {
+                    bufferState = new BufferState(
+                            Integer.parseInt(bufferParts[0]),
+                            Integer.parseInt(bufferParts[1]));
+                }
+            }
+        }
+
+        // Grab WCO from state information if necessary.
+        if (WCO == null) {
+            // Grab the work coordinate offset.
+            if (lastStatus != null && lastStatus.getWorkCoordinateOffset() != null) {
+                WCO = lastStatus.getWorkCoordinateOffset();
+            } else {
+                WCO = new Position(0,0,0,0,0,0, reportingUnits);
+            }
+        }
+
+        // Calculate missing coordinate with WCO
+        if (WPos == null && MPos != null) {
+            WPos = new Position(MPos.x-WCO.x, MPos.y-WCO.y, MPos.z-WCO.z, MPos.a-WCO.a, MPos.b-WCO.b, MPos.c-WCO.c, reportingUnits);
+        } else if (MPos == null && WPos != null) {
+            MPos = new Position(WPos.x+WCO.x, WPos.y+WCO.y, WPos.z+WCO.z, WPos.a+WCO.a, WPos.b+WCO.b, WPos.c+WCO.c, reportingUnits);
+        }
+
+        if (!isOverrideReport && lastStatus != null) {
+            overrides = lastStatus.getOverrides();
+            pins = lastStatus.getEnabledPins();
+            accessoryStates = lastStatus.getAccessoryStates();
+        }
+        else if (isOverrideReport) {
+            // If this is an override report and the 'Pn:' field wasn't sent
+            // set all pins to a disabled state.
+            if (pins == null) {
+                pins = new EnabledPins("");
+            }
+            // Likewise for accessory states.
+            if (accessoryStates == null) {
+                accessoryStates = new AccessoryStates("");
+            }
+        }
+
+        ControllerState state = GrblUtils.getControllerStateFromStateString(stateString);
+        return new ControllerStatus(state, MPos, WPos, feedSpeed, reportingUnits, spindleSpeed, overrides, WCO, pins, accessoryStates, bufferState);
+    }
+
+    static double parseFeedSpeed(String part) {
+        if(!part.startsWith("F:")) {
+            return Double.NaN;
+        }
+
+        double feedSpeed;
+        String[] feedStrings = StringUtils.split(part.substring(2), ",");
+        if (feedStrings.length > 1) {
+            if (feedStrings.length >= 3) {
+                feedSpeed = Double.parseDouble(StringUtils.split(feedStrings[0], ",")[0]);
+            } else {
+                feedSpeed = 0;
+            }
+        } else {
+            feedSpeed = Double.parseDouble(part.substring(2));
+        }
+        return feedSpeed;
+    }
+
+    private static Position getPositionFromStatusString(final String status, final Pattern pattern, Units reportingUnits) {
+        Matcher matcher = pattern.matcher(status);
+        if (matcher.find()) {
+            Position result = new Position(Double.parseDouble(matcher.group(1)),
+                    Double.parseDouble(matcher.group(2)),
+                    Double.parseDouble(matcher.group(3)),
+                    reportingUnits);
+
+            // Add in optional axes.
+            if (matcher.group(6) != null) {
+                result.c = Double.parseDouble(matcher.group(6));
+            }
+            if (matcher.group(5) != null) {
+                result.b = Double.parseDouble(matcher.group(5));
+            }
+            if (matcher.group(4) != null) {
+                result.a = Double.parseDouble(matcher.group(4));
+            }
+
+            return result;
+        }
+        
+        return null;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.connection.AbstractConnection;
+import com.willwinder.universalgcodesender.connection.LineBatch;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A simulated g2core endpoint for testing the flow control. It has a bounded
+ * receive buffer where bytes that don't fit are dropped and a planner queue
+ * where one buffer is executed every tick. Lines are read from the receive
+ * buffer when there is a free planner buffer, each is acknowledged with a
+ * response footer and followed by a filtered queue report:
+ * <pre>
+ * {"r":{},"f":[1,0,12]}
+ * {"qr":27,"qi":1,"qo":0}
+ * </pre>
+ * The responses are delivered a number of ticks later to simulate the
+ * latency of the connection. The simulation is driven by calling
+ * {@link #tick()} from the test thread.
+ *
+ * @author wwinder
+ */
+public class SimulatedG2CoreConnection extends AbstractConnection {
+    private static class Response {
+        final long tick;
+        final String response;
+
+        Response(long tick, String response) {
+            this.tick = tick;
+            this.response = response;
+        }
+    }
+
+    private final int rxBufferSize;
+    private final int plannerBuffers;
+    private final int responseDelayTicks;
+    private final StringBuilder rxBuffer = new StringBuilder();
+    private final Deque<Response> responses = new ArrayDeque<>();
+
+    private boolean open;
+    private long tick;
+    private int plannerBuffersUsed;
+    private int queueIn;
+    private int queueOut;
+    private long rxOverflowCount;
+    private long linesProcessed;
+    private int maxLinesWaiting;
+
+    /**
+     * @param rxBufferSize       the size of the receive buffer in bytes
+     * @param plannerBuffers     the number of buffers in the planner queue
+     * @param responseDelayTicks the number of ticks until a response reaches the host
+     */
+    public SimulatedG2CoreConnection(int rxBufferSize, int plannerBuffers, int responseDelayTicks) {
+        this.rxBufferSize = rxBufferSize;
+        this.plannerBuffers = plannerBuffers;
+        this.responseDelayTicks = responseDelayTicks;
+    }
+
+    /**
+     * Executes a planner buffer, reads the lines there is room for in the
+     * planner and delivers the responses which are due.
+     */
+    public void tick() {
+        tick++;
+        if (plannerBuffersUsed > 0) {
+            plannerBuffersUsed--;
+            queueOut++;
+        }
+
+        int lineEnd;
+        while (plannerBuffersUsed < plannerBuffers && (lineEnd = rxBuffer.indexOf("\n")) >= 0) {
+            rxBuffer.delete(0, lineEnd + 1);
+            plannerBuffersUsed++;
+            queueIn++;
+            linesProcessed++;
+            respond("{\"r\":{},\"f\":[1,0," + (lineEnd + 1) + "]}");
+        }
+
+        if (queueIn > 0 || queueOut > 0) {
+            respond("{\"qr\":" + (plannerBuffers - plannerBuffersUsed) + ",\"qi\":" + queueIn + ",\"qo\":" + queueOut + "}");
+            queueIn = 0;
+            queueOut = 0;
+        }
+
+        while (!responses.isEmpty() && responses.peek().tick <= tick) {
+            responseMessageHandler.handleResponse(responses.poll().response + "\n");
+        }
+    }
+
+    private void respond(String response) {
+        responses.add(new Response(tick + responseDelayTicks, response));
+    }
+
+    private void receive(byte b) {
+        if (rxBuffer.length() == rxBufferSize) {
+            rxOverflowCount++;
+            return;
+        }
+
+        rxBuffer.append((char) b);
+        if (b == '\n') {
+            int linesWaiting = 0;
+            for (int i = 0; i < rxBuffer.length(); i++) {
+                if (rxBuffer.charAt(i) == '\n') {
+                    linesWaiting++;
+                }
+            }
+            maxLinesWaiting = Math.max(maxLinesWaiting, linesWaiting);
+        }
+    }
+
+    public int getPlannerBuffersUsed() {
+        return plannerBuffersUsed;
+    }
+
+    public long getRxOverflowCount() {
+        return rxOverflowCount;
+    }
+
+    public long getLinesProcessed() {
+        return linesProcessed;
+    }
+
+    /**
+     * @return the largest number of lines which has been waiting in the receive buffer
+     */
+    public int getMaxLinesWaiting() {
+        return maxLinesWaiting;
+    }
+
+    @Override
+    public void setUri(String uri) {
+        // Not used
+    }
+
+    @Override
+    public boolean openPort() {
+        open = true;
+        return true;
+    }
+
+    @Override
+    public void closePort() {
+        open = false;
+    }
+
+    @Override
+    public void sendByteImmediately(byte b) {
+        // Real time commands are not simulated
+    }
+
+    @Override
+    public void sendStringToComm(String command) {
+        for (char c : command.toCharArray()) {
+            receive((byte) c);
+        }
+    }
+
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            receive(bytes[i]);
+        }
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) {
+        sendBytesToComm(batch.getBuffer(), 0, batch.getLength());
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public List<String> getPortNames() {
+        return Collections.emptyList();
+    }
+}
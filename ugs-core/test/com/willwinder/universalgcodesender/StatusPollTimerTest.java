@@ -0,0 +1,173 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author wwinder
+ */
+public class StatusPollTimerTest {
+    private static final int STATUS_UPDATE_RATE = 10;
+
+    private IController controller;
+    private StatusPollTimer timer;
+    private AtomicInteger requests;
+
+    @Before
+    public void setUp() throws Exception {
+        requests = new AtomicInteger();
+        controller = mock(IController.class);
+        when(controller.getStatusUpdatesEnabled()).thenReturn(true);
+        when(controller.getStatusUpdateRate()).thenReturn(STATUS_UPDATE_RATE);
+        when(controller.isStreaming()).thenReturn(false);
+        setState(ControllerState.RUN);
+        doAnswer(invocation -> requests.incrementAndGet()).when(controller).requestStatusReport();
+
+        timer = new StatusPollTimer(controller);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    private void setState(ControllerState state) {
+        Position position = new Position(0, 0, 0, UnitUtils.Units.MM);
+        when(controller.getControllerStatus()).thenReturn(new ControllerStatus(state, position, position));
+    }
+
+    @Test
+    public void intervalShouldDependOnTheMachineState() {
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(STATUS_UPDATE_RATE), timer.getInterval());
+
+        setState(ControllerState.IDLE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(STATUS_UPDATE_RATE * StatusPollTimer.IDLE_INTERVAL_FACTOR), timer.getInterval());
+
+        setState(ControllerState.ALARM);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(STATUS_UPDATE_RATE * StatusPollTimer.IDLE_INTERVAL_FACTOR), timer.getInterval());
+
+        // Streaming always polls at the full rate
+        when(controller.isStreaming()).thenReturn(true);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(STATUS_UPDATE_RATE), timer.getInterval());
+    }
+
+    @Test
+    public void idleIntervalShouldBeLimited() {
+        when(controller.getStatusUpdateRate()).thenReturn(500);
+        setState(ControllerState.IDLE);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(StatusPollTimer.MAX_IDLE_INTERVAL_MS), timer.getInterval());
+
+        when(controller.getStatusUpdateRate()).thenReturn(2000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(2000), timer.getInterval());
+    }
+
+    @Test
+    public void newStatusShouldNotBeRequestedUntilTheLastIsReceived() throws Exception {
+        timer.start();
+        waitForRequests(1);
+
+        Thread.sleep(STATUS_UPDATE_RATE * 5);
+        assertEquals(1, requests.get());
+
+        timer.receivedStatus();
+        waitForRequests(2);
+        assertTrue(timer.isRunning());
+    }
+
+    @Test
+    public void lostStatusShouldBeRequestedAgainAndBackOff() throws Exception {
+        timer.start();
+        waitForRequests(2);
+
+        assertTrue(timer.getMetrics().getBackoff() > 1);
+    }
+
+    @Test
+    public void lateReportsShouldBackOffAndRecover() throws Exception {
+        timer.start();
+        waitForRequests(1);
+        Thread.sleep(STATUS_UPDATE_RATE * 3);
+        timer.receivedStatus();
+        assertEquals(2, timer.getMetrics().getBackoff());
+
+        // Reports arriving quickly restores the interval
+        waitForRequests(2);
+        timer.receivedStatus();
+        assertEquals(1, timer.getMetrics().getBackoff());
+    }
+
+    @Test
+    public void metricsShouldContainRateAndLatency() throws Exception {
+        timer.start();
+        for (int i = 1; i <= 10; i++) {
+            waitForRequests(i);
+            timer.receivedStatus();
+        }
+
+        StatusPollTimer.Metrics metrics = timer.getMetrics();
+        assertEquals(10, metrics.getReportLatency().getCount());
+        assertEquals(STATUS_UPDATE_RATE, metrics.getPollInterval());
+        assertTrue("Poll rate " + metrics.getPollRate(), metrics.getPollRate() > 0 && metrics.getPollRate() <= 1000.0 / STATUS_UPDATE_RATE * 1.5);
+    }
+
+    @Test
+    public void stopShouldEndThePolling() throws Exception {
+        timer.start();
+        waitForRequests(1);
+        timer.stop();
+        assertFalse(timer.isRunning());
+
+        int count = requests.get();
+        timer.receivedStatus();
+        Thread.sleep(STATUS_UPDATE_RATE * 5);
+        assertEquals(count, requests.get());
+    }
+
+    @Test
+    public void timerShouldNotStartWhenStatusUpdatesAreDisabled() {
+        when(controller.getStatusUpdatesEnabled()).thenReturn(false);
+        timer.start();
+        assertFalse(timer.isRunning());
+    }
+
+    private void waitForRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (requests.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("Expected " + count + " requests but got " + requests.get(), requests.get() >= count);
+    }
+}
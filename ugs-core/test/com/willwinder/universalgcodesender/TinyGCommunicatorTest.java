@@ -0,0 +1,119 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
+import com.willwinder.universalgcodesender.communicator.QueueReportFlowControl;
+import com.willwinder.universalgcodesender.communicator.StreamEventLoop;
+import com.willwinder.universalgcodesender.connection.ConnectionDriver;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streams to a simulated g2core endpoint with the different flow control modes.
+ *
+ * @author wwinder
+ */
+public class TinyGCommunicatorTest {
+    private static final int RX_BUFFER_SIZE = QueueReportFlowControl.DEFAULT_LINE_SLOTS * 255;
+    private static final int PLANNER_BUFFERS = 28;
+    private static final int RESPONSE_DELAY_TICKS = 2;
+    private static final int MAX_TICKS = 10000;
+
+    private TinyGCommunicator communicator;
+    private SimulatedG2CoreConnection connection;
+
+    @After
+    public void tearDown() throws Exception {
+        if (communicator != null) {
+            communicator.disconnect();
+        }
+    }
+
+    private void connect(FlowControlMode flowControlMode) throws Exception {
+        connection = new SimulatedG2CoreConnection(RX_BUFFER_SIZE, PLANNER_BUFFERS, RESPONSE_DELAY_TICKS);
+        communicator = new TinyGCommunicator() {{
+            this.connection = TinyGCommunicatorTest.this.connection;
+        }};
+        communicator.setEventLoop(new StreamEventLoop(Runnable::run));
+        communicator.setFlowControlMode(flowControlMode);
+        communicator.connect(ConnectionDriver.JSERIALCOMM, "g2core", 115200);
+    }
+
+    /**
+     * Streams the lines and returns the number of ticks where the planner was
+     * empty while there still were lines to send.
+     */
+    private int stream(int lines, int lineLength) {
+        for (int i = 0; i < lines; i++) {
+            String command = "G1X" + (i % 10) + "F500";
+            communicator.queueCommand(new GcodeCommand(command + ";" + StringUtils.repeat("x", lineLength - command.length() - 2)));
+        }
+        communicator.streamCommands();
+
+        int starvedTicks = 0;
+        for (int tick = 0; tick < MAX_TICKS && (communicator.areActiveCommands() || communicator.numBufferedCommands() > 0); tick++) {
+            connection.tick();
+            if (connection.getPlannerBuffersUsed() == 0 && communicator.numBufferedCommands() > 0) {
+                starvedTicks++;
+            }
+        }
+
+        assertFalse(communicator.areActiveCommands());
+        assertEquals(0, communicator.numBufferedCommands());
+        assertEquals(lines, connection.getLinesProcessed());
+        assertEquals(0, connection.getRxOverflowCount());
+        return starvedTicks;
+    }
+
+    @Test
+    public void queueReportFlowControlShouldKeepTheReceiveBufferShort() throws Exception {
+        connect(FlowControlMode.QUEUE_REPORT);
+
+        assertEquals(0, stream(300, 20));
+        assertTrue("Lines waiting: " + connection.getMaxLinesWaiting(), connection.getMaxLinesWaiting() <= QueueReportFlowControl.DEFAULT_LINE_SLOTS);
+    }
+
+    @Test
+    public void characterCountingShouldFillTheReceiveBuffer() throws Exception {
+        connect(FlowControlMode.CHARACTER_COUNTING);
+
+        assertEquals(0, stream(300, 20));
+        assertTrue("Lines waiting: " + connection.getMaxLinesWaiting(), connection.getMaxLinesWaiting() > QueueReportFlowControl.DEFAULT_LINE_SLOTS);
+    }
+
+    @Test
+    public void queueReportFlowControlShouldNotStarveThePlannerWithLongLines() throws Exception {
+        connect(FlowControlMode.QUEUE_REPORT);
+        assertEquals(0, stream(300, 120));
+    }
+
+    @Test
+    public void characterCountingShouldStarveThePlannerWithLongLines() throws Exception {
+        // Only two lines fits in the 254 character buffer which can't keep up with the round trip time
+        connect(FlowControlMode.CHARACTER_COUNTING);
+        assertTrue(stream(300, 120) > 0);
+    }
+}
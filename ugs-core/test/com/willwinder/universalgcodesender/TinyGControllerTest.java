@@ -18,6 +18,7 @@
  */
 package com.willwinder.universalgcodesender;
 
+import com.willwinder.universalgcodesender.communicator.FlowControlMode;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
@@ -267,4 +268,23 @@ public class TinyGControllerTest {
         assertTrue(command.isGenerated());
         assertTrue(command.isTemporaryParserModalChange());
     }
+
+    @Test
+    public void setFlowControlModeShouldSendTheQueueReportVerbosity() {
+        // Given
+        when(communicator.isConnected()).thenReturn(true);
+        when(communicator.getFlowControlMode()).thenReturn(FlowControlMode.CHARACTER_COUNTING, FlowControlMode.QUEUE_REPORT);
+
+        // When
+        InOrder orderVerifier = inOrder(communicator);
+        controller.setFlowControlMode(FlowControlMode.QUEUE_REPORT);
+
+        // Then
+        orderVerifier.verify(communicator).setFlowControlMode(FlowControlMode.QUEUE_REPORT);
+        orderVerifier.verify(communicator, times(1)).queueCommand(any(GcodeCommand.class));
+        orderVerifier.verify(communicator).streamCommands();
+
+        GcodeCommand command = queueCommandArgumentCaptor.getAllValues().get(0);
+        assertEquals("{qv:1}", command.getCommandString());
+    }
 }
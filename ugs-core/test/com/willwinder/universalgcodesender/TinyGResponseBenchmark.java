@@ -0,0 +1,110 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.google.gson.JsonObject;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link TinyGResponse} with the previous implementation
+ * which parsed every response to a JSON tree, replaying a recorded g2core session
+ * with status reports, acknowledgements and queue reports. Both update the
+ * controller status and modal state from the status reports like the controller.
+ * Run it with the main method from the test classpath.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TinyGResponseBenchmark {
+    private String[] responses;
+    private ControllerStatus controllerStatus;
+    private ControllerStatus legacyControllerStatus;
+
+    @Setup
+    public void setup() throws IOException {
+        responses = TinyGResponseTest.loadRecordedSession().toArray(new String[0]);
+        controllerStatus = new ControllerStatus(ControllerState.UNKNOWN, new Position(0, 0, 0, UnitUtils.Units.MM), new Position(0, 0, 0, UnitUtils.Units.MM));
+        legacyControllerStatus = controllerStatus;
+    }
+
+    @Benchmark
+    public void streamingParser(Blackhole blackhole) {
+        for (String line : responses) {
+            TinyGResponse response = TinyGResponse.parse(line);
+            TinyGStatusReport statusReport = response.isStatusReport() ? response.getStatusReport() : response.getResponseStatusReport();
+            if (statusReport != null) {
+                blackhole.consume(TinyGUtils.convertStatusReportToGcode(statusReport));
+                controllerStatus = TinyGUtils.updateControllerStatus(controllerStatus, statusReport);
+            }
+            blackhole.consume(response.getQueueReport());
+        }
+        blackhole.consume(controllerStatus);
+    }
+
+    @Benchmark
+    public void legacyParser(Blackhole blackhole) {
+        for (String line : responses) {
+            JsonObject response = LegacyTinyGResponseParser.parse(line);
+            JsonObject statusReport = null;
+            if (LegacyTinyGResponseParser.isStatusResponse(response)) {
+                statusReport = response;
+            } else if (response.has("r") && response.get("r").isJsonObject() && response.getAsJsonObject("r").has("sr")) {
+                statusReport = response.getAsJsonObject("r");
+            }
+
+            if (statusReport != null) {
+                blackhole.consume(LegacyTinyGResponseParser.convertStatusReportToGcode(statusReport));
+                legacyControllerStatus = LegacyTinyGResponseParser.updateControllerStatus(legacyControllerStatus, statusReport);
+            }
+            blackhole.consume(response.has("qr") ? response.get("qr").getAsInt() : -1);
+        }
+        blackhole.consume(legacyControllerStatus);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TinyGResponseBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
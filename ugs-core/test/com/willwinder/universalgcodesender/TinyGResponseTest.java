@@ -0,0 +1,219 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the TinyGResponse class
+ *
+ * @author wwinder
+ */
+public class TinyGResponseTest {
+    static final String RECORDED_SESSION = "tinyg/g2core-session.txt";
+
+    static List<String> loadRecordedSession() throws IOException {
+        try (InputStream inputStream = TinyGResponseTest.class.getClassLoader().getResourceAsStream(RECORDED_SESSION)) {
+            return IOUtils.readLines(inputStream, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void parseStatusReport() {
+        TinyGResponse response = TinyGResponse.parse("{\"sr\":{\"posx\":1.500,\"posy\":-2.250,\"stat\":5,\"vel\":512.31}}");
+
+        assertTrue(response.isStatusReport());
+        assertFalse(response.hasResponse());
+        TinyGStatusReport statusReport = response.getStatusReport();
+        assertEquals(1.5, statusReport.getDouble(TinyGStatusReport.FIELD_POSX), 0);
+        assertEquals(-2.25, statusReport.getDouble(TinyGStatusReport.FIELD_POSY), 0);
+        assertEquals(5, statusReport.getInt(TinyGStatusReport.FIELD_STATUS));
+        assertEquals(512.31, statusReport.getDouble(TinyGStatusReport.FIELD_VELOCITY), 0);
+        assertFalse(statusReport.has(TinyGStatusReport.FIELD_POSZ));
+    }
+
+    @Test
+    public void parseStatusReportShouldIgnoreNonNumericFields() {
+        TinyGStatusReport statusReport = TinyGResponse.parse("{\"sr\":{\"posx\":true,\"posy\":null,\"posz\":\"1e3\",\"stat\":{},\"vel\":\"-1.0\"}}").getStatusReport();
+
+        assertFalse(statusReport.has(TinyGStatusReport.FIELD_POSX));
+        assertFalse(statusReport.has(TinyGStatusReport.FIELD_POSY));
+        assertFalse(statusReport.has(TinyGStatusReport.FIELD_POSZ));
+        assertFalse(statusReport.has(TinyGStatusReport.FIELD_STATUS));
+        assertEquals(-1, statusReport.getDouble(TinyGStatusReport.FIELD_VELOCITY), 0);
+    }
+
+    @Test
+    public void parseStatusReportWithUnquotedFields() {
+        TinyGStatusReport statusReport = TinyGResponse.parse("{sr:{coor:2}}").getStatusReport();
+        assertEquals(2, statusReport.getInt(TinyGStatusReport.FIELD_COORD));
+    }
+
+    @Test
+    public void parseResponseWithFooter() {
+        TinyGResponse response = TinyGResponse.parse("{\"r\":{\"gc\":\"G0X1000\"},\"f\":[1,130,10]}");
+
+        assertTrue(response.hasResponse());
+        assertFalse(response.isStatusReport());
+        assertNull(response.getResponseStatusReport());
+        assertArrayEquals(new int[]{1, 130, 10}, response.getFooter());
+    }
+
+    @Test
+    public void parseResponseWithStatusReport() {
+        TinyGResponse response = TinyGResponse.parse("{\"r\":{\"sr\":{\"posx\":20.000,\"stat\":3}},\"f\":[1,0,10]}");
+
+        assertFalse(response.isStatusReport());
+        assertEquals(20, response.getResponseStatusReport().getDouble(TinyGStatusReport.FIELD_POSX), 0);
+        assertEquals(3, response.getResponseStatusReport().getInt(TinyGStatusReport.FIELD_STATUS));
+    }
+
+    @Test
+    public void parseMessages() {
+        assertTrue(TinyGResponse.parse("{\"r\":{\"fv\":100.26,\"msg\":\"SYSTEM READY\"},\"f\":[1,0,0]}").isReadyResponse());
+        assertTrue(TinyGResponse.parse("{\"r\":{\"msg\":\"Loading configs from EEPROM\"},\"f\":[1,0,0]}").isRestartingResponse());
+        assertTrue(TinyGResponse.parse("{\"ack\":true}").hasAck());
+    }
+
+    @Test
+    public void parseQueueReports() {
+        TinyGResponse response = TinyGResponse.parse("{\"qr\":28,\"qi\":1,\"qo\":0}");
+        assertEquals(28, response.getQueueReport());
+        assertEquals(1, response.getQueueIn());
+        assertEquals(0, response.getQueueOut());
+        assertEquals(TinyGResponse.NOT_REPORTED, response.getReceiveQueue());
+
+        assertEquals(254, TinyGResponse.parse("{\"rx\":254}").getReceiveQueue());
+    }
+
+    @Test
+    public void unknownFieldsShouldBeAvailableFromTheJsonObject() {
+        TinyGResponse response = TinyGResponse.parse("{\"r\":{\"fv\":100.26,\"msg\":\"SYSTEM READY\"},\"f\":[1,0,0]}");
+        assertEquals(100.26, response.getJsonObject().getAsJsonObject("r").get("fv").getAsDouble(), 0);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void parseShouldThrowOnNonJsonResponses() {
+        TinyGResponse.parse("tinyg [mm] ok>");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void parseShouldThrowOnTrailingContent() {
+        TinyGResponse.parse("{\"r\":{}} ok");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void parseShouldThrowOnEmptyResponses() {
+        TinyGResponse.parse("");
+    }
+
+    @Test
+    public void updateControllerStatusShouldNotModifyThePreviousStatus() {
+        ControllerStatus lastControllerStatus = new ControllerStatus(ControllerState.IDLE, new Position(0, 0, 0, UnitUtils.Units.MM), new Position(0, 0, 0, UnitUtils.Units.MM));
+
+        ControllerStatus controllerStatus = TinyGUtils.updateControllerStatus(lastControllerStatus, TinyGResponse.parse("{\"sr\":{\"posx\":1.000}}").getStatusReport());
+
+        assertNotSame(lastControllerStatus.getWorkCoord(), controllerStatus.getWorkCoord());
+        assertEquals(0, lastControllerStatus.getWorkCoord().getX(), 0);
+        assertEquals(1, controllerStatus.getWorkCoord().getX(), 0);
+        assertTrue(controllerStatus.getChangesSince(lastControllerStatus) != 0);
+    }
+
+    @Test
+    public void recordedSessionShouldGiveTheSameResultAsTheJsonTree() throws IOException {
+        ControllerStatus controllerStatus = new ControllerStatus(ControllerState.UNKNOWN, new Position(0, 0, 0, UnitUtils.Units.MM), new Position(0, 0, 0, UnitUtils.Units.MM));
+        ControllerStatus legacyControllerStatus = new ControllerStatus(ControllerState.UNKNOWN, new Position(0, 0, 0, UnitUtils.Units.MM), new Position(0, 0, 0, UnitUtils.Units.MM));
+
+        for (String line : loadRecordedSession()) {
+            TinyGResponse response = TinyGResponse.parse(line);
+            JsonObject jsonObject = LegacyTinyGResponseParser.parse(line);
+
+            assertEquals(line, LegacyTinyGResponseParser.isStatusResponse(jsonObject), response.isStatusReport());
+            assertEquals(line, jsonObject.has("ack"), response.hasAck());
+            assertEquals(line, getInt(jsonObject, "qr"), response.getQueueReport());
+            assertEquals(line, getInt(jsonObject, "qi"), response.getQueueIn());
+            assertEquals(line, getInt(jsonObject, "qo"), response.getQueueOut());
+            assertEquals(line, getInt(jsonObject, "rx"), response.getReceiveQueue());
+            assertEquals(line, TinyGUtils.isReadyResponse(jsonObject), response.isReadyResponse());
+            assertEquals(line, TinyGUtils.isRestartingResponse(jsonObject), response.isRestartingResponse());
+            assertArrayEquals(line, getFooter(jsonObject), response.getFooter());
+
+            JsonObject statusReportObject = null;
+            TinyGStatusReport statusReport = null;
+            if (response.isStatusReport()) {
+                statusReportObject = jsonObject;
+                statusReport = response.getStatusReport();
+            } else if (jsonObject.has("r") && jsonObject.getAsJsonObject("r").has("sr")) {
+                statusReportObject = jsonObject.getAsJsonObject("r");
+                statusReport = response.getResponseStatusReport();
+            } else {
+                assertNull(line, response.getResponseStatusReport());
+            }
+
+            if (statusReportObject != null) {
+                assertEquals(line, LegacyTinyGResponseParser.convertStatusReportToGcode(statusReportObject), TinyGUtils.convertStatusReportToGcode(statusReport));
+
+                controllerStatus = TinyGUtils.updateControllerStatus(controllerStatus, statusReport);
+                legacyControllerStatus = LegacyTinyGResponseParser.updateControllerStatus(legacyControllerStatus, statusReportObject);
+                assertThat(controllerStatus).isEqualToComparingFieldByFieldRecursively(legacyControllerStatus);
+            }
+        }
+
+        assertEquals(0, controllerStatus.getWorkCoord().getX(), 0);
+        assertEquals(ControllerState.IDLE, controllerStatus.getState());
+    }
+
+    private static int getInt(JsonObject jsonObject, String field) {
+        return jsonObject.has(field) ? jsonObject.get(field).getAsInt() : TinyGResponse.NOT_REPORTED;
+    }
+
+    private static int[] getFooter(JsonObject jsonObject) {
+        if (!jsonObject.has("f")) {
+            return new int[0];
+        }
+
+        int[] footer = new int[jsonObject.getAsJsonArray("f").size()];
+        int i = 0;
+        for (JsonElement element : jsonObject.getAsJsonArray("f")) {
+            footer[i++] = element.getAsInt();
+        }
+        return footer;
+    }
+}
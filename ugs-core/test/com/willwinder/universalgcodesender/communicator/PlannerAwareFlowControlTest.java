@@ -0,0 +1,90 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.BufferState;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class PlannerAwareFlowControlTest {
+    private static final int BUFFER_SIZE = 123;
+
+    @Test
+    public void unknownBufferStateShouldOnlyCountCharacters() {
+        PlannerAwareFlowControl flowControl = new PlannerAwareFlowControl(2);
+
+        assertTrue(flowControl.canSend(100, 100, 23, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(100, 100, 24, BUFFER_SIZE));
+    }
+
+    @Test
+    public void commandsInFlightShouldBeBoundedByAvailablePlannerBlocks() {
+        PlannerAwareFlowControl flowControl = new PlannerAwareFlowControl(2);
+        flowControl.updateBufferState(new BufferState(3, 128));
+
+        assertTrue(flowControl.canSend(4, 40, 10, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(5, 50, 10, BUFFER_SIZE));
+
+        // A full planner should still allow a few commands in flight
+        flowControl.updateBufferState(new BufferState(0, 128));
+        assertTrue(flowControl.canSend(1, 10, 10, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(2, 20, 10, BUFFER_SIZE));
+    }
+
+    @Test
+    public void characterCountingShouldStillApply() {
+        PlannerAwareFlowControl flowControl = new PlannerAwareFlowControl(2);
+        flowControl.updateBufferState(new BufferState(15, 128));
+
+        assertFalse(flowControl.canSend(1, 120, 10, BUFFER_SIZE));
+    }
+
+    @Test
+    public void completedCommandsShouldUsePlannerBlocks() {
+        PlannerAwareFlowControl flowControl = new PlannerAwareFlowControl(2);
+        flowControl.updateBufferState(new BufferState(2, 128));
+
+        flowControl.commandCompleted();
+        assertEquals(1, flowControl.getPlannerBlocksAvailable());
+        flowControl.commandCompleted();
+        flowControl.commandCompleted();
+        assertEquals(0, flowControl.getPlannerBlocksAvailable());
+
+        // The next status report tells how many blocks has been freed
+        flowControl.updateBufferState(new BufferState(10, 128));
+        assertEquals(10, flowControl.getPlannerBlocksAvailable());
+    }
+
+    @Test
+    public void resetShouldForgetTheBufferState() {
+        PlannerAwareFlowControl flowControl = new PlannerAwareFlowControl(2);
+        flowControl.updateBufferState(new BufferState(0, 128));
+
+        flowControl.reset();
+
+        assertEquals(-1, flowControl.getPlannerBlocksAvailable());
+        assertTrue(flowControl.canSend(10, 100, 10, BUFFER_SIZE));
+    }
+}
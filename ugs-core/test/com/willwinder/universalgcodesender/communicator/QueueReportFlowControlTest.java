@@ -0,0 +1,97 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.BufferState;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class QueueReportFlowControlTest {
+    private static final int BUFFER_SIZE = 254;
+
+    @Test
+    public void unknownQueueReportShouldUseAllLineSlots() {
+        QueueReportFlowControl flowControl = new QueueReportFlowControl(4);
+
+        assertTrue(flowControl.canSend(3, 600, 200, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(4, 40, 10, BUFFER_SIZE));
+    }
+
+    @Test
+    public void linesShouldNotBeLimitedByTheCharactersInFlight() {
+        QueueReportFlowControl flowControl = new QueueReportFlowControl(4);
+        flowControl.updateBufferState(new BufferState(20, -1));
+
+        assertTrue(flowControl.canSend(3, 3 * BUFFER_SIZE, BUFFER_SIZE, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(0, 0, BUFFER_SIZE + 1, BUFFER_SIZE));
+    }
+
+    @Test
+    public void linesInFlightShouldBeBoundedByTheFreePlannerBuffers() {
+        QueueReportFlowControl flowControl = new QueueReportFlowControl(4);
+
+        flowControl.updateBufferState(new BufferState(2, -1));
+        assertEquals(2, flowControl.getLinesInFlight());
+        assertTrue(flowControl.canSend(1, 10, 10, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(2, 20, 10, BUFFER_SIZE));
+
+        // A full planner should still allow a line in flight
+        flowControl.updateBufferState(new BufferState(0, -1));
+        assertEquals(1, flowControl.getLinesInFlight());
+        assertTrue(flowControl.canSend(0, 0, 10, BUFFER_SIZE));
+        assertFalse(flowControl.canSend(1, 10, 10, BUFFER_SIZE));
+    }
+
+    @Test
+    public void completedLinesShouldUsePlannerBuffers() {
+        QueueReportFlowControl flowControl = new QueueReportFlowControl(4);
+        flowControl.updateBufferState(new BufferState(5, -1));
+
+        flowControl.commandCompleted();
+        flowControl.commandCompleted();
+        assertEquals(3, flowControl.getPlannerBuffersAvailable());
+        assertEquals(3, flowControl.getLinesInFlight());
+
+        // The next queue report tells how many buffers has been freed
+        flowControl.updateBufferState(new BufferState(28, -1));
+        assertEquals(4, flowControl.getLinesInFlight());
+    }
+
+    @Test
+    public void resetShouldForgetTheQueueReport() {
+        QueueReportFlowControl flowControl = new QueueReportFlowControl(4);
+        flowControl.updateBufferState(new BufferState(0, -1));
+
+        flowControl.reset();
+
+        assertEquals(-1, flowControl.getPlannerBuffersAvailable());
+        assertEquals(4, flowControl.getLinesInFlight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void atLeastOneLineSlotIsNeeded() {
+        new QueueReportFlowControl(0);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author wwinder
+ */
+public class StreamEventLoopTest {
+
+    @Test
+    public void messagesShouldBeHandledInOrderByOneThread() throws Exception {
+        StreamEventLoop loop = new StreamEventLoop("StreamEventLoopTest");
+        int producers = 4;
+        int messages = 10000;
+        int[] lastMessage = new int[producers];
+        int[] outOfOrder = new int[1];
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i <= messages; i++) {
+                        int message = i;
+                        loop.execute(() -> {
+                            // Plain fields, only written by the loop
+                            threads.add(Thread.currentThread());
+                            if (lastMessage[producer] != message - 1) {
+                                outOfOrder[0]++;
+                            }
+                            lastMessage[producer] = message;
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Waits for all messages posted before it
+        int[] result = loop.invoke(() -> lastMessage.clone());
+        for (int p = 0; p < producers; p++) {
+            assertEquals(messages, result[p]);
+        }
+        assertEquals(0, outOfOrder[0]);
+        assertEquals(1, threads.size());
+        assertEquals("StreamEventLoopTest", threads.iterator().next().getName());
+    }
+
+    @Test
+    public void invokeShouldReturnTheResultOfTheMessage() {
+        StreamEventLoop loop = new StreamEventLoop("StreamEventLoopTest");
+        Thread caller = Thread.currentThread();
+
+        Thread loopThread = loop.invoke(Thread::currentThread);
+
+        assertFalse(caller == loopThread);
+        assertFalse(loop.isInEventLoop());
+        assertTrue(loop.invoke(loop::isInEventLoop));
+    }
+
+    @Test
+    public void invokeFromTheLoopShouldRunTheMessageDirectly() {
+        StreamEventLoop loop = new StreamEventLoop("StreamEventLoopTest");
+        List<String> handled = new ArrayList<>();
+
+        loop.invoke(() -> {
+            handled.add("outer");
+            loop.invoke(() -> handled.add("inner"));
+            handled.add("after inner");
+        });
+
+        assertEquals("[outer, inner, after inner]", handled.toString());
+    }
+
+    @Test
+    public void callShouldRethrowTheExceptionOfTheMessage() throws Exception {
+        StreamEventLoop loop = new StreamEventLoop("StreamEventLoopTest");
+
+        try {
+            loop.call(() -> {
+                throw new IOException("Failed");
+            });
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+
+        // The loop should still handle messages
+        assertEquals("ok", loop.invoke(() -> "ok"));
+    }
+
+    @Test
+    public void signalShouldBeHandledOnceForPostsMadeBeforeItIsHandled() throws Exception {
+        StreamEventLoop loop = new StreamEventLoop("StreamEventLoopTest");
+        int[] handled = new int[1];
+        StreamEventLoop.Signal signal = loop.createSignal(() -> handled[0]++);
+        CountDownLatch release = new CountDownLatch(1);
+
+        // Keep the loop busy while posting
+        loop.execute(() -> {
+            try {
+                release.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        signal.post();
+        signal.post();
+        signal.post();
+        release.countDown();
+
+        assertEquals(1, (int) loop.invoke(() -> handled[0]));
+
+        signal.post();
+        assertEquals(2, (int) loop.invoke(() -> handled[0]));
+    }
+
+    @Test
+    public void directExecutorShouldHandleMessagesOnThePostingThread() {
+        StreamEventLoop loop = new StreamEventLoop(Runnable::run);
+        List<Thread> threads = new ArrayList<>();
+        StreamEventLoop.Signal signal = loop.createSignal(() -> threads.add(Thread.currentThread()));
+
+        loop.execute(() -> threads.add(Thread.currentThread()));
+        signal.post();
+
+        assertEquals(2, threads.size());
+        assertTrue(threads.stream().allMatch(thread -> thread == Thread.currentThread()));
+        assertFalse(loop.isInEventLoop());
+    }
+}
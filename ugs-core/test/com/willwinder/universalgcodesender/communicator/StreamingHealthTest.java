@@ -0,0 +1,96 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.communicator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class StreamingHealthTest {
+
+    @Test
+    public void timeShouldBeAccumulatedPerState() {
+        StreamingHealth health = new StreamingHealth();
+        health.update(StreamingHealth.State.STARVED, 100);
+        health.update(StreamingHealth.State.WINDOW_FULL, 150);
+        health.update(StreamingHealth.State.STARVED, 400);
+        health.update(StreamingHealth.State.DRAINING, 420);
+        health.update(StreamingHealth.State.IDLE, 500);
+
+        StreamingHealth.Report report = health.getReport(1000);
+        assertEquals(70, report.getStarvedTime());
+        assertEquals(250, report.getWindowFullTime());
+        assertEquals(80, report.getDrainingTime());
+        assertEquals(400, report.getTotalTime());
+        assertEquals(2, report.getStarvationCount());
+        assertEquals(1, report.getWindowFullCount());
+        assertEquals(70 / 400.0, report.getStarvedRatio(), 0.0001);
+    }
+
+    @Test
+    public void idleAndPausedTimeShouldNotBeCounted() {
+        StreamingHealth health = new StreamingHealth();
+        health.update(StreamingHealth.State.WINDOW_FULL, 0);
+        health.update(StreamingHealth.State.PAUSED, 100);
+        health.update(StreamingHealth.State.WINDOW_FULL, 1000);
+
+        StreamingHealth.Report report = health.getReport(1100);
+        assertEquals(200, report.getWindowFullTime());
+        assertEquals(200, report.getTotalTime());
+    }
+
+    @Test
+    public void repeatedUpdatesShouldNotRestartTheState() {
+        StreamingHealth health = new StreamingHealth();
+        health.update(StreamingHealth.State.STARVED, 0);
+        health.update(StreamingHealth.State.STARVED, 50);
+
+        StreamingHealth.Report report = health.getReport(100);
+        assertEquals(100, report.getStarvedTime());
+        assertEquals(1, report.getStarvationCount());
+    }
+
+    @Test
+    public void resetShouldClearTheTimes() {
+        StreamingHealth health = new StreamingHealth();
+        health.update(StreamingHealth.State.STARVED, 0);
+        health.addReaderWait(10);
+        health.reset();
+
+        StreamingHealth.Report report = health.getReport(100);
+        assertEquals(0, report.getTotalTime());
+        assertEquals(0, report.getReaderWaitTime());
+        assertEquals(0, report.getStarvationCount());
+        assertEquals(StreamingHealth.State.IDLE, health.getState());
+    }
+
+    @Test
+    public void reportShouldDescribeTheTimes() {
+        StreamingHealth health = new StreamingHealth();
+        health.update(StreamingHealth.State.STARVED, 0);
+        health.update(StreamingHealth.State.WINDOW_FULL, 500_000_000L);
+
+        String report = health.getReport(2_000_000_000L).toString();
+        assertTrue(report, report.startsWith("starved 0.500s (25.0%, 1 times), buffer full 1.500s (75.0%)"));
+    }
+}
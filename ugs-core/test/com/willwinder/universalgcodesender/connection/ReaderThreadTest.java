@@ -0,0 +1,178 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class ReaderThreadTest {
+    private static final int READ_TIMEOUT_MS = 10;
+
+    private VirtualPort port;
+    private ResponseMessageHandler responseMessageHandler;
+    private ReaderThread readerThread;
+
+    @Before
+    public void setUp() {
+        port = new VirtualPort();
+        responseMessageHandler = new ResponseMessageHandler();
+        readerThread = new ReaderThread("TestReader", port, responseMessageHandler, 64);
+    }
+
+    @After
+    public void tearDown() {
+        readerThread.stop(1000);
+    }
+
+    @Test
+    public void bytesWrittenToPortShouldBeDispatchedAsLines() throws Exception {
+        List<String> responses = new CopyOnWriteArrayList<>();
+        responseMessageHandler.addListener(responses::add);
+        readerThread.start();
+
+        port.write("ok\r\n<Idle|MPos:0.000,0");
+        port.write(".000,0.000>\r\nok\n");
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (responses.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Arrays.asList("ok", "<Idle|MPos:0.000,0.000,0.000>", "ok"), responses);
+    }
+
+    @Test
+    public void stopShouldEndTheThreadAfterReadTimeout() {
+        readerThread.start();
+        assertTrue(readerThread.isAlive());
+
+        readerThread.stop(READ_TIMEOUT_MS * 10);
+        assertFalse(readerThread.isAlive());
+    }
+
+    @Test
+    public void closedSourceShouldEndTheThread() throws Exception {
+        readerThread.start();
+        port.close();
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (readerThread.isAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertFalse(readerThread.isAlive());
+    }
+
+    /**
+     * Measures the time from writing a response to the port until it is
+     * dispatched to the listener, one response at a time like the "ok"
+     * responses when streaming.
+     */
+    @Test
+    public void responsesShouldBeDispatchedWithLowLatency() throws Exception {
+        SynchronousQueue<Long> dispatched = new SynchronousQueue<>();
+        responseMessageHandler.addListener(response -> {
+            try {
+                dispatched.put(System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        readerThread.start();
+
+        int count = 1000;
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            port.write("ok\r\n");
+            Long end = dispatched.poll(1, TimeUnit.SECONDS);
+            assertTrue("Response " + i + " was never dispatched", end != null);
+            latencies[i] = end - start;
+        }
+
+        Arrays.sort(latencies);
+        long median = TimeUnit.NANOSECONDS.toMicros(latencies[count / 2]);
+        long p99 = TimeUnit.NANOSECONDS.toMicros(latencies[count * 99 / 100]);
+
+        // The responses should be handled when they arrive and not when the read times out
+        assertTrue("The median latency was " + median + "us and the 99th percentile " + p99 + "us",
+                median < TimeUnit.MILLISECONDS.toMicros(READ_TIMEOUT_MS));
+    }
+
+    /**
+     * A virtual serial port with semi-blocking reads: a read returns as soon
+     * as there is data or when the read timeout has passed.
+     */
+    private static class VirtualPort implements ReaderThread.ByteSource {
+        private static final byte[] CLOSED = new byte[0];
+        private final BlockingQueue<byte[]> data = new LinkedBlockingQueue<>();
+        private byte[] pending;
+        private int pendingOffset;
+
+        void write(String response) {
+            data.add(response.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void close() {
+            data.add(CLOSED);
+        }
+
+        @Override
+        public int read(byte[] buffer, int length) {
+            if (pending == null) {
+                try {
+                    pending = data.poll(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    return -1;
+                }
+                pendingOffset = 0;
+                if (pending == null) {
+                    return 0;
+                }
+            }
+
+            if (pending == CLOSED) {
+                return -1;
+            }
+
+            int bytesRead = Math.min(length, pending.length - pendingOffset);
+            System.arraycopy(pending, pendingOffset, buffer, 0, bytesRead);
+            pendingOffset += bytesRead;
+            if (pendingOffset == pending.length) {
+                pending = null;
+            }
+            return bytesRead;
+        }
+    }
+}
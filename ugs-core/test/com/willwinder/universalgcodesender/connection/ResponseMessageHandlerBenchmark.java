@@ -0,0 +1,149 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the byte level framing in {@link ResponseMessageHandler} with the
+ * previous implementation which buffered the responses in a StringBuilder and
+ * split it using a regular expression.
+ *
+ * The responses are a mix of acks and status reports which are fed to the
+ * handler in chunks of the given size, like they would be read from a serial
+ * port. Run it with the main method from the test classpath.
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseMessageHandlerBenchmark {
+    private static final String RESPONSES =
+            "ok\r\n" +
+            "ok\r\n" +
+            "<Run|MPos:12.000,-4.250,1.000|Bf:15,128|FS:1200,12000|Ov:100,100,100>\r\n" +
+            "ok\r\n" +
+            "[MSG:Pgm End]\r\n" +
+            "ok\r\n" +
+            "<Idle|MPos:0.000,0.000,0.000|FS:0,0|WCO:0.000,0.000,0.000>\r\n";
+
+    @Param({"8", "64", "1024"})
+    public int chunkSize;
+
+    private List<byte[]> byteChunks;
+    private List<String> stringChunks;
+    private ResponseMessageHandler handler;
+    private LegacyResponseMessageHandler legacyHandler;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        StringBuilder responses = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            responses.append(RESPONSES);
+        }
+
+        byte[] bytes = responses.toString().getBytes(StandardCharsets.UTF_8);
+        byteChunks = new ArrayList<>();
+        stringChunks = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - i);
+            byte[] chunk = new byte[length];
+            System.arraycopy(bytes, i, chunk, 0, length);
+            byteChunks.add(chunk);
+            stringChunks.add(new String(chunk, StandardCharsets.UTF_8));
+        }
+
+        handler = new ResponseMessageHandler();
+        handler.addListener(blackhole::consume);
+        legacyHandler = new LegacyResponseMessageHandler(blackhole);
+    }
+
+    @Benchmark
+    public void byteFraming() {
+        for (byte[] chunk : byteChunks) {
+            handler.handleResponse(chunk, 0, chunk.length);
+        }
+    }
+
+    @Benchmark
+    public void legacyStringFraming() {
+        for (String chunk : stringChunks) {
+            legacyHandler.handleResponse(chunk);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ResponseMessageHandlerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * The previous implementation of {@link ResponseMessageHandler#handleResponse(String)}
+     */
+    private static class LegacyResponseMessageHandler {
+        private final StringBuilder inputBuffer = new StringBuilder();
+        private final Blackhole blackhole;
+
+        LegacyResponseMessageHandler(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        void handleResponse(String response) {
+            inputBuffer.append(response);
+
+            if (!inputBuffer.toString().contains("\n")) {
+                return;
+            }
+
+            String[] messages = inputBuffer.toString().split("\\r?\\n", -1);
+            for (int i = 0; i < messages.length; i++) {
+                if ((i + 1) < messages.length) {
+                    blackhole.consume(messages[i]);
+                } else {
+                    inputBuffer.setLength(0);
+                    inputBuffer.append(messages[i]);
+                }
+            }
+        }
+    }
+}
@@ -22,6 +22,10 @@ import com.willwinder.universalgcodesender.AbstractCommunicator;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -120,4 +124,77 @@ public class ResponseMessageHandlerTest {
         verify(communicator, times(1)).handleResponseMessage(" test2 ");
         verify(communicator, times(1)).handleResponseMessage("test3");
     }
+
+    @Test
+    public void byteResponsesShouldDispatchMessages() throws Exception {
+        // Given
+        AbstractCommunicator communicator = mock(AbstractCommunicator.class);
+        responseMessageHandler.addListener(communicator);
+        byte[] bytes = "xxok\r\n<Idle|MPos:0.000,0.000,0.000>\r\nerr".getBytes(StandardCharsets.UTF_8);
+
+        // When
+        responseMessageHandler.handleResponse(bytes, 2, bytes.length - 2);
+        responseMessageHandler.handleResponse("or:1\r\n".getBytes(StandardCharsets.UTF_8), 0, 6);
+
+        // Then
+        verify(communicator, times(1)).handleResponseMessage("ok");
+        verify(communicator, times(1)).handleResponseMessage("<Idle|MPos:0.000,0.000,0.000>");
+        verify(communicator, times(1)).handleResponseMessage("error:1");
+    }
+
+    @Test
+    public void multiByteCharactersSplitBetweenResponsesShouldBeDecoded() throws Exception {
+        // Given
+        AbstractCommunicator communicator = mock(AbstractCommunicator.class);
+        responseMessageHandler.addListener(communicator);
+        byte[] bytes = "[MSG:30°]\n".getBytes(StandardCharsets.UTF_8);
+        int split = "[MSG:30".length() + 1;
+
+        // When
+        responseMessageHandler.handleResponse(bytes, 0, split);
+        responseMessageHandler.handleResponse(bytes, split, bytes.length - split);
+
+        // Then
+        verify(communicator, times(1)).handleResponseMessage("[MSG:30°]");
+    }
+
+    @Test
+    public void byteBufferResponsesShouldDispatchMessages() throws Exception {
+        // Given
+        AbstractCommunicator communicator = mock(AbstractCommunicator.class);
+        responseMessageHandler.addListener(communicator);
+        ByteBuffer directBuffer = ByteBuffer.allocateDirect(64);
+        directBuffer.put("test1\r\ntes".getBytes(StandardCharsets.UTF_8)).flip();
+        ByteBuffer heapBuffer = ByteBuffer.wrap("t2\n".getBytes(StandardCharsets.UTF_8));
+
+        // When
+        responseMessageHandler.handleResponse(directBuffer);
+        responseMessageHandler.handleResponse(heapBuffer);
+
+        // Then
+        verify(communicator, times(1)).handleResponseMessage("test1");
+        verify(communicator, times(1)).handleResponseMessage("test2");
+        assertFalse(directBuffer.hasRemaining());
+        assertFalse(heapBuffer.hasRemaining());
+    }
+
+    @Test
+    public void longResponsesShouldBeBuffered() throws Exception {
+        // Given
+        AbstractCommunicator communicator = mock(AbstractCommunicator.class);
+        responseMessageHandler.addListener(communicator);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            message.append(i % 10);
+        }
+
+        // When
+        for (int i = 0; i < message.length(); i += 7) {
+            responseMessageHandler.handleResponse(message.substring(i, Math.min(i + 7, message.length())));
+        }
+        responseMessageHandler.handleResponse("\n");
+
+        // Then
+        verify(communicator, times(1)).handleResponseMessage(message.toString());
+    }
 }
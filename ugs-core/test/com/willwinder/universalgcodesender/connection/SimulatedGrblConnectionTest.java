@@ -0,0 +1,118 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import com.willwinder.universalgcodesender.GrblCommunicator;
+import com.willwinder.universalgcodesender.communicator.StreamingHealth;
+import com.willwinder.universalgcodesender.connection.simulator.GrblSimulator;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class SimulatedGrblConnectionTest {
+    private static final double TIME_SCALE = 50;
+
+    private SimulatedGrblConnection connection;
+    private BlockingQueue<String> responses;
+
+    @Before
+    public void setUp() {
+        connection = new SimulatedGrblConnection(GrblSimulator.DEFAULT_RX_BUFFER_SIZE, GrblSimulator.DEFAULT_PLANNER_BLOCKS, TIME_SCALE);
+        connection.setUri("grblsim://grbl:115200");
+        responses = new LinkedBlockingQueue<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.closePort();
+    }
+
+    @Test
+    public void connectionShouldBeCreatedByTheFactory() {
+        assertTrue(ConnectionFactory.getConnection("grblsim://grbl:115200") instanceof SimulatedGrblConnection);
+    }
+
+    @Test
+    public void openPortShouldSendTheWelcomeMessage() throws Exception {
+        connection.addListener(responses::add);
+        assertTrue(connection.openPort());
+
+        String response;
+        do {
+            response = responses.poll(1, TimeUnit.SECONDS);
+        } while (response != null && !response.equals(GrblSimulator.WELCOME_MESSAGE));
+        assertEquals(GrblSimulator.WELCOME_MESSAGE, response);
+
+        connection.sendByteImmediately((byte) '?');
+        assertTrue(responses.poll(1, TimeUnit.SECONDS).startsWith("<Idle|MPos:0.000,0.000,0.000|Bf:15,128|"));
+    }
+
+    @Test
+    public void sendingWithoutFlowControlShouldOverflowTheReceiveBuffer() throws Exception {
+        connection.openPort();
+        for (int i = 0; i < 100; i++) {
+            connection.sendStringToComm("G1 X" + i + " F100\n");
+        }
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (connection.getRxOverflowCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(connection.getRxOverflowCount() > 0);
+    }
+
+    @Test
+    public void streamingWithCharacterCountingShouldNotOverflowTheReceiveBuffer() throws Exception {
+        GrblCommunicator communicator = new GrblCommunicator() {{
+            this.connection = SimulatedGrblConnectionTest.this.connection;
+        }};
+        communicator.connect(ConnectionDriver.GRBL_SIMULATOR, "grbl", 115200);
+
+        for (int i = 0; i < 300; i++) {
+            communicator.queueCommand(new GcodeCommand("G1 X" + (i % 10) / 10.0 + " Y" + (i % 7) / 10.0 + " F500"));
+        }
+        communicator.streamCommands();
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((communicator.areActiveCommands() || communicator.numBufferedCommands() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(communicator.areActiveCommands());
+        assertEquals(0, communicator.numBufferedCommands());
+        assertEquals(0, connection.getRxOverflowCount());
+
+        // The commands don't fit in the controller buffer, and queued commands are always ready to be sent
+        StreamingHealth.Report report = communicator.getStreamingHealth().getReport();
+        assertTrue(report.toString(), report.getWindowFullCount() > 0);
+        assertEquals(report.toString(), 0, report.getStarvationCount());
+        communicator.disconnect();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the TCP connection against an echo server on the loopback interface.
+ *
+ * @author wwinder
+ */
+public class TCPConnectionTest {
+    private EchoServer echoServer;
+    private TCPConnection connection;
+    private BlockingQueue<String> responses;
+
+    @Before
+    public void setUp() throws Exception {
+        echoServer = new EchoServer();
+        responses = new LinkedBlockingQueue<>();
+
+        connection = new TCPConnection();
+        connection.setUri("tcp://localhost:" + echoServer.getPort());
+        connection.addListener(responses::add);
+        assertTrue(connection.openPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.closePort();
+        echoServer.close();
+    }
+
+    @Test
+    public void sentCommandsShouldBeReceivedAsResponses() throws Exception {
+        connection.sendStringToComm("G0 X1\n");
+        byte[] bytes = "xG0 X2\n".getBytes(StandardCharsets.UTF_8);
+        connection.sendBytesToComm(bytes, 1, bytes.length - 1);
+
+        assertEquals("G0 X1", responses.poll(1, TimeUnit.SECONDS));
+        assertEquals("G0 X2", responses.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchShouldBeSentInOrder() throws Exception {
+        LineBatch batch = new LineBatch(16);
+        for (int i = 0; i < 1000; i++) {
+            batch.add(("G1X" + i + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        connection.sendBatchToComm(batch);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("G1X" + i, responses.poll(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void realTimeBytesShouldBeSentImmediately() throws Exception {
+        connection.sendByteImmediately((byte) '?');
+        connection.sendByteImmediately((byte) '\n');
+
+        assertEquals("?", responses.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void singleLinesShouldNotBeDelayed() throws Exception {
+        // Without TCP_NODELAY small writes may be held back waiting for an ack
+        List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            long start = System.nanoTime();
+            connection.sendStringToComm("ok\n");
+            assertEquals("ok", responses.poll(1, TimeUnit.SECONDS));
+            latencies.add(System.nanoTime() - start);
+        }
+
+        latencies.sort(Long::compare);
+        long median = TimeUnit.NANOSECONDS.toMillis(latencies.get(latencies.size() / 2));
+        assertTrue("The median round trip was " + median + "ms", median < 20);
+    }
+
+    @Test
+    public void connectionShouldBeClosedWhenRemoteHostDisconnects() throws Exception {
+        BlockingQueue<String> lostReasons = new LinkedBlockingQueue<>();
+        connection.addListener(new IConnectionListener() {
+            @Override
+            public void handleResponseMessage(String response) {
+            }
+
+            @Override
+            public void handleConnectionLost(String reason) {
+                lostReasons.add(reason);
+            }
+        });
+        connection.sendStringToComm("G0\n");
+        assertEquals("G0", responses.poll(1, TimeUnit.SECONDS));
+
+        echoServer.close();
+
+        assertEquals("The connection was closed by the remote host", lostReasons.poll(1, TimeUnit.SECONDS));
+        assertFalse(connection.isOpen());
+    }
+
+    @Test
+    public void writeShouldTimeOutWhenTheRemoteHostStopsReading() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            TCPConnection stalled = new TCPConnection(100);
+            stalled.setUri("tcp://localhost:" + server.getLocalPort());
+            assertTrue(stalled.openPort());
+
+            // Accepted but never read, until the socket buffers are full
+            try (Socket ignored = server.accept()) {
+                byte[] bytes = new byte[1024 * 1024];
+                for (int i = 0; i < 1000; i++) {
+                    stalled.sendBytesToComm(bytes, 0, bytes.length);
+                }
+                fail("Writing to a remote host which doesn't read should time out");
+            } catch (IOException e) {
+                assertFalse(stalled.isOpen());
+            } finally {
+                stalled.closePort();
+            }
+        }
+    }
+
+    /**
+     * A server which accepts one client and echoes everything it receives
+     */
+    private static class EchoServer {
+        private final ServerSocket serverSocket;
+        private final Thread thread;
+        private volatile Socket client;
+
+        EchoServer() throws IOException {
+            serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+            thread = new Thread(this::echo, "EchoServer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void echo() {
+            try {
+                client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                InputStream in = client.getInputStream();
+                OutputStream out = client.getOutputStream();
+                byte[] buffer = new byte[1024];
+                int bytesRead;
+                while ((bytesRead = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, bytesRead);
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // The server was closed
+            }
+        }
+
+        void close() throws Exception {
+            if (client != null) {
+                client.close();
+            }
+            serverSocket.close();
+            thread.join(1000);
+        }
+    }
+}
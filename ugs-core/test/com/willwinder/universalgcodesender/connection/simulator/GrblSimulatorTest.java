@@ -0,0 +1,238 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.connection.simulator;
+
+import com.willwinder.universalgcodesender.GrblUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class GrblSimulatorTest {
+    private List<String> output;
+    private GrblSimulator simulator;
+
+    @Before
+    public void setUp() {
+        output = new ArrayList<>();
+        simulator = new GrblSimulator(128, 4, output::add);
+        output.clear();
+    }
+
+    private void send(String command) {
+        for (byte b : command.getBytes(StandardCharsets.US_ASCII)) {
+            simulator.receive(b);
+        }
+    }
+
+    private void advance(double seconds) {
+        // Advances in small steps like the connection does
+        for (int i = 0; i < Math.round(seconds * 1000); i++) {
+            simulator.advance(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private String status() {
+        output.clear();
+        simulator.receive(GrblUtils.GRBL_STATUS_COMMAND);
+        return output.get(0);
+    }
+
+    private long countOk() {
+        return output.stream().filter("ok"::equals).count();
+    }
+
+    @Test
+    public void resetShouldPrintTheWelcomeMessage() {
+        simulator.receive(GrblUtils.GRBL_RESET_COMMAND);
+        assertTrue(output.contains(GrblSimulator.WELCOME_MESSAGE));
+    }
+
+    @Test
+    public void buildInfoShouldContainTheBufferSizes() {
+        send("$I\n");
+        simulator.advance(0);
+
+        assertEquals("[OPT:V,4,128]", output.get(1));
+        assertEquals("ok", output.get(2));
+    }
+
+    @Test
+    public void commandsShouldBeAcknowledgedWhenPlanned() {
+        send("G21 G90\nG1 X1 F600\nG1 X2\n");
+        simulator.advance(0);
+
+        assertEquals(3, countOk());
+        assertTrue(status().startsWith("<Run|"));
+    }
+
+    @Test
+    public void acknowledgeShouldWaitForRoomInThePlanner() {
+        for (int i = 1; i <= 6; i++) {
+            send("G1 X" + i + " F600\n");
+        }
+        simulator.advance(0);
+
+        // Four blocks fits in the planner and the fifth line waits for room
+        assertEquals(4, countOk());
+        assertTrue(status().contains("|Bf:0,"));
+
+        // The remaining lines are acknowledged as the blocks are completed
+        advance(2);
+        assertEquals(2, countOk());
+    }
+
+    @Test
+    public void bytesShouldBeDroppedWhenReceiveBufferIsFull() {
+        StringBuilder line = new StringBuilder("G1 F100");
+        while (line.length() < 70) {
+            line.append(" X1");
+        }
+        line.append('\n');
+
+        // Fills the planner so that no more lines are read
+        send("G1 X10 F100\nG1 X20\nG1 X30\nG1 X40\n");
+        simulator.advance(0);
+        send(line.toString());
+        send(line.toString());
+
+        assertEquals(2 * line.length() - 128, simulator.getRxOverflowCount());
+        assertEquals(0, simulator.getRxBytesAvailable());
+    }
+
+    @Test
+    public void statusShouldContainBufferAndFeedFields() {
+        send("G1 X10 F300\n");
+        advance(1);
+
+        String status = status();
+        assertTrue(status, status.matches("<Run\\|MPos:[0-9.]+,0\\.000,0\\.000\\|Bf:3,128\\|FS:300,0.*>"));
+    }
+
+    @Test
+    public void overridesShouldBeReportedWhenChanged() {
+        simulator.receive((byte) 0x91);
+        simulator.receive((byte) 0x97);
+        simulator.receive((byte) 0x9B);
+
+        // Like in GRBL the overrides are deferred when the work coordinate offset is reported
+        assertTrue(status().contains("|WCO:"));
+        assertTrue(status().contains("|Ov:110,25,90"));
+    }
+
+    @Test
+    public void motionShouldFollowTrapezoidalProfile() {
+        // 5mm/s with an acceleration of 10mm/s^2 gives 0.5s of acceleration
+        // and deceleration and 1.5s at full speed
+        send("G1 X10 F300\n");
+        advance(0.25);
+        assertEquals(0.3125, simulator.getMachinePosition().x, 0.01);
+        assertEquals(150, simulator.getFeedRate(), 1);
+
+        advance(2.2);
+        assertFalse(simulator.isIdle());
+
+        advance(0.1);
+        assertTrue(simulator.isIdle());
+        assertEquals(10, simulator.getMachinePosition().x, 0.0001);
+        assertTrue(status().startsWith("<Idle|MPos:10.000,"));
+    }
+
+    @Test
+    public void feedHoldShouldDecelerateAndResume() {
+        send("G1 X10 F300\n");
+        advance(1);
+
+        simulator.receive(GrblUtils.GRBL_PAUSE_COMMAND);
+        advance(0.1);
+        assertTrue(status().startsWith("<Hold:1|"));
+
+        advance(1);
+        assertTrue(status().startsWith("<Hold:0|"));
+        double x = simulator.getMachinePosition().x;
+        advance(1);
+        assertEquals(x, simulator.getMachinePosition().x, 0.0001);
+
+        simulator.receive(GrblUtils.GRBL_RESUME_COMMAND);
+        advance(5);
+        assertTrue(simulator.isIdle());
+        assertEquals(10, simulator.getMachinePosition().x, 0.0001);
+    }
+
+    @Test
+    public void resetWhileMovingShouldAlarm() {
+        send("G1 X10 F300\n");
+        advance(1);
+        simulator.receive(GrblUtils.GRBL_RESET_COMMAND);
+
+        assertTrue(output.contains("ALARM:3"));
+        assertTrue(status().startsWith("<Alarm|"));
+
+        output.clear();
+        send("G1 X1\n");
+        simulator.advance(0);
+        assertEquals("error:9", output.get(0));
+
+        send("$X\n");
+        simulator.advance(0);
+        assertTrue(status().startsWith("<Idle|"));
+    }
+
+    @Test
+    public void jogCancelShouldStopTheJog() {
+        send("$J=G91 X100 F600\n");
+        advance(0.5);
+        assertTrue(status().startsWith("<Jog|"));
+
+        simulator.receive(GrblUtils.GRBL_JOG_CANCEL_COMMAND);
+        advance(2);
+        assertTrue(simulator.isIdle());
+        assertTrue(simulator.getMachinePosition().x < 100);
+    }
+
+    @Test
+    public void invalidCommandsShouldRespondWithErrors() {
+        send("G1 X10\n$999=1\n$J=X10\n");
+        simulator.advance(0);
+
+        assertEquals("error:22", output.get(0));
+        assertEquals("error:3", output.get(1));
+        assertEquals("error:22", output.get(2));
+    }
+
+    @Test
+    public void arcsShouldBeSplitIntoSegments() {
+        send("G2 X10 Y0 I5 J0 F600\n");
+        advance(10);
+
+        assertTrue(simulator.isIdle());
+        assertEquals(10, simulator.getMachinePosition().x, 0.0001);
+        assertEquals(0, simulator.getMachinePosition().y, 0.0001);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode;
+
+import com.willwinder.universalgcodesender.gcode.processors.RunFromProcessor;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import com.willwinder.universalgcodesender.visualizer.GcodeViewParse;
+import com.willwinder.universalgcodesender.visualizer.LineSegment;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class GcodeProgramTest {
+    private static final String RUN_FROM_FIXTURES = "/gcode/fixtures/run-from/";
+
+    private Path tempDir;
+
+    @Before
+    public void setup() throws IOException {
+        tempDir = Files.createTempDirectory("gcodeprogram");
+    }
+
+    @After
+    public void teardown() throws IOException {
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void buildShouldStoreEntriesAsPrimitives() throws Exception {
+        GcodeProgram program = new GcodeProgram.Builder()
+                .startCommand().addCommand("G21 G90", 1)
+                .startCommand().addCommand("G0 X10 Y20", 2)
+                .startCommand().addCommand("G1 Z-1 F100", 3)
+                .startCommand().addCommand("G2 X20 Y10 I10 J0", 4)
+                .startCommand().addCommand("G20", 5)
+                .addCommand("G1 X1", 5)
+                .build();
+
+        assertEquals(6, program.size());
+        assertEquals(6, program.getCommandCount());
+        assertEquals(5, program.getSourceCommandCount());
+        assertEquals(4, program.getFirstEntry(4));
+        assertEquals(6, program.getFirstEntry(5));
+
+        assertFalse(program.isMotion(0));
+        assertNull(program.getCode(0));
+
+        assertEquals(2, program.getLineNumber(1));
+        assertEquals(Code.G0, program.getCode(1));
+        assertTrue(program.isFastTraverse(1));
+        assertEquals(new Position(10, 20, 0, Units.MM), program.getEnd(1));
+
+        assertTrue(program.isZMovement(2));
+        assertEquals(100, program.getState(2).speed, 0);
+
+        assertTrue(program.isArc(3));
+        assertTrue(program.isClockwise(3));
+        assertEquals(Plane.XY, program.getPlane(3));
+        assertEquals(new Position(20, 20, -1, Units.MM), program.getArcCenter(3));
+        assertEquals(10, program.getArcRadius(3), 0.0001);
+        assertNull(program.getArcCenter(2));
+
+        assertEquals(Units.INCH, program.getUnits(5));
+        assertEquals(1, program.getEnd(5).x, 0);
+        assertEquals(25.4, program.getEnd(5, Units.MM).x, 0.0001);
+
+        GcodeState state = program.getState(5);
+        assertEquals(Code.G20, state.units);
+        assertEquals(Code.G1, state.currentMotionMode);
+        assertEquals(5, state.commandNumber);
+        assertEquals(Units.INCH, state.currentPoint.getUnits());
+
+        assertEquals(0, program.getMin().x, 0);
+        assertEquals(-1, program.getMin().z, 0);
+        assertEquals(25.4, program.getMax().x, 0.0001);
+        assertEquals(20, program.getMax().y, 0);
+    }
+
+    @Test
+    public void programShouldMatchVisualizerParser() throws Exception {
+        for (String fixture : new String[]{"simple.g1", "simple.g2"}) {
+            File processed = tempDir.resolve(fixture + ".stream").toFile();
+            GcodeProgram program = export(new GcodeParser(), getFixture(fixture), processed);
+
+            List<LineSegment> expected;
+            try (IGcodeStreamReader reader = new GcodeStreamReader(processed)) {
+                expected = new ArrayList<>(new GcodeViewParse().toObjFromReader(reader, 0.3));
+            }
+            GcodeViewParse programParser = new GcodeViewParse();
+            List<LineSegment> actual = programParser.toObjFromProgram(program, 0.3);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                LineSegment e = expected.get(i);
+                LineSegment a = actual.get(i);
+                assertEquals(e.getLineNumber(), a.getLineNumber());
+                assertEquals(e.getStart().x, a.getStart().x, 0.000001);
+                assertEquals(e.getStart().y, a.getStart().y, 0.000001);
+                assertEquals(e.getStart().z, a.getStart().z, 0.000001);
+                assertEquals(e.getEnd().x, a.getEnd().x, 0.000001);
+                assertEquals(e.getEnd().y, a.getEnd().y, 0.000001);
+                assertEquals(e.getEnd().z, a.getEnd().z, 0.000001);
+                assertEquals(e.isArc(), a.isArc());
+                assertEquals(e.isFastTraverse(), a.isFastTraverse());
+                assertEquals(e.isZMovement(), a.isZMovement());
+            }
+        }
+    }
+
+    @Test
+    public void runFromWithProgramShouldMatchReplay() throws Exception {
+        for (String fixture : new String[]{"simple.g1", "simple.g2"}) {
+            File input = getFixture(fixture);
+            GcodeProgram program = export(new GcodeParser(), input, tempDir.resolve(fixture + ".full").toFile());
+
+            GcodeParser replay = new GcodeParser();
+            replay.addCommandProcessor(new RunFromProcessor(17));
+            File replayed = tempDir.resolve(fixture + ".replay").toFile();
+            export(replay, input, replayed);
+
+            GcodeParser lookup = new GcodeParser();
+            RunFromProcessor runFromProcessor = new RunFromProcessor(17);
+            runFromProcessor.setProgram(program);
+            lookup.addCommandProcessor(runFromProcessor);
+            File lookedUp = tempDir.resolve(fixture + ".lookup").toFile();
+            export(lookup, input, lookedUp);
+
+            assertEquals(readCommands(replayed), readCommands(lookedUp));
+        }
+    }
+
+    private static GcodeProgram export(GcodeParser gcp, File input, File output) throws Exception {
+        GcodeProgram.Builder builder = new GcodeProgram.Builder();
+        try (IGcodeWriter gcw = new GcodeStreamWriter(output)) {
+            GcodeParserUtils.processAndExport(gcp, input, gcw, builder);
+        }
+        return builder.build();
+    }
+
+    private static List<String> readCommands(File file) throws Exception {
+        List<String> commands = new ArrayList<>();
+        try (IGcodeStreamReader reader = new GcodeStreamReader(file)) {
+            while (reader.getNumRowsRemaining() > 0) {
+                commands.add(reader.getNextCommand().getCommandString());
+            }
+        }
+        return commands;
+    }
+
+    private static File getFixture(String name) throws Exception {
+        return Paths.get(GcodeProgramTest.class.getResource(RUN_FROM_FIXTURES + name + ".input.nc").toURI()).toFile();
+    }
+}
@@ -122,12 +122,9 @@ public class FixturesTest {
             GcodeParserUtils.processAndExport(gcp, tempFile, gcw);
         }
 
-        // read the output back in and compare it to the fixture
-        //GcodeStreamReader reader = new GcodeStreamReader(output.toFile());
-        URI outputTest = output.toUri();
-
-        // compare the generated raw stream output
-        Iterator<String> testLines = Files.lines(Paths.get(outputTest)).iterator();
+        // read the output back in and compare it to the fixture, the stream
+        // is compared in the text representation of the gcode stream
+        Iterator<String> testLines = readStreamAsText(output.toFile()).iterator();
 
         // check the generated stream
         checkOrInitializeFixture(fixtureName + "-stream", streamOutputFixture, testLines);
@@ -146,6 +143,19 @@ public class FixturesTest {
 
     }
 
+    private List<String> readStreamAsText(File file) throws Exception {
+        List<String> lines = new ArrayList<>();
+        try (IGcodeStreamReader reader = new GcodeStreamReader(file)) {
+            lines.add("gsw_meta:" + reader.getNumRows());
+
+            GcodeCommand c;
+            while ((c = reader.getNextCommand()) != null) {
+                lines.add(c.getOriginalCommandString() + "++" + c.getCommandString() + "++" + c.getCommandNumber() + "++" + c.getComment());
+            }
+        }
+        return lines;
+    }
+
     private void checkOrInitializeFixture(String name, String fixtureResourceName, Iterator<String> testLines) throws URISyntaxException, IOException {
         // check if the fixture already exists
         URL fixtureUri = this.getClass().getClassLoader().getResource(fixtureResourceName);
@@ -0,0 +1,159 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.BacklashCompensation;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.DecimalProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
+import com.willwinder.universalgcodesender.gcode.processors.M30Processor;
+import com.willwinder.universalgcodesender.gcode.processors.RunFromProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.Translator;
+import com.willwinder.universalgcodesender.gcode.processors.WhitespaceProcessor;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class ChunkedPreprocessorTest {
+    private static final String[] FIXTURES = {
+            "/gcode/fixtures/arc/circle_test.input.nc",
+            "/gcode/fixtures/arc/G18_G2_one_arc.input.nc",
+            "/gcode/fixtures/arc/Helix.input.nc",
+            "/gcode/fixtures/run-from/simple.g1.input.nc",
+            "/gcode/fixtures/run-from/simple.g2.input.nc",
+    };
+
+    private Path tempDir;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("chunkedpreprocessor");
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void parallelOutputShouldBeIdenticalToSequential() throws Exception {
+        assertIdentical(GcodeParser::new);
+        assertIdentical(() -> parser(new CommentProcessor(), new WhitespaceProcessor(), new M30Processor(),
+                new DecimalProcessor(4)));
+        assertIdentical(() -> parser(new CommentProcessor(), new ArcExpander(true, 0.3), new LineSplitter(1)));
+        assertIdentical(() -> parser(new Translator(new Position(10, -5, 1, Units.MM)), new ArcExpander(true, 1)));
+    }
+
+    @Test
+    public void sequentialProcessorsShouldDisableChunking() {
+        assertFalse(parser(new ArcExpander(true, 1), new RunFromProcessor(0)).isSequential());
+        assertTrue(parser(new ArcExpander(true, 1), new BacklashCompensation(1, 1)).isSequential());
+        assertTrue(parser(new RunFromProcessor(17)).isSequential());
+
+        RunFromProcessor runFromProcessor = new RunFromProcessor(17);
+        runFromProcessor.setProgram(new GcodeProgram.Builder().build());
+        assertFalse(parser(runFromProcessor).isSequential());
+    }
+
+    private void assertIdentical(Supplier<GcodeParser> parsers) throws Exception {
+        for (String fixture : FIXTURES) {
+            File input = Paths.get(ChunkedPreprocessorTest.class.getResource(fixture).toURI()).toFile();
+
+            GcodeParser sequentialParser = parsers.get();
+            GcodeProgram.Builder sequentialProgram = new GcodeProgram.Builder();
+            File sequential = tempDir.resolve("sequential").toFile();
+            try (IGcodeWriter gcw = new GcodeStreamWriter(sequential)) {
+                GcodeParserUtils.processAndExportSequentially(sequentialParser, input, gcw, sequentialProgram);
+            }
+            List<String> expectedProgram = describe(sequentialProgram.build());
+
+            // Odd chunk sizes to split the programs in many places.
+            for (int chunkSize : new int[]{1, 3, 7, 100000}) {
+                GcodeParser parallelParser = parsers.get();
+                GcodeProgram.Builder parallelProgram = new GcodeProgram.Builder();
+                File parallel = tempDir.resolve("parallel" + chunkSize).toFile();
+                try (IGcodeWriter gcw = new GcodeStreamWriter(parallel);
+                     PreprocessorStages stages = PreprocessorStages.all(input);
+                     ChunkedPreprocessor chunks = new ChunkedPreprocessor(parallelParser, stages, gcw, parallelProgram, executor, chunkSize, 2)) {
+                    stages.forEachLine(chunks::add);
+                    chunks.finish();
+                }
+
+                String message = fixture + " with chunk size " + chunkSize;
+                assertArrayEquals(message, Files.readAllBytes(sequential.toPath()), Files.readAllBytes(parallel.toPath()));
+                assertEquals(message, describe(sequentialParser.getCurrentState()), describe(parallelParser.getCurrentState()));
+                assertEquals(message, expectedProgram, describe(parallelProgram.build()));
+            }
+        }
+    }
+
+    private static String describe(GcodeState state) {
+        Position p = state.currentPoint;
+        return state.commandNumber + " " + state.machineStateCode() + state.toAccessoriesCode() + " " + p.x + " " + p.y + " " + p.z;
+    }
+
+    private static List<String> describe(GcodeProgram program) {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < program.size(); i++) {
+            Position end = program.getEnd(i);
+            entries.add(program.getLineNumber(i) + " " + program.getCode(i) + " " + end.x + " " + end.y + " " + end.z);
+        }
+        entries.add("commands " + program.getSourceCommandCount());
+        return entries;
+    }
+
+    private static GcodeParser parser(CommandProcessor... processors) {
+        GcodeParser gcp = new GcodeParser();
+        for (CommandProcessor p : processors) {
+            gcp.addCommandProcessor(p);
+        }
+        return gcp;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.model.Position;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compares reading the words of each line in the test_files directory with
+ * the {@link GcodeTokenizer} against splitting the line into a list of
+ * strings and scanning it for each kind of word, which is what the parser
+ * did before. The parser benchmark runs the whole
+ * {@link GcodeParserUtils#processCommand} for each line.
+ *
+ * Run it with the main method from the test classpath in the ugs-core
+ * directory, the directory can be changed with -Dugs.benchmark.files=path
+ *
+ * @author wwinder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GcodeTokenizerBenchmark {
+    private final GcodeTokenizer tokenizer = new GcodeTokenizer();
+    private final Position position = new Position(0, 0, 0);
+    private String[] lines;
+
+    // Keeps a reference to the logger, the unknown codes in the test files would otherwise be logged
+    private Logger parserLogger;
+
+    @Setup
+    public void setup() throws IOException {
+        parserLogger = Logger.getLogger(GcodeParserUtils.class.getName());
+        parserLogger.setLevel(Level.SEVERE);
+
+        File directory = new File(System.getProperty("ugs.benchmark.files", "../test_files"));
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not find the test files in " + directory.getAbsolutePath());
+        }
+
+        List<String> result = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                result.addAll(Files.readAllLines(file.toPath(), StandardCharsets.ISO_8859_1));
+            }
+        }
+        lines = result.toArray(new String[0]);
+    }
+
+    @Benchmark
+    public void tokenizer(Blackhole blackhole) {
+        for (String line : lines) {
+            GcodeTokenizer tokens = tokenizer.tokenize(line);
+            for (int i = 0; i < tokens.size(); i++) {
+                blackhole.consume(tokens.code(i));
+            }
+            blackhole.consume(tokens.value('F'));
+            blackhole.consume(tokens.value('S'));
+            blackhole.consume(tokens.hasAxisWords());
+            blackhole.consume(GcodePreprocessorUtils.updatePointWithCommand(tokens, position, true));
+        }
+    }
+
+    @Benchmark
+    public void splitCommand(Blackhole blackhole) {
+        for (String line : lines) {
+            List<String> args = GcodePreprocessorUtils.splitCommand(line);
+            if (args.stream().anyMatch(String::isEmpty)) {
+                // The same words as the tokenizer, which skips the empty words splitCommand could return
+                continue;
+            }
+            blackhole.consume(GcodePreprocessorUtils.getGCodes(args));
+            blackhole.consume(GcodePreprocessorUtils.getMCodes(args));
+            blackhole.consume(GcodePreprocessorUtils.parseCodes(args, 'F'));
+            blackhole.consume(GcodePreprocessorUtils.parseCodes(args, 'S'));
+            blackhole.consume(GcodePreprocessorUtils.hasAxisWords(args));
+            blackhole.consume(GcodePreprocessorUtils.updatePointWithCommand(args, position, true));
+        }
+    }
+
+    @Benchmark
+    public void parser(Blackhole blackhole) {
+        GcodeState state = new GcodeState();
+        for (int i = 0; i < lines.length; i++) {
+            try {
+                List<GcodeParser.GcodeMeta> metas = GcodeParserUtils.processCommand(lines[i], i, state, true);
+                if (metas != null && !metas.isEmpty()) {
+                    state = metas.get(metas.size() - 1).state;
+                }
+                blackhole.consume(metas);
+            } catch (GcodeParserException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GcodeTokenizerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
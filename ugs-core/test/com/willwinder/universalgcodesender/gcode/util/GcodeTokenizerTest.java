@@ -0,0 +1,202 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GcodeTokenizerTest {
+    private static final String[] COMMANDS = {
+            "G53F100S1300",
+            "G53 F 100 S 1300",
+            "G53G90.1S1300",
+            "G53G90_1S1300",
+            "(comment)G1X10(comment)",
+            ";commentG1X10(comment)",
+            "(1)(2)G3(3)",
+            "g01 x-1.5 y.25 z-.125",
+            "G1X1(comment)Y2",
+            "N10 G2 X10 Y-10 I5 J0 F1200.0",
+            "G38.2 Z-10 F100",
+            "X1-2",
+            "GX10",
+            "M3 S12000 M8",
+            "$J=G91X10F100",
+            "X0.12345678901234567890",
+            "   ",
+            ""
+    };
+
+    private final GcodeTokenizer tokenizer = new GcodeTokenizer();
+
+    @Test
+    public void tokenizeShouldGiveTheSameWordsAsSplitCommand() throws Exception {
+        for (String command : commands()) {
+            assertSameWords(command);
+        }
+    }
+
+    @Test
+    public void tokenizeShouldParseTheSameValuesAsDoubleParseDouble() throws Exception {
+        for (String command : commands()) {
+            GcodeTokenizer tokens = tokenizer.tokenize(command);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.isComment(i) || command.startsWith("$")) {
+                    continue;
+                }
+
+                String word = tokens.word(i);
+                assertEquals("Value of '" + word + "' in '" + command + "'",
+                        Double.doubleToLongBits(parseDouble(word.substring(1))),
+                        Double.doubleToLongBits(tokens.value(i)));
+            }
+        }
+    }
+
+    @Test
+    public void tokenizeShouldLookupTheSameCodesAsLookupCode() throws Exception {
+        for (String command : commands()) {
+            GcodeTokenizer tokens = tokenizer.tokenize(command);
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!tokens.isComment(i) && !command.startsWith("$")) {
+                    assertEquals(Code.lookupCode(tokens.word(i)), tokens.code(i));
+                }
+            }
+        }
+
+        for (String code : new String[]{"G0", "G00", "G000", "G01", "G1.0", "G0.1", "G38.2", "G038.2", "G38.25", "G59.1", "G", "G.", "G99999999999", "M30", "M030", "M3.", "X1"}) {
+            tokenizer.tokenize(code);
+            assertEquals(code, Code.lookupCode(code), tokenizer.code(0));
+        }
+    }
+
+    @Test
+    public void tokenizeShouldKeepTheSourceOffsets() {
+        GcodeTokenizer tokens = tokenizer.tokenize("G1 X 10 (move)Y2");
+
+        assertEquals(4, tokens.size());
+        assertEquals(3, tokens.sourceStart(1));
+        assertEquals(7, tokens.sourceEnd(1));
+        assertEquals("X10", tokens.word(1));
+        assertEquals("(move)", tokens.getCommand().substring(tokens.sourceStart(2), tokens.sourceEnd(2)));
+        assertTrue(tokens.isComment(2));
+        assertEquals(2, tokens.value('y'), 0);
+        assertTrue(Double.isNaN(tokens.value('Z')));
+        assertTrue(tokens.hasAxisWords());
+    }
+
+    @Test
+    public void tokenizeShouldReplaceThePreviousCommand() {
+        tokenizer.tokenize("G1 X1 Y2 Z3 A4 B5 C6 F7 S8 M3 M8 G90 G21 G17 G54 G94 T1 H1 P1 Q1");
+        GcodeTokenizer tokens = tokenizer.tokenize("M5");
+
+        assertEquals(1, tokens.size());
+        assertEquals(Code.M5, tokens.code(0));
+        assertEquals(-1, tokens.indexOf('G'));
+        assertEquals(0, tokens.count('X'));
+        assertThat(tokens.hasAxisWords()).isFalse();
+    }
+
+    @Test
+    public void isFirstOccurrenceShouldIgnoreRepeatedCodes() {
+        GcodeTokenizer tokens = tokenizer.tokenize("M3 M5 M3 G1 G01");
+
+        assertThat(tokens.isFirstOccurrence(0)).isTrue();
+        assertThat(tokens.isFirstOccurrence(1)).isTrue();
+        assertThat(tokens.isFirstOccurrence(2)).isFalse();
+        assertThat(tokens.isFirstOccurrence(3)).isTrue();
+        assertThat(tokens.isFirstOccurrence(4)).isFalse();
+    }
+
+    @Test
+    public void tokenizeShouldNotAllocatePerWord() throws Exception {
+        List<String> commands = commands();
+        for (int i = 0; i < 1000; i++) {
+            tokenizeAll(commands);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        int words = tokenizeAll(commands);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        // Only the long number in COMMANDS falls back on Double.parseDouble
+        assertTrue("Tokenizing allocated " + allocated + " bytes for " + words + " words", allocated < 1024);
+    }
+
+    private int tokenizeAll(List<String> commands) {
+        int words = 0;
+        for (String command : commands) {
+            words += tokenizer.tokenize(command).size();
+        }
+        return words;
+    }
+
+    private void assertSameWords(String command) {
+        List<String> expected = GcodePreprocessorUtils.splitCommand(command).stream()
+                .filter(word -> !word.isEmpty())
+                .collect(Collectors.toList());
+
+        GcodeTokenizer tokens = tokenizer.tokenize(command);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            words.add(tokens.word(i));
+            assertEquals(Character.toUpperCase(tokens.word(i).charAt(0)), tokens.letter(i));
+        }
+        assertEquals("Words of '" + command + "'", expected, words);
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static List<String> commands() throws IOException, URISyntaxException {
+        List<String> commands = new ArrayList<>();
+        Path directory = Paths.get(GcodeTokenizerTest.class.getResource("/gcode").toURI());
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).collect(Collectors.toList())) {
+                commands.addAll(Files.readAllLines(file));
+            }
+        }
+        for (String command : COMMANDS) {
+            commands.add(command);
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.DecimalProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.M30Processor;
+import com.willwinder.universalgcodesender.gcode.processors.Translator;
+import com.willwinder.universalgcodesender.gcode.processors.WhitespaceProcessor;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class PreprocessorCacheTest {
+    private static final String[] FIXTURES = {
+            "/gcode/fixtures/arc/circle_test.input.nc",
+            "/gcode/fixtures/arc/Helix.input.nc",
+            "/gcode/fixtures/run-from/simple.g2.input.nc",
+    };
+
+    private Path tempDir;
+    private PreprocessorCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        tempDir = Files.createTempDirectory("preprocessorcache");
+        cache = new PreprocessorCache(tempDir.resolve("cache").toFile());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void cachedOutputShouldBeIdenticalToUncached() throws Exception {
+        for (String fixture : FIXTURES) {
+            File input = Paths.get(PreprocessorCacheTest.class.getResource(fixture).toURI()).toFile();
+
+            // Once to fill the cache, and then continuing from the checkpoints
+            for (int i = 0; i < 2; i++) {
+                assertIdentical(input, new CommentProcessor(), new M30Processor(), new ArcExpander(true, 0.3),
+                        new DecimalProcessor(4), new WhitespaceProcessor());
+            }
+
+            // A changed processor after the arc expander
+            assertIdentical(input, new CommentProcessor(), new M30Processor(), new ArcExpander(true, 0.3),
+                    new DecimalProcessor(5), new WhitespaceProcessor());
+
+            // An added processor after every cached processor
+            assertIdentical(input, new CommentProcessor(), new M30Processor(), new ArcExpander(true, 0.3),
+                    new DecimalProcessor(4), new WhitespaceProcessor(), new Translator(new Position(10, -5, 1, Units.MM)));
+        }
+    }
+
+    @Test
+    public void onlyProcessorsAfterTheLastCheckpointShouldRun() throws Exception {
+        File input = Paths.get(PreprocessorCacheTest.class.getResource(FIXTURES[0]).toURI()).toFile();
+
+        CountingProcessor comments = new CountingProcessor(new CommentProcessor());
+        CountingProcessor arcs = new CountingProcessor(new ArcExpander(true, 0.3));
+        process(input, cache, comments, arcs, new DecimalProcessor(4));
+        assertTrue(comments.count.get() > 0);
+        assertTrue(arcs.count.get() > 0);
+
+        // Only the processors after the changed one
+        comments = new CountingProcessor(new CommentProcessor());
+        arcs = new CountingProcessor(new ArcExpander(true, 0.3));
+        CountingProcessor decimals = new CountingProcessor(new DecimalProcessor(5));
+        process(input, cache, comments, arcs, decimals);
+        assertEquals(0, comments.count.get());
+        assertEquals(0, arcs.count.get());
+        assertTrue(decimals.count.get() > 0);
+
+        // The arc expander runs again when it is changed, but the comment processor doesn't
+        comments = new CountingProcessor(new CommentProcessor());
+        arcs = new CountingProcessor(new ArcExpander(true, 0.5));
+        process(input, cache, comments, arcs, new DecimalProcessor(4));
+        assertEquals(0, comments.count.get());
+        assertTrue(arcs.count.get() > 0);
+    }
+
+    @Test
+    public void processorsAfterAProcessorWithoutAConfigurationKeyShouldNotBeCached() throws Exception {
+        File input = Paths.get(PreprocessorCacheTest.class.getResource(FIXTURES[0]).toURI()).toFile();
+
+        Translator translator = new Translator(new Position(10, -5, 1, Units.MM));
+        process(input, cache, translator, new CountingProcessor(new ArcExpander(true, 0.3)));
+
+        CountingProcessor arcs = new CountingProcessor(new ArcExpander(true, 0.3));
+        process(input, cache, translator, arcs);
+        assertTrue(arcs.count.get() > 0);
+    }
+
+    @Test
+    public void leastRecentlyUsedCheckpointsShouldBeDeleted() throws Exception {
+        File input = Paths.get(PreprocessorCacheTest.class.getResource(FIXTURES[0]).toURI()).toFile();
+        File directory = tempDir.resolve("evicting").toFile();
+        PreprocessorCache evictingCache = new PreprocessorCache(directory, 2);
+
+        process(input, evictingCache, new CommentProcessor(), new ArcExpander(true, 0.3), new WhitespaceProcessor());
+        assertEquals(2, directory.list().length);
+
+        evictingCache.clear();
+        assertEquals(0, directory.list().length);
+    }
+
+    private void assertIdentical(File input, CommandProcessor... processors) throws Exception {
+        File uncached = process(input, null, processors);
+        File cached = process(input, cache, processors);
+        assertArrayEquals(input.getName(), Files.readAllBytes(uncached.toPath()), Files.readAllBytes(cached.toPath()));
+    }
+
+    private File process(File input, PreprocessorCache preprocessorCache, CommandProcessor... processors) throws Exception {
+        GcodeParser gcp = new GcodeParser();
+        for (CommandProcessor p : processors) {
+            gcp.addCommandProcessor(p);
+        }
+
+        File output = tempDir.resolve(preprocessorCache == null ? "uncached" : "cached").toFile();
+        try (IGcodeWriter gcw = new GcodeStreamWriter(output)) {
+            GcodeParserUtils.processAndExport(gcp, input, gcw, null, preprocessorCache);
+        }
+        return output;
+    }
+
+    /**
+     * Counts the commands given to a processor.
+     */
+    private static class CountingProcessor implements CommandProcessor {
+        private final CommandProcessor processor;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private CountingProcessor(CommandProcessor processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+            count.incrementAndGet();
+            return processor.processCommand(command, state);
+        }
+
+        @Override
+        public String getHelp() {
+            return processor.getHelp();
+        }
+
+        @Override
+        public String getConfigurationKey() {
+            return processor.getConfigurationKey();
+        }
+
+        @Override
+        public boolean isExpensive() {
+            return processor.isExpensive();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.listeners;
+
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.AccessoryStates;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.BufferState;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.EnabledPins;
+import com.willwinder.universalgcodesender.listeners.ControllerStatus.OverridePercents;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class ControllerStatusTest {
+
+    @Test
+    public void getChangesSinceShouldReturnAllFieldsWithoutPreviousStatus() {
+        assertEquals(ControllerStatus.ALL, createStatus(ControllerState.IDLE, 1, 100).getChangesSince(null));
+    }
+
+    @Test
+    public void getChangesSinceShouldReturnNothingForIdenticalStatuses() {
+        ControllerStatus status = createStatus(ControllerState.IDLE, 1, 100);
+        assertEquals(0, createStatus(ControllerState.IDLE, 1, 100).getChangesSince(status));
+    }
+
+    @Test
+    public void getChangesSinceShouldReturnTheChangedFields() {
+        ControllerStatus previous = createStatus(ControllerState.IDLE, 1, 100);
+
+        assertEquals(ControllerStatus.STATE, createStatus(ControllerState.RUN, 1, 100).getChangesSince(previous));
+        assertEquals(ControllerStatus.MACHINE_COORD | ControllerStatus.WORK_COORD, createStatus(ControllerState.IDLE, 2, 100).getChangesSince(previous));
+        assertEquals(ControllerStatus.FEED_SPEED, createStatus(ControllerState.IDLE, 1, 200).getChangesSince(previous));
+
+        ControllerStatus status = new ControllerStatus(previous.getState(), previous.getMachineCoord(), previous.getWorkCoord(),
+                previous.getFeedSpeed(), previous.getFeedSpeedUnits(), previous.getSpindleSpeed(),
+                new OverridePercents(100, 100, 50), previous.getWorkCoordinateOffset(),
+                new EnabledPins("P"), new AccessoryStates("SF"), new BufferState(14, 100));
+        assertEquals(ControllerStatus.OVERRIDES | ControllerStatus.PINS | ControllerStatus.BUFFER_STATE, status.getChangesSince(previous));
+    }
+
+    @Test
+    public void withVersionShouldCopyTheStatus() {
+        ControllerStatus status = createStatus(ControllerState.IDLE, 1, 100);
+        assertEquals(0, status.getVersion());
+        assertTrue(status.hasChanged(ControllerStatus.FEED_SPEED));
+
+        ControllerStatus versionedStatus = status.withVersion(5, ControllerStatus.STATE);
+        assertEquals(5, versionedStatus.getVersion());
+        assertEquals(ControllerStatus.STATE, versionedStatus.getChanges());
+        assertTrue(versionedStatus.hasChanged(ControllerStatus.STATE | ControllerStatus.FEED_SPEED));
+        assertFalse(versionedStatus.hasChanged(ControllerStatus.FEED_SPEED));
+        assertSame(status.getMachineCoord(), versionedStatus.getMachineCoord());
+        assertEquals(0, versionedStatus.getChangesSince(status));
+    }
+
+    private static ControllerStatus createStatus(ControllerState state, double x, double feedSpeed) {
+        return new ControllerStatus(state,
+                new Position(x, 0, 0, UnitUtils.Units.MM),
+                new Position(x, 0, 0, UnitUtils.Units.MM),
+                feedSpeed, UnitUtils.Units.MM, 1000d,
+                new OverridePercents(100, 100, 100),
+                new Position(0, 0, 0, UnitUtils.Units.MM),
+                new EnabledPins(""), new AccessoryStates("SF"), new BufferState(15, 128));
+    }
+}
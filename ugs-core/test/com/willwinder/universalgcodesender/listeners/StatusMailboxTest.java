@@ -0,0 +1,134 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.listeners;
+
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author wwinder
+ */
+public class StatusMailboxTest {
+
+    @Test
+    public void offerShouldDeliverTheStatusToTheListener() {
+        ControllerListener listener = mock(ControllerListener.class);
+        StatusMailbox mailbox = new StatusMailbox(listener, Runnable::run);
+
+        ControllerStatus status = createStatus(1, ControllerStatus.ALL);
+        mailbox.offer(status);
+
+        verify(listener).statusStringListener(status);
+        assertEquals(0, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void offerShouldReplaceStatusesThatHaveNotBeenDelivered() {
+        List<Runnable> tasks = new ArrayList<>();
+        List<ControllerStatus> received = new ArrayList<>();
+        StatusMailbox mailbox = new StatusMailbox(createListener(received), tasks::add);
+
+        mailbox.offer(createStatus(1, ControllerStatus.MACHINE_COORD));
+        mailbox.offer(createStatus(2, ControllerStatus.STATE));
+        mailbox.offer(createStatus(3, ControllerStatus.FEED_SPEED));
+
+        // Only one delivery is scheduled at a time
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        assertEquals(1, received.size());
+        assertEquals(3, received.get(0).getVersion());
+        assertEquals(ControllerStatus.MACHINE_COORD | ControllerStatus.STATE | ControllerStatus.FEED_SPEED, received.get(0).getChanges());
+        assertEquals(2, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void offerShouldNotBlockWhenTheListenerIsSlow() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch listenerBlocked = new CountDownLatch(1);
+            CountDownLatch releaseListener = new CountDownLatch(1);
+            List<ControllerStatus> received = new ArrayList<>();
+            ControllerListener listener = mock(ControllerListener.class);
+            doAnswer(invocation -> {
+                listenerBlocked.countDown();
+                releaseListener.await();
+                received.add(invocation.getArgument(0));
+                return null;
+            }).when(listener).statusStringListener(any());
+            StatusMailbox mailbox = new StatusMailbox(listener, executor);
+
+            mailbox.offer(createStatus(1, ControllerStatus.ALL));
+            assertTrue(listenerBlocked.await(1, TimeUnit.SECONDS));
+            for (int i = 2; i <= 1000; i++) {
+                mailbox.offer(createStatus(i, ControllerStatus.MACHINE_COORD));
+            }
+            releaseListener.countDown();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+            assertEquals(2, received.size());
+            assertEquals(1000, received.get(1).getVersion());
+            assertEquals(998, mailbox.getDroppedCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void closeShouldStopDeliveringStatuses() {
+        List<Runnable> tasks = new ArrayList<>();
+        ControllerListener listener = mock(ControllerListener.class);
+        StatusMailbox mailbox = new StatusMailbox(listener, tasks::add);
+
+        mailbox.offer(createStatus(1, ControllerStatus.ALL));
+        mailbox.close();
+        mailbox.offer(createStatus(2, ControllerStatus.ALL));
+        tasks.forEach(Runnable::run);
+
+        verify(listener, never()).statusStringListener(any());
+    }
+
+    private static ControllerStatus createStatus(long version, int changes) {
+        return new ControllerStatus(ControllerState.IDLE, new Position(version, 0, 0, UnitUtils.Units.MM), new Position(version, 0, 0, UnitUtils.Units.MM))
+                .withVersion(version, changes);
+    }
+
+    private static ControllerListener createListener(List<ControllerStatus> received) {
+        ControllerListener listener = mock(ControllerListener.class);
+        doAnswer(invocation -> received.add(invocation.getArgument(0))).when(listener).statusStringListener(any());
+        return listener;
+    }
+}
@@ -24,6 +24,7 @@
 package com.willwinder.universalgcodesender.mockobjects;
 
 import com.willwinder.universalgcodesender.connection.AbstractConnection;
+import com.willwinder.universalgcodesender.connection.LineBatch;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -93,6 +94,20 @@ public class MockConnection extends AbstractConnection {
         }
     }
 
+    @Override
+    public void sendBytesToComm(byte[] bytes, int offset, int length) {
+        try {
+            this.out.write(bytes, offset, length);
+        } catch (IOException ex) {
+            Logger.getLogger(MockConnection.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void sendBatchToComm(LineBatch batch) {
+        sendBytesToComm(batch.getBuffer(), 0, batch.getLength());
+    }
+
     public boolean supports(String portname) {
         throw new UnsupportedOperationException("Not supported yet.");
     }
@@ -0,0 +1,80 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author wwinder
+ */
+public class DecimalParserTest {
+
+    @Test
+    public void parseDoubleShouldGiveSameResultAsJdk() {
+        Random random = new Random(7);
+        List<String> numbers = new ArrayList<>(Arrays.asList(
+                "0", "-0", "0.", ".5", "-.5", "-0.000", "1.1", "0.1", "0.3", "123456789012345678",
+                "9007199254740993", "1.0000000000000000000000001", "0.00000000000000000000000123",
+                "1e5", "-1.5E-3", "+2", "Infinity"));
+        for (int i = 0; i < 10000; i++) {
+            numbers.add(String.format(Locale.US, "%." + random.nextInt(8) + "f", (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(10))));
+            numbers.add(Double.toString(random.nextDouble() * 1000));
+        }
+
+        for (String number : numbers) {
+            String padded = "|" + number + "|";
+            long expected = Double.doubleToRawLongBits(Double.parseDouble(number));
+            assertEquals(number, expected, Double.doubleToRawLongBits(DecimalParser.parseDouble(padded, 1, padded.length() - 1)));
+            assertEquals(number, expected, Double.doubleToRawLongBits(DecimalParser.parseDouble(CharBuffer.wrap(padded.toCharArray()), 1, padded.length() - 1)));
+        }
+    }
+
+    @Test
+    public void parseDoubleShouldThrowOnInvalidNumbersLikeJdk() {
+        for (String number : Arrays.asList("", "-", ".", "1.2.3", "1-2", "X1", "--1")) {
+            String padded = "|" + number + "|";
+            try {
+                DecimalParser.parseDouble(padded, 1, padded.length() - 1);
+                fail("'" + number + "' should not be parsed");
+            } catch (NumberFormatException expected) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void parseDoubleOrNaNShouldGiveNaNOnInvalidNumbers() {
+        for (String number : Arrays.asList("", "-", ".", "1.2.3", "1-2", "X1", "--1", "H", "$")) {
+            String padded = "|" + number + "|";
+            assertTrue(number, Double.isNaN(DecimalParser.parseDoubleOrNaN(padded, 1, padded.length() - 1)));
+        }
+        assertEquals(-1.5, DecimalParser.parseDoubleOrNaN("X-1.5", 1, 5), 0);
+    }
+}
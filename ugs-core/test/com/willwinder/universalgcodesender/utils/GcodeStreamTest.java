@@ -29,6 +29,7 @@ import org.junit.Test;
 import org.junit.BeforeClass;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  *
@@ -144,4 +145,278 @@ public class GcodeStreamTest {
             assertThat(i).isEqualTo(rows);
         }
     }
+
+    @Test
+    public void readerShouldReadLegacyTextFormat() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir, "legacyGcodeFile");
+        try (PrintWriter writer = new PrintWriter(f)) {
+            writer.println("gsw_meta:2");
+            writer.println("G0 X1 ; move++G0X1++1++move");
+            writer.println("G0 X2++G0X2++2++");
+        }
+
+        try (GcodeStreamReader gsr = new GcodeStreamReader(f)) {
+            assertThat(gsr.isIndexed()).isFalse();
+            assertThat(gsr.getNumRows()).isEqualTo(2);
+
+            GcodeCommand command = gsr.getNextCommand();
+            assertThat(command.getCommandString()).isEqualTo("G0X1");
+            assertThat(command.getOriginalCommandString()).isEqualTo("G0 X1 ; move");
+            assertThat(command.getComment()).isEqualTo("move");
+            assertThat(command.getCommandNumber()).isEqualTo(1);
+
+            assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("G0X2");
+            assertThat(gsr.ready()).isFalse();
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void readerShouldReturnAllFields() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f)) {
+                gsw.addLine("G0 X1 (överst)", "G0X1", "överst", 10);
+                gsw.addLine(new GcodeCommand("G0X2", "G0 X2 ++ ", null, 11, false));
+            }
+
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f)) {
+                assertThat(gsr.isIndexed()).isTrue();
+
+                GcodeCommand command = gsr.getNextCommand();
+                assertThat(command.getOriginalCommandString()).isEqualTo("G0 X1 (överst)");
+                assertThat(command.getCommandString()).isEqualTo("G0X1");
+                assertThat(command.getComment()).isEqualTo("överst");
+                assertThat(command.getCommandNumber()).isEqualTo(10);
+
+                command = gsr.getNextCommand();
+                assertThat(command.getOriginalCommandString()).isEqualTo("G0 X2 ++ ");
+                assertThat(command.getCommandString()).isEqualTo("G0X2");
+                assertThat(command.getComment()).isEqualTo("");
+                assertThat(command.getCommandNumber()).isEqualTo(11);
+
+                assertThat(gsr.getNextCommand()).isNull();
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void seekShouldPositionStreamAtRow() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        int rows = 1000;
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f, 16)) {
+                for (int i = 0; i < rows; i++) {
+                    gsw.addLine("Line " + i, "Line " + i, null, i);
+                }
+            }
+
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f)) {
+                for (int row : new int[]{500, 17, 0, 999, 16, 15}) {
+                    gsr.seek(row);
+                    assertThat(gsr.getNumRowsRemaining()).isEqualTo(rows - row);
+                    assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line " + row);
+                }
+
+                gsr.seek(rows);
+                assertThat(gsr.ready()).isFalse();
+                assertThat(gsr.getNextCommand()).isNull();
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void windowedReaderShouldReadAndSeekRowsAcrossWindows() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        int rows = 1000;
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f, 16)) {
+                for (int i = 0; i < rows; i++) {
+                    gsw.addLine("Line " + i, "Line " + i, "Comment " + i, i);
+                }
+            }
+
+            // A window smaller than a row, which is how files too large to be mapped are read
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f, 16)) {
+                assertThat(gsr.isIndexed()).isTrue();
+                assertThat(gsr.getNumRows()).isEqualTo(rows);
+                for (int i = 0; i < rows; i++) {
+                    GcodeCommand command = gsr.getNextCommand();
+                    assertThat(command.getCommandString()).isEqualTo("Line " + i);
+                    assertThat(command.getComment()).isEqualTo("Comment " + i);
+                }
+                assertThat(gsr.getNextCommand()).isNull();
+
+                for (int row : new int[]{500, 17, 0, 999}) {
+                    gsr.seek(row);
+                    assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line " + row);
+                }
+                assertThat(gsr.seekToCommandNumber(321)).isEqualTo(321);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line 321");
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void corruptFieldLengthsShouldFailWithAnIOException() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            for (int length : new int[]{Integer.MAX_VALUE, -5}) {
+                try (GcodeStreamWriter gsw = new GcodeStreamWriter(f)) {
+                    gsw.addLine("G0 X1", "G0X1", null, 1);
+                }
+
+                // The length of the original command, after the command number of the first row
+                try (RandomAccessFile raw = new RandomAccessFile(f, "rw")) {
+                    raw.seek(GcodeStream.HEADER_SIZE + Integer.BYTES);
+                    raw.writeInt(length);
+                }
+
+                for (int windowSize : new int[]{0, 16}) {
+                    try (GcodeStreamReader gsr = new GcodeStreamReader(f, windowSize)) {
+                        assertThatThrownBy(gsr::getNextCommand)
+                                .isInstanceOf(IOException.class)
+                                .hasMessageContaining("Corrupt data");
+                    }
+                }
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void seekToCommandNumberShouldPositionStreamAtFirstRowWithCommandNumber() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            // Each command number is expanded to three rows, like an arc being expanded by the preprocessor
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(f, 4)) {
+                for (int i = 0; i < 100; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        gsw.addLine("Command " + i, "Command " + i + " part " + j, null, i * 2);
+                    }
+                }
+            }
+
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f)) {
+                assertThat(gsr.seekToCommandNumber(50)).isEqualTo(75);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Command 25 part 0");
+
+                assertThat(gsr.seekToCommandNumber(51)).isEqualTo(78);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Command 26 part 0");
+
+                assertThat(gsr.seekToCommandNumber(0)).isEqualTo(0);
+                assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Command 0 part 0");
+
+                assertThat(gsr.seekToCommandNumber(1000)).isEqualTo(300);
+                assertThat(gsr.ready()).isFalse();
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void followingReaderShouldReadPublishedRowsWhileStreamIsWritten() throws IOException, GcodeStreamReader.NotGcodeStreamFile {
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            GcodeStreamWriter gsw = new GcodeStreamWriter(f, 16);
+            gsw.setSourceLineCount(100);
+            try (GcodeStreamReader gsr = new GcodeStreamReader(gsw)) {
+                assertThat(gsr.isIndexed()).isFalse();
+                for (int i = 0; i < 40; i++) {
+                    gsw.addLine("Line " + i, "Line " + i, null, i + 1);
+                }
+
+                // Rows are published every index interval
+                assertThat(gsr.isNumRowsEstimated()).isTrue();
+                assertThat(gsr.getNumRows()).isEqualTo(100);
+                for (int i = 0; i < 32; i++) {
+                    assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line " + i);
+                }
+                assertThat(gsr.getNumRowsRemaining()).isEqualTo(68);
+                assertThat(gsr.ready()).isTrue();
+
+                gsw.close();
+                assertThat(gsr.isNumRowsEstimated()).isFalse();
+                assertThat(gsr.getNumRows()).isEqualTo(40);
+                for (int i = 32; i < 40; i++) {
+                    assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line " + i);
+                }
+                assertThat(gsr.ready()).isFalse();
+                assertThat(gsr.getNextCommand()).isNull();
+            }
+
+            // The completed stream can still be read as a file
+            try (GcodeStreamReader gsr = new GcodeStreamReader(f)) {
+                assertThat(gsr.getNumRows()).isEqualTo(40);
+                assertThat(gsr.seekToCommandNumber(33)).isEqualTo(32);
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void followingReaderShouldWaitForTheWriter() throws Exception {
+        int rows = 10000;
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            GcodeStreamWriter gsw = new GcodeStreamWriter(f, 64);
+            try (GcodeStreamReader gsr = new GcodeStreamReader(gsw)) {
+                Thread writerThread = new Thread(() -> {
+                    try (GcodeStreamWriter writer = gsw) {
+                        for (int i = 0; i < rows; i++) {
+                            writer.addLine("Line " + i, "Line " + i, "Comment " + i, i);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                writerThread.start();
+
+                for (int i = 0; i < rows; i++) {
+                    GcodeCommand command = gsr.getNextCommand();
+                    assertThat(command.getCommandString()).isEqualTo("Line " + i);
+                    assertThat(command.getComment()).isEqualTo("Comment " + i);
+                    assertThat(command.getCommandNumber()).isEqualTo(i);
+                }
+                assertThat(gsr.getNextCommand()).isNull();
+                assertThat(gsr.getNumRows()).isEqualTo(rows);
+                writerThread.join();
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
+
+    @Test
+    public void followingReaderShouldFailWhenTheWriterFails() throws IOException {
+        File f = new File(tempDir, "gcodeFile");
+        try {
+            GcodeStreamWriter gsw = new GcodeStreamWriter(f, 4);
+            try (GcodeStreamReader gsr = new GcodeStreamReader(gsw)) {
+                for (int i = 0; i < 6; i++) {
+                    gsw.addLine("Line " + i, "Line " + i, null, i);
+                }
+                gsw.fail(new Exception("Preprocessing failed"));
+                assertThatThrownBy(gsw::close).isInstanceOf(IOException.class);
+
+                // Rows published before the failure can still be read
+                for (int i = 0; i < 4; i++) {
+                    assertThat(gsr.getNextCommand().getCommandString()).isEqualTo("Line " + i);
+                }
+                assertThatThrownBy(gsr::getNextCommand).isInstanceOf(IOException.class);
+            }
+        } finally {
+            FileUtils.forceDelete(f);
+        }
+    }
 }
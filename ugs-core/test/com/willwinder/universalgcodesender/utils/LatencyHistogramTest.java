@@ -0,0 +1,113 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramShouldReturnZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean());
+    }
+
+    @Test
+    public void percentilesShouldBeWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000, histogram.getMean());
+        assertWithinPrecision(5000, histogram.getPercentile(50));
+        assertWithinPrecision(9500, histogram.getPercentile(95));
+        assertWithinPrecision(9900, histogram.getPercentile(99));
+        assertEquals(10000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void smallValuesShouldBeExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(3));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(5));
+
+        assertEquals(3, histogram.getPercentile(50));
+        assertEquals(5, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void bucketsShouldCoverAllValues() {
+        long previousUpperBound = -1;
+        for (int index = 0; index < LatencyHistogram.getBucketIndex(Long.MAX_VALUE); index++) {
+            long upperBound = LatencyHistogram.getBucketUpperBound(index);
+            assertEquals(index, LatencyHistogram.getBucketIndex(previousUpperBound + 1));
+            assertEquals(index, LatencyHistogram.getBucketIndex(upperBound));
+            previousUpperBound = upperBound;
+        }
+    }
+
+    @Test
+    public void negativeValuesShouldBeIgnored() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void resetShouldClearTheHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void summaryShouldFormatTheLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        String summary = histogram.getSummary().toString();
+        assertTrue(summary, summary.startsWith("p50="));
+        assertTrue(summary, summary.contains("max=2.0ms"));
+        assertTrue(summary, summary.endsWith("(n=2)"));
+    }
+
+    private static void assertWithinPrecision(long expected, long actual) {
+        assertTrue("Expected " + expected + " but was " + actual,
+                actual >= expected && actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS));
+    }
+}
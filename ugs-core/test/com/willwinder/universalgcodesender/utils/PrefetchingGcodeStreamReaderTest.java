@@ -0,0 +1,228 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author wwinder
+ */
+public class PrefetchingGcodeStreamReaderTest {
+    private File tempDir;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = GcodeStreamTest.createTempDirectory();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.forceDelete(tempDir);
+    }
+
+    @Test
+    public void getNextCommandShouldReturnAllCommandsInOrder() throws Exception {
+        File file = new File(tempDir, "stream.gcode");
+        try (GcodeStreamWriter writer = new GcodeStreamWriter(file)) {
+            for (int i = 0; i < 5000; i++) {
+                writer.addLine("G1X" + i, "G1X" + i, null, i);
+            }
+        }
+
+        try (PrefetchingGcodeStreamReader reader = new PrefetchingGcodeStreamReader(new GcodeStreamReader(file), 10)) {
+            assertEquals(5000, reader.getNumRows());
+
+            for (int i = 0; i < 5000; i++) {
+                assertTrue(reader.ready());
+                GcodeCommand command = reader.getNextCommand();
+                assertEquals("G1X" + i, command.getCommandString());
+                assertEquals(i, command.getCommandNumber());
+                assertEquals(5000 - i - 1, reader.getNumRowsRemaining());
+            }
+
+            assertFalse(reader.ready());
+            assertNull(reader.getNextCommand());
+        }
+    }
+
+    @Test
+    public void readerShouldNotBeReadyUntilAGrowingStreamHasMoreRows() throws Exception {
+        File file = new File(tempDir, "stream.gcode");
+        Semaphore notifications = new Semaphore(0);
+
+        GcodeStreamWriter writer = new GcodeStreamWriter(file, 4);
+        try (PrefetchingGcodeStreamReader reader = new PrefetchingGcodeStreamReader(new GcodeStreamReader(writer))) {
+            reader.setReadyListener(notifications::release);
+            assertTrue(reader.isNumRowsEstimated());
+
+            // Nothing is published until the first index interval is written
+            for (int i = 0; i < 3; i++) {
+                writer.addLine("G1X" + i, "G1X" + i, null, i);
+            }
+            assertFalse(reader.ready());
+            assertTrue(reader.getNumRowsRemaining() > 0);
+
+            for (int i = 3; i < 6; i++) {
+                writer.addLine("G1X" + i, "G1X" + i, null, i);
+            }
+            assertTrue(notifications.tryAcquire(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                awaitReady(reader);
+                assertEquals("G1X" + i, reader.getNextCommand().getCommandString());
+            }
+            assertFalse(reader.ready());
+
+            // Completing the stream notifies the listener with the final number of rows
+            writer.close();
+            assertTrue(notifications.tryAcquire(5, TimeUnit.SECONDS));
+            assertFalse(reader.isNumRowsEstimated());
+            assertEquals(6, reader.getNumRows());
+            for (int i = 4; i < 6; i++) {
+                assertTrue(reader.ready());
+                assertEquals("G1X" + i, reader.getNextCommand().getCommandString());
+            }
+            assertFalse(reader.ready());
+            assertEquals(0, reader.getNumRowsRemaining());
+        }
+    }
+
+    private static void awaitReady(IGcodeStreamReader reader) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!reader.ready()) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("The stream never became ready");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void getNextCommandShouldCountBufferUnderruns() throws Exception {
+        SlowGcodeStreamReader slowReader = new SlowGcodeStreamReader(3, 100);
+        try (PrefetchingGcodeStreamReader reader = new PrefetchingGcodeStreamReader(slowReader)) {
+            for (int i = 0; i < 3; i++) {
+                assertEquals("G0X" + i, reader.getNextCommand().getCommandString());
+            }
+            assertEquals(3, reader.getBufferUnderrunCount());
+        }
+    }
+
+    @Test
+    public void getNextCommandShouldNotUnderrunWhenBufferIsFilled() throws Exception {
+        SlowGcodeStreamReader slowReader = new SlowGcodeStreamReader(3, 0);
+        try (PrefetchingGcodeStreamReader reader = new PrefetchingGcodeStreamReader(slowReader)) {
+            ThreadHelper.waitUntil(() -> slowReader.getNumRowsRemaining() == 0, 1, TimeUnit.SECONDS);
+
+            for (int i = 0; i < 3; i++) {
+                assertEquals("G0X" + i, reader.getNextCommand().getCommandString());
+            }
+            assertEquals(0, reader.getBufferUnderrunCount());
+        }
+    }
+
+    @Test
+    public void getNextCommandShouldThrowExceptionIfStreamFails() {
+        SlowGcodeStreamReader slowReader = new SlowGcodeStreamReader(3, 0);
+        slowReader.failAfter = 1;
+
+        try (PrefetchingGcodeStreamReader reader = new PrefetchingGcodeStreamReader(slowReader)) {
+            assertEquals("G0X0", reader.getNextCommand().getCommandString());
+            reader.getNextCommand();
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void closeShouldCloseUnderlyingStream() throws Exception {
+        SlowGcodeStreamReader slowReader = new SlowGcodeStreamReader(10000, 0);
+        PrefetchingGcodeStreamReader reader = new PrefetchingGcodeStreamReader(slowReader, 10);
+        reader.close();
+        assertTrue(slowReader.closed);
+    }
+
+    /**
+     * A stream which takes some time to read each command
+     */
+    private static class SlowGcodeStreamReader implements IGcodeStreamReader {
+        private final int numRows;
+        private final long delay;
+        private volatile int numRowsRemaining;
+        private volatile boolean closed;
+        private int failAfter = -1;
+
+        SlowGcodeStreamReader(int numRows, long delay) {
+            this.numRows = numRows;
+            this.numRowsRemaining = numRows;
+            this.delay = delay;
+        }
+
+        @Override
+        public boolean ready() {
+            return numRowsRemaining > 0;
+        }
+
+        @Override
+        public int getNumRows() {
+            return numRows;
+        }
+
+        @Override
+        public int getNumRowsRemaining() {
+            return numRowsRemaining;
+        }
+
+        @Override
+        public GcodeCommand getNextCommand() throws IOException {
+            int row = numRows - numRowsRemaining;
+            if (row == failAfter) {
+                throw new IOException("Failed");
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            numRowsRemaining--;
+            return new GcodeCommand("G0X" + row, row);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
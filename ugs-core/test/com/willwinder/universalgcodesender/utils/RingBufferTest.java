@@ -0,0 +1,140 @@
+/*
+    Copyright 2021 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author wwinder
+ */
+public class RingBufferTest {
+
+    @Test
+    public void capacityShouldBeRoundedToPowerOfTwo() {
+        assertEquals(1, new RingBuffer<Integer>(1).capacity());
+        assertEquals(128, new RingBuffer<Integer>(123).capacity());
+        assertEquals(128, new RingBuffer<Integer>(128).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new RingBuffer<Integer>(0);
+    }
+
+    @Test
+    public void offerShouldReturnFalseWhenFull() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(2);
+        assertTrue(ringBuffer.offer(1));
+        assertTrue(ringBuffer.offer(2));
+        assertFalse(ringBuffer.offer(3));
+        assertEquals(2, ringBuffer.size());
+        assertEquals(0, ringBuffer.remainingCapacity());
+
+        assertEquals(Integer.valueOf(1), ringBuffer.poll());
+        assertTrue(ringBuffer.offer(3));
+        assertEquals(Integer.valueOf(2), ringBuffer.poll());
+        assertEquals(Integer.valueOf(3), ringBuffer.poll());
+        assertNull(ringBuffer.poll());
+    }
+
+    @Test
+    public void peekShouldNotRemoveElement() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+        assertNull(ringBuffer.peek());
+        ringBuffer.offer(1);
+        assertEquals(Integer.valueOf(1), ringBuffer.peek());
+        assertEquals(1, ringBuffer.size());
+    }
+
+    @Test
+    public void clearShouldRemoveAllElements() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+        ringBuffer.offer(1);
+        ringBuffer.offer(2);
+        ringBuffer.clear();
+
+        assertTrue(ringBuffer.isEmpty());
+        assertNull(ringBuffer.poll());
+
+        ringBuffer.offer(3);
+        assertEquals(Integer.valueOf(3), ringBuffer.poll());
+    }
+
+    @Test
+    public void iteratorShouldReturnElementsInOrder() {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+        for (int i = 0; i < 6; i++) {
+            ringBuffer.offer(i);
+            if (i % 2 == 0) {
+                ringBuffer.poll();
+            }
+        }
+
+        Iterator<Integer> iterator = ringBuffer.iterator();
+        assertEquals(Integer.valueOf(3), iterator.next());
+        assertEquals(Integer.valueOf(4), iterator.next());
+        assertEquals(Integer.valueOf(5), iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void concurrentProducerAndConsumerShouldKeepOrder() throws Exception {
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(16);
+        int numberOfElements = 1000000;
+        AtomicReference<String> error = new AtomicReference<>();
+
+        Thread consumer = new Thread(() -> {
+            int expected = 0;
+            while (expected < numberOfElements) {
+                Integer element = ringBuffer.poll();
+                if (element == null) {
+                    Thread.yield();
+                    continue;
+                }
+
+                if (element != expected) {
+                    error.set("Expected " + expected + " but got " + element);
+                    return;
+                }
+                expected++;
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < numberOfElements && error.get() == null; i++) {
+            while (!ringBuffer.offer(i) && error.get() == null) {
+                Thread.yield();
+            }
+        }
+
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse("The consumer didn't receive all elements", consumer.isAlive());
+        assertNull(error.get());
+        assertTrue(ringBuffer.isEmpty());
+    }
+}
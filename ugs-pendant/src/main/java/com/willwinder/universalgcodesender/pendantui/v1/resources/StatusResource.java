@@ -1,6 +1,7 @@
 package com.willwinder.universalgcodesender.pendantui.v1.resources;
 
 import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.ControllerStatus;
 import com.willwinder.universalgcodesender.model.BackendAPI;
@@ -54,4 +55,11 @@ public class StatusResource {
 
         return status;
     }
+
+    @GET
+    @Path("getStreamingStatistics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingStatistics.Snapshot getStreamingStatistics() {
+        return backendAPI.getStreamingStatistics();
+    }
 }
\ No newline at end of file
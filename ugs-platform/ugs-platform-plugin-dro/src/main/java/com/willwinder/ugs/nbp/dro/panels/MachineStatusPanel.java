@@ -250,10 +250,12 @@ public class MachineStatusPanel extends JPanel implements UGSEventListener, Cont
             updateControls();
         }
         if (evt.isControllerStatusEvent()) {
-            onControllerStatusReceived(evt.getControllerStatus());
+            ControllerStatus status = evt.getControllerStatus();
+            onControllerStatusReceived(status, status.getChanges());
         }
         if (evt.isSettingChangeEvent() && backend.getController() != null && backend.getController().getControllerStatus() != null) {
-            onControllerStatusReceived(backend.getController().getControllerStatus());
+            // The preferred units may have changed, update everything
+            onControllerStatusReceived(backend.getController().getControllerStatus(), ControllerStatus.ALL);
             updateControls();
         }
     }
@@ -285,7 +287,46 @@ public class MachineStatusPanel extends JPanel implements UGSEventListener, Cont
         }
     }
 
-    private void onControllerStatusReceived(ControllerStatus status) {
+    private void onControllerStatusReceived(ControllerStatus status, int changes) {
+        if ((changes & (ControllerStatus.STATE | ControllerStatus.PINS)) != 0) {
+            updateStatePanel(status);
+        }
+
+        this.setUnits(backend.getSettings().getPreferredUnits());
+
+        if ((changes & (ControllerStatus.MACHINE_COORD | ControllerStatus.WORK_COORD)) != 0) {
+            Arrays.stream(Axis.values())
+                    .filter(axisPanels::containsKey)
+                    .forEach(axis -> {
+                        if (status.getMachineCoord() != null) {
+                            Position machineCoord = status.getMachineCoord().getPositionIn(units);
+                            axisPanels.get(axis).setMachinePosition(machineCoord.get(axis));
+                        }
+
+                        if (status.getWorkCoord() != null) {
+                            Position workCoord = status.getWorkCoord().getPositionIn(units);
+                            axisPanels.get(axis).setWorkPosition(workCoord.get(axis));
+                        }
+                    });
+        }
+
+        // Use real-time values if available, otherwise show the target values.
+        if ((changes & (ControllerStatus.FEED_SPEED | ControllerStatus.FEED_SPEED_UNITS)) != 0 || status.getFeedSpeed() == null) {
+            int feedSpeed = status.getFeedSpeed() != null
+                    ? (int) (status.getFeedSpeed() * UnitUtils.scaleUnits(status.getFeedSpeedUnits(), backend.getSettings().getPreferredUnits()))
+                    : (int) this.backend.getGcodeState().speed;
+            this.feedValue.setText(Integer.toString(feedSpeed));
+        }
+
+        if ((changes & ControllerStatus.SPINDLE_SPEED) != 0 || status.getSpindleSpeed() == null) {
+            int spindleSpeed = status.getSpindleSpeed() != null
+                    ? status.getSpindleSpeed().intValue()
+                    : (int) this.backend.getGcodeState().spindleSpeed;
+            this.spindleSpeedValue.setText(Integer.toString(spindleSpeed));
+        }
+    }
+
+    private void updateStatePanel(ControllerStatus status) {
         this.updateStatePanel(status.getState());
         resetStatePinComponents();
 
@@ -312,33 +353,6 @@ public class MachineStatusPanel extends JPanel implements UGSEventListener, Cont
                 pinStatePanel.setForeground(ThemeColors.RED);
             }
         }
-
-        this.setUnits(backend.getSettings().getPreferredUnits());
-
-        Arrays.stream(Axis.values())
-                .filter(axisPanels::containsKey)
-                .forEach(axis -> {
-                    if (status.getMachineCoord() != null) {
-                        Position machineCoord = status.getMachineCoord().getPositionIn(units);
-                        axisPanels.get(axis).setMachinePosition(machineCoord.get(axis));
-                    }
-
-                    if (status.getWorkCoord() != null) {
-                        Position workCoord = status.getWorkCoord().getPositionIn(units);
-                        axisPanels.get(axis).setWorkPosition(workCoord.get(axis));
-                    }
-                });
-
-        // Use real-time values if available, otherwise show the target values.
-        int feedSpeed = status.getFeedSpeed() != null
-                ? (int) (status.getFeedSpeed() * UnitUtils.scaleUnits(status.getFeedSpeedUnits(), backend.getSettings().getPreferredUnits()))
-                : (int) this.backend.getGcodeState().speed;
-        this.feedValue.setText(Integer.toString(feedSpeed));
-
-        int spindleSpeed = status.getSpindleSpeed() != null
-                ? status.getSpindleSpeed().intValue()
-                : (int) this.backend.getGcodeState().spindleSpeed;
-        this.spindleSpeedValue.setText(Integer.toString(spindleSpeed));
     }
 
     private void updateStatePanel(ControllerState state) {
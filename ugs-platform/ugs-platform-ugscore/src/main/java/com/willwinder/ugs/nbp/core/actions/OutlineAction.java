@@ -20,6 +20,7 @@ package com.willwinder.ugs.nbp.core.actions;
 
 import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
 import com.willwinder.ugs.nbp.lib.services.LocalizingService;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.gcode.util.GcodeUtils;
@@ -109,8 +110,10 @@ public final class OutlineAction extends AbstractAction implements UGSEventListe
             try {
                 LOGGER.finest("Generating the outline of the gcode model");
                 LoaderDialogHelper.showDialog("Generating outline", 1500, (Component) e.getSource());
-                File gcodeFile = backend.getProcessedGcodeFile();
-                List<GcodeCommand> gcodeCommands = generateOutlineCommands(gcodeFile);
+                GcodeProgram program = backend.getGcodeProgram();
+                List<GcodeCommand> gcodeCommands = program != null ?
+                        generateOutlineCommands(program) :
+                        generateOutlineCommands(backend.getProcessedGcodeFile());
 
                 LOGGER.finest("Sending the outline to the controller");
                 backend.getController().queueStream(new SimpleGcodeStreamReader(gcodeCommands));
@@ -124,8 +127,17 @@ public final class OutlineAction extends AbstractAction implements UGSEventListe
     }
 
     public List<GcodeCommand> generateOutlineCommands(File gcodeFile) throws IOException, GcodeParserException {
-        List<LineSegment> gcodeLineList = parseGcodeLinesFromFile(gcodeFile);
+        return generateOutlineCommands(parseGcodeLinesFromFile(gcodeFile));
+    }
+
+    /**
+     * Generates the outline from an already compiled program without parsing the file again.
+     */
+    public List<GcodeCommand> generateOutlineCommands(GcodeProgram program) {
+        return generateOutlineCommands(new GcodeViewParse().toObjFromProgram(program, ARC_SEGMENT_LENGTH));
+    }
 
+    private List<GcodeCommand> generateOutlineCommands(List<LineSegment> gcodeLineList) {
         // We only care about carving motion, filter those commands out
         List<PartialPosition> pointList = gcodeLineList.parallelStream()
                 .filter(lineSegment -> !lineSegment.isFastTraverse())
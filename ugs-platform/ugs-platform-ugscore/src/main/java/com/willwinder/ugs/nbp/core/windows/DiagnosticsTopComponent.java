@@ -23,6 +23,8 @@ import com.willwinder.ugs.nbp.lib.services.LocalizingService;
 import com.willwinder.universalgcodesender.AbstractCommunicator;
 import com.willwinder.universalgcodesender.ICommunicator;
 import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.StatusPollTimer;
+import com.willwinder.universalgcodesender.communicator.StreamingStatistics;
 import com.willwinder.universalgcodesender.firmware.IFirmwareSettings;
 import com.willwinder.universalgcodesender.listeners.UGSEventListener;
 import com.willwinder.universalgcodesender.model.BackendAPI;
@@ -93,6 +95,9 @@ public final class DiagnosticsTopComponent extends TopComponent implements UGSEv
     this.labels.put("controller:getSingleStepMode", new JLabel("-----"));
     this.labels.put("controller:getStatusUpdatesEnabled", new JLabel("-----"));
     this.labels.put("controller:getStatusUpdateRate", new JLabel("-----"));
+    this.labels.put("controller:statusPollInterval", new JLabel("-----"));
+    this.labels.put("controller:statusPollRate", new JLabel("-----"));
+    this.labels.put("controller:statusReportLatency", new JLabel("-----"));
 
     this.labels.put("communicator:numActiveCommands", new JLabel("-----"));
     this.labels.put("communicator:isPaused", new JLabel("-----"));
@@ -100,6 +105,13 @@ public final class DiagnosticsTopComponent extends TopComponent implements UGSEv
 
     this.labels.put("settings:isHomingEnabled", new JLabel("-----"));
     this.labels.put("settings:getReportingUnits", new JLabel("-----"));
+
+    this.labels.put("streaming:queueWait", new JLabel("-----"));
+    this.labels.put("streaming:roundTrip", new JLabel("-----"));
+    this.labels.put("streaming:total", new JLabel("-----"));
+    this.labels.put("streaming:completedLines", new JLabel("-----"));
+    this.labels.put("streaming:linesPerSecond", new JLabel("-----"));
+    this.labels.put("streaming:bytesPerSecond", new JLabel("-----"));
     setLayout(new BorderLayout());
 
 
@@ -130,6 +142,14 @@ public final class DiagnosticsTopComponent extends TopComponent implements UGSEv
       labels.get("backend:canCancel").setText(String.valueOf(backend.canCancel()));
       labels.get("backend:canSend").setText(String.valueOf(backend.canSend()));
       labels.get("backend:getControlState").setText(String.valueOf(backend.getControlState().toString()));
+
+      StreamingStatistics.Snapshot statistics = backend.getStreamingStatistics();
+      labels.get("streaming:queueWait").setText(statistics.getQueueWait().toString());
+      labels.get("streaming:roundTrip").setText(statistics.getRoundTrip().toString());
+      labels.get("streaming:total").setText(statistics.getTotal().toString());
+      labels.get("streaming:completedLines").setText(String.valueOf(statistics.getCompletedLines()));
+      labels.get("streaming:linesPerSecond").setText(String.format("%.1f", statistics.getLinesPerSecond()));
+      labels.get("streaming:bytesPerSecond").setText(String.format("%.1f", statistics.getBytesPerSecond()));
     } catch (Exception e) {
       e.printStackTrace();
     }
@@ -148,6 +168,11 @@ public final class DiagnosticsTopComponent extends TopComponent implements UGSEv
         labels.get("controller:getStatusUpdatesEnabled").setText(String.valueOf(controller.getStatusUpdatesEnabled()));
         labels.get("controller:getStatusUpdateRate").setText(String.valueOf(controller.getStatusUpdateRate()));
 
+        StatusPollTimer.Metrics pollMetrics = controller.getStatusPollMetrics();
+        labels.get("controller:statusPollInterval").setText(pollMetrics.getPollInterval() + "ms (backoff x" + pollMetrics.getBackoff() + ")");
+        labels.get("controller:statusPollRate").setText(String.format("%.1f/s", pollMetrics.getPollRate()));
+        labels.get("controller:statusReportLatency").setText(pollMetrics.getReportLatency().toString());
+
         IFirmwareSettings firmwareSettings = controller.getFirmwareSettings();
         if(firmwareSettings != null) {
           labels.get("settings:isHomingEnabled").setText(String.valueOf(firmwareSettings.isHomingEnabled()));
@@ -24,6 +24,7 @@ import com.willwinder.ugs.nbm.visualizer.renderables.Selection;
 import com.willwinder.ugs.nbm.visualizer.renderables.SizeDisplay;
 import com.willwinder.ugs.nbm.visualizer.shared.RotationService;
 import com.willwinder.ugs.nbm.visualizer.shared.GcodeRenderer;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.ControllerListener;
 import com.willwinder.universalgcodesender.listeners.ControllerStatus;
@@ -40,6 +41,7 @@ import com.willwinder.universalgcodesender.utils.Settings.FileStats;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import java.util.prefs.PreferenceChangeEvent;
 import java.util.prefs.PreferenceChangeListener;
 import javax.swing.SwingUtilities;
@@ -94,7 +96,14 @@ public class RendererInputHandler implements
     }
  
     public void setGcodeFile(String file) {
-        gcodeModel.setGcodeFile(file);
+        // Reuse the program compiled by the backend when showing the processed file.
+        GcodeProgram program = null;
+        File processedFile = backend.getProcessedGcodeFile();
+        if (processedFile != null && processedFile.getAbsolutePath().equals(file)) {
+            program = backend.getGcodeProgram();
+        }
+
+        gcodeModel.setGcodeFile(file, program);
         gcodeRenderer.setObjectSize(gcodeModel.getMin(), gcodeModel.getMax());
 
         updateBounds(gcodeModel.getMin(), gcodeModel.getMax());
@@ -335,8 +344,12 @@ public class RendererInputHandler implements
      */
     @Override
     public void statusStringListener(ControllerStatus status) {
-        gcodeRenderer.setMachineCoordinate(status.getMachineCoord());
-        gcodeRenderer.setWorkCoordinate(status.getWorkCoord());
+        if (status.hasChanged(ControllerStatus.MACHINE_COORD)) {
+            gcodeRenderer.setMachineCoordinate(status.getMachineCoord());
+        }
+        if (status.hasChanged(ControllerStatus.WORK_COORD)) {
+            gcodeRenderer.setWorkCoordinate(status.getWorkCoord());
+        }
     }
 
     @Override
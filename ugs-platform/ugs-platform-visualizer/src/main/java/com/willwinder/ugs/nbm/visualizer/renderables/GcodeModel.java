@@ -24,6 +24,7 @@ import com.jogamp.opengl.GL2;
 import com.jogamp.opengl.GLAutoDrawable;
 import com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions;
 import com.willwinder.ugs.nbm.visualizer.shared.Renderable;
+import com.willwinder.universalgcodesender.gcode.GcodeProgram;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
@@ -67,6 +68,7 @@ public class GcodeModel extends Renderable {
 
     // Gcode file data
     private String gcodeFile = null;
+    private GcodeProgram gcodeProgram = null;
     private boolean isDrawable = false; //True if a file is loaded; false if not
 
     // TODO: don't save the line list.
@@ -113,7 +115,19 @@ public class GcodeModel extends Renderable {
      * Assign a gcode file to drawing.
      */
     public boolean setGcodeFile(String file) {
+        return setGcodeFile(file, null);
+    }
+
+    /**
+     * Assign a gcode file to drawing, the geometry is generated from the
+     * program if it is available instead of parsing the file.
+     *
+     * @param file the gcode file
+     * @param program the compiled program of the file or null
+     */
+    public boolean setGcodeFile(String file, GcodeProgram program) {
         this.gcodeFile = file;
+        this.gcodeProgram = program;
         this.isDrawable = false;
         this.currentCommandNumber = 0;
 
@@ -337,13 +351,17 @@ public class GcodeModel extends Renderable {
         try {
             GcodeViewParse gcvp = new GcodeViewParse();
             logger.log(Level.INFO, "About to process {}", gcodeFile);
-            try {
-                IGcodeStreamReader gsr = new GcodeStreamReader(new File(gcodeFile));
-                gcodeLineList = gcvp.toObjFromReader(gsr, 0.3);
-            } catch (GcodeStreamReader.NotGcodeStreamFile e) {
-                List<String> linesInFile;
-                linesInFile = VisualizerUtils.readFiletoArrayList(this.gcodeFile);
-                gcodeLineList = gcvp.toObjRedux(linesInFile, 0.3);
+            if (gcodeProgram != null) {
+                gcodeLineList = gcvp.toObjFromProgram(gcodeProgram, 0.3);
+            } else {
+                try {
+                    IGcodeStreamReader gsr = new GcodeStreamReader(new File(gcodeFile));
+                    gcodeLineList = gcvp.toObjFromReader(gsr, 0.3);
+                } catch (GcodeStreamReader.NotGcodeStreamFile e) {
+                    List<String> linesInFile;
+                    linesInFile = VisualizerUtils.readFiletoArrayList(this.gcodeFile);
+                    gcodeLineList = gcvp.toObjRedux(linesInFile, 0.3);
+                }
             }
 
             // Convert LineSegments to points.